@@ -29,6 +29,7 @@ import com.unboundid.scim.sdk.SCIMAttribute;
 import com.unboundid.scim.sdk.SCIMConstants;
 import com.unboundid.scim.sdk.SCIMException;
 import com.unboundid.scim.sdk.SCIMFilter;
+import com.unboundid.scim.sdk.SCIMFilterType;
 import com.unboundid.scim.sdk.SCIMObject;
 import com.unboundid.scim.sdk.ServerErrorException;
 import com.unboundid.scim.sdk.SortParameters;
@@ -117,6 +118,24 @@ public abstract class AttributeMapper
 
 
 
+  /**
+   * Determines whether the LDAP filter mapped from a SCIM filter component
+   * of the given type matches exactly the LDAP entries whose mapped SCIM
+   * attribute matches the SCIM filter component, so that the SCIM filter
+   * does not need to be evaluated again against the mapped SCIM objects.
+   * Attribute mappers should only return {@code true} when this is certain.
+   *
+   * @param filterType  The type of the SCIM filter component.
+   *
+   * @return  {@code true} if the mapped LDAP filter is exact.
+   */
+  public boolean isExactFilter(final SCIMFilterType filterType)
+  {
+    return false;
+  }
+
+
+
   /**
    * Map the provided SCIM attribute to LDAP attributes.
    *
@@ -227,7 +246,9 @@ public abstract class AttributeMapper
       }
       else
       {
-        return new SimpleAttributeMapper(attributeDescriptor, t);
+        return new SimpleAttributeMapper(attributeDescriptor, t,
+            SimpleAttributeMapper.isExactEquality(attributeDescriptor, t,
+                                                  ldapSchema));
       }
     }
     else if (attributeDefinition.getComplex() != null)
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.ldap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+
+/**
+ * A thread-safe cache that may be shared between requests. The number of
+ * cached values is bounded, and values may optionally expire a fixed time
+ * after they were cached.
+ * <p>
+ * When the cache grows beyond its maximum size, the expired values and then
+ * the oldest values are evicted until the cache is a quarter below its
+ * maximum size, so that the cost of eviction is spread over many updates.
+ *
+ * @param <K>  The type of the keys.
+ * @param <V>  The type of the cached values.
+ */
+final class BoundedCache<K, V>
+{
+  /**
+   * The cached values.
+   */
+  private final ConcurrentHashMap<K, CachedValue<V>> values;
+
+  /**
+   * The maximum number of values to be cached.
+   */
+  private final int maxSize;
+
+  /**
+   * The time in milliseconds for which a value remains valid, or zero if
+   * values do not expire.
+   */
+  private final long timeToLiveMillis;
+
+  /**
+   * Indicates whether a thread is currently evicting values.
+   */
+  private final AtomicBoolean evicting = new AtomicBoolean(false);
+
+
+
+  /**
+   * Create a new bounded cache.
+   *
+   * @param maxSize           The maximum number of values to be cached.
+   * @param timeToLiveMillis  The time in milliseconds for which a value remains
+   *                          valid, or zero if values do not expire.
+   */
+  BoundedCache(final int maxSize, final long timeToLiveMillis)
+  {
+    this.values = new ConcurrentHashMap<K, CachedValue<V>>();
+    this.maxSize = maxSize;
+    this.timeToLiveMillis = timeToLiveMillis;
+  }
+
+
+
+  /**
+   * Retrieve a cached value.
+   *
+   * @param key  The key of the value to retrieve.
+   *
+   * @return  The cached value, or {@code null} if there is no valid value
+   *          cached for the key.
+   */
+  V get(final K key)
+  {
+    final CachedValue<V> cachedValue = values.get(key);
+    if (cachedValue == null)
+    {
+      return null;
+    }
+
+    if (isExpired(cachedValue, System.currentTimeMillis()))
+    {
+      values.remove(key, cachedValue);
+      return null;
+    }
+
+    return cachedValue.value;
+  }
+
+
+
+  /**
+   * Cache a value, replacing any value already cached for the key.
+   *
+   * @param key    The key of the value.
+   * @param value  The value to be cached.
+   */
+  void put(final K key, final V value)
+  {
+    values.put(key,
+        new CachedValue<V>(value, System.currentTimeMillis()));
+    if (values.size() > maxSize)
+    {
+      evict();
+    }
+  }
+
+
+
+  /**
+   * Remove any value cached for a key.
+   *
+   * @param key  The key of the value to be removed.
+   */
+  void remove(final K key)
+  {
+    values.remove(key);
+  }
+
+
+
+  /**
+   * Remove all cached values.
+   */
+  void clear()
+  {
+    values.clear();
+  }
+
+
+
+  /**
+   * Retrieve the number of cached values, including any that have expired
+   * but have not yet been removed.
+   *
+   * @return  The number of cached values.
+   */
+  int size()
+  {
+    return values.size();
+  }
+
+
+
+  /**
+   * Determine whether a cached value has expired.
+   *
+   * @param cachedValue  The cached value.
+   * @param now          The current time in milliseconds.
+   *
+   * @return  {@code true} if the value has expired.
+   */
+  private boolean isExpired(final CachedValue<V> cachedValue, final long now)
+  {
+    return timeToLiveMillis > 0 &&
+           now - cachedValue.timeCached >= timeToLiveMillis;
+  }
+
+
+
+  /**
+   * Evict expired values and then the oldest values until the cache is below
+   * its maximum size. Only one thread evicts at a time; other threads that
+   * find the cache over its maximum size simply carry on.
+   */
+  private void evict()
+  {
+    if (!evicting.compareAndSet(false, true))
+    {
+      return;
+    }
+
+    try
+    {
+      final long now = System.currentTimeMillis();
+      final List<Map.Entry<K, CachedValue<V>>> candidates =
+          new ArrayList<Map.Entry<K, CachedValue<V>>>(values.size());
+      for (final Map.Entry<K, CachedValue<V>> e : values.entrySet())
+      {
+        if (isExpired(e.getValue(), now))
+        {
+          values.remove(e.getKey(), e.getValue());
+        }
+        else
+        {
+          candidates.add(e);
+        }
+      }
+
+      final int targetSize = maxSize - (maxSize / 4);
+      if (candidates.size() <= targetSize)
+      {
+        return;
+      }
+
+      Collections.sort(candidates,
+          new Comparator<Map.Entry<K, CachedValue<V>>>()
+          {
+            public int compare(final Map.Entry<K, CachedValue<V>> e1,
+                               final Map.Entry<K, CachedValue<V>> e2)
+            {
+              final long t1 = e1.getValue().timeCached;
+              final long t2 = e2.getValue().timeCached;
+              return t1 < t2 ? -1 : (t1 == t2 ? 0 : 1);
+            }
+          });
+
+      final int numToEvict = candidates.size() - targetSize;
+      for (int i = 0; i < numToEvict; i++)
+      {
+        final Map.Entry<K, CachedValue<V>> e = candidates.get(i);
+        values.remove(e.getKey(), e.getValue());
+      }
+    }
+    finally
+    {
+      evicting.set(false);
+    }
+  }
+
+
+
+  /**
+   * A cached value and the time at which it was cached.
+   *
+   * @param <V>  The type of the cached value.
+   */
+  private static final class CachedValue<V>
+  {
+    private final V value;
+    private final long timeCached;
+
+    /**
+     * Create a new cached value.
+     *
+     * @param value       The cached value.
+     * @param timeCached  The time in milliseconds at which it was cached.
+     */
+    private CachedValue(final V value, final long timeCached)
+    {
+      this.value = value;
+      this.timeCached = timeCached;
+    }
+  }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2012-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.ldap;
+
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPConnectionPoolStatistics;
+import com.unboundid.ldap.sdk.LDAPException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+
+/**
+ * This class checks connections out of an LDAP connection pool and keeps
+ * statistics about the checkouts, such as the time taken to check out a
+ * connection, for the monitor endpoint.
+ */
+public class ConnectionPoolMonitor
+{
+  /**
+   * The name of the pool in the monitor data.
+   */
+  private final String name;
+
+  /**
+   * The LDAP connection pool.
+   */
+  private final LDAPConnectionPool pool;
+
+  /**
+   * The number of connections checked out.
+   */
+  private final AtomicLong checkouts = new AtomicLong();
+
+  /**
+   * The number of attempts to check out a connection that failed.
+   */
+  private final AtomicLong failedCheckouts = new AtomicLong();
+
+  /**
+   * The total time in nanoseconds taken to check out connections.
+   */
+  private final AtomicLong totalCheckoutNanos = new AtomicLong();
+
+  /**
+   * The longest time in nanoseconds taken to check out a connection.
+   */
+  private final AtomicLong maxCheckoutNanos = new AtomicLong();
+
+
+
+  /**
+   * Create a new connection pool monitor.
+   *
+   * @param name  The name of the pool in the monitor data.
+   * @param pool  The LDAP connection pool.
+   */
+  public ConnectionPoolMonitor(final String name,
+                               final LDAPConnectionPool pool)
+  {
+    this.name = name;
+    this.pool = pool;
+  }
+
+
+
+  /**
+   * Retrieve the name of the pool in the monitor data.
+   *
+   * @return  The name of the pool in the monitor data.
+   */
+  public String getName()
+  {
+    return name;
+  }
+
+
+
+  /**
+   * Retrieve the LDAP connection pool.
+   *
+   * @return  The LDAP connection pool.
+   */
+  public LDAPConnectionPool getPool()
+  {
+    return pool;
+  }
+
+
+
+  /**
+   * Check out a connection from the pool. The connection must be returned with
+   * {@link #releaseConnection} or {@link #releaseConnectionAfterException}.
+   *
+   * @return  The connection.
+   *
+   * @throws LDAPException  If a connection could not be checked out.
+   */
+  public LDAPConnection getConnection()
+      throws LDAPException
+  {
+    final long start = System.nanoTime();
+    final LDAPConnection connection;
+    try
+    {
+      connection = pool.getConnection();
+    }
+    catch (LDAPException e)
+    {
+      failedCheckouts.incrementAndGet();
+      throw e;
+    }
+
+    final long elapsed = System.nanoTime() - start;
+    checkouts.incrementAndGet();
+    totalCheckoutNanos.addAndGet(elapsed);
+    long max = maxCheckoutNanos.get();
+    while (elapsed > max && !maxCheckoutNanos.compareAndSet(max, elapsed))
+    {
+      max = maxCheckoutNanos.get();
+    }
+    return connection;
+  }
+
+
+
+  /**
+   * Return a connection to the pool after it has been used successfully.
+   *
+   * @param connection  The connection.
+   */
+  public void releaseConnection(final LDAPConnection connection)
+  {
+    pool.releaseConnection(connection);
+  }
+
+
+
+  /**
+   * Return a connection to the pool after an operation failed, closing the
+   * connection if the failure indicates that it is no longer usable.
+   *
+   * @param connection  The connection.
+   * @param e           The exception for the failed operation.
+   */
+  public void releaseConnectionAfterException(final LDAPConnection connection,
+                                              final LDAPException e)
+  {
+    pool.releaseConnectionAfterException(connection, e);
+  }
+
+
+
+  /**
+   * Return a connection to the pool that must not be used again.
+   *
+   * @param connection  The connection.
+   */
+  public void releaseDefunctConnection(final LDAPConnection connection)
+  {
+    pool.releaseDefunctConnection(connection);
+  }
+
+
+
+  /**
+   * Retrieve the statistics for the monitor endpoint. These include the
+   * checkout times measured here and the statistics kept by the pool.
+   *
+   * @return  The values of the statistics, keyed by statistic name.
+   */
+  public Map<String, Long> getMonitorData()
+  {
+    final Map<String, Long> data = new LinkedHashMap<String, Long>();
+    final long numCheckouts = checkouts.get();
+    data.put("checkouts", numCheckouts);
+    data.put("checkouts-failed", failedCheckouts.get());
+    data.put("checkout-average-micros", numCheckouts == 0 ? 0 :
+        TimeUnit.NANOSECONDS.toMicros(
+            totalCheckoutNanos.get() / numCheckouts));
+    data.put("checkout-max-micros",
+        TimeUnit.NANOSECONDS.toMicros(maxCheckoutNanos.get()));
+
+    final LDAPConnectionPoolStatistics statistics =
+        pool.getConnectionPoolStatistics();
+    data.put("checkouts-after-waiting",
+        statistics.getNumSuccessfulCheckoutsAfterWaiting());
+    data.put("checkouts-new-connection",
+        statistics.getNumSuccessfulCheckoutsNewConnection());
+    data.put("connections-available",
+        (long) statistics.getNumAvailableConnections());
+    data.put("connections-max-available",
+        (long) statistics.getMaximumAvailableConnections());
+    data.put("connections-closed-defunct",
+        statistics.getNumConnectionsClosedDefunct());
+    data.put("connection-attempts-failed",
+        statistics.getNumFailedConnectionAttempts());
+    return data;
+  }
+}
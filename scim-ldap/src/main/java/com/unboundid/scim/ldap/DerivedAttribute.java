@@ -30,6 +30,7 @@ import com.unboundid.scim.sdk.SCIMAttribute;
 import com.unboundid.scim.sdk.SCIMException;
 import com.unboundid.scim.sdk.SCIMFilter;
 import com.unboundid.scim.sdk.SCIMObject;
+import com.unboundid.scim.sdk.SCIMQueryAttributes;
 import org.w3c.dom.Element;
 
 import java.util.Collection;
@@ -174,6 +175,25 @@ public abstract class DerivedAttribute
 
 
 
+  /**
+   * Retrieve the set of LDAP attribute types needed in the entry representing
+   * the resource in order to return the specified query attributes. This
+   * implementation returns the same attribute types as
+   * {@link #getLDAPAttributeTypes()}.
+   *
+   * @param queryAttributes  The requested query attributes.
+   *
+   * @return  The set of LDAP attribute types needed in the entry representing
+   *          the resource.
+   */
+  public Set<String> getLDAPAttributeTypes(
+      final SCIMQueryAttributes queryAttributes)
+  {
+    return getLDAPAttributeTypes();
+  }
+
+
+
   /**
    * Map the provided SCIM filter to an LDAP filter.
    *
@@ -253,6 +273,43 @@ public abstract class DerivedAttribute
 
 
 
+  /**
+   * Derive a SCIM attribute value from the provided information, returning
+   * only the page of values requested for a multi-valued attribute. This
+   * implementation derives all values and then discards those outside the
+   * requested page. Subclasses that can avoid deriving the other values
+   * should override this method.
+   *
+   * @param entry            An LDAP search result entry representing the SCIM
+   *                         resource for which a SCIM attribute value is to be
+   *                         derived.
+   * @param ldapInterface    An LDAP interface that may be used to search the
+   *                         DIT.
+   * @param searchResolver   The LDAPSearchResolver for resources containing
+   *                         this derived attribute.
+   * @param queryAttributes  The requested query attributes.
+   *
+   * @return  A SCIM attribute, or {@code null} if no attribute was created.
+   * @throws SCIMException if an error occurs.
+   */
+  public SCIMAttribute searchEntryToSCIMAttribute(
+      final SearchResultEntry entry,
+      final LDAPRequestInterface ldapInterface,
+      final LDAPSearchResolver searchResolver,
+      final SCIMQueryAttributes queryAttributes) throws SCIMException
+  {
+    final SCIMAttribute attribute =
+        searchEntryToSCIMAttribute(entry, ldapInterface, searchResolver);
+    if (attribute == null)
+    {
+      return null;
+    }
+
+    return queryAttributes.pageAttribute(attribute);
+  }
+
+
+
   /**
    * Map the SCIM attribute in the provided SCIM object to LDAP attributes.
    *
@@ -18,16 +18,21 @@
 package com.unboundid.scim.ldap;
 
 import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.ldap.matchingrules.DistinguishedNameMatchingRule;
 import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Control;
 import com.unboundid.ldap.sdk.DN;
 import com.unboundid.ldap.sdk.Entry;
 import com.unboundid.ldap.sdk.Filter;
 import com.unboundid.ldap.sdk.LDAPException;
 import com.unboundid.ldap.sdk.LDAPURL;
+import com.unboundid.ldap.sdk.ResultCode;
 import com.unboundid.ldap.sdk.SearchRequest;
 import com.unboundid.ldap.sdk.SearchResult;
 import com.unboundid.ldap.sdk.SearchResultEntry;
 import com.unboundid.ldap.sdk.SearchScope;
+import com.unboundid.ldap.sdk.controls.MatchedValuesFilter;
+import com.unboundid.ldap.sdk.controls.MatchedValuesRequestControl;
 import com.unboundid.scim.schema.AttributeDescriptor;
 import com.unboundid.scim.sdk.AttributePath;
 import com.unboundid.scim.sdk.Debug;
@@ -45,13 +50,14 @@ import com.unboundid.util.StaticUtils;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.logging.Level;
 
 
@@ -66,6 +72,29 @@ import java.util.logging.Level;
  * The &lt;derivation&gt; element for this derived attribute accepts a special
  * child element, &lt;LDAPSearchRef idref="exampleSearchParams"/&gt;, which
  * specifies the LDAP search parameters to use when searching for Group entries.
+ * <p>
+ * When the isMemberOf attribute is not used, nested groups are found level
+ * by level with one search per base DN for each level of nesting. The
+ * traversal may be bounded using &lt;maxGroupNestingDepth&gt; and
+ * &lt;maxGroups&gt;.
+ * <p>
+ * When the isMemberOf attribute is used and the directory server also
+ * provides the entryDN attribute (&lt;haveEntryDN&gt;true&lt;/haveEntryDN&gt;),
+ * the group entries are retrieved with a few searches using entryDN filters
+ * rather than one or two base searches per group. Unless the server provides
+ * the isDirectMemberOf attribute, the member values of the groups are
+ * requested with a critical matched values control, and if the server does
+ * not support the control the direct groups are found with a search for the
+ * groups having the entry as a member instead.
+ * <p>
+ * When the isMemberOf attribute is used, group entries may be cached for the
+ * duration of an HTTP request (&lt;maxGroupsCached&gt;) and across requests
+ * (&lt;maxSharedGroupsCached&gt; and &lt;sharedGroupsCacheTTLMillis&gt;).
+ * Groups are removed from the shared cache when they are modified or deleted
+ * through the SCIM server, but not when they are changed directly in LDAP, so
+ * a TTL should be configured in that case. Since the shared cache is not
+ * specific to the authenticated user, it should only be enabled when all
+ * clients are permitted to read the group entries.
  */
 public class GroupsDerivedAttribute extends DerivedAttribute
 {
@@ -82,6 +111,33 @@ public class GroupsDerivedAttribute extends DerivedAttribute
    */
   private static final String HAVE_ISDIRECTMEMBEROF = "haveIsDirectMemberOf";
 
+  /**
+   * The name of the argument that indicates whether the backend DS provides
+   * the entryDN attribute, which allows group entries to be retrieved in
+   * batches.
+   */
+  private static final String HAVE_ENTRYDN = "haveEntryDN";
+
+  /**
+   * The name of the argument that specifies the maximum number of levels of
+   * group nesting to follow when the isMemberOf attribute is not used. Values
+   * less than zero mean that there is no limit.
+   */
+  private static final String MAX_GROUP_NESTING_DEPTH = "maxGroupNestingDepth";
+
+  /**
+   * The name of the argument that specifies the maximum number of groups to
+   * find when the isMemberOf attribute is not used. Values less than one mean
+   * that there is no limit.
+   */
+  private static final String MAX_GROUPS = "maxGroups";
+
+  /**
+   * The maximum number of entryDN or member components in the filter of a
+   * single search.
+   */
+  private static final int ENTRY_DN_BATCH_SIZE = 100;
+
   /**
    * The name of the argument that indicates whether to cache group data
    * during an HTTP request, and how much data to cache. Values less than one
@@ -89,6 +145,22 @@ public class GroupsDerivedAttribute extends DerivedAttribute
    */
   private static final String MAX_GROUPS_CACHED = "maxGroupsCached";
 
+  /**
+   * The name of the argument that indicates whether to cache group data
+   * across HTTP requests, and how much data to cache. Values less than one
+   * will prevent shared group caching.
+   */
+  private static final String MAX_SHARED_GROUPS_CACHED =
+      "maxSharedGroupsCached";
+
+  /**
+   * The name of the argument that specifies the time in milliseconds for
+   * which group data remains in the shared group cache. Values less than one
+   * mean that group data does not expire from the cache.
+   */
+  private static final String SHARED_GROUPS_CACHE_TTL_MILLIS =
+      "sharedGroupsCacheTTLMillis";
+
   /**
    * The name of the LDAP cn attribute.
    */
@@ -99,6 +171,11 @@ public class GroupsDerivedAttribute extends DerivedAttribute
    */
   private static final String ATTR_OBJECT_CLASS = "objectClass";
 
+  /**
+   * The name of the LDAP entryDN attribute.
+   */
+  private static final String ATTR_ENTRY_DN = "entryDN";
+
   /**
    * The name of the LDAP isMemberOf attribute.
    */
@@ -165,6 +242,14 @@ public class GroupsDerivedAttribute extends DerivedAttribute
   private static final ThreadLocal<Map<DN, SearchResultEntry>> GROUP_CACHES =
       new ThreadLocal<Map<DN, SearchResultEntry>>();
 
+  /**
+   * The shared group caches of all instances of this derived attribute, so
+   * that they can be invalidated when a group is modified or deleted.
+   */
+  private static final Map<BoundedCache<DN, SearchResultEntry>, Boolean>
+      SHARED_GROUP_CACHES = Collections.synchronizedMap(
+          new WeakHashMap<BoundedCache<DN, SearchResultEntry>, Boolean>());
+
   /**
    * The attribute descriptor for the derived attribute.
    */
@@ -186,11 +271,39 @@ public class GroupsDerivedAttribute extends DerivedAttribute
    */
   private boolean haveIsDirectMemberOf;
 
+  /**
+   * Indicates whether the backend DS provides the entryDN attribute.
+   */
+  private boolean haveEntryDN;
+
+  /**
+   * The maximum number of levels of group nesting to follow, or a negative
+   * value if there is no limit.
+   */
+  private int maxGroupNestingDepth;
+
+  /**
+   * The maximum number of groups to find, or zero if there is no limit.
+   */
+  private int maxGroups;
+
   /**
    * Indicates how many groups to cache per request.
    */
   private int groupsToCachePerRequest;
 
+  /**
+   * The group cache shared by all requests, or {@code null} if shared group
+   * caching is disabled.
+   */
+  private BoundedCache<DN, SearchResultEntry> sharedGroupCache;
+
+  /**
+   * Indicates whether the backend DS has rejected the matched values control,
+   * so that it is no longer requested.
+   */
+  private volatile boolean matchedValuesUnavailable;
+
 
 
   @Override
@@ -261,87 +374,72 @@ public class GroupsDerivedAttribute extends DerivedAttribute
             }
           }
 
-          for (final String dnString :
-              entry.getAttributeValues(ATTR_IS_MEMBER_OF))
+          if (haveEntryDN)
+          {
+            addGroupValuesInBatches(entry, ldapInterface, attrsToGet,
+                isDirectMemberOfDNs, values);
+          }
+          else
           {
-            // Make sure the group is scoped within the base DN.
-            if (groupResolver.isDnInScope(dnString))
+            for (final String dnString :
+                entry.getAttributeValues(ATTR_IS_MEMBER_OF))
             {
-              SearchRequest searchRequest;
-              SearchResultEntry groupEntry = null;
-              Map<DN, SearchResultEntry> groupCache =
-                  GROUP_CACHES.get();
-              DN groupDN = new DN(dnString);
-              if (groupsToCachePerRequest > 0)
+              // Make sure the group is scoped within the base DN.
+              if (groupResolver.isDnInScope(dnString))
               {
-                if (groupCache == null)
-                {
-                  groupCache = new LinkedHashMap<DN, SearchResultEntry>();
-                  GROUP_CACHES.set(groupCache);
-                }
-                else
-                {
-                  groupEntry = groupCache.get(groupDN);
-                }
-              }
+                SearchRequest searchRequest;
+                DN groupDN = new DN(dnString);
+                SearchResultEntry groupEntry = getCachedGroupEntry(groupDN);
 
-              if (groupEntry == null)
-              {
-                // Retrieve the group entry and pass in the search param filter
-                // if available.
-                searchRequest =
-                    new SearchRequest(dnString, SearchScope.BASE,
-                        groupResolver.getFilterString(),
-                        attrsToGet);
-                searchRequest.setSizeLimit(1);
-                groupEntry = ldapInterface.searchForEntry(searchRequest);
-
-                if (groupEntry != null && groupCache != null)
+                if (groupEntry == null)
                 {
-                  groupCache.put(groupDN, groupEntry);
-
-                  if (groupCache.size() > groupsToCachePerRequest)
+                  // Retrieve the group entry and pass in the search param
+                  // filter if available.
+                  searchRequest =
+                      new SearchRequest(dnString, SearchScope.BASE,
+                          groupResolver.getFilterString(),
+                          attrsToGet);
+                  searchRequest.setSizeLimit(1);
+                  groupEntry = ldapInterface.searchForEntry(searchRequest);
+
+                  if (groupEntry != null)
                   {
-                    // We have cached too many groups for this request, so we
-                    // remove the oldest group from the cache.
-                    Iterator<DN> it = groupCache.keySet().iterator();
-                    it.next();
-                    it.remove();
+                    cacheGroupEntry(groupDN, groupEntry);
                   }
                 }
-              }
 
-              if (groupEntry != null)
-              {
-                // This group is considered direct iff it is a non-virtual
-                // static group and the entry is listed as a member or
-                // uniqueMember of this group (i.e. it's not nested).
-                boolean isDirect = false;
-                if (isDirectMemberOfDNs != null)
+                if (groupEntry != null)
                 {
-                  isDirect = isDirectMemberOfDNs.contains(groupDN);
-                }
-                else
-                {
-                  if(!groupEntry.hasObjectClass(OC_GROUP_OF_URLS) &&
-                     !groupEntry.hasObjectClass(OC_VIRTUAL_STATIC_GROUP))
+                  // This group is considered direct iff it is a non-virtual
+                  // static group and the entry is listed as a member or
+                  // uniqueMember of this group (i.e. it's not nested).
+                  boolean isDirect = false;
+                  if (isDirectMemberOfDNs != null)
                   {
-                    // Make sure the entry DN is listed as a member or
-                    // uniqueMember.
-                    searchRequest =
-                        new SearchRequest(dnString, SearchScope.BASE,
-                            groupsFilter(entry.getDN(), false),
-                            "1.1");
-                    searchRequest.setSizeLimit(1);
-                    isDirect =
-                        ldapInterface.searchForEntry(searchRequest) != null;
+                    isDirect = isDirectMemberOfDNs.contains(groupDN);
                   }
+                  else
+                  {
+                    if(!groupEntry.hasObjectClass(OC_GROUP_OF_URLS) &&
+                       !groupEntry.hasObjectClass(OC_VIRTUAL_STATIC_GROUP))
+                    {
+                      // Make sure the entry DN is listed as a member or
+                      // uniqueMember.
+                      searchRequest =
+                          new SearchRequest(dnString, SearchScope.BASE,
+                              groupsFilter(entry.getDN(), false),
+                              "1.1");
+                      searchRequest.setSizeLimit(1);
+                      isDirect =
+                          ldapInterface.searchForEntry(searchRequest) != null;
+                    }
+                  }
+                  final String resourceID =
+                      groupResolver.getIdFromEntry(groupEntry);
+                  values.add(createGroupValue(
+                      resourceID,
+                      groupEntry.getAttributeValue(ATTR_CN), isDirect));
                 }
-                final String resourceID =
-                    groupResolver.getIdFromEntry(groupEntry);
-                values.add(createGroupValue(
-                    resourceID,
-                    groupEntry.getAttributeValue(ATTR_CN), isDirect));
               }
             }
           }
@@ -353,13 +451,7 @@ public class GroupsDerivedAttribute extends DerivedAttribute
         // that satisfies the search param. This should give us all static
         // groups (including virtual static groups) that the entry is a member
         // of as well as all dynamic groups that satisfy the search params.
-        final List<DN> visitedGroups = new LinkedList<DN>();
-        for (DN baseDN : groupResolver.getBaseDNs())
-        {
-          findGroupsForMember(entry, ldapInterface, baseDN.toString(),
-              groupsFilter(entry.getDN(), true), values, visitedGroups,
-              false);
-        }
+        findGroupsForMember(entry, ldapInterface, values);
       }
     }
     catch (LDAPException e)
@@ -503,6 +595,13 @@ public class GroupsDerivedAttribute extends DerivedAttribute
       haveIsDirectMemberOf = Boolean.valueOf(o.toString());
     }
 
+    haveEntryDN = false;
+    o = getArguments().get(HAVE_ENTRYDN);
+    if (o != null)
+    {
+      haveEntryDN = Boolean.valueOf(o.toString());
+    }
+
     groupsToCachePerRequest = 0;
     o = getArguments().get(MAX_GROUPS_CACHED);
     if (o != null)
@@ -516,6 +615,70 @@ public class GroupsDerivedAttribute extends DerivedAttribute
         Debug.debugException(nfe);
       }
     }
+
+    maxGroupNestingDepth = -1;
+    o = getArguments().get(MAX_GROUP_NESTING_DEPTH);
+    if (o != null)
+    {
+      try
+      {
+        maxGroupNestingDepth = Integer.valueOf(o.toString());
+      }
+      catch (NumberFormatException nfe)
+      {
+        Debug.debugException(nfe);
+      }
+    }
+
+    maxGroups = 0;
+    o = getArguments().get(MAX_GROUPS);
+    if (o != null)
+    {
+      try
+      {
+        maxGroups = Math.max(Integer.valueOf(o.toString()), 0);
+      }
+      catch (NumberFormatException nfe)
+      {
+        Debug.debugException(nfe);
+      }
+    }
+
+    int sharedGroupsToCache = 0;
+    o = getArguments().get(MAX_SHARED_GROUPS_CACHED);
+    if (o != null)
+    {
+      try
+      {
+        sharedGroupsToCache = Integer.valueOf(o.toString());
+      }
+      catch (NumberFormatException nfe)
+      {
+        Debug.debugException(nfe);
+      }
+    }
+
+    long sharedGroupsCacheTTLMillis = 0;
+    o = getArguments().get(SHARED_GROUPS_CACHE_TTL_MILLIS);
+    if (o != null)
+    {
+      try
+      {
+        sharedGroupsCacheTTLMillis = Long.valueOf(o.toString());
+      }
+      catch (NumberFormatException nfe)
+      {
+        Debug.debugException(nfe);
+      }
+    }
+
+    sharedGroupCache = null;
+    if (sharedGroupsToCache > 0)
+    {
+      sharedGroupCache = new BoundedCache<DN, SearchResultEntry>(
+          sharedGroupsToCache, Math.max(sharedGroupsCacheTTLMillis, 0));
+      SHARED_GROUP_CACHES.put(sharedGroupCache, Boolean.TRUE);
+    }
   }
 
 
@@ -538,24 +701,43 @@ public class GroupsDerivedAttribute extends DerivedAttribute
    *
    * @return A filter that could be used to find all static groups with the
    * provided member DN.
-   * @throws LDAPException if an error occurs while parsing the filter from
-   *                       searchParams.
    */
   private Filter groupsFilter(final String memberDN,
                               final boolean includeDynamicGroups)
-      throws LDAPException
+  {
+    return groupsFilter(Collections.singletonList(memberDN),
+                        includeDynamicGroups);
+  }
+
+  /**
+   * Construct a filter that could be used to find all static groups with any
+   * of the provided member DNs (and optionally any dynamic groups as well).
+   *
+   * @param memberDNs The member DNs used to determining the static groups for
+   *                  which they belong.
+   * @param includeDynamicGroups Whether dynamic groups should be included.
+   *
+   * @return A filter that could be used to find all static groups with any of
+   * the provided member DNs.
+   */
+  private Filter groupsFilter(final Collection<String> memberDNs,
+                              final boolean includeDynamicGroups)
   {
     Filter filter = null;
     if(groupResolver != null)
     {
       //This will be a filter that handles all the Group object classes
-      filter = Filter.create(groupResolver.getFilterString());
+      filter = groupResolver.getFilter();
     }
 
-    List<Filter> memberFilters = new ArrayList<Filter>(3);
-    memberFilters.add(Filter.createEqualityFilter(ATTR_MEMBER, memberDN));
-    memberFilters.add(
-        Filter.createEqualityFilter(ATTR_UNIQUE_MEMBER, memberDN));
+    List<Filter> memberFilters =
+        new ArrayList<Filter>(2 * memberDNs.size() + 1);
+    for (final String memberDN : memberDNs)
+    {
+      memberFilters.add(Filter.createEqualityFilter(ATTR_MEMBER, memberDN));
+      memberFilters.add(
+          Filter.createEqualityFilter(ATTR_UNIQUE_MEMBER, memberDN));
+    }
 
     if(includeDynamicGroups)
     {
@@ -575,27 +757,22 @@ public class GroupsDerivedAttribute extends DerivedAttribute
   }
 
   /**
-   * Add all group entries returned from the provided search parameters and
-   * recursively find all nested groups as well.
+   * Find all the groups that an entry is a member of, including nested
+   * groups. The groups are found level by level: each level is found with
+   * searches for the groups having any of the groups found at the previous
+   * level as members, with up to {@link #ENTRY_DN_BATCH_SIZE} member DNs in
+   * the filter of each search.
    *
    * @param entry          An LDAP entry representing the SCIM resource for
    *                       which a SCIM attribute value is to be derived.
    * @param ldapInterface  An LDAP interface that may be used to search the DIT.
-   * @param baseDN         The search base DN for the DIT.
-   * @param filter         The filter to search the DIT.
    * @param values         The values of the groups attribute.
-   * @param visitedGroups  Groups that were already visited.
-   * @param nested         Whether the groups found are nested.
    * @throws LDAPException if an error occurs while performing the search.
    * @throws InvalidResourceException if the mapping violates the schema.
    */
   private void findGroupsForMember(final Entry entry,
                                    final LDAPRequestInterface ldapInterface,
-                                   final String baseDN,
-                                   final Filter filter,
-                                   final List<SCIMAttributeValue> values,
-                                   final List<DN> visitedGroups,
-                                   final boolean nested)
+                                   final List<SCIMAttributeValue> values)
       throws LDAPException, InvalidResourceException
   {
     final List<String> attrList = new ArrayList<String>(4);
@@ -606,58 +783,438 @@ public class GroupsDerivedAttribute extends DerivedAttribute
     final String[] attrsToGet =
         attrList.toArray(new String[attrList.size()]);
 
-    // Find all groups
-    final SearchRequest searchRequest =
-        new SearchRequest(baseDN, SearchScope.SUB, filter, attrsToGet);
-    final SearchResult searchResult = ldapInterface.search(searchRequest);
-
-    List<SearchResultEntry> entriesToVisit =
-        new ArrayList<SearchResultEntry>(searchResult.getEntryCount());
+    final Set<DN> visitedGroups = new HashSet<DN>();
+    int numGroupsFound = 0;
+    int depth = 0;
+    List<String> memberDNs = Collections.singletonList(entry.getDN());
 
-    for (final SearchResultEntry resultEntry :
-        searchResult.getSearchEntries())
+    while (!memberDNs.isEmpty())
     {
-      // Make sure we haven't visited this group before.
-      DN groupDN = resultEntry.getParsedDN();
-      if(!visitedGroups.contains(groupDN))
+      if (maxGroupNestingDepth >= 0 && depth > maxGroupNestingDepth)
+      {
+        Debug.debug(Level.WARNING, DebugType.OTHER,
+            "Stopped searching for the groups of entry '" + entry.getDN() +
+            "' because the maximum group nesting depth of " +
+            maxGroupNestingDepth + " was reached");
+        return;
+      }
+
+      // The groups found at this level are members of the next level.
+      final List<String> nextMemberDNs = new ArrayList<String>();
+      for (int i = 0; i < memberDNs.size(); i += ENTRY_DN_BATCH_SIZE)
       {
-        visitedGroups.add(groupDN);
-        entriesToVisit.add(resultEntry);
-        final String resourceID = groupResolver.getIdFromEntry(resultEntry);
-        if(resultEntry.hasObjectClass(OC_GROUP_OF_URLS))
+        final Filter filter = groupsFilter(
+            memberDNs.subList(
+                i, Math.min(i + ENTRY_DN_BATCH_SIZE, memberDNs.size())),
+            depth == 0);
+
+        for (final DN baseDN : groupResolver.getBaseDNs())
         {
-          // This is a dynamic group, see if the entry should be a member
-          String memberUrl = resultEntry.getAttributeValue(ATTR_MEMBER_URL);
-          if(memberUrl != null)
+          final SearchRequest searchRequest =
+              new SearchRequest(baseDN.toString(), SearchScope.SUB, filter,
+                  attrsToGet);
+          final SearchResult searchResult = ldapInterface.search(searchRequest);
+
+          for (final SearchResultEntry resultEntry :
+              searchResult.getSearchEntries())
           {
-            LDAPURL url = new LDAPURL(memberUrl);
-            if(entry.matchesBaseAndScope(url.getBaseDN(), url.getScope()) &&
-                url.getFilter().matchesEntry(entry))
+            // Make sure we haven't visited this group before.
+            if (!visitedGroups.add(resultEntry.getParsedDN()))
             {
+              continue;
+            }
+
+            final String resourceID =
+                groupResolver.getIdFromEntry(resultEntry);
+            if(resultEntry.hasObjectClass(OC_GROUP_OF_URLS))
+            {
+              // This is a dynamic group, see if the entry should be a member
+              String memberUrl = resultEntry.getAttributeValue(ATTR_MEMBER_URL);
+              if(memberUrl == null)
+              {
+                continue;
+              }
+
+              LDAPURL url = new LDAPURL(memberUrl);
+              if(!entry.matchesBaseAndScope(url.getBaseDN(), url.getScope()) ||
+                 !url.getFilter().matchesEntry(entry))
+              {
+                continue;
+              }
+
               values.add(createGroupValue(resourceID,
                   resultEntry.getAttributeValue(ATTR_CN), false));
             }
+            else
+            {
+              // This is a static group that we are a member of.
+              values.add(createGroupValue(resourceID,
+                  resultEntry.getAttributeValue(ATTR_CN), depth == 0 &&
+                  !resultEntry.hasObjectClass(OC_VIRTUAL_STATIC_GROUP)));
+            }
+
+            nextMemberDNs.add(resultEntry.getDN());
+            numGroupsFound++;
+            if (maxGroups > 0 && numGroupsFound >= maxGroups)
+            {
+              Debug.debug(Level.WARNING, DebugType.OTHER,
+                  "Stopped searching for the groups of entry '" +
+                  entry.getDN() + "' because the maximum number of " +
+                  maxGroups + " groups was reached");
+              return;
+            }
           }
         }
+      }
+
+      memberDNs = nextMemberDNs;
+      depth++;
+    }
+  }
+
+  /**
+   * Add values for the groups listed in the isMemberOf attribute of an entry,
+   * retrieving the group entries in batches using the entryDN attribute
+   * rather than one at a time. Group entries that are cached are not
+   * retrieved again. If the server rejects the matched values control, it is
+   * not requested again by this derived attribute.
+   *
+   * @param entry                An LDAP entry representing the SCIM resource
+   *                             for which the groups are to be derived.
+   * @param ldapInterface        An LDAP interface that may be used to search
+   *                             the DIT.
+   * @param attrsToGet           The attributes to retrieve from the group
+   *                             entries.
+   * @param isDirectMemberOfDNs  The DNs of the groups that the entry is a
+   *                             direct member of, or {@code null} if they
+   *                             must be determined from the group entries.
+   * @param values               The values of the groups attribute.
+   *
+   * @throws LDAPException  If an error occurs while performing a search.
+   * @throws InvalidResourceException  If the mapping violates the schema.
+   */
+  private void addGroupValuesInBatches(final Entry entry,
+                                       final LDAPRequestInterface ldapInterface,
+                                       final String[] attrsToGet,
+                                       final Set<DN> isDirectMemberOfDNs,
+                                       final List<SCIMAttributeValue> values)
+      throws LDAPException, InvalidResourceException
+  {
+    final DN memberDN = entry.getParsedDN();
+
+    // Determine the groups that are in scope, keeping them in the order they
+    // are listed in the isMemberOf attribute.
+    final List<DN> groupDNs = new ArrayList<DN>();
+    for (final String dnString : entry.getAttributeValues(ATTR_IS_MEMBER_OF))
+    {
+      if (groupResolver.isDnInScope(dnString))
+      {
+        groupDNs.add(new DN(dnString));
+      }
+    }
+
+    final Map<DN, SearchResultEntry> groupEntries =
+        new HashMap<DN, SearchResultEntry>(groupDNs.size());
+    final Set<DN> directGroupDNs = new HashSet<DN>();
+    final List<DN> uncachedGroupDNs = new ArrayList<DN>();
+    final List<DN> unresolvedStaticGroupDNs = new ArrayList<DN>();
+    for (final DN groupDN : groupDNs)
+    {
+      final SearchResultEntry groupEntry = getCachedGroupEntry(groupDN);
+      if (groupEntry == null)
+      {
+        uncachedGroupDNs.add(groupDN);
+      }
+      else
+      {
+        groupEntries.put(groupDN, groupEntry);
+        if (isStaticGroup(groupEntry))
+        {
+          unresolvedStaticGroupDNs.add(groupDN);
+        }
+      }
+    }
+
+    // Retrieve the group entries that are not cached. When directness must be
+    // determined, the member values are also requested, but the matched
+    // values control limits them to the value for this entry. The control is
+    // critical so that a server that does not support it rejects the search
+    // rather than returning every member value of every group.
+    List<SearchResultEntry> fetchedEntries = null;
+    boolean memberValuesFetched = false;
+    if (isDirectMemberOfDNs == null && !matchedValuesUnavailable)
+    {
+      final String[] fetchAttrs = new String[attrsToGet.length + 2];
+      System.arraycopy(attrsToGet, 0, fetchAttrs, 0, attrsToGet.length);
+      fetchAttrs[attrsToGet.length] = ATTR_MEMBER;
+      fetchAttrs[attrsToGet.length + 1] = ATTR_UNIQUE_MEMBER;
+      final MatchedValuesRequestControl matchedValuesControl =
+          new MatchedValuesRequestControl(true,
+              MatchedValuesFilter.createEqualityFilter(
+                  ATTR_MEMBER, memberDN.toString()),
+              MatchedValuesFilter.createEqualityFilter(
+                  ATTR_UNIQUE_MEMBER, memberDN.toString()));
+      try
+      {
+        fetchedEntries = searchByEntryDN(ldapInterface, uncachedGroupDNs,
+            groupResolver.getFilter(), matchedValuesControl, fetchAttrs);
+        memberValuesFetched = true;
+      }
+      catch (LDAPException e)
+      {
+        if (e.getResultCode() != ResultCode.UNAVAILABLE_CRITICAL_EXTENSION)
+        {
+          throw e;
+        }
+
+        // Determine directness with a search for the groups having this
+        // entry as a member instead, as for cached groups.
+        Debug.debugException(e);
+        Debug.debug(Level.WARNING, DebugType.OTHER,
+            "The directory server does not support the matched values " +
+            "control: " + StaticUtils.getExceptionMessage(e));
+        matchedValuesUnavailable = true;
+      }
+    }
+    if (fetchedEntries == null)
+    {
+      fetchedEntries = searchByEntryDN(ldapInterface, uncachedGroupDNs,
+          groupResolver.getFilter(), null, attrsToGet);
+    }
+
+    for (final SearchResultEntry groupEntry : fetchedEntries)
+    {
+      final DN groupDN = groupEntry.getParsedDN();
+      if (isDirectMemberOfDNs == null && isStaticGroup(groupEntry))
+      {
+        if (!memberValuesFetched)
+        {
+          unresolvedStaticGroupDNs.add(groupDN);
+        }
+        else if (groupEntry.hasAttributeValue(ATTR_MEMBER,
+                     memberDN.toString(),
+                     DistinguishedNameMatchingRule.getInstance()) ||
+                 groupEntry.hasAttributeValue(ATTR_UNIQUE_MEMBER,
+                     memberDN.toString(),
+                     DistinguishedNameMatchingRule.getInstance()))
+        {
+          directGroupDNs.add(groupDN);
+        }
+      }
+
+      // The member values are specific to this entry, so they must not be
+      // cached.
+      final Entry cachedEntry = groupEntry.duplicate();
+      cachedEntry.removeAttribute(ATTR_MEMBER);
+      cachedEntry.removeAttribute(ATTR_UNIQUE_MEMBER);
+      final SearchResultEntry strippedEntry =
+          new SearchResultEntry(cachedEntry, groupEntry.getControls());
+      cacheGroupEntry(groupDN, strippedEntry);
+      groupEntries.put(groupDN, strippedEntry);
+    }
+
+    // Determine directness for the other static groups with a single search
+    // for those having this entry as a member.
+    if (isDirectMemberOfDNs == null && !unresolvedStaticGroupDNs.isEmpty())
+    {
+      for (final SearchResultEntry groupEntry :
+          searchByEntryDN(ldapInterface, unresolvedStaticGroupDNs,
+              Filter.createORFilter(
+                  Filter.createEqualityFilter(ATTR_MEMBER,
+                      memberDN.toString()),
+                  Filter.createEqualityFilter(ATTR_UNIQUE_MEMBER,
+                      memberDN.toString())),
+              null, "1.1"))
+      {
+        directGroupDNs.add(groupEntry.getParsedDN());
+      }
+    }
+
+    for (final DN groupDN : groupDNs)
+    {
+      final SearchResultEntry groupEntry = groupEntries.get(groupDN);
+      if (groupEntry != null)
+      {
+        final boolean isDirect;
+        if (isDirectMemberOfDNs != null)
+        {
+          isDirect = isDirectMemberOfDNs.contains(groupDN);
+        }
         else
         {
-          // This is a static group that we are a member of.
-          values.add(createGroupValue(resourceID,
-              resultEntry.getAttributeValue(ATTR_CN), !nested &&
-              !resultEntry.hasObjectClass(OC_VIRTUAL_STATIC_GROUP)));
+          isDirect = directGroupDNs.contains(groupDN);
+        }
+        values.add(createGroupValue(
+            groupResolver.getIdFromEntry(groupEntry),
+            groupEntry.getAttributeValue(ATTR_CN), isDirect));
+      }
+    }
+  }
+
+
+
+  /**
+   * Retrieve a set of entries by DN using subtree searches of the group base
+   * DNs with filters on the entryDN attribute, rather than reading each entry
+   * with a base search. There is one search per group base DN for every
+   * {@link #ENTRY_DN_BATCH_SIZE} entries.
+   *
+   * @param ldapInterface  An LDAP interface that may be used to search the DIT.
+   * @param dns            The DNs of the entries to retrieve. They must all be
+   *                       within the scope of the group resolver.
+   * @param filter         An additional filter that the entries must match.
+   * @param control        A control to add to the searches, or {@code null}.
+   * @param attributes     The attributes to retrieve.
+   *
+   * @return  The entries that were found.
+   *
+   * @throws LDAPException  If an error occurs while performing a search.
+   */
+  private List<SearchResultEntry> searchByEntryDN(
+      final LDAPRequestInterface ldapInterface,
+      final List<DN> dns,
+      final Filter filter,
+      final Control control,
+      final String... attributes)
+      throws LDAPException
+  {
+    final List<SearchResultEntry> entries = new ArrayList<SearchResultEntry>();
+    if (dns.isEmpty())
+    {
+      return entries;
+    }
+
+    // Partition the DNs by the base DN they are under.
+    final Map<DN, List<Filter>> filtersByBaseDN =
+        new LinkedHashMap<DN, List<Filter>>();
+    for (final DN dn : dns)
+    {
+      for (final DN baseDN : groupResolver.getBaseDNs())
+      {
+        if (dn.isDescendantOf(baseDN, true))
+        {
+          List<Filter> filters = filtersByBaseDN.get(baseDN);
+          if (filters == null)
+          {
+            filters = new ArrayList<Filter>();
+            filtersByBaseDN.put(baseDN, filters);
+          }
+          filters.add(
+              Filter.createEqualityFilter(ATTR_ENTRY_DN, dn.toString()));
+          break;
         }
       }
     }
 
-    for (final SearchResultEntry resultEntry : entriesToVisit)
+    for (final Map.Entry<DN, List<Filter>> e : filtersByBaseDN.entrySet())
     {
-      // Recursively find all groups that nest this group.
-      findGroupsForMember(entry, ldapInterface,
-          baseDN, groupsFilter(resultEntry.getDN(), false), values,
-          visitedGroups, true);
+      final List<Filter> filters = e.getValue();
+      for (int i = 0; i < filters.size(); i += ENTRY_DN_BATCH_SIZE)
+      {
+        final List<Filter> batch = filters.subList(i,
+            Math.min(i + ENTRY_DN_BATCH_SIZE, filters.size()));
+        final SearchRequest searchRequest =
+            new SearchRequest(e.getKey().toString(), SearchScope.SUB,
+                Filter.createANDFilter(Filter.createORFilter(batch), filter),
+                attributes);
+        if (control != null)
+        {
+          searchRequest.addControl(control);
+        }
+        entries.addAll(ldapInterface.search(searchRequest).getSearchEntries());
+      }
     }
+
+    return entries;
   }
 
+
+
+  /**
+   * Determine whether a group entry is a static group, whose members may be
+   * direct members.
+   *
+   * @param groupEntry  The group entry.
+   *
+   * @return  {@code true} if the group is neither a dynamic group nor a
+   *          virtual static group.
+   */
+  private static boolean isStaticGroup(final Entry groupEntry)
+  {
+    return !groupEntry.hasObjectClass(OC_GROUP_OF_URLS) &&
+           !groupEntry.hasObjectClass(OC_VIRTUAL_STATIC_GROUP);
+  }
+
+
+
+  /**
+   * Retrieve a group entry from the per-request or shared group cache.
+   *
+   * @param groupDN  The DN of the group.
+   *
+   * @return  The cached group entry, or {@code null} if it is not cached.
+   */
+  private SearchResultEntry getCachedGroupEntry(final DN groupDN)
+  {
+    SearchResultEntry groupEntry = null;
+    if (groupsToCachePerRequest > 0)
+    {
+      final Map<DN, SearchResultEntry> groupCache = GROUP_CACHES.get();
+      if (groupCache != null)
+      {
+        groupEntry = groupCache.get(groupDN);
+      }
+    }
+
+    if (groupEntry == null && sharedGroupCache != null)
+    {
+      groupEntry = sharedGroupCache.get(groupDN);
+    }
+
+    return groupEntry;
+  }
+
+
+
+  /**
+   * Add a group entry to the per-request and shared group caches, if they are
+   * enabled.
+   *
+   * @param groupDN     The DN of the group.
+   * @param groupEntry  The group entry.
+   */
+  private void cacheGroupEntry(final DN groupDN,
+                               final SearchResultEntry groupEntry)
+  {
+    if (groupsToCachePerRequest > 0)
+    {
+      Map<DN, SearchResultEntry> groupCache = GROUP_CACHES.get();
+      if (groupCache == null)
+      {
+        groupCache = new LinkedHashMap<DN, SearchResultEntry>();
+        GROUP_CACHES.set(groupCache);
+      }
+
+      groupCache.put(groupDN, groupEntry);
+
+      if (groupCache.size() > groupsToCachePerRequest)
+      {
+        // We have cached too many groups for this request, so we
+        // remove the oldest group from the cache.
+        Iterator<DN> it = groupCache.keySet().iterator();
+        it.next();
+        it.remove();
+      }
+    }
+
+    if (sharedGroupCache != null)
+    {
+      sharedGroupCache.put(groupDN, groupEntry);
+    }
+  }
+
+
+
   /**
    * Create a value for the groups multi-valued attribute.
    *
@@ -705,4 +1262,22 @@ public class GroupsDerivedAttribute extends DerivedAttribute
   {
     GROUP_CACHES.remove();
   }
+
+  /**
+   * Remove a group from the shared group caches because it has been modified
+   * or deleted.
+   *
+   * @param groupDN  The DN of the group.
+   */
+  static void invalidateSharedCaches(final DN groupDN)
+  {
+    synchronized (SHARED_GROUP_CACHES)
+    {
+      for (final BoundedCache<DN, SearchResultEntry> cache :
+          SHARED_GROUP_CACHES.keySet())
+      {
+        cache.remove(groupDN);
+      }
+    }
+  }
 }
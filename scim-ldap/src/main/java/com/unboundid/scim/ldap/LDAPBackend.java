@@ -17,6 +17,7 @@
 
 package com.unboundid.scim.ldap;
 
+import com.unboundid.asn1.ASN1OctetString;
 import com.unboundid.ldap.sdk.AddRequest;
 import com.unboundid.ldap.sdk.Attribute;
 import com.unboundid.ldap.sdk.Control;
@@ -25,12 +26,14 @@ import com.unboundid.ldap.sdk.DeleteRequest;
 import com.unboundid.ldap.sdk.Entry;
 import com.unboundid.ldap.sdk.Filter;
 import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.LDAPRequest;
 import com.unboundid.ldap.sdk.LDAPResult;
 import com.unboundid.ldap.sdk.LDAPSearchException;
 import com.unboundid.ldap.sdk.Modification;
 import com.unboundid.ldap.sdk.ModificationType;
 import com.unboundid.ldap.sdk.ModifyDNRequest;
 import com.unboundid.ldap.sdk.ModifyRequest;
+import com.unboundid.ldap.sdk.OperationType;
 import com.unboundid.ldap.sdk.RDN;
 import com.unboundid.ldap.sdk.ResultCode;
 import com.unboundid.ldap.sdk.SearchRequest;
@@ -46,11 +49,15 @@ import com.unboundid.ldap.sdk.controls.SimplePagedResultsControl;
 import com.unboundid.ldap.sdk.controls.SortKey;
 import com.unboundid.ldap.sdk.controls.VirtualListViewRequestControl;
 import com.unboundid.ldap.sdk.controls.VirtualListViewResponseControl;
+import com.unboundid.ldap.sdk.unboundidds.extensions.MultiUpdateChangesApplied;
+import com.unboundid.ldap.sdk.unboundidds.extensions.MultiUpdateExtendedResult;
 import com.unboundid.scim.data.Meta;
 import com.unboundid.scim.data.BaseResource;
+import com.unboundid.scim.marshal.ResourcesStreamMarshaller;
 import com.unboundid.scim.schema.AttributeDescriptor;
 import com.unboundid.scim.schema.CoreSchema;
 import com.unboundid.scim.schema.ResourceDescriptor;
+import com.unboundid.scim.sdk.BulkRequestResult;
 import com.unboundid.scim.sdk.Debug;
 import com.unboundid.scim.sdk.DebugType;
 import com.unboundid.scim.sdk.Diff;
@@ -71,12 +78,14 @@ import com.unboundid.scim.sdk.SCIMAttribute;
 import com.unboundid.scim.sdk.PageParameters;
 import com.unboundid.scim.sdk.ServerErrorException;
 import com.unboundid.scim.sdk.SortParameters;
+import com.unboundid.scim.sdk.StreamingResources;
 import com.unboundid.scim.sdk.GetResourceRequest;
 import com.unboundid.scim.sdk.GetResourcesRequest;
 import com.unboundid.scim.sdk.PostResourceRequest;
 import com.unboundid.scim.sdk.DeleteResourceRequest;
 import com.unboundid.scim.sdk.PutResourceRequest;
 import com.unboundid.scim.sdk.UnsupportedOperationException;
+import com.unboundid.util.ObjectPair;
 import com.unboundid.util.StaticUtils;
 import com.unboundid.util.Validator;
 
@@ -85,6 +94,7 @@ import javax.ws.rs.core.UriBuilder;
 
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
@@ -117,6 +127,12 @@ public abstract class LDAPBackend
   private static final String MODIFY_TIMESTAMP_ATTR = "modifyTimestamp";
   private static final String DS_UPDATE_TIME_ATTR = "ds-update-time";
 
+  /**
+   * The maximum number of entries requested at a time when paging through
+   * the entries that precede the start index of a query.
+   */
+  private static final int MAX_SKIP_PAGE_SIZE = 1000;
+
   /**
    * The resource mappers configured for SCIM resource end-points.
    */
@@ -151,6 +167,40 @@ public abstract class LDAPBackend
    */
   private String entityTagAttribute = null;
 
+  /**
+   * The LDAP attributes requested for every resource in addition to those
+   * mapped from the requested SCIM attributes, or {@code null} if they have
+   * not been determined since the entity tag attribute was last set.
+   */
+  private volatile Set<String> entryAttributes = null;
+
+  /**
+   * Flag to indicate whether query results should be streamed to the client
+   * as they are returned by the LDAP server.
+   */
+  private boolean streamQueryResults = false;
+
+  /**
+   * The simple paged results cookies kept so that queries for subsequent
+   * pages can resume the LDAP searches, or {@code null} if cookies are not
+   * kept.
+   */
+  private volatile PagedResultsSessionStore pagedResultsSessions = null;
+
+  /**
+   * The maximum number of bulk operations whose LDAP updates may be applied
+   * together in a single multi-update extended operation.
+   */
+  private int maxBulkRequestsApplied = 0;
+
+  /**
+   * Recently returned entries from which the modifications for a PUT may be
+   * computed, keyed by user, resource type and resource ID, or {@code null}
+   * if entries are not kept.
+   */
+  private volatile BoundedCache<List<String>, EntrySnapshot> entrySnapshots =
+      null;
+
   static
   {
     HashSet<String> attrs = new HashSet<String>(4);
@@ -317,6 +367,171 @@ public abstract class LDAPBackend
   public void setEntityTagAttribute(final String entityTagAttribute)
   {
     this.entityTagAttribute = entityTagAttribute;
+    this.entryAttributes = null;
+  }
+
+
+
+  /**
+   * Configures this LDAPBackend to stream query results. When enabled, the
+   * LDAP searches for a query are deferred until the response is written, and
+   * each resource is written to the client as soon as it is returned by the
+   * LDAP server instead of being held in memory until all the searches have
+   * completed. The result counts are written after the resources.
+   * <p>
+   * The LDAP request interface for a query is used after
+   * {@link #getResources} has returned, so it must remain usable until the
+   * response has been written. Errors that occur after the first resource
+   * has been written cannot be reported to the client as SCIM errors.
+   *
+   * @param streamQueryResults {@code true} if query results should be
+   *                           streamed, {@code false} if not.
+   */
+  public void setStreamQueryResults(final boolean streamQueryResults)
+  {
+    this.streamQueryResults = streamQueryResults;
+  }
+
+
+
+  /**
+   * Determines if this LDAPBackend streams query results.
+   *
+   * @return {@code true} if query results are streamed, {@code false}
+   *         otherwise.
+   */
+  public boolean isStreamQueryResults()
+  {
+    return this.streamQueryResults;
+  }
+
+
+
+  /**
+   * Configures this LDAPBackend to keep the simple paged results cookies of
+   * recent queries. When a query for a page of results has the same criteria
+   * as a previous query and starts where the previous page ended, the LDAP
+   * searches resume from the kept cookie instead of reading every preceding
+   * entry again. Queries that start elsewhere page through the preceding
+   * entries to find their starting point.
+   * <p>
+   * Paging sessions are only used when the simple paged results control is
+   * supported and the VLV request control is not used for the query.
+   *
+   * @param maxSessions        The maximum number of paging sessions to keep,
+   *                           or zero if paging sessions should not be kept.
+   * @param idleTimeoutMillis  The time in milliseconds after which a paging
+   *                           session that has not been resumed is discarded,
+   *                           or zero if sessions are only discarded when the
+   *                           maximum number is exceeded.
+   */
+  public void setPagedResultsSessions(final int maxSessions,
+                                      final long idleTimeoutMillis)
+  {
+    if (maxSessions > 0)
+    {
+      pagedResultsSessions = new PagedResultsSessionStore(maxSessions,
+          Math.max(idleTimeoutMillis, 0));
+    }
+    else
+    {
+      pagedResultsSessions = null;
+    }
+  }
+
+
+
+  /**
+   * Determines if this LDAPBackend keeps simple paged results cookies so that
+   * queries for subsequent pages can resume the LDAP searches.
+   *
+   * @return {@code true} if paging sessions are kept, {@code false}
+   *         otherwise.
+   */
+  public boolean isPagedResultsSessions()
+  {
+    return pagedResultsSessions != null;
+  }
+
+
+
+  /**
+   * Configures this LDAPBackend to keep the entries recently returned for
+   * resources, with the entity tag of each, so that a PUT request whose
+   * If-Match header names the entity tag of a kept entry can compute its
+   * modifications from that entry instead of reading the current entry
+   * first. The updates are made with an assertion that the entity tag is
+   * unchanged, and if that fails, the PUT request is processed again from the
+   * current entry.
+   * <p>
+   * An entry is only used if all of the attributes needed by the PUT were
+   * requested when it was returned. Entity tags must be supported.
+   *
+   * @param maxEntries        The maximum number of entries to keep, or zero
+   *                          if entries should not be kept.
+   * @param timeToLiveMillis  The time in milliseconds after which a kept
+   *                          entry is discarded, or zero if entries are only
+   *                          discarded when the maximum number is exceeded.
+   */
+  public void setEntrySnapshots(final int maxEntries,
+                                final long timeToLiveMillis)
+  {
+    if (maxEntries > 0)
+    {
+      entrySnapshots = new BoundedCache<List<String>, EntrySnapshot>(
+          maxEntries, Math.max(timeToLiveMillis, 0));
+    }
+    else
+    {
+      entrySnapshots = null;
+    }
+  }
+
+
+
+  /**
+   * Determines if this LDAPBackend keeps recently returned entries from which
+   * the modifications for a PUT may be computed.
+   *
+   * @return {@code true} if entries are kept, {@code false} otherwise.
+   */
+  public boolean isEntrySnapshots()
+  {
+    return entrySnapshots != null;
+  }
+
+
+
+  /**
+   * Configures this LDAPBackend to apply the LDAP updates for consecutive
+   * independent bulk operations together, using the multi-update extended
+   * operation so that the server processes them atomically in a single round
+   * trip. If any of the updates would fail then none of them is applied, and
+   * each operation is then processed on its own.
+   * <p>
+   * The multi-update extended operation must be supported by the server, and
+   * the LDAP request interfaces must wrap an LDAP connection or connection
+   * pool.
+   *
+   * @param maxBulkRequestsApplied  The maximum number of bulk operations to
+   *                                apply together, or a value less than two
+   *                                if each bulk operation is to be processed
+   *                                on its own.
+   */
+  public void setMaxBulkRequestsApplied(final int maxBulkRequestsApplied)
+  {
+    this.maxBulkRequestsApplied = maxBulkRequestsApplied;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int getMaxBulkRequestsApplied()
+  {
+    return maxBulkRequestsApplied;
   }
 
 
@@ -330,6 +545,21 @@ public abstract class LDAPBackend
     return entityTagAttribute != null;
   }
 
+
+
+  /**
+   * {@inheritDoc}
+   * <p>
+   * This implementation clears the per-request caches of derived attributes,
+   * which would otherwise be left on the thread by a request that failed,
+   * or whose streamed response was never written.
+   */
+  @Override
+  public void endRequest()
+  {
+    clearRequestCaches();
+  }
+
   /**
    * Retrieve an LDAP interface that may be used to interact with the LDAP
    * server.
@@ -348,6 +578,25 @@ public abstract class LDAPBackend
 
 
 
+  /**
+   * Retrieve the LDAP request interface for an update made by a user. The
+   * reads made while preparing and completing the update are processed with
+   * the update, so that they see the current state of the entry.
+   *
+   * @param userID  The authenticated user ID for the request being processed.
+   *
+   * @return  The LDAP request interface for the update.
+   *
+   * @throws SCIMException  If an LDAP interface could not be obtained.
+   */
+  private LDAPRequestInterface getLDAPUpdateInterface(final String userID)
+      throws SCIMException
+  {
+    return getLDAPRequestInterface(userID).getUpdateInterface();
+  }
+
+
+
   /**
    * Get the names of the create-time and modify-time attributes to request
    * when searching the directory server. Typically these will be
@@ -399,18 +648,8 @@ public abstract class LDAPBackend
       final ResourceMapper mapper =
           getResourceMapper(request.getResourceDescriptor());
 
-      final Set<String> requestAttributeSet = new HashSet<String>();
-      requestAttributeSet.addAll(
-          mapper.toLDAPAttributeTypes(request.getAttributes()));
-      requestAttributeSet.addAll(getLastModAttributes());
-      requestAttributeSet.add("objectclass");
-      if (supportsVersioning())
-      {
-        requestAttributeSet.add(entityTagAttribute);
-      }
-
-      final String[] requestAttributes = new String[requestAttributeSet.size()];
-      requestAttributeSet.toArray(requestAttributes);
+      final String[] requestAttributes =
+          getRequestAttributes(mapper, request.getAttributes(), null);
 
       final LDAPRequestInterface ldapInterface =
           getLDAPRequestInterface(request.getAuthenticatedUserID());
@@ -443,6 +682,8 @@ public abstract class LDAPBackend
 
       setIdAndMetaAttributes(mapper, resource, request, entry,
           request.getAttributes());
+      putEntrySnapshot(request, request.getResourceID(), entry,
+          requestAttributes);
 
       final List<SCIMAttribute> attributes = mapper.toSCIMAttributes(
           entry, request.getAttributes(), ldapInterface);
@@ -465,6 +706,7 @@ public abstract class LDAPBackend
   public Resources<?> getResources(final GetResourcesRequest request)
       throws SCIMException
   {
+    boolean streaming = false;
     try
     {
       final ResourceMapper resourceMapper =
@@ -480,40 +722,29 @@ public abstract class LDAPBackend
       {
         final SCIMFilter scimFilter = request.getFilter();
 
-        final Set<String> requestAttributeSet = getRequestAttributeSet(
-            request, resourceMapper);
-
         final int maxResults = getConfig().getMaxResults();
 
         final LDAPRequestInterface ldapInterface =
             getLDAPRequestInterface(request.getAuthenticatedUserID());
 
-        final ResourceSearchResultListener resultListener =
-            new ResourceSearchResultListener(this, request, ldapInterface,
-                maxResults);
-
-        Set<DN> searchBaseDNs = getSearchBaseDNs(request,
+        final Set<DN> searchBaseDNs = getSearchBaseDNs(request,
             resourceMapper, ldapInterface);
 
         SearchScope searchScope = null;
         final Filter filter;
-        SearchRequest searchRequest;
+        final String idSearchDN;
         final String[] requestAttributes;
 
         if (isOptimizedIdSearch(scimFilter, resourceMapper))
         {
-          requestAttributes = new String[requestAttributeSet.size()];
-          requestAttributeSet.toArray(requestAttributes);
-          searchRequest =
-              new SearchRequest(resultListener, scimFilter.getFilterValue(),
-                  SearchScope.BASE,
-                  Filter.createPresenceFilter("objectclass"),
-                  requestAttributes);
+          requestAttributes = getRequestAttributes(
+              resourceMapper, request.getAttributes(), null);
+          idSearchDN = scimFilter.getFilterValue();
           filter = null;
         }
         else
         {
-          searchRequest = null;
+          idSearchDN = null;
           try
           {
             // Map the SCIM filter to an LDAP filter.
@@ -532,173 +763,43 @@ public abstract class LDAPBackend
           }
 
           // The LDAP filter results will still need to be filtered using the
-          // SCIM filter, so we need to request all the filter attributes.
-          addFilterAttributes(requestAttributeSet, filter);
+          // SCIM filter, so we need to request all the filter attributes,
+          // unless the LDAP filter is exact.
+          Set<String> filterAttributes = null;
+          if (scimFilter == null || !resourceMapper.isExactFilter(scimFilter))
+          {
+            filterAttributes = new HashSet<String>();
+            addFilterAttributes(filterAttributes, filter);
+          }
 
-          requestAttributes = new String[requestAttributeSet.size()];
-          requestAttributeSet.toArray(requestAttributes);
+          requestAttributes = getRequestAttributes(
+              resourceMapper, request.getAttributes(), filterAttributes);
 
           searchScope = getSearchScope(request);
         }
 
-        SearchResult searchResult = null;
-        int startIndex = 1;
-        int workingStartIndex = 1;
-        int totalToReturn = maxResults;
-        int totalResults = 0;
-        boolean firstBaseDN = true;
+        final PageParameters pageParameters = request.getPageParameters();
+        final int startIndex =
+            pageParameters != null ? pageParameters.getStartIndex() : 1;
+        final int totalToReturn = getTotalToReturn(request, maxResults);
 
-        for (DN baseDN : searchBaseDNs)
+        if (streamQueryResults)
         {
-          if (searchRequest == null)
-          {
-            searchRequest = new SearchRequest(resultListener, baseDN.toString(),
-                searchScope, filter, requestAttributes);
-          }
-
-          final SortParameters sortParameters = request.getSortParameters();
-          if (sortParameters != null)
-          {
-            try
-            {
-              Control control = resourceMapper.toLDAPSortControl(
-                  sortParameters);
-              if (control != null)
-              {
-                searchRequest.addControl(control);
-              }
-            }
-            catch (InvalidResourceException ire)
-            {
-              throw new InvalidResourceException("Invalid sort parameters: " +
-                  ire.getLocalizedMessage(), ire);
-            }
-          }
-
-          final PageParameters pageParameters = request.getPageParameters();
-          int numLeftToReturn =
-              totalToReturn - resultListener.getTotalResults();
-          if (pageParameters != null)
-          {
-
-            //Store the start index parameter to return in the final result and
-            //initialize workingStartIndex to startIndex
-            if (firstBaseDN)
-            {
-              startIndex = pageParameters.getStartIndex();
-              workingStartIndex = startIndex;
-            }
-
-            if (pageParameters.getCount() > 0)
-            {
-              totalToReturn = pageParameters.getCount();
-              numLeftToReturn = Math.min(totalToReturn, maxResults) -
-                  resultListener.getTotalResults();
-            }
-
-            //Use the VLV control to perform pagination if possible
-            if (supportsVLVRequestControl)
-            {
-              //We cannot set a size limit when using the VLV control; it will
-              //handle that internally.
-              searchRequest.setSizeLimit(0);
-
-              searchRequest.addControl(new VirtualListViewRequestControl(
-                  workingStartIndex, 0, numLeftToReturn - 1, 0, null, true));
-
-              //VLV requires a sort control
-              if (!searchRequest.hasControl(
-                  ServerSideSortRequestControl.SERVER_SIDE_SORT_REQUEST_OID))
-              {
-                searchRequest.addControl(
-                    new ServerSideSortRequestControl(
-                        new SortKey("uid"))); //TODO
-              }
-            }
-            else if (supportsSimplePagesResultsControl)
-            {
-              //Fall back to using the SimplePagedResults control (if available)
-              //This will essentially, only limit the number of entries returned
-              //since we are not propagating the cookie between searches.
-              searchRequest.addControl(
-                  new SimplePagedResultsControl(numLeftToReturn));
-            }
-            else
-            {
-              //If nothing else, fall back to just using the LDAP size limit
-              searchRequest.setSizeLimit(numLeftToReturn);
-            }
-          }
-          else if (supportsSimplePagesResultsControl)
-          {
-            searchRequest.addControl(
-                new SimplePagedResultsControl(numLeftToReturn));
-          }
-          else
-          {
-            searchRequest.setSizeLimit(numLeftToReturn);
-          }
-
-          // Include any controls that are needed by derived attributes.
-          final List<Control> controls = new ArrayList<Control>();
-          resourceMapper.addSearchControls(controls, request.getAttributes());
-          searchRequest.addControls(
-              controls.toArray(new Control[controls.size()]));
-
-          // Invoke the search operation.
-          try
-          {
-            searchResult = ldapInterface.search(searchRequest);
-          }
-          catch (LDAPSearchException e)
-          {
-            if (e.getResultCode().equals(ResultCode.SIZE_LIMIT_EXCEEDED))
-            {
-              searchResult = e.getSearchResult();
-              if (searchResult == null)
-              {
-                throw e;
-              }
-            }
-            else
-            {
-              throw e;
-            }
-          }
-
-          // When returning VLV responses, track the total results count across
-          // loops. This is handled by the resultListener for other searches.
-          final VirtualListViewResponseControl vlvResponseControl =
-                  getVLVResponseControl(searchResult);
-          final SimplePagedResultsControl simplePagedResultsResponseControl =
-                  SimplePagedResultsControl.get(searchResult);
-
-          if (vlvResponseControl != null)
-          {
-            totalResults += vlvResponseControl.getContentCount();
-          }
-          else if (simplePagedResultsResponseControl != null)
-          {
-            totalResults += simplePagedResultsResponseControl.getSize();
-          }
-
-          if (searchRequest.getScope() == SearchScope.BASE ||
-              resultListener.getTotalResults() >= totalToReturn)
-          {
-            break;
-          }
-          else
-          {
-            searchRequest = null;
-          }
+          // Defer the search until the response is written. The request
+          // caches are cleared once the resources have been streamed.
+          streaming = true;
+          return newStreamingResources(request, resourceMapper, ldapInterface,
+              searchBaseDNs, idSearchDN, searchScope, filter, requestAttributes,
+              Math.min(totalToReturn, maxResults), startIndex);
+        }
 
-          //Update the workingStartIndex value in order to avoid skipping
-          //too many search results in subsequent baseDN searches. Note that
-          //the minimum startIndex value for a search is 1.
-          workingStartIndex = Math.max(startIndex - totalResults, 1);
+        final ResourceSearchResultListener resultListener =
+            new ResourceSearchResultListener(this, request, ldapInterface,
+                maxResults);
 
-          firstBaseDN = false;
-        }
+        int totalResults = searchResources(request, resourceMapper,
+            ldapInterface, resultListener, searchBaseDNs, idSearchDN,
+            searchScope, filter, requestAttributes);
 
         // Prepare the response.
         List<BaseResource> scimObjects = resultListener.getResources();
@@ -719,725 +820,1809 @@ public abstract class LDAPBackend
     }
     finally
     {
-      clearRequestCaches();
+      if (!streaming)
+      {
+        clearRequestCaches();
+      }
     }
   }
 
 
 
   /**
-   * {@inheritDoc}
+   * Create a query response that performs the LDAP searches while the
+   * response is being written, so that each resource is written as soon as
+   * it is returned by the LDAP server rather than being held in memory.
+   *
+   * @param request            The query request being processed.
+   * @param resourceMapper     The resource mapper for the requested resource.
+   * @param ldapInterface      The LDAP interface to use for the searches.
+   * @param searchBaseDNs      The base DNs to be searched.
+   * @param idSearchDN         The DN of the entry to be read when the filter
+   *                           is an optimized id search, or {@code null}.
+   * @param searchScope        The scope of the searches.
+   * @param filter             The LDAP filter for the searches.
+   * @param requestAttributes  The LDAP attributes to be requested.
+   * @param maxToReturn        The maximum number of resources to write.
+   * @param startIndex         The 1-based index of the first result.
+   *
+   * @return  The streaming query response.
    */
-  @Override
-  public BaseResource postResource(
-      final PostResourceRequest request) throws SCIMException
+  private Resources<BaseResource> newStreamingResources(
+      final GetResourcesRequest request,
+      final ResourceMapper resourceMapper,
+      final LDAPRequestInterface ldapInterface,
+      final Set<DN> searchBaseDNs,
+      final String idSearchDN,
+      final SearchScope searchScope,
+      final Filter filter,
+      final String[] requestAttributes,
+      final int maxToReturn,
+      final int startIndex)
   {
-    try
+    return new StreamingResources<BaseResource>(
+        request.getResourceDescriptor().getAttributeSchemas(), startIndex)
     {
-      if (getConfig().isCheckSchema())
-      {
-        // Make sure the resource doesn't violate the schema
-        request.getResourceObject().checkSchema(
-            request.getResourceDescriptor(), false);
-      }
-
-      // Fail if read-only attributes were provided in the request
-      checkForReadOnlyAttributeModifies(request.getResourceObject(), "POST",
-          Collections.singleton(SCHEMA_URI_CORE),
-          Collections.singleton(CoreSchema.ID_DESCRIPTOR));
-
-      final ResourceMapper mapper =
-          getResourceMapper(request.getResourceDescriptor());
-
-      final Set<String> requestAttributeSet = new HashSet<String>();
-      requestAttributeSet.addAll(
-          mapper.toLDAPAttributeTypes(request.getAttributes()));
-      requestAttributeSet.addAll(getLastModAttributes());
-      requestAttributeSet.add("objectclass");
-      if (supportsVersioning())
-      {
-        requestAttributeSet.add(entityTagAttribute);
-      }
-
-      final String[] requestAttributes = new String[requestAttributeSet.size()];
-      requestAttributeSet.toArray(requestAttributes);
-
-      try
+      @Override
+      protected void writeResources(
+          final ResourcesStreamMarshaller marshaller)
+          throws SCIMException
       {
-        if (!mapper.supportsCreate())
+        try
         {
-          throw new UnsupportedOperationException(
-              "The '" + request.getResourceDescriptor().getName() +
-                  "' resource definition does not support creation of " +
-                  "resources");
-        }
-
-        final LDAPRequestInterface ldapInterface =
-            getLDAPRequestInterface(request.getAuthenticatedUserID());
-        final Entry entry =
-            mapper.toLDAPEntry(request.getResourceObject(), ldapInterface);
+          final StreamingSearchResultListener resultListener =
+              new StreamingSearchResultListener(LDAPBackend.this, request,
+                  ldapInterface, maxToReturn, marshaller);
 
-        final AddRequest addRequest = new AddRequest(entry);
-        if (supportsPostReadRequestControl)
-        {
-          addRequest.addControl(
-              new PostReadRequestControl(requestAttributes));
-        }
+          final int totalResults = searchResources(request, resourceMapper,
+              ldapInterface, resultListener, searchBaseDNs, idSearchDN,
+              searchScope, filter, requestAttributes);
 
-        final LDAPResult addResult = ldapInterface.add(addRequest);
+          if (resultListener.getWriteException() != null)
+          {
+            throw resultListener.getWriteException();
+          }
 
-        final PostReadResponseControl c = getPostReadResponseControl(addResult);
-        Entry addedEntry = entry;
-        if (c != null)
+          setItemsPerPage(resultListener.getResourceCount());
+          setTotalResults(
+              Math.max(totalResults, resultListener.getTotalResults()));
+        }
+        catch (LDAPException e)
         {
-          addedEntry = c.getEntry();
+          Debug.debugException(e);
+          throw ResourceMapper.toSCIMException(e);
         }
-        else
+        finally
         {
-          final SearchRequest r = new SearchRequest(entry.getDN(),
-              SearchScope.BASE, Filter.createPresenceFilter("objectclass"),
-              requestAttributes);
-          final Entry actualEntry = ldapInterface.searchForEntry(r);
-          if (actualEntry != null)
-          {
-            addedEntry = actualEntry;
-          }
+          clearRequestCaches();
         }
+      }
+    };
+  }
 
-        final BaseResource resource =
-            new BaseResource(request.getResourceDescriptor());
 
-        setIdAndMetaAttributes(mapper, resource, request, addedEntry,
-            request.getAttributes());
 
-        final List<SCIMAttribute> scimAttributes = mapper.toSCIMAttributes(
-            new SearchResultEntry(addedEntry), request.getAttributes(),
-            ldapInterface);
-        for (final SCIMAttribute a : scimAttributes)
-        {
-          Validator.ensureTrue(resource.getScimObject().addAttribute(a));
-        }
-
-        return resource;
-      }
-      catch (LDAPException e)
-      {
-        Debug.debugException(e);
-        throw ResourceMapper.toSCIMException(e);
-      }
-    }
-    finally
+  /**
+   * Determine the maximum number of resources to be returned for a query.
+   *
+   * @param request     The query request being processed.
+   * @param maxResults  The maximum number of results configured for the
+   *                    backend.
+   *
+   * @return  The maximum number of resources to be returned for the query.
+   */
+  private static int getTotalToReturn(final GetResourcesRequest request,
+                                      final int maxResults)
+  {
+    final PageParameters pageParameters = request.getPageParameters();
+    if (pageParameters != null && pageParameters.getCount() > 0)
     {
-      clearRequestCaches();
+      return pageParameters.getCount();
     }
+
+    return maxResults;
   }
 
 
 
   /**
-   * {@inheritDoc}
+   * Perform the LDAP searches for a query, passing the returned entries to
+   * the provided search result listener.
+   *
+   * @param request            The query request being processed.
+   * @param resourceMapper     The resource mapper for the requested resource.
+   * @param ldapInterface      The LDAP interface to use for the searches.
+   * @param resultListener     The listener for the returned entries.
+   * @param searchBaseDNs      The base DNs to be searched.
+   * @param idSearchDN         The DN of the entry to be read when the filter
+   *                           is an optimized id search, or {@code null}.
+   * @param searchScope        The scope of the searches.
+   * @param filter             The LDAP filter for the searches.
+   * @param requestAttributes  The LDAP attributes to be requested.
+   *
+   * @return  The total number of results indicated by the VLV or simple paged
+   *          results response controls, or zero if there were none.
+   *
+   * @throws LDAPException  If an LDAP search failed.
+   * @throws SCIMException  If the search could not be constructed.
    */
-  @Override
-  public void deleteResource(final DeleteResourceRequest request)
-      throws SCIMException
+  private int searchResources(final GetResourcesRequest request,
+                              final ResourceMapper resourceMapper,
+                              final LDAPRequestInterface ldapInterface,
+                              final ResourceSearchResultListener resultListener,
+                              final Set<DN> searchBaseDNs,
+                              final String idSearchDN,
+                              final SearchScope searchScope,
+                              final Filter filter,
+                              final String[] requestAttributes)
+      throws LDAPException, SCIMException
   {
-    final ResourceMapper mapper =
-        getResourceMapper(request.getResourceDescriptor());
-
-    try
+    SearchRequest searchRequest = null;
+    if (idSearchDN != null)
     {
-      final LDAPRequestInterface ldapInterface =
-          getLDAPRequestInterface(request.getAuthenticatedUserID());
+      searchRequest =
+          new SearchRequest(resultListener, idSearchDN,
+              SearchScope.BASE,
+              Filter.createPresenceFilter("objectclass"),
+              requestAttributes);
+    }
 
-      final Entry entry;
+    final int maxResults = getConfig().getMaxResults();
+
+    // Only use VLV for paging if the directory server has the indexes for it,
+    // to avoid an unindexed server-side sort.
+    boolean useVLV = false;
+    if (request.getPageParameters() != null && supportsVLVRequestControl)
+    {
       try
       {
-        if(supportsVersioning())
-        {
-          entry = mapper.getEntry(ldapInterface, request.getResourceID(),
-              entityTagAttribute);
-        }
-        else
-        {
-          entry = mapper.getEntry(ldapInterface, request.getResourceID());
-        }
+        useVLV = resourceMapper.supportsVLV(searchBaseDNs,
+                                            request.getSortParameters());
       }
-      catch (ResourceNotFoundException e)
+      catch (InvalidResourceException ire)
       {
-        if(supportsVersioning())
-        {
-          request.checkPreconditions(e);
-        }
-        throw e;
+        throw new InvalidResourceException("Invalid sort parameters: " +
+            ire.getLocalizedMessage(), ire);
       }
+    }
 
-      final DeleteRequest deleteRequest = new DeleteRequest(entry.getDN());
-      if(supportsVersioning())
+    final PagedResultsSessionStore sessions = pagedResultsSessions;
+    if (sessions != null && idSearchDN == null &&
+        searchScope != SearchScope.BASE &&
+        request.getPageParameters() != null &&
+        supportsSimplePagesResultsControl && !useVLV)
+    {
+      // The cookie returned by each search is only valid on the connection
+      // that returned it.
+      final LDAPRequestInterface pagedInterface =
+          ldapInterface.getPagedSearchInterface();
+      try
       {
-        final EntityTag currentEtag = getEntityTagValue(entry);
-        request.checkPreconditions(currentEtag);
-
-        final Filter filter;
-        if(currentEtag != null)
-        {
-          filter = Filter.createEqualityFilter(entityTagAttribute,
-              currentEtag.getValue());
-        }
-        else
-        {
-          filter = Filter.createNOTFilter(Filter.createPresenceFilter(
-              entityTagAttribute));
-        }
-        deleteRequest.addControl(new AssertionRequestControl(filter, true));
+        return searchResourcesPaged(request, resourceMapper, pagedInterface,
+            resultListener, searchBaseDNs, searchScope, filter,
+            requestAttributes, Math.min(getTotalToReturn(request, maxResults),
+                                        maxResults), sessions);
       }
-      final LDAPResult result = ldapInterface.delete(deleteRequest);
-
-      if (!result.getResultCode().equals(ResultCode.SUCCESS))
+      finally
       {
-        throw new LDAPException(result.getResultCode());
+        pagedInterface.release();
       }
     }
-    catch (LDAPException e)
+
+    // The searches of each base DN are independent of each other unless VLV
+    // is used, in which case the start index for each search depends on the
+    // number of entries found by the previous searches.
+    if (idSearchDN == null && searchBaseDNs.size() > 1 &&
+        searchScope != SearchScope.BASE &&
+        ldapInterface.getSearchExecutor() != null && !useVLV)
     {
-      Debug.debugException(e);
-      if (e.getResultCode().equals(ResultCode.NO_SUCH_OBJECT))
-      {
-        ResourceNotFoundException propagatedException =
-            new ResourceNotFoundException(
-                "Resource " + request.getResourceID() + " not found");
-        if(supportsVersioning())
-        {
-          request.checkPreconditions(propagatedException);
-        }
-        throw propagatedException;
-      }
-      throw ResourceMapper.toSCIMException(e);
+      return searchResourcesConcurrently(request, resourceMapper,
+          ldapInterface, resultListener, searchBaseDNs, searchScope, filter,
+          requestAttributes, Math.min(getTotalToReturn(request, maxResults),
+                                      maxResults));
     }
-  }
-
 
+    SearchResult searchResult = null;
+    int startIndex = 1;
+    int workingStartIndex = 1;
+    int totalToReturn = maxResults;
+    int totalResults = 0;
+    boolean firstBaseDN = true;
 
-  /**
-   * {@inheritDoc}
-   */
-  @Override
-  public BaseResource putResource(final PutResourceRequest request)
-      throws SCIMException
-  {
-    try
+    for (DN baseDN : searchBaseDNs)
     {
-      if (getConfig().isCheckSchema())
+      if (searchRequest == null)
       {
-        // Make sure the resource doesn't violate the schema
-        request.getResourceObject().checkSchema(
-            request.getResourceDescriptor(), false);
+        searchRequest = new SearchRequest(resultListener, baseDN.toString(),
+            searchScope, filter, requestAttributes);
       }
 
-      final ResourceMapper mapper =
-          getResourceMapper(request.getResourceDescriptor());
+      addQueryControls(request, resourceMapper, searchRequest);
 
-      // Retrieve all modifiable mapped attributes to get the current state of
-      // the resource.
-      final Set<String> mappedAttributeSet =
-          mapper.getModifiableLDAPAttributeTypes(request.getResourceObject());
-      final String[] mappedAttributes = new String[mappedAttributeSet.size()];
-      mappedAttributeSet.toArray(mappedAttributes);
-      String[] getEntryAttributes = mappedAttributes;
-      if (supportsVersioning())
+      final PageParameters pageParameters = request.getPageParameters();
+      int numLeftToReturn =
+          totalToReturn - resultListener.getTotalResults();
+      if (pageParameters != null)
       {
-        getEntryAttributes = new String[mappedAttributeSet.size() + 1];
-        mappedAttributeSet.toArray(getEntryAttributes);
-        getEntryAttributes[getEntryAttributes.length - 1] = entityTagAttribute;
-      }
 
-      // Fail if read-only attributes were provided in the request
-      checkForReadOnlyAttributeModifies(request.getResourceObject(), "PUT",
-          Collections.singleton(SCHEMA_URI_CORE),
-          Collections.singleton(CoreSchema.ID_DESCRIPTOR));
+        //Store the start index parameter to return in the final result and
+        //initialize workingStartIndex to startIndex
+        if (firstBaseDN)
+        {
+          startIndex = pageParameters.getStartIndex();
+          workingStartIndex = startIndex;
+        }
 
-      final String resourceID = request.getResourceID();
-      final List<Modification> mods = new ArrayList<Modification>();
-      Entry modifiedEntry;
-      SearchResultEntry returnEntry;
-      try
-      {
-        final LDAPRequestInterface ldapInterface =
-            getLDAPRequestInterface(request.getAuthenticatedUserID());
-        final SearchResultEntry currentEntry;
-        try
+        if (pageParameters.getCount() > 0)
         {
-          currentEntry =
-              mapper.getEntry(ldapInterface, resourceID, getEntryAttributes);
+          totalToReturn = pageParameters.getCount();
+          numLeftToReturn = Math.min(totalToReturn, maxResults) -
+              resultListener.getTotalResults();
         }
-        catch (ResourceNotFoundException e)
+
+        //Use the VLV control to perform pagination if possible
+        if (useVLV)
         {
-          if (supportsVersioning())
+          //We cannot set a size limit when using the VLV control; it will
+          //handle that internally.
+          searchRequest.setSizeLimit(0);
+
+          searchRequest.addControl(new VirtualListViewRequestControl(
+              workingStartIndex, 0, numLeftToReturn - 1, 0, null, true));
+
+          //VLV requires a sort control
+          if (!searchRequest.hasControl(
+              ServerSideSortRequestControl.SERVER_SIDE_SORT_REQUEST_OID))
           {
-            request.checkPreconditions(e);
+            searchRequest.addControl(
+                new ServerSideSortRequestControl(
+                    new SortKey(resourceMapper.getVLVSortAttribute())));
           }
-          throw e;
         }
-
-        EntityTag currentEtag = null;
-        if (supportsVersioning())
+        else if (supportsSimplePagesResultsControl)
         {
-          currentEtag = getEntityTagValue(currentEntry);
-          request.checkPreconditions(currentEtag);
+          //Fall back to using the SimplePagedResults control (if available)
+          //This will essentially, only limit the number of entries returned
+          //since we are not propagating the cookie between searches.
+          searchRequest.addControl(
+              new SimplePagedResultsControl(numLeftToReturn));
         }
-
-        mods.addAll(mapper.toLDAPModificationsForPut(currentEntry,
-            request.getResourceObject(), mappedAttributes, ldapInterface));
-
-        final Set<String> requestAttributeSet = new HashSet<String>();
-        requestAttributeSet.addAll(
-            mapper.toLDAPAttributeTypes(request.getAttributes()));
-        requestAttributeSet.addAll(getLastModAttributes());
-        requestAttributeSet.add("objectclass");
-        if (supportsVersioning())
+        else
         {
-          requestAttributeSet.add(entityTagAttribute);
+          //If nothing else, fall back to just using the LDAP size limit
+          searchRequest.setSizeLimit(numLeftToReturn);
         }
+      }
+      else if (supportsSimplePagesResultsControl)
+      {
+        searchRequest.addControl(
+            new SimplePagedResultsControl(numLeftToReturn));
+      }
+      else
+      {
+        searchRequest.setSizeLimit(numLeftToReturn);
+      }
 
-        final String[] requestAttributes =
-            new String[requestAttributeSet.size()];
-        requestAttributeSet.toArray(requestAttributes);
-
-        if (!mods.isEmpty())
+      // Invoke the search operation.
+      try
+      {
+        searchResult = ldapInterface.search(searchRequest);
+      }
+      catch (LDAPSearchException e)
+      {
+        if (e.getResultCode().equals(ResultCode.SIZE_LIMIT_EXCEEDED))
         {
-          // Look for any modifications that will affect the mapped entry's RDN
-          // and split them up.
-          modifiedEntry = currentEntry.duplicate();
-          ListIterator<Modification> iterator = mods.listIterator();
-          List<String> rdnAttrNames = new ArrayList<String>(1);
-          List<String> rdnAttrValues = new ArrayList<String>(1);
-
-          while (iterator.hasNext())
+          searchResult = e.getSearchResult();
+          if (searchResult == null)
           {
-            Modification mod = iterator.next();
-            if ((mod.getModificationType() == ModificationType.INCREMENT ||
-                mod.getModificationType() == ModificationType.REPLACE) &&
-                currentEntry.getRDN().hasAttribute(mod.getAttributeName()))
-            {
-              if (mod.getValues().length != 1)
-              {
-                throw new InvalidResourceException(
-                    "The '" + mod.getAttributeName() +
-                        "' attribute must contain exactly one value because " +
-                        "it is an RDN attribute.");
-              }
-
-              iterator.remove();
+            throw e;
+          }
+        }
+        else
+        {
+          throw e;
+        }
+      }
 
-              rdnAttrNames.add(mod.getAttributeName());
-              rdnAttrValues.add(mod.getValues()[0]);
+      // When returning VLV responses, track the total results count across
+      // loops. This is handled by the resultListener for other searches.
+      final VirtualListViewResponseControl vlvResponseControl =
+              getVLVResponseControl(searchResult);
+      final SimplePagedResultsControl simplePagedResultsResponseControl =
+              SimplePagedResultsControl.get(searchResult);
 
-              // The modification will affect the RDN so we need to first apply
-              // the mods in memory and reconstruct the DN. We will set the DN
-              // to null first so Entry.applyModifications wouldn't throw any
-              // exceptions about affecting the RDN.
-              DN parentDN = modifiedEntry.getParentDN();
-              modifiedEntry.setDN("");
-              modifiedEntry =
-                  Entry.applyModifications(modifiedEntry, true, mod);
+      if (vlvResponseControl != null)
+      {
+        totalResults += vlvResponseControl.getContentCount();
+      }
+      else if (simplePagedResultsResponseControl != null)
+      {
+        totalResults += simplePagedResultsResponseControl.getSize();
+      }
 
-              DN newDN = new DN(new RDN(
-                  rdnAttrNames.toArray(new String[rdnAttrNames.size()]),
-                  rdnAttrValues.toArray(new String[rdnAttrValues.size()])),
-                  parentDN);
+      if (searchRequest.getScope() == SearchScope.BASE ||
+          resultListener.getTotalResults() >= totalToReturn)
+      {
+        break;
+      }
+      else
+      {
+        searchRequest = null;
+      }
 
-              modifiedEntry.setDN(newDN);
-            }
-          }
+      //Update the workingStartIndex value in order to avoid skipping
+      //too many search results in subsequent baseDN searches. Note that
+      //the minimum startIndex value for a search is 1.
+      workingStartIndex = Math.max(startIndex - totalResults, 1);
 
-          AssertionRequestControl assertionRequestControl = null;
-          if (supportsVersioning())
-          {
-            final Filter filter;
-            if (currentEtag != null)
-            {
-              filter = Filter.createEqualityFilter(entityTagAttribute,
-                  currentEtag.getValue());
-            }
-            else
-            {
-              filter = Filter.createNOTFilter(Filter.createPresenceFilter(
-                  entityTagAttribute));
-            }
-            assertionRequestControl = new AssertionRequestControl(filter, true);
-          }
-          PostReadResponseControl c = null;
-          if (!modifiedEntry.getParsedDN().equals(currentEntry.getParsedDN()))
-          {
-            ModifyDNRequest modifyDNRequest =
-                new ModifyDNRequest(currentEntry.getDN(),
-                    modifiedEntry.getRDN().toString(), true);
-
-            // If there are no other mods left, we need to include the
-            // PostReadRequestControl now since we won't be performing a modify
-            // operation later.
-            if (mods.isEmpty() && supportsPostReadRequestControl)
-            {
-              modifyDNRequest.addControl(
-                  new PostReadRequestControl(requestAttributes));
-            }
-            if (assertionRequestControl != null)
-            {
-              modifyDNRequest.addControl(assertionRequestControl);
-            }
-            final LDAPResult modifyDNResult =
-                ldapInterface.modifyDN(modifyDNRequest);
-            c = getPostReadResponseControl(modifyDNResult);
-            // Since the assertion that the current wasn't changed since we
-            // retrieved it is used with mod DN, we shouldn't use the assertion
-            // again with further mods because:
-            // - May not know the latest modifyTimestamp
-            // - Avoid doing a partial update where the mod DN succeeds but
-            //   the subsequent modify fails because of the assertion.
-            assertionRequestControl = null;
-          }
+      firstBaseDN = false;
+    }
 
-          if (!mods.isEmpty())
-          {
-            final ModifyRequest modifyRequest =
-                new ModifyRequest(modifiedEntry.getDN(), mods);
-            if (supportsPostReadRequestControl)
-            {
-              modifyRequest.addControl(
-                  new PostReadRequestControl(requestAttributes));
-            }
-            if (assertionRequestControl != null)
-            {
-              modifyRequest.addControl(assertionRequestControl);
-            }
-            if (supportsPermissiveModifyRequestControl)
-            {
-              modifyRequest.addControl(
-                  new PermissiveModifyRequestControl(true));
-            }
+    return totalResults;
+  }
 
-            final LDAPResult modifyResult = ldapInterface.modify(modifyRequest);
-            c = getPostReadResponseControl(modifyResult);
-          }
 
-          if (c != null)
-          {
-            returnEntry = new SearchResultEntry(c.getEntry());
-          }
-          else
-          {
-            returnEntry =
-                mapper.getReturnEntry(ldapInterface, resourceID,
-                    request.getAttributes(),
-                    requestAttributes);
-          }
-        }
-        else
-        {
-          // No modifications necessary (the mod set is empty).
-          // Fetch the entry again, this time with the required return
-          // attributes.
-          returnEntry =
-              mapper.getReturnEntry(ldapInterface, resourceID,
-                  request.getAttributes(),
-                  requestAttributes);
-        }
 
-        final BaseResource resource =
-            new BaseResource(request.getResourceDescriptor());
-        setIdAndMetaAttributes(mapper, resource, request, returnEntry,
-            request.getAttributes());
+  /**
+   * Perform the LDAP searches of several base DNs for a query concurrently,
+   * using the search executor of the LDAP interface. The entries are buffered
+   * until all the searches have completed and are then passed to the provided
+   * search result listener on the calling thread, in the order of the base
+   * DNs, so that the resources are returned in the same order as for
+   * sequential searches.
+   * <p>
+   * Since the number of entries found in one base DN is not known before the
+   * others are searched, each search is limited to the total number of
+   * entries to be returned, and any surplus entries are discarded by the
+   * search result listener.
+   *
+   * @param request            The query request being processed.
+   * @param resourceMapper     The resource mapper for the requested resource.
+   * @param ldapInterface      The LDAP interface to use for the searches.
+   * @param resultListener     The listener for the returned entries.
+   * @param searchBaseDNs      The base DNs to be searched.
+   * @param searchScope        The scope of the searches.
+   * @param filter             The LDAP filter for the searches.
+   * @param requestAttributes  The LDAP attributes to be requested.
+   * @param numToReturn        The maximum number of entries to be returned.
+   *
+   * @return  The total number of results indicated by the simple paged results
+   *          response controls, or zero if there were none.
+   *
+   * @throws LDAPException  If an LDAP search failed.
+   * @throws SCIMException  If the search could not be constructed.
+   */
+  private int searchResourcesConcurrently(
+      final GetResourcesRequest request,
+      final ResourceMapper resourceMapper,
+      final LDAPRequestInterface ldapInterface,
+      final ResourceSearchResultListener resultListener,
+      final Set<DN> searchBaseDNs,
+      final SearchScope searchScope,
+      final Filter filter,
+      final String[] requestAttributes,
+      final int numToReturn)
+      throws LDAPException, SCIMException
+  {
+    final List<SearchRequest> searchRequests =
+        new ArrayList<SearchRequest>(searchBaseDNs.size());
+    for (final DN baseDN : searchBaseDNs)
+    {
+      final SearchRequest searchRequest = new SearchRequest(
+          baseDN.toString(), searchScope, filter, requestAttributes);
+      addQueryControls(request, resourceMapper, searchRequest);
+      if (supportsSimplePagesResultsControl)
+      {
+        searchRequest.addControl(new SimplePagedResultsControl(numToReturn));
+      }
+      else
+      {
+        searchRequest.setSizeLimit(numToReturn);
+      }
+      searchRequests.add(searchRequest);
+    }
 
-        final List<SCIMAttribute> scimAttributes = mapper.toSCIMAttributes(
-            returnEntry, request.getAttributes(), ldapInterface);
+    int totalResults = 0;
+    for (final SearchResult searchResult : ldapInterface.search(searchRequests))
+    {
+      final ResultCode resultCode = searchResult.getResultCode();
+      if (!resultCode.equals(ResultCode.SUCCESS) &&
+          !resultCode.equals(ResultCode.SIZE_LIMIT_EXCEEDED))
+      {
+        throw new LDAPSearchException(searchResult);
+      }
 
-        for (final SCIMAttribute a : scimAttributes)
+      if (searchResult.getSearchEntries() != null)
+      {
+        for (final SearchResultEntry entry : searchResult.getSearchEntries())
         {
-          Validator.ensureTrue(resource.getScimObject().addAttribute(a));
+          resultListener.searchEntryReturned(entry);
         }
-
-        return resource;
       }
-      catch (LDAPException e)
+
+      final SimplePagedResultsControl simplePagedResultsResponseControl =
+          SimplePagedResultsControl.get(searchResult);
+      if (simplePagedResultsResponseControl != null)
       {
-        Debug.debugException(e);
-        throw ResourceMapper.toSCIMException(e);
+        totalResults += simplePagedResultsResponseControl.getSize();
       }
     }
-    finally
-    {
-      clearRequestCaches();
-    }
+
+    return totalResults;
   }
 
 
 
   /**
-   * {@inheritDoc}
+   * Perform the LDAP searches for a page of query results using the simple
+   * paged results control, resuming from the cookie kept by the query for
+   * the preceding page if there is one. Otherwise the entries preceding the
+   * start index are paged through without being mapped. The cookie for the
+   * following page is kept for the next query. If the server rejects a kept
+   * cookie, such as after it has been restarted, the preceding entries are
+   * paged through instead.
+   * <p>
+   * As for VLV, the start index is applied to the LDAP entries before they
+   * are filtered by the SCIM filter.
+   * <p>
+   * The total number of results is the sum of the result set sizes of all
+   * the base DNs, including those that the page does not reach. The sizes
+   * are kept in the paging session, so that every page of a query reports
+   * the same total as the first.
+   *
+   * @param request            The query request being processed.
+   * @param resourceMapper     The resource mapper for the requested resource.
+   * @param ldapInterface      The LDAP interface to use for the searches.
+   * @param resultListener     The listener for the returned entries.
+   * @param searchBaseDNs      The base DNs to be searched.
+   * @param searchScope        The scope of the searches.
+   * @param filter             The LDAP filter for the searches.
+   * @param requestAttributes  The LDAP attributes to be requested.
+   * @param numToReturn        The maximum number of entries to be returned.
+   * @param sessions           The paging session store.
+   *
+   * @return  The total number of results indicated by the simple paged results
+   *          response controls, or zero if there were none.
+   *
+   * @throws LDAPException  If an LDAP search failed.
+   * @throws SCIMException  If the search could not be constructed.
    */
-  @Override
-  public BaseResource patchResource(final PatchResourceRequest request)
-          throws SCIMException
+  private int searchResourcesPaged(
+      final GetResourcesRequest request,
+      final ResourceMapper resourceMapper,
+      final LDAPRequestInterface ldapInterface,
+      final ResourceSearchResultListener resultListener,
+      final Set<DN> searchBaseDNs,
+      final SearchScope searchScope,
+      final Filter filter,
+      final String[] requestAttributes,
+      final int numToReturn,
+      final PagedResultsSessionStore sessions)
+      throws LDAPException, SCIMException
   {
-    try
+    final List<DN> baseDNs = new ArrayList<DN>(searchBaseDNs);
+    final int startIndex =
+        Math.max(request.getPageParameters().getStartIndex(), 1);
+    final String queryKey = PagedResultsSessionStore.getQueryKey(
+        request.getAuthenticatedUserID(), baseDNs, searchScope, filter,
+        request.getSortParameters(), requestAttributes);
+
+    int baseDNIndex = 0;
+    ASN1OctetString cookie = null;
+    int numToSkip = startIndex - 1;
+    boolean resumed = false;
+
+    // The result set size of each base DN, or -1 if it is not yet known.
+    int[] baseDNSizes = new int[baseDNs.size()];
+    Arrays.fill(baseDNSizes, -1);
+
+    final PagedResultsSessionStore.Position position =
+        sessions.take(queryKey, startIndex);
+    if (position != null && baseDNs.contains(position.getBaseDN()))
     {
-      checkForReadOnlyAttributeModifies(request.getResourceObject(), "PATCH",
-          null, Collections.singleton(CoreSchema.ID_DESCRIPTOR));
-
-      final ResourceMapper mapper =
-          getResourceMapper(request.getResourceDescriptor());
+      baseDNIndex = baseDNs.indexOf(position.getBaseDN());
+      cookie = position.getCookie();
+      numToSkip = 0;
+      resumed = cookie != null;
+      if (position.getBaseDNSizes().length == baseDNSizes.length)
+      {
+        baseDNSizes = position.getBaseDNSizes();
+      }
+    }
 
-      // Retrieve all modifiable mapped attributes to get the current state of
-      // the resource.
-      final Set<String> mappedAttributeSet = new HashSet<String>();
-      mappedAttributeSet.addAll(
-          mapper.getModifiableLDAPAttributeTypes(request.getResourceObject()));
-      if (supportsVersioning())
+    int entriesReturned = 0;
+    while (baseDNIndex < baseDNs.size())
+    {
+      final boolean skipping = numToSkip > 0;
+      final int pageSize;
+      final SearchRequest searchRequest;
+      if (skipping)
+      {
+        // Page through the preceding entries without mapping them. The
+        // search must otherwise be identical for the cookie to remain valid.
+        pageSize = Math.min(numToSkip, MAX_SKIP_PAGE_SIZE);
+        searchRequest = new SearchRequest(
+            baseDNs.get(baseDNIndex).toString(), searchScope, filter,
+            requestAttributes);
+      }
+      else
       {
-        mappedAttributeSet.add(entityTagAttribute);
+        pageSize = numToReturn - resultListener.getTotalResults();
+        if (pageSize <= 0)
+        {
+          break;
+        }
+        searchRequest = new SearchRequest(resultListener,
+            baseDNs.get(baseDNIndex).toString(), searchScope, filter,
+            requestAttributes);
       }
-      final String[] mappedAttributes = new String[mappedAttributeSet.size()];
-      mappedAttributeSet.toArray(mappedAttributes);
+      addQueryControls(request, resourceMapper, searchRequest);
+      searchRequest.addControl(new SimplePagedResultsControl(pageSize, cookie));
 
-      final String resourceID = request.getResourceID();
-      final List<Modification> mods = new ArrayList<Modification>();
-      Entry modifiedEntry;
-      SearchResultEntry returnEntry;
+      SearchResult searchResult;
       try
       {
-        final LDAPRequestInterface ldapInterface =
-            getLDAPRequestInterface(request.getAuthenticatedUserID());
-        final SearchResultEntry currentEntry;
-        try
+        searchResult = ldapInterface.search(searchRequest);
+      }
+      catch (LDAPSearchException e)
+      {
+        if (e.getResultCode().equals(ResultCode.SIZE_LIMIT_EXCEEDED) &&
+            e.getSearchResult() != null)
         {
-          currentEntry =
-              mapper.getEntry(ldapInterface, resourceID, mappedAttributes);
+          searchResult = e.getSearchResult();
         }
-        catch (ResourceNotFoundException e)
+        else if (resumed && e.getEntryCount() == 0)
         {
-          if (supportsVersioning())
-          {
-            request.checkPreconditions(e);
-          }
-          throw e;
+          // The kept cookie was rejected, so start again from the first
+          // result and page through the preceding entries.
+          Debug.debugException(e);
+          resumed = false;
+          baseDNIndex = 0;
+          cookie = null;
+          numToSkip = startIndex - 1;
+          continue;
         }
-
-        //Make sure all the required attributes are present after the patch
-        //has been applied.
-        final List<SCIMAttribute> attributes =
-            mapper.toSCIMAttributes(
-                currentEntry,
-                new SCIMQueryAttributes(request.getResourceDescriptor(), null),
-                ldapInterface);
-
-        final SCIMObject currentObject = new SCIMObject();
-        for (final SCIMAttribute a : attributes)
+        else
         {
-          Validator.ensureTrue(currentObject.addAttribute(a));
+          throw e;
         }
+      }
+      resumed = false;
 
-        final BaseResource currentResource =
-            new BaseResource(
-                request.getResourceDescriptor(), currentObject);
-        checkRequiredAttributes(request, currentResource);
-
-        EntityTag currentEtag = null;
-        if (supportsVersioning())
-        {
-          currentEtag = getEntityTagValue(currentEntry);
-          request.checkPreconditions(currentEtag);
-        }
+      if (skipping)
+      {
+        numToSkip -= searchResult.getEntryCount();
+      }
+      else
+      {
+        entriesReturned += searchResult.getEntryCount();
+      }
+
+      final SimplePagedResultsControl responseControl =
+          SimplePagedResultsControl.get(searchResult);
+      if (baseDNSizes[baseDNIndex] < 0)
+      {
+        // Each base DN is only counted once for the query.
+        baseDNSizes[baseDNIndex] =
+            responseControl == null ? 0 : responseControl.getSize();
+      }
+
+      if (responseControl != null && responseControl.moreResultsToReturn())
+      {
+        cookie = responseControl.getCookie();
+      }
+      else
+      {
+        cookie = null;
+        baseDNIndex++;
+      }
+    }
+
+    int totalResults = 0;
+    for (int i = 0; i < baseDNs.size(); i++)
+    {
+      if (baseDNSizes[i] < 0)
+      {
+        baseDNSizes[i] = getPagedResultSetSize(ldapInterface, baseDNs.get(i),
+            searchScope, filter);
+      }
+      totalResults += baseDNSizes[i];
+    }
+
+    if (baseDNIndex < baseDNs.size())
+    {
+      sessions.put(queryKey, startIndex + entriesReturned,
+          baseDNs.get(baseDNIndex), cookie, baseDNSizes);
+    }
+
+    return totalResults;
+  }
+
+
+
+  /**
+   * Determine the result set size of a paged search of a base DN that a page
+   * of query results does not reach, retrieving at most one entry. The
+   * server's state for the search is then released.
+   *
+   * @param ldapInterface  The LDAP interface to use for the search.
+   * @param baseDN         The base DN to be searched.
+   * @param searchScope    The scope of the search.
+   * @param filter         The LDAP filter for the search.
+   *
+   * @return  The result set size indicated by the simple paged results
+   *          response control, or zero if there was none.
+   *
+   * @throws LDAPException  If the LDAP search failed.
+   */
+  private static int getPagedResultSetSize(
+      final LDAPRequestInterface ldapInterface, final DN baseDN,
+      final SearchScope searchScope, final Filter filter)
+      throws LDAPException
+  {
+    final SearchRequest searchRequest = new SearchRequest(baseDN.toString(),
+        searchScope, filter, "1.1");
+    searchRequest.addControl(new SimplePagedResultsControl(1));
+    final SimplePagedResultsControl responseControl =
+        SimplePagedResultsControl.get(ldapInterface.search(searchRequest));
+    if (responseControl == null)
+    {
+      return 0;
+    }
+
+    if (responseControl.moreResultsToReturn())
+    {
+      // A page size of zero abandons the paged search.
+      final SearchRequest abandonRequest = new SearchRequest(
+          baseDN.toString(), searchScope, filter, "1.1");
+      abandonRequest.addControl(
+          new SimplePagedResultsControl(0, responseControl.getCookie()));
+      try
+      {
+        ldapInterface.search(abandonRequest);
+      }
+      catch (LDAPSearchException e)
+      {
+        Debug.debugException(e);
+      }
+    }
+    return responseControl.getSize();
+  }
+
+
+
+  /**
+   * Add the sort control and any controls needed by derived attributes to a
+   * search request for a query.
+   *
+   * @param request         The query request being processed.
+   * @param resourceMapper  The resource mapper for the requested resource.
+   * @param searchRequest   The search request to which the controls are to be
+   *                        added.
+   *
+   * @throws SCIMException  If the sort parameters are not valid.
+   */
+  private static void addQueryControls(final GetResourcesRequest request,
+                                       final ResourceMapper resourceMapper,
+                                       final SearchRequest searchRequest)
+      throws SCIMException
+  {
+    final SortParameters sortParameters = request.getSortParameters();
+    if (sortParameters != null)
+    {
+      try
+      {
+        Control control = resourceMapper.toLDAPSortControl(
+            sortParameters);
+        if (control != null)
+        {
+          searchRequest.addControl(control);
+        }
+      }
+      catch (InvalidResourceException ire)
+      {
+        throw new InvalidResourceException("Invalid sort parameters: " +
+            ire.getLocalizedMessage(), ire);
+      }
+    }
+
+    // Include any controls that are needed by derived attributes.
+    final List<Control> controls = new ArrayList<Control>();
+    resourceMapper.addSearchControls(controls, request.getAttributes());
+    searchRequest.addControls(
+        controls.toArray(new Control[controls.size()]));
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public BaseResource postResource(
+      final PostResourceRequest request) throws SCIMException
+  {
+    try
+    {
+      return preparePost(request).process();
+    }
+    catch (LDAPException e)
+    {
+      Debug.debugException(e);
+      throw ResourceMapper.toSCIMException(e);
+    }
+    finally
+    {
+      clearRequestCaches();
+    }
+  }
+
+
+
+  /**
+   * Prepare the LDAP add request for a Post Resource request.
+   *
+   * @param request  The Post Resource request.
+   *
+   * @return  The prepared update.
+   *
+   * @throws SCIMException  If the request is not valid.
+   * @throws LDAPException  If an error occurs while mapping the resource.
+   */
+  private PreparedUpdate preparePost(final PostResourceRequest request)
+      throws SCIMException, LDAPException
+  {
+    if (getConfig().isCheckSchema())
+    {
+      // Make sure the resource doesn't violate the schema
+      request.getResourceObject().checkSchema(
+          request.getResourceDescriptor(), false);
+    }
+
+    // Fail if read-only attributes were provided in the request
+    checkForReadOnlyAttributeModifies(request.getResourceObject(), "POST",
+        Collections.singleton(SCHEMA_URI_CORE),
+        Collections.singleton(CoreSchema.ID_DESCRIPTOR));
+
+    final ResourceMapper mapper =
+        getResourceMapper(request.getResourceDescriptor());
+
+    final String[] requestAttributes =
+        getRequestAttributes(mapper, request.getAttributes(), null);
+
+    if (!mapper.supportsCreate())
+    {
+      throw new UnsupportedOperationException(
+          "The '" + request.getResourceDescriptor().getName() +
+              "' resource definition does not support creation of " +
+              "resources");
+    }
+
+    final LDAPRequestInterface ldapInterface =
+        getLDAPUpdateInterface(request.getAuthenticatedUserID());
+    final Entry entry =
+        mapper.toLDAPEntry(request.getResourceObject(), ldapInterface);
+
+    final AddRequest addRequest = new AddRequest(entry);
+    if (supportsPostReadRequestControl)
+    {
+      addRequest.addControl(
+          new PostReadRequestControl(requestAttributes));
+    }
+
+    final PreparedUpdate update = new PreparedUpdate(mapper, ldapInterface)
+    {
+      @Override
+      BaseResource complete(final LDAPResult lastResult)
+          throws SCIMException, LDAPException
+      {
+        final PostReadResponseControl c =
+            getPostReadResponseControl(lastResult);
+        Entry addedEntry = entry;
+        if (c != null)
+        {
+          addedEntry = c.getEntry();
+        }
+        else
+        {
+          final SearchRequest r = new SearchRequest(entry.getDN(),
+              SearchScope.BASE, Filter.createPresenceFilter("objectclass"),
+              requestAttributes);
+          final Entry actualEntry = ldapInterface.searchForEntry(r);
+          if (actualEntry != null)
+          {
+            addedEntry = actualEntry;
+          }
+        }
+
+        final BaseResource resource =
+            new BaseResource(request.getResourceDescriptor());
+
+        setIdAndMetaAttributes(mapper, resource, request, addedEntry,
+            request.getAttributes());
+
+        final List<SCIMAttribute> scimAttributes = mapper.toSCIMAttributes(
+            new SearchResultEntry(addedEntry), request.getAttributes(),
+            ldapInterface);
+        for (final SCIMAttribute a : scimAttributes)
+        {
+          Validator.ensureTrue(resource.getScimObject().addAttribute(a));
+        }
+
+        return resource;
+      }
+    };
+    update.updateRequests.add(addRequest);
+    return update;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void deleteResource(final DeleteResourceRequest request)
+      throws SCIMException
+  {
+    try
+    {
+      prepareDelete(request).process();
+    }
+    catch (LDAPException e)
+    {
+      Debug.debugException(e);
+      if (e.getResultCode().equals(ResultCode.NO_SUCH_OBJECT))
+      {
+        ResourceNotFoundException propagatedException =
+            new ResourceNotFoundException(
+                "Resource " + request.getResourceID() + " not found");
+        if(supportsVersioning())
+        {
+          request.checkPreconditions(propagatedException);
+        }
+        throw propagatedException;
+      }
+      throw ResourceMapper.toSCIMException(e);
+    }
+  }
+
+
+
+  /**
+   * Prepare the LDAP delete request for a Delete Resource request.
+   *
+   * @param request  The Delete Resource request.
+   *
+   * @return  The prepared update.
+   *
+   * @throws SCIMException  If the resource does not exist or the request
+   *                        preconditions are not met.
+   * @throws LDAPException  If an error occurs while retrieving the entry.
+   */
+  private PreparedUpdate prepareDelete(final DeleteResourceRequest request)
+      throws SCIMException, LDAPException
+  {
+    final ResourceMapper mapper =
+        getResourceMapper(request.getResourceDescriptor());
+
+    final LDAPRequestInterface ldapInterface =
+        getLDAPUpdateInterface(request.getAuthenticatedUserID());
+
+    final Entry entry;
+    try
+    {
+      if(supportsVersioning())
+      {
+        entry = mapper.getEntry(ldapInterface, request.getResourceID(),
+            entityTagAttribute);
+      }
+      else
+      {
+        entry = mapper.getEntry(ldapInterface, request.getResourceID());
+      }
+    }
+    catch (ResourceNotFoundException e)
+    {
+      if(supportsVersioning())
+      {
+        request.checkPreconditions(e);
+      }
+      throw e;
+    }
+
+    final DeleteRequest deleteRequest = new DeleteRequest(entry.getDN());
+    if(supportsVersioning())
+    {
+      final EntityTag currentEtag = getEntityTagValue(entry);
+      request.checkPreconditions(currentEtag);
+
+      final Filter filter;
+      if(currentEtag != null)
+      {
+        filter = Filter.createEqualityFilter(entityTagAttribute,
+            currentEtag.getValue());
+      }
+      else
+      {
+        filter = Filter.createNOTFilter(Filter.createPresenceFilter(
+            entityTagAttribute));
+      }
+      deleteRequest.addControl(new AssertionRequestControl(filter, true));
+    }
+
+    final PreparedUpdate update = new PreparedUpdate(mapper, ldapInterface)
+    {
+      @Override
+      BaseResource complete(final LDAPResult lastResult)
+          throws LDAPException
+      {
+        if (!lastResult.getResultCode().equals(ResultCode.SUCCESS))
+        {
+          throw new LDAPException(lastResult.getResultCode());
+        }
+        return null;
+      }
+    };
+    update.updateRequests.add(deleteRequest);
+    return update;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public BaseResource putResource(final PutResourceRequest request)
+      throws SCIMException
+  {
+    try
+    {
+      final PreparedUpdate update = preparePut(request, true);
+      try
+      {
+        return update.process();
+      }
+      catch (LDAPException e)
+      {
+        if (!update.optimistic ||
+            (e.getResultCode() != ResultCode.ASSERTION_FAILED &&
+             e.getResultCode() != ResultCode.NO_SUCH_OBJECT))
+        {
+          throw e;
+        }
+
+        // The entry has changed since the snapshot was taken. Compute the
+        // modifications again from the current entry.
+        Debug.debugException(e);
+        return preparePut(request, false).process();
+      }
+    }
+    catch (LDAPException e)
+    {
+      Debug.debugException(e);
+      throw ResourceMapper.toSCIMException(e);
+    }
+    finally
+    {
+      clearRequestCaches();
+    }
+  }
+
+
+
+  /**
+   * Prepare the LDAP modify DN and modify requests for a Put Resource
+   * request.
+   *
+   * @param request      The Put Resource request.
+   * @param useSnapshot  Indicates whether the modifications may be computed
+   *                     from a kept entry snapshot whose entity tag is named
+   *                     in the If-Match header.
+   *
+   * @return  The prepared update, which has no update requests if the
+   *          resource is not changed.
+   *
+   * @throws SCIMException  If the request is not valid, the resource does not
+   *                        exist or the request preconditions are not met.
+   * @throws LDAPException  If an error occurs while retrieving the entry or
+   *                        mapping the resource.
+   */
+  private PreparedUpdate preparePut(final PutResourceRequest request,
+                                    final boolean useSnapshot)
+      throws SCIMException, LDAPException
+  {
+    if (getConfig().isCheckSchema())
+    {
+      // Make sure the resource doesn't violate the schema
+      request.getResourceObject().checkSchema(
+          request.getResourceDescriptor(), false);
+    }
+
+    final ResourceMapper mapper =
+        getResourceMapper(request.getResourceDescriptor());
+
+    // Retrieve all modifiable mapped attributes to get the current state of
+    // the resource.
+    final Set<String> mappedAttributeSet =
+        mapper.getModifiableLDAPAttributeTypes(request.getResourceObject());
+    final String[] mappedAttributes = new String[mappedAttributeSet.size()];
+    mappedAttributeSet.toArray(mappedAttributes);
+    String[] getEntryAttributes = mappedAttributes;
+    if (supportsVersioning())
+    {
+      getEntryAttributes = new String[mappedAttributeSet.size() + 1];
+      mappedAttributeSet.toArray(getEntryAttributes);
+      getEntryAttributes[getEntryAttributes.length - 1] = entityTagAttribute;
+    }
+
+    // Fail if read-only attributes were provided in the request
+    checkForReadOnlyAttributeModifies(request.getResourceObject(), "PUT",
+        Collections.singleton(SCHEMA_URI_CORE),
+        Collections.singleton(CoreSchema.ID_DESCRIPTOR));
+
+    final String resourceID = request.getResourceID();
+    final LDAPRequestInterface ldapInterface =
+        getLDAPUpdateInterface(request.getAuthenticatedUserID());
+    final SearchResultEntry snapshot = useSnapshot ?
+        getEntrySnapshot(request, resourceID, getEntryAttributes) : null;
+    final SearchResultEntry currentEntry;
+    if (snapshot != null)
+    {
+      currentEntry = snapshot;
+    }
+    else
+    {
+      try
+      {
+        currentEntry =
+            mapper.getEntry(ldapInterface, resourceID, getEntryAttributes);
+      }
+      catch (ResourceNotFoundException e)
+      {
+        if (supportsVersioning())
+        {
+          request.checkPreconditions(e);
+        }
+        throw e;
+      }
+    }
+
+    EntityTag currentEtag = null;
+    if (supportsVersioning())
+    {
+      currentEtag = getEntityTagValue(currentEntry);
+      request.checkPreconditions(currentEtag);
+    }
+
+    final List<Modification> mods = new ArrayList<Modification>();
+    mods.addAll(mapper.toLDAPModificationsForPut(currentEntry,
+        request.getResourceObject(), mappedAttributes, ldapInterface));
+    if (snapshot != null && mods.isEmpty())
+    {
+      // Without an update to carry the assertion, it is not known whether the
+      // resource still matches the If-Match header.
+      return preparePut(request, false);
+    }
 
-        mods.addAll(mapper.toLDAPModificationsForPatch(currentEntry,
-            request.getResourceObject(), ldapInterface));
+    final String[] requestAttributes = getModifyRequestAttributes(mapper,
+        request.getAttributes());
 
-        final Set<String> requestAttributeSet = new HashSet<String>();
-        requestAttributeSet.addAll(
-            mapper.toLDAPAttributeTypes(request.getAttributes()));
-        requestAttributeSet.addAll(getLastModAttributes());
-        requestAttributeSet.add("objectclass");
-        if (supportsVersioning())
+    final PreparedUpdate update = new PreparedUpdate(mapper, ldapInterface)
+    {
+      @Override
+      BaseResource complete(final LDAPResult lastResult)
+          throws SCIMException, LDAPException
+      {
+        final PostReadResponseControl c =
+            getPostReadResponseControl(lastResult);
+        final SearchResultEntry returnEntry;
+        if (c != null)
+        {
+          returnEntry = new SearchResultEntry(c.getEntry());
+        }
+        else
+        {
+          // Fetch the entry again, this time with the required return
+          // attributes.
+          returnEntry =
+              mapper.getReturnEntry(ldapInterface, resourceID,
+                  request.getAttributes(),
+                  requestAttributes);
+        }
+
+        final BaseResource resource =
+            new BaseResource(request.getResourceDescriptor());
+        setIdAndMetaAttributes(mapper, resource, request, returnEntry,
+            request.getAttributes());
+        putEntrySnapshot(request, resourceID, returnEntry,
+            requestAttributes);
+
+        final List<SCIMAttribute> scimAttributes = mapper.toSCIMAttributes(
+            returnEntry, request.getAttributes(), ldapInterface);
+
+        for (final SCIMAttribute a : scimAttributes)
+        {
+          Validator.ensureTrue(resource.getScimObject().addAttribute(a));
+        }
+
+        return resource;
+      }
+    };
+    update.optimistic = snapshot != null;
+    addModifyRequests(update, currentEntry, currentEtag, mods,
+        requestAttributes);
+    return update;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public BaseResource patchResource(final PatchResourceRequest request)
+          throws SCIMException
+  {
+    try
+    {
+      final PreparedUpdate update = preparePatch(request, true);
+      try
+      {
+        return update.process();
+      }
+      catch (LDAPException e)
+      {
+        if (!update.optimistic ||
+            (e.getResultCode() != ResultCode.ASSERTION_FAILED &&
+             e.getResultCode() != ResultCode.NO_SUCH_OBJECT))
+        {
+          throw e;
+        }
+
+        // The entry is no longer the resource. Prepare the patch again from
+        // the current entry.
+        Debug.debugException(e);
+        return preparePatch(request, false).process();
+      }
+    }
+    catch (LDAPException e)
+    {
+      Debug.debugException(e);
+      throw ResourceMapper.toSCIMException(e);
+    }
+    finally
+    {
+      clearRequestCaches();
+    }
+  }
+
+
+
+  /**
+   * Prepare the LDAP modify DN and modify requests for a Patch Resource
+   * request. A patch that only replaces the values of simple attributes is
+   * prepared without reading the current entry, if permitted.
+   *
+   * @param request           The Patch Resource request.
+   * @param allowSimplePatch  Indicates whether a simple patch may be prepared
+   *                          without reading the current entry.
+   *
+   * @return  The prepared update, which has no update requests if the
+   *          resource is not changed.
+   *
+   * @throws SCIMException  If the request is not valid, the resource does not
+   *                        exist or the request preconditions are not met.
+   * @throws LDAPException  If an error occurs while retrieving the entry or
+   *                        mapping the resource.
+   */
+  private PreparedUpdate preparePatch(final PatchResourceRequest request,
+                                      final boolean allowSimplePatch)
+      throws SCIMException, LDAPException
+  {
+    checkForReadOnlyAttributeModifies(request.getResourceObject(), "PATCH",
+        null, Collections.singleton(CoreSchema.ID_DESCRIPTOR));
+
+    final ResourceMapper mapper =
+        getResourceMapper(request.getResourceDescriptor());
+
+    if (allowSimplePatch && isSimplePatch(request))
+    {
+      final PreparedUpdate update = prepareSimplePatch(request, mapper);
+      if (update != null)
+      {
+        return update;
+      }
+    }
+
+    // Retrieve all modifiable mapped attributes to get the current state of
+    // the resource.
+    final Set<String> mappedAttributeSet = new HashSet<String>();
+    mappedAttributeSet.addAll(
+        mapper.getModifiableLDAPAttributeTypes(request.getResourceObject()));
+    if (supportsVersioning())
+    {
+      mappedAttributeSet.add(entityTagAttribute);
+    }
+    final String[] mappedAttributes = new String[mappedAttributeSet.size()];
+    mappedAttributeSet.toArray(mappedAttributes);
+
+    final String resourceID = request.getResourceID();
+    final LDAPRequestInterface ldapInterface =
+        getLDAPUpdateInterface(request.getAuthenticatedUserID());
+    final SearchResultEntry currentEntry;
+    try
+    {
+      currentEntry =
+          mapper.getEntry(ldapInterface, resourceID, mappedAttributes);
+    }
+    catch (ResourceNotFoundException e)
+    {
+      if (supportsVersioning())
+      {
+        request.checkPreconditions(e);
+      }
+      throw e;
+    }
+
+    //Make sure all the required attributes are present after the patch
+    //has been applied.
+    final List<SCIMAttribute> attributes =
+        mapper.toSCIMAttributes(
+            currentEntry,
+            new SCIMQueryAttributes(request.getResourceDescriptor(), null),
+            ldapInterface);
+
+    final SCIMObject currentObject = new SCIMObject();
+    for (final SCIMAttribute a : attributes)
+    {
+      Validator.ensureTrue(currentObject.addAttribute(a));
+    }
+
+    final BaseResource currentResource =
+        new BaseResource(
+            request.getResourceDescriptor(), currentObject);
+    checkRequiredAttributes(request, currentResource);
+
+    EntityTag currentEtag = null;
+    if (supportsVersioning())
+    {
+      currentEtag = getEntityTagValue(currentEntry);
+      request.checkPreconditions(currentEtag);
+    }
+
+    final List<Modification> mods = new ArrayList<Modification>();
+    mods.addAll(mapper.toLDAPModificationsForPatch(currentEntry,
+        request.getResourceObject(), ldapInterface));
+
+    final String[] requestAttributes = getModifyRequestAttributes(mapper,
+        request.getAttributes());
+
+    final PreparedUpdate update = newPatchUpdate(request, mapper,
+        ldapInterface, requestAttributes);
+    addModifyRequests(update, currentEntry, currentEtag, mods,
+        requestAttributes);
+    return update;
+  }
+
+
+  /**
+   * Create the prepared update for a Patch Resource request, which creates
+   * the response once the LDAP updates have been applied.
+   *
+   * @param request            The Patch Resource request.
+   * @param mapper             The resource mapper for the resource.
+   * @param ldapInterface      The LDAP request interface for the user making
+   *                           the request.
+   * @param requestAttributes  The LDAP attributes to be returned in the
+   *                           post-read control.
+   *
+   * @return  The prepared update, to which the update requests are to be
+   *          added.
+   */
+  private PreparedUpdate newPatchUpdate(
+      final PatchResourceRequest request,
+      final ResourceMapper mapper,
+      final LDAPRequestInterface ldapInterface,
+      final String[] requestAttributes)
+  {
+    return new PreparedUpdate(mapper, ldapInterface)
+    {
+      @Override
+      BaseResource complete(final LDAPResult lastResult)
+          throws SCIMException, LDAPException
+      {
+        final PostReadResponseControl c =
+            getPostReadResponseControl(lastResult);
+        final SearchResultEntry returnEntry;
+        if (c != null)
+        {
+          returnEntry = new SearchResultEntry(c.getEntry());
+        }
+        else
         {
-          requestAttributeSet.add(entityTagAttribute);
+          // Fetch the entry again, this time with the required return
+          // attributes.
+          returnEntry = mapper.getReturnEntry(ldapInterface,
+              request.getResourceID(), request.getAttributes(),
+              requestAttributes);
         }
 
-        String[] requestAttributes = new String[requestAttributeSet.size()];
-        requestAttributeSet.toArray(requestAttributes);
+        final BaseResource resource =
+            new BaseResource(request.getResourceDescriptor());
+        setIdAndMetaAttributes(mapper, resource, request, returnEntry,
+            request.getAttributes());
+        putEntrySnapshot(request, request.getResourceID(), returnEntry,
+            requestAttributes);
 
-        if (!mods.isEmpty())
+        //Only if the 'attributes' query parameter was specified do we need to
+        //worry about returning anything other than the meta attributes.
+        if (!request.getAttributes().allAttributesRequested())
         {
-          // Look for any modifications that will affect the mapped entry's RDN
-          // and split them up.
-          modifiedEntry = currentEntry.duplicate();
-          ListIterator<Modification> iterator = mods.listIterator();
-          List<String> rdnAttrNames = new ArrayList<String>(1);
-          List<String> rdnAttrValues = new ArrayList<String>(1);
-
-          while (iterator.hasNext())
+          final List<SCIMAttribute> scimAttributes = mapper.toSCIMAttributes(
+              returnEntry, request.getAttributes(), ldapInterface);
+
+          for (final SCIMAttribute a : scimAttributes)
           {
-            Modification mod = iterator.next();
-            if ((mod.getModificationType() == ModificationType.INCREMENT ||
-                mod.getModificationType() == ModificationType.REPLACE) &&
-                currentEntry.getRDN().hasAttribute(mod.getAttributeName()))
-            {
-              if (mod.getValues().length != 1)
-              {
-                throw new InvalidResourceException(
-                    "The '" + mod.getAttributeName() +
-                        "' attribute must contain exactly one value because " +
-                        "it is an RDN attribute.");
-              }
+            Validator.ensureTrue(resource.getScimObject().addAttribute(a));
+          }
+        }
+
+        if (Debug.debugEnabled())
+        {
+          Debug.debug(Level.FINE, DebugType.OTHER,
+              "Returning resource from PATCH request: " + resource.toString());
+        }
+
+        return resource;
+      }
+    };
+  }
+
+
+
+  /**
+   * Determine whether a Patch Resource request only replaces the values of
+   * simple single-valued attributes, so that its modifications do not depend
+   * on the current entry and it cannot remove a required attribute.
+   *
+   * @param request  The Patch Resource request.
+   *
+   * @return  {@code true} if the request is a simple patch.
+   */
+  private boolean isSimplePatch(final PatchResourceRequest request)
+  {
+    // Preconditions need the current entity tag.
+    if (supportsVersioning() && request.hasPreconditions())
+    {
+      return false;
+    }
+
+    final SCIMObject resourceObject = request.getResourceObject();
+    for (final String schema : resourceObject.getSchemas())
+    {
+      for (final SCIMAttribute a : resourceObject.getAttributes(schema))
+      {
+        // The meta attribute is complex, so attributes to be removed are
+        // excluded here too.
+        final AttributeDescriptor descriptor = a.getAttributeDescriptor();
+        if (descriptor.isMultiValued() ||
+            descriptor.getDataType() == AttributeDescriptor.DataType.COMPLEX)
+        {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+
+
+  /**
+   * Prepare the LDAP modify request for a simple Patch Resource request
+   * without reading the current entry or converting it to a SCIM resource.
+   * The modify request asserts that the entry is still the resource, since
+   * its DN may have come from a cache.
+   *
+   * @param request  The Patch Resource request, which must be a simple
+   *                 patch.
+   * @param mapper   The resource mapper for the resource.
+   *
+   * @return  The prepared update, or {@code null} if the request modifies
+   *          the RDN of the entry and so must be prepared from the current
+   *          entry.
+   *
+   * @throws SCIMException  If the resource does not exist or cannot be
+   *                        mapped.
+   * @throws LDAPException  If an error occurs while mapping the resource.
+   */
+  private PreparedUpdate prepareSimplePatch(
+      final PatchResourceRequest request, final ResourceMapper mapper)
+      throws SCIMException, LDAPException
+  {
+    final String resourceID = request.getResourceID();
+    final LDAPRequestInterface ldapInterface =
+        getLDAPUpdateInterface(request.getAuthenticatedUserID());
+    String dn = mapper.getProbableDnFromId(resourceID);
+    if (dn == null)
+    {
+      dn = mapper.getEntryWithoutAttrs(ldapInterface, resourceID).getDN();
+    }
+
+    // The modifications for a simple patch do not depend on the current
+    // attributes of the entry.
+    final Entry entry = new Entry(dn);
+    final List<Modification> mods = mapper.toLDAPModificationsForPatch(entry,
+        request.getResourceObject(), ldapInterface);
+    for (final Modification mod : mods)
+    {
+      if (entry.getRDN().hasAttribute(mod.getAttributeName()))
+      {
+        return null;
+      }
+    }
+
+    if (Debug.debugEnabled())
+    {
+      Debug.debug(Level.FINE, DebugType.OTHER,
+          "Patching resource without reading it, mods=" + mods);
+    }
+
+    final String[] requestAttributes = getModifyRequestAttributes(mapper,
+        request.getAttributes());
+    final PreparedUpdate update = newPatchUpdate(request, mapper,
+        ldapInterface, requestAttributes);
+    update.optimistic = true;
+    if (!mods.isEmpty())
+    {
+      final ModifyRequest modifyRequest = new ModifyRequest(dn, mods);
+      final Filter resourceFilter = mapper.getResourceFilter(resourceID);
+      if (resourceFilter != null)
+      {
+        modifyRequest.addControl(
+            new AssertionRequestControl(resourceFilter, true));
+      }
+      if (supportsPostReadRequestControl)
+      {
+        modifyRequest.addControl(
+            new PostReadRequestControl(requestAttributes));
+      }
+      if (supportsPermissiveModifyRequestControl)
+      {
+        modifyRequest.addControl(
+            new PermissiveModifyRequestControl(true));
+      }
+      update.updateRequests.add(modifyRequest);
+    }
+    return update;
+  }
+
+
+
+  /**
+   * Determine the LDAP attributes to be returned in the post-read control of
+   * a modify or modify DN request.
+   *
+   * @param mapper      The resource mapper for the resource.
+   * @param attributes  The SCIM attributes requested in the response.
+   *
+   * @return  The LDAP attributes to be returned.
+   *
+   * @throws SCIMException  If the requested attributes cannot be mapped.
+   */
+  private String[] getModifyRequestAttributes(
+      final ResourceMapper mapper, final SCIMQueryAttributes attributes)
+      throws SCIMException
+  {
+    return getRequestAttributes(mapper, attributes, null);
+  }
+
+
+
+  /**
+   * Add the LDAP requests that apply a set of modifications to an entry to a
+   * prepared update. Modifications that affect the RDN of the entry are
+   * applied with a modify DN request, and the rest with a modify request.
+   *
+   * @param update             The prepared update.
+   * @param currentEntry       The current entry.
+   * @param currentEtag        The current entity tag of the entry, if
+   *                           versioning is supported.
+   * @param mods               The modifications to be applied. Any
+   *                           modifications affecting the RDN are removed.
+   * @param requestAttributes  The LDAP attributes to be returned in the
+   *                           post-read control.
+   *
+   * @throws SCIMException  If an RDN attribute would not have exactly one
+   *                        value.
+   * @throws LDAPException  If the modifications cannot be applied to the RDN.
+   */
+  private void addModifyRequests(final PreparedUpdate update,
+                                 final SearchResultEntry currentEntry,
+                                 final EntityTag currentEtag,
+                                 final List<Modification> mods,
+                                 final String[] requestAttributes)
+      throws SCIMException, LDAPException
+  {
+    if (mods.isEmpty())
+    {
+      // No modifications necessary (the mod set is empty).
+      return;
+    }
+
+    // Look for any modifications that will affect the mapped entry's RDN
+    // and split them up.
+    Entry modifiedEntry = currentEntry.duplicate();
+    ListIterator<Modification> iterator = mods.listIterator();
+    List<String> rdnAttrNames = new ArrayList<String>(1);
+    List<String> rdnAttrValues = new ArrayList<String>(1);
+
+    while (iterator.hasNext())
+    {
+      Modification mod = iterator.next();
+      if ((mod.getModificationType() == ModificationType.INCREMENT ||
+          mod.getModificationType() == ModificationType.REPLACE) &&
+          currentEntry.getRDN().hasAttribute(mod.getAttributeName()))
+      {
+        if (mod.getValues().length != 1)
+        {
+          throw new InvalidResourceException(
+              "The '" + mod.getAttributeName() +
+                  "' attribute must contain exactly one value because " +
+                  "it is an RDN attribute.");
+        }
+
+        iterator.remove();
+
+        rdnAttrNames.add(mod.getAttributeName());
+        rdnAttrValues.add(mod.getValues()[0]);
+
+        // The modification will affect the RDN so we need to first apply
+        // the mods in memory and reconstruct the DN. We will set the DN
+        // to null first so Entry.applyModifications wouldn't throw any
+        // exceptions about affecting the RDN.
+        DN parentDN = modifiedEntry.getParentDN();
+        modifiedEntry.setDN("");
+        modifiedEntry =
+            Entry.applyModifications(modifiedEntry, true, mod);
+
+        DN newDN = new DN(new RDN(
+            rdnAttrNames.toArray(new String[rdnAttrNames.size()]),
+            rdnAttrValues.toArray(new String[rdnAttrValues.size()])),
+            parentDN);
+
+        modifiedEntry.setDN(newDN);
+      }
+    }
+
+    if (Debug.debugEnabled())
+    {
+      Debug.debug(Level.FINE, DebugType.OTHER,
+          "Modifying resource, mods=" + mods);
+    }
 
-              iterator.remove();
+    AssertionRequestControl assertionRequestControl = null;
+    if (supportsVersioning())
+    {
+      final Filter filter;
+      if (currentEtag != null)
+      {
+        filter = Filter.createEqualityFilter(entityTagAttribute,
+            currentEtag.getValue());
+      }
+      else
+      {
+        filter = Filter.createNOTFilter(Filter.createPresenceFilter(
+            entityTagAttribute));
+      }
+      assertionRequestControl = new AssertionRequestControl(filter, true);
+    }
+    if (!modifiedEntry.getParsedDN().equals(currentEntry.getParsedDN()))
+    {
+      ModifyDNRequest modifyDNRequest =
+          new ModifyDNRequest(currentEntry.getDN(),
+              modifiedEntry.getRDN().toString(), true);
+
+      // If there are no other mods left, we need to include the
+      // PostReadRequestControl now since we won't be performing a modify
+      // operation later.
+      if (mods.isEmpty() && supportsPostReadRequestControl)
+      {
+        modifyDNRequest.addControl(
+            new PostReadRequestControl(requestAttributes));
+      }
+      if (assertionRequestControl != null)
+      {
+        modifyDNRequest.addControl(assertionRequestControl);
+      }
+      update.updateRequests.add(modifyDNRequest);
+      // Since the assertion that the current wasn't changed since we
+      // retrieved it is used with mod DN, we shouldn't use the assertion
+      // again with further mods because:
+      // - May not know the latest modifyTimestamp
+      // - Avoid doing a partial update where the mod DN succeeds but
+      //   the subsequent modify fails because of the assertion.
+      assertionRequestControl = null;
+    }
 
-              rdnAttrNames.add(mod.getAttributeName());
-              rdnAttrValues.add(mod.getValues()[0]);
+    if (!mods.isEmpty())
+    {
+      final ModifyRequest modifyRequest =
+          new ModifyRequest(modifiedEntry.getDN(), mods);
+      if (supportsPostReadRequestControl)
+      {
+        modifyRequest.addControl(
+            new PostReadRequestControl(requestAttributes));
+      }
+      if (assertionRequestControl != null)
+      {
+        modifyRequest.addControl(assertionRequestControl);
+      }
+      if (supportsPermissiveModifyRequestControl)
+      {
+        modifyRequest.addControl(
+            new PermissiveModifyRequestControl(true));
+      }
+      update.updateRequests.add(modifyRequest);
+    }
+  }
 
-              // The modification will affect the RDN so we need to first apply
-              // the mods in memory and reconstruct the DN. We will set the DN
-              // to null first so Entry.applyModifications wouldn't throw any
-              // exceptions about affecting the RDN.
-              DN parentDN = modifiedEntry.getParentDN();
-              modifiedEntry.setDN("");
-              modifiedEntry =
-                  Entry.applyModifications(modifiedEntry, true, mod);
 
-              DN newDN = new DN(new RDN(
-                  rdnAttrNames.toArray(new String[rdnAttrNames.size()]),
-                  rdnAttrValues.toArray(new String[rdnAttrValues.size()])),
-                  parentDN);
 
-              modifiedEntry.setDN(newDN);
-            }
-          }
+  /**
+   * {@inheritDoc}
+   * <p>
+   * The LDAP updates for the requests are applied with a single multi-update
+   * extended operation, which the server processes atomically. If any of the
+   * updates would fail then none of them is applied, and each request is
+   * then processed on its own so that it gets its own result. If the outcome
+   * of the operation is unknown, for example because the connection was lost,
+   * an exception is thrown instead so that no request is applied twice.
+   */
+  @Override
+  public List<BulkRequestResult> applyBulkRequests(
+      final List<SCIMRequest> requests)
+      throws SCIMException
+  {
+    if (maxBulkRequestsApplied < 2 || requests.size() > maxBulkRequestsApplied)
+    {
+      return null;
+    }
 
-          if (Debug.debugEnabled())
-          {
-            Debug.debug(Level.FINE, DebugType.OTHER,
-                "Patching resource, mods=" + mods);
-          }
+    // The updates are applied on a single LDAP request interface, so the
+    // requests must all have been made by the same user.
+    final String authenticatedUserID = requests.get(0).getAuthenticatedUserID();
+    for (final SCIMRequest request : requests)
+    {
+      final String userID = request.getAuthenticatedUserID();
+      if (userID == null ? authenticatedUserID != null :
+          !userID.equals(authenticatedUserID))
+      {
+        return null;
+      }
+    }
 
-          AssertionRequestControl assertionRequestControl = null;
-          if (supportsVersioning())
+    try
+    {
+      final List<PreparedUpdate> updates =
+          new ArrayList<PreparedUpdate>(requests.size());
+      final List<LDAPRequest> updateRequests = new ArrayList<LDAPRequest>();
+      try
+      {
+        for (final SCIMRequest request : requests)
+        {
+          final PreparedUpdate update;
+          if (request instanceof PostResourceRequest)
           {
-            final Filter filter;
-            if (currentEtag != null)
-            {
-              filter = Filter.createEqualityFilter(entityTagAttribute,
-                  currentEtag.getValue());
-            }
-            else
-            {
-              filter = Filter.createNOTFilter(Filter.createPresenceFilter(
-                  entityTagAttribute));
-            }
-            assertionRequestControl = new AssertionRequestControl(filter, true);
+            update = preparePost((PostResourceRequest) request);
           }
-          PostReadResponseControl c = null;
-          if (!modifiedEntry.getParsedDN().equals(currentEntry.getParsedDN()))
+          else if (request instanceof PutResourceRequest)
           {
-            ModifyDNRequest modifyDNRequest =
-                new ModifyDNRequest(currentEntry.getDN(),
-                    modifiedEntry.getRDN().toString(), true);
-
-            // If there are no other mods left AND we need to return the
-            // resource, then we need to include the PostReadRequestControl now
-            // since we won't be performing a modify operation later.
-            if (mods.isEmpty() && supportsPostReadRequestControl)
-            {
-              modifyDNRequest.addControl(
-                  new PostReadRequestControl(requestAttributes));
-            }
-            if (assertionRequestControl != null)
-            {
-              modifyDNRequest.addControl(assertionRequestControl);
-            }
-            final LDAPResult modifyDNResult =
-                ldapInterface.modifyDN(modifyDNRequest);
-            c = getPostReadResponseControl(modifyDNResult);
-            // Since the assertion that the current wasn't changed since we
-            // retrieved it is used with mod DN, we shouldn't use the assertion
-            // again with further mods because:
-            // - May not know the latest modifyTimestamp
-            // - Avoid doing a partial update where the mod DN succeeds but
-            //   the subsequent modify fails because of the assertion.
-            assertionRequestControl = null;
+            update = preparePut((PutResourceRequest) request, true);
           }
-
-          if (!mods.isEmpty())
+          else if (request instanceof PatchResourceRequest)
           {
-            final ModifyRequest modifyRequest =
-                new ModifyRequest(modifiedEntry.getDN(), mods);
-            if (supportsPostReadRequestControl)
-            {
-              modifyRequest.addControl(
-                  new PostReadRequestControl(requestAttributes));
-            }
-            if (assertionRequestControl != null)
-            {
-              modifyRequest.addControl(assertionRequestControl);
-            }
-            if (supportsPermissiveModifyRequestControl)
-            {
-              modifyRequest.addControl(
-                  new PermissiveModifyRequestControl(true));
-            }
-            final LDAPResult modifyResult = ldapInterface.modify(modifyRequest);
-            c = getPostReadResponseControl(modifyResult);
+            update = preparePatch((PatchResourceRequest) request, true);
           }
-
-          if (c != null)
+          else if (request instanceof DeleteResourceRequest)
           {
-            returnEntry = new SearchResultEntry(c.getEntry());
+            update = prepareDelete((DeleteResourceRequest) request);
           }
           else
           {
-            returnEntry =
-                mapper.getReturnEntry(ldapInterface, resourceID,
-                    request.getAttributes(),
-                    requestAttributes);
+            return null;
           }
+          updates.add(update);
+          updateRequests.addAll(update.updateRequests);
         }
-        else
+      }
+      catch (SCIMException e)
+      {
+        // Nothing has been applied. Each request will be processed on its own
+        // to report the error.
+        Debug.debugException(e);
+        return null;
+      }
+      catch (LDAPException e)
+      {
+        Debug.debugException(e);
+        return null;
+      }
+
+      List<ObjectPair<OperationType, LDAPResult>> results = null;
+      if (!updateRequests.isEmpty())
+      {
+        final MultiUpdateExtendedResult result;
+        try
         {
-          // No modifications were necessary (the mod set was empty).
-          // Fetch the entry again, this time with the required return
-          // attributes.
-          returnEntry = mapper.getReturnEntry(ldapInterface, resourceID,
-              request.getAttributes(),
-              requestAttributes);
+          result = getLDAPUpdateInterface(authenticatedUserID).multiUpdate(
+              updateRequests);
         }
-
-        final BaseResource resource =
-            new BaseResource(request.getResourceDescriptor());
-        setIdAndMetaAttributes(mapper, resource, request, returnEntry,
-            request.getAttributes());
-
-        //Only if the 'attributes' query parameter was specified do we need to
-        //worry about returning anything other than the meta attributes.
-        if (!request.getAttributes().allAttributesRequested())
+        catch (LDAPException e)
         {
-          final List<SCIMAttribute> scimAttributes = mapper.toSCIMAttributes(
-              returnEntry, request.getAttributes(), ldapInterface);
-
-          for (final SCIMAttribute a : scimAttributes)
+          Debug.debugException(e);
+          if (isOutcomeUnknown(e.getResultCode()))
           {
-            Validator.ensureTrue(resource.getScimObject().addAttribute(a));
+            // The updates may have been applied, so the requests must not be
+            // processed again.
+            throw ResourceMapper.toSCIMException(e);
           }
+          return null;
         }
 
-        if (Debug.debugEnabled())
+        if (result.getResultCode() != ResultCode.SUCCESS ||
+            result.getChangesApplied() != MultiUpdateChangesApplied.ALL)
         {
-          Debug.debug(Level.FINE, DebugType.OTHER,
-              "Returning resource from PATCH request: " + resource.toString());
+          if (Debug.debugEnabled())
+          {
+            Debug.debug(Level.FINE, DebugType.OTHER,
+                "Bulk requests not applied together: " + result);
+          }
+          if (result.getChangesApplied() != MultiUpdateChangesApplied.NONE ||
+              isOutcomeUnknown(result.getResultCode()))
+          {
+            throw ResourceMapper.toSCIMException(new LDAPException(result));
+          }
+          return null;
         }
+        results = result.getResults();
+      }
 
-        return resource;
+      // The updates have all been applied.
+      if (results != null)
+      {
+        setLastResults(updates, results);
       }
-      catch (LDAPException e)
+      final List<BulkRequestResult> bulkResults =
+          new ArrayList<BulkRequestResult>(updates.size());
+      for (final PreparedUpdate update : updates)
       {
-        Debug.debugException(e);
-        throw ResourceMapper.toSCIMException(e);
+        // A failure to create the response of one request does not affect
+        // the others, which have also been applied.
+        try
+        {
+          bulkResults.add(
+              new BulkRequestResult(update.completeApplied(), null));
+        }
+        catch (SCIMException e)
+        {
+          Debug.debugException(e);
+          bulkResults.add(new BulkRequestResult(null, e));
+        }
+        catch (LDAPException e)
+        {
+          Debug.debugException(e);
+          bulkResults.add(new BulkRequestResult(null,
+              ResourceMapper.toSCIMException(e)));
+        }
       }
+      return bulkResults;
+    }
+    catch (LDAPException e)
+    {
+      Debug.debugException(e);
+      throw ResourceMapper.toSCIMException(e);
     }
     finally
     {
@@ -1447,6 +2632,63 @@ public abstract class LDAPBackend
 
 
 
+  /**
+   * Determine whether the LDAP updates of a multi-update extended operation
+   * that failed with the given result code may nonetheless have been
+   * applied, such as when the connection was lost before the response was
+   * received. A client-side result code means the outcome is unknown, unless
+   * the operation was not supported by the LDAP interface and so was never
+   * sent.
+   *
+   * @param resultCode  The result code of the failed operation.
+   *
+   * @return  {@code true} if the updates may have been applied.
+   */
+  private static boolean isOutcomeUnknown(final ResultCode resultCode)
+  {
+    if (resultCode == ResultCode.NOT_SUPPORTED)
+    {
+      return false;
+    }
+    return resultCode.isClientSideResultCode() ||
+           !resultCode.isConnectionUsable() ||
+           resultCode == ResultCode.CANCELED;
+  }
+
+
+
+  /**
+   * Set the result of the last LDAP update of each prepared update from the
+   * results of a multi-update extended operation.
+   *
+   * @param updates  The prepared updates, in the order they were applied.
+   * @param results  The results of the individual LDAP updates.
+   *
+   * @throws LDAPException  If there is not a result for each LDAP update.
+   */
+  private static void setLastResults(
+      final List<PreparedUpdate> updates,
+      final List<ObjectPair<OperationType, LDAPResult>> results)
+      throws LDAPException
+  {
+    int i = 0;
+    for (final PreparedUpdate update : updates)
+    {
+      for (final LDAPRequest updateRequest : update.updateRequests)
+      {
+        if (i >= results.size())
+        {
+          throw new LDAPException(ResultCode.DECODING_ERROR,
+              "The multi-update result does not include a result for " +
+              "each update");
+        }
+        update.lastResult = results.get(i++).getSecond();
+      }
+    }
+  }
+
+
+
   @Override
   public Collection<ResourceDescriptor> getResourceDescriptors()
   {
@@ -1902,15 +3144,44 @@ public abstract class LDAPBackend
       final GetResourcesRequest request,
       final ResourceMapper resourceMapper)
   {
-    final Set<String> requestAttributeSet =
-        resourceMapper.toLDAPAttributeTypes(request.getAttributes());
-    requestAttributeSet.addAll(getLastModAttributes());
-    requestAttributeSet.add("objectclass");
-    if (supportsVersioning())
+    return new HashSet<String>(Arrays.asList(
+        getRequestAttributes(resourceMapper, request.getAttributes(), null)));
+  }
+
+
+
+  /**
+   * Get the LDAP attributes to request in order to return the specified SCIM
+   * attributes of a resource. The attributes are taken from the projection
+   * plans of the resource mapper, so the array must not be modified.
+   *
+   * @param mapper            The resource mapper for the resource.
+   * @param attributes        The SCIM attributes requested.
+   * @param filterAttributes  The LDAP attributes used in the search filter,
+   *                          if they must be requested to evaluate the SCIM
+   *                          filter, or {@code null} otherwise.
+   *
+   * @return  The LDAP attributes to request.
+   */
+  private String[] getRequestAttributes(final ResourceMapper mapper,
+                                        final SCIMQueryAttributes attributes,
+                                        final Set<String> filterAttributes)
+  {
+    Set<String> attributeSet = entryAttributes;
+    if (attributeSet == null)
     {
-      requestAttributeSet.add(entityTagAttribute);
+      attributeSet = new HashSet<String>(getLastModAttributes());
+      attributeSet.add("objectclass");
+      if (supportsVersioning())
+      {
+        attributeSet.add(entityTagAttribute);
+      }
+      attributeSet = Collections.unmodifiableSet(attributeSet);
+      entryAttributes = attributeSet;
     }
-    return requestAttributeSet;
+
+    return mapper.getLDAPAttributeProjection(attributes, attributeSet,
+                                             filterAttributes);
   }
 
 
@@ -2037,6 +3308,104 @@ public abstract class LDAPBackend
   }
 
 
+  /**
+   * Keep an entry returned for a resource as a snapshot from which the
+   * modifications for a later PUT may be computed.
+   *
+   * @param request     The request for which the entry was returned.
+   * @param resourceID  The resource ID.
+   * @param entry       The entry returned.
+   * @param attributes  The LDAP attributes that were requested for the entry.
+   */
+  private void putEntrySnapshot(final SCIMRequest request,
+                                final String resourceID,
+                                final SearchResultEntry entry,
+                                final String[] attributes)
+  {
+    final BoundedCache<List<String>, EntrySnapshot> snapshots =
+        entrySnapshots;
+    if (snapshots == null || !supportsVersioning() ||
+        !entry.hasAttribute(entityTagAttribute))
+    {
+      return;
+    }
+
+    final Set<String> attributeSet = new HashSet<String>(attributes.length);
+    for (final String attribute : attributes)
+    {
+      attributeSet.add(StaticUtils.toLowerCase(attribute));
+    }
+    snapshots.put(getEntrySnapshotKey(request, resourceID),
+        new EntrySnapshot(entry, attributeSet));
+  }
+
+
+
+  /**
+   * Retrieve a kept entry snapshot for a resource whose entity tag is named in
+   * the If-Match header of the request.
+   *
+   * @param request     The request.
+   * @param resourceID  The resource ID.
+   * @param attributes  The LDAP attributes that are needed from the entry.
+   *
+   * @return  The entry snapshot, or {@code null} if there is no suitable
+   *          snapshot.
+   *
+   * @throws ServerErrorException  If the entity tag of the snapshot cannot be
+   *                               determined.
+   */
+  private SearchResultEntry getEntrySnapshot(final SCIMRequest request,
+                                             final String resourceID,
+                                             final String[] attributes)
+      throws ServerErrorException
+  {
+    final BoundedCache<List<String>, EntrySnapshot> snapshots =
+        entrySnapshots;
+    if (snapshots == null || !supportsVersioning())
+    {
+      return null;
+    }
+
+    final EntrySnapshot snapshot =
+        snapshots.get(getEntrySnapshotKey(request, resourceID));
+    if (snapshot == null ||
+        !request.isIfMatchVersion(getEntityTagValue(snapshot.entry)))
+    {
+      return null;
+    }
+
+    for (final String attribute : attributes)
+    {
+      if (!snapshot.attributes.contains(StaticUtils.toLowerCase(attribute)))
+      {
+        return null;
+      }
+    }
+    return snapshot.entry;
+  }
+
+
+
+  /**
+   * Create the key for the entry snapshot of a resource. Snapshots are kept
+   * for each user, since the attributes returned may depend on the user's
+   * access rights.
+   *
+   * @param request     The request.
+   * @param resourceID  The resource ID.
+   *
+   * @return  The key for the entry snapshot.
+   */
+  private static List<String> getEntrySnapshotKey(final SCIMRequest request,
+                                                  final String resourceID)
+  {
+    return Arrays.asList(request.getAuthenticatedUserID(),
+        request.getResourceDescriptor().getName(), resourceID);
+  }
+
+
+
   /**
    * Clears the per-request ThreadLocal caches.
    */
@@ -2045,4 +3414,218 @@ public abstract class LDAPBackend
     GroupsDerivedAttribute.clearRequestCache();
     MembersDerivedAttribute.clearRequestCache();
   }
+
+
+
+  /**
+   * Invalidates any data cached across requests for an entry that has been
+   * modified, renamed or deleted.
+   *
+   * @param dn  The DN of the entry, before any rename.
+   *
+   * @throws LDAPException  If the DN cannot be parsed.
+   */
+  private static void invalidateSharedCaches(final String dn)
+      throws LDAPException
+  {
+    GroupsDerivedAttribute.invalidateSharedCaches(new DN(dn));
+  }
+
+
+
+  /**
+   * An entry returned for a resource, with the LDAP attributes that were
+   * requested for it.
+   */
+  private static final class EntrySnapshot
+  {
+    /**
+     * The entry returned.
+     */
+    private final SearchResultEntry entry;
+
+    /**
+     * The names of the requested LDAP attributes, in lower case.
+     */
+    private final Set<String> attributes;
+
+
+
+    /**
+     * Create a new entry snapshot.
+     *
+     * @param entry       The entry returned.
+     * @param attributes  The names of the requested LDAP attributes, in lower
+     *                    case.
+     */
+    EntrySnapshot(final SearchResultEntry entry, final Set<String> attributes)
+    {
+      this.entry = entry;
+      this.attributes = attributes;
+    }
+  }
+
+
+
+  /**
+   * The LDAP updates that apply a SCIM request, prepared so that they may be
+   * processed either on their own or together with the updates for other
+   * requests.
+   */
+  private abstract static class PreparedUpdate
+  {
+    /**
+     * The resource mapper for the resource.
+     */
+    private final ResourceMapper mapper;
+
+    /**
+     * The LDAP request interface for the user making the request.
+     */
+    private final LDAPRequestInterface ldapInterface;
+
+    /**
+     * The LDAP add, delete, modify and modify DN requests, in the order they
+     * are to be processed.
+     */
+    private final List<LDAPRequest> updateRequests =
+        new ArrayList<LDAPRequest>(2);
+
+    /**
+     * The result of the last LDAP update, or {@code null} if there are no
+     * updates or they have not been processed.
+     */
+    private LDAPResult lastResult;
+
+    /**
+     * Indicates whether the updates were prepared without reading the
+     * current entry, so that they must be prepared again from the current
+     * entry if they fail because the entry has changed or moved.
+     */
+    private boolean optimistic;
+
+
+
+    /**
+     * Create a new prepared update.
+     *
+     * @param mapper         The resource mapper for the resource.
+     * @param ldapInterface  The LDAP request interface for the user making
+     *                       the request.
+     */
+    PreparedUpdate(final ResourceMapper mapper,
+                   final LDAPRequestInterface ldapInterface)
+    {
+      this.mapper = mapper;
+      this.ldapInterface = ldapInterface;
+    }
+
+
+
+    /**
+     * Process the LDAP updates one after another and complete the request.
+     *
+     * @return  The resource to be returned for the request, or {@code null}
+     *          for a Delete Resource request.
+     *
+     * @throws SCIMException  If the response cannot be created.
+     * @throws LDAPException  If an LDAP update fails.
+     */
+    BaseResource process() throws SCIMException, LDAPException
+    {
+      for (final LDAPRequest updateRequest : updateRequests)
+      {
+        if (updateRequest instanceof AddRequest)
+        {
+          lastResult = ldapInterface.add((AddRequest) updateRequest);
+        }
+        else if (updateRequest instanceof DeleteRequest)
+        {
+          lastResult = ldapInterface.delete((DeleteRequest) updateRequest);
+        }
+        else if (updateRequest instanceof ModifyDNRequest)
+        {
+          lastResult =
+              ldapInterface.modifyDN((ModifyDNRequest) updateRequest);
+        }
+        else
+        {
+          lastResult = ldapInterface.modify((ModifyRequest) updateRequest);
+        }
+        updated(updateRequest);
+      }
+      return complete(lastResult);
+    }
+
+
+
+    /**
+     * Complete the request after its LDAP updates have been applied together
+     * with those of other requests.
+     *
+     * @return  The resource to be returned for the request, or {@code null}
+     *          for a Delete Resource request.
+     *
+     * @throws SCIMException  If the response cannot be created.
+     * @throws LDAPException  If an error occurs while reading the entry.
+     */
+    BaseResource completeApplied() throws SCIMException, LDAPException
+    {
+      for (final LDAPRequest updateRequest : updateRequests)
+      {
+        updated(updateRequest);
+      }
+      return complete(lastResult);
+    }
+
+
+
+    /**
+     * Invalidate any cached data for an entry that has been updated.
+     *
+     * @param updateRequest  The LDAP update that has been applied.
+     *
+     * @throws LDAPException  If the DN of the entry cannot be parsed.
+     */
+    private void updated(final LDAPRequest updateRequest)
+        throws LDAPException
+    {
+      if (updateRequest instanceof DeleteRequest)
+      {
+        final String dn = ((DeleteRequest) updateRequest).getDN();
+        invalidateSharedCaches(dn);
+        mapper.removeCachedResourceID(dn);
+      }
+      else if (updateRequest instanceof ModifyDNRequest)
+      {
+        final String dn = ((ModifyDNRequest) updateRequest).getDN();
+        invalidateSharedCaches(dn);
+        mapper.removeCachedResourceID(dn);
+      }
+      else if (updateRequest instanceof ModifyRequest)
+      {
+        final ModifyRequest modifyRequest = (ModifyRequest) updateRequest;
+        invalidateSharedCaches(modifyRequest.getDN());
+        mapper.removeCachedResourceID(modifyRequest);
+      }
+    }
+
+
+
+    /**
+     * Create the response to the request after its LDAP updates have been
+     * applied.
+     *
+     * @param lastResult  The result of the last LDAP update, or {@code null}
+     *                    if there were no updates.
+     *
+     * @return  The resource to be returned for the request, or {@code null}
+     *          for a Delete Resource request.
+     *
+     * @throws SCIMException  If the response cannot be created.
+     * @throws LDAPException  If an error occurs while reading the entry.
+     */
+    abstract BaseResource complete(final LDAPResult lastResult)
+        throws SCIMException, LDAPException;
+  }
 }
@@ -17,11 +17,15 @@
 
 package com.unboundid.scim.ldap;
 
+import com.unboundid.ldap.sdk.AbstractConnectionPool;
 import com.unboundid.ldap.sdk.AddRequest;
 import com.unboundid.ldap.sdk.Control;
 import com.unboundid.ldap.sdk.DeleteRequest;
+import com.unboundid.ldap.sdk.ExtendedResult;
+import com.unboundid.ldap.sdk.LDAPConnection;
 import com.unboundid.ldap.sdk.LDAPException;
 import com.unboundid.ldap.sdk.LDAPInterface;
+import com.unboundid.ldap.sdk.LDAPRequest;
 import com.unboundid.ldap.sdk.LDAPResult;
 import com.unboundid.ldap.sdk.LDAPSearchException;
 import com.unboundid.ldap.sdk.ModifyDNRequest;
@@ -29,7 +33,23 @@ import com.unboundid.ldap.sdk.ModifyRequest;
 import com.unboundid.ldap.sdk.SearchRequest;
 import com.unboundid.ldap.sdk.SearchResult;
 import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.ResultCode;
 import com.unboundid.ldap.sdk.UpdatableLDAPRequest;
+import com.unboundid.ldap.sdk.unboundidds.extensions.MultiUpdateErrorBehavior;
+import com.unboundid.ldap.sdk.unboundidds.extensions.MultiUpdateExtendedRequest;
+import com.unboundid.ldap.sdk.unboundidds.extensions.MultiUpdateExtendedResult;
+import com.unboundid.scim.sdk.Debug;
+import com.unboundid.scim.sdk.OperationTrace;
+import com.unboundid.scim.sdk.RequestPhase;
+import com.unboundid.scim.sdk.RequestTimer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 
 
@@ -39,8 +59,48 @@ import com.unboundid.ldap.sdk.UpdatableLDAPRequest;
  */
 public class LDAPRequestInterface
 {
+  /**
+   * The name under which search operations are timed.
+   */
+  protected static final String OPERATION_SEARCH = "ldap-search";
+
+  /**
+   * The name under which add operations are timed.
+   */
+  protected static final String OPERATION_ADD = "ldap-add";
+
+  /**
+   * The name under which modify operations are timed.
+   */
+  protected static final String OPERATION_MODIFY = "ldap-modify";
+
+  /**
+   * The name under which modify DN operations are timed.
+   */
+  protected static final String OPERATION_MODIFY_DN = "ldap-modify-dn";
+
+  /**
+   * The name under which delete operations are timed.
+   */
+  protected static final String OPERATION_DELETE = "ldap-delete";
+
+  /**
+   * The name under which multi-update extended operations are timed.
+   */
+  protected static final String OPERATION_MULTI_UPDATE = "ldap-multi-update";
+
   private final LDAPInterface ldapInterface;
   private final Control[] controls;
+  private volatile ExecutorService searchExecutor;
+
+  /**
+   * The timer of the SCIM request for which this interface was created, or
+   * {@code null} if it was not created while processing a request. It is
+   * only used for operations processed on threads that are not processing a
+   * request, such as those of a search executor, so that an interface that
+   * outlives its request does not record operations in a finished timer.
+   */
+  private final RequestTimer timer;
 
 
   /**
@@ -51,13 +111,238 @@ public class LDAPRequestInterface
    */
   public LDAPRequestInterface(final LDAPInterface ldapInterface,
                               final Control... controls)
+  {
+    this(ldapInterface, RequestTimer.getCurrent(), controls);
+  }
+
+
+
+  /**
+   * Create a new instance of this LDAP request interface that records the
+   * operations processed on threads that are not processing a request in
+   * the timer of a SCIM request.
+   *
+   * @param ldapInterface  The LDAP interface to be wrapped.
+   * @param timer          The timer of the SCIM request, or {@code null} if
+   *                       those operations are not to be recorded.
+   * @param controls       A set of controls to be inserted into each request.
+   */
+  protected LDAPRequestInterface(final LDAPInterface ldapInterface,
+                                 final RequestTimer timer,
+                                 final Control... controls)
   {
     this.ldapInterface = ldapInterface;
+    this.timer         = timer;
     this.controls      = controls;
   }
 
 
 
+  /**
+   * Specifies an executor on which independent searches, such as searches of
+   * several base DNs, may be processed concurrently. The executor is owned by
+   * the caller and should be bounded, since each concurrent search occupies
+   * one of its threads for the duration of the search. If an executor is not
+   * provided then independent searches are processed one after another.
+   *
+   * @param searchExecutor  The executor on which searches may be processed
+   *                        concurrently, or {@code null} if searches are to be
+   *                        processed sequentially.
+   */
+  public void setSearchExecutor(final ExecutorService searchExecutor)
+  {
+    this.searchExecutor = searchExecutor;
+  }
+
+
+
+  /**
+   * Retrieve the executor on which independent searches may be processed
+   * concurrently.
+   *
+   * @return  The executor on which independent searches may be processed
+   *          concurrently, or {@code null} if searches are processed
+   *          sequentially.
+   */
+  public ExecutorService getSearchExecutor()
+  {
+    return searchExecutor;
+  }
+
+
+
+  /**
+   * Retrieve the LDAP request interface to be used for the reads and writes
+   * of an update, so that the reads see the current state of the entries
+   * being updated. This implementation processes all requests on the same
+   * LDAP interface, so it returns this interface.
+   *
+   * @return  The LDAP request interface to be used for an update.
+   */
+  public LDAPRequestInterface getUpdateInterface()
+  {
+    return this;
+  }
+
+
+
+  /**
+   * Retrieve the LDAP request interface to be used for a sequence of searches
+   * with the simple paged results control. A paged results cookie is only
+   * valid on the connection that returned it, so if the wrapped LDAP
+   * interface is a connection pool, this implementation checks a connection
+   * out of the pool and returns an interface that processes every search on
+   * that connection. Otherwise it returns this interface. The interface
+   * returned must be released using {@link #release} once the sequence is
+   * complete.
+   *
+   * @return  The LDAP request interface to be used for a sequence of paged
+   *          searches.
+   *
+   * @throws LDAPException  If a connection could not be checked out.
+   */
+  public LDAPRequestInterface getPagedSearchInterface()
+      throws LDAPException
+  {
+    if (!(ldapInterface instanceof AbstractConnectionPool))
+    {
+      return this;
+    }
+
+    final AbstractConnectionPool pool = (AbstractConnectionPool) ldapInterface;
+    final LDAPConnection connection = pool.getConnection();
+    final LDAPRequestInterface updateInterface = getUpdateInterface();
+    return new LDAPRequestInterface(connection, timer, controls)
+    {
+      @Override
+      public LDAPRequestInterface getUpdateInterface()
+      {
+        return updateInterface;
+      }
+
+      @Override
+      public LDAPRequestInterface getPagedSearchInterface()
+      {
+        return this;
+      }
+
+      @Override
+      public void release()
+      {
+        if (connection.isConnected())
+        {
+          pool.releaseConnection(connection);
+        }
+        else
+        {
+          pool.releaseDefunctConnection(connection);
+        }
+      }
+    };
+  }
+
+
+
+  /**
+   * Release the resources held by an LDAP request interface returned by
+   * {@link #getPagedSearchInterface}, such as a connection checked out of a
+   * pool. This implementation does nothing.
+   */
+  public void release()
+  {
+    // No implementation required.
+  }
+
+
+
+  /**
+   * Retrieve the timer of the SCIM request in which an operation is
+   * processed: the timer of the request being processed by the current
+   * thread, or if there is none, the timer of the request for which this
+   * interface was created.
+   *
+   * @return  The timer of the SCIM request, or {@code null} if there is none.
+   */
+  protected RequestTimer getTimer()
+  {
+    final RequestTimer currentTimer = RequestTimer.getCurrent();
+    return currentTimer != null ? currentTimer : timer;
+  }
+
+
+
+  /**
+   * Retrieve the controls to be inserted into each request.
+   *
+   * @return  The controls to be inserted into each request.
+   */
+  protected Control[] getControls()
+  {
+    return controls;
+  }
+
+
+
+  /**
+   * Record the time taken by an LDAP update in the timer returned by
+   * {@link #getTimer}, if there is one, and trace the update if the timer is
+   * tracing operations.
+   *
+   * @param operation  The name under which the update is timed, such as
+   *                   {@link #OPERATION_MODIFY}.
+   * @param dn         The DN of the entry updated, or {@code null} if the
+   *                   operation updates several entries.
+   * @param startTime  The value of {@code System.nanoTime()} when the
+   *                   update began.
+   */
+  protected void recordOperation(final String operation, final String dn,
+                                 final long startTime)
+  {
+    final RequestTimer requestTimer = getTimer();
+    if (requestTimer != null)
+    {
+      final long nanos = System.nanoTime() - startTime;
+      requestTimer.addOperation(RequestPhase.LDAP, operation, nanos);
+      if (requestTimer.reserveTrace())
+      {
+        requestTimer.addTrace(
+            new OperationTrace(operation, dn, null, null, -1, nanos));
+      }
+    }
+  }
+
+
+
+  /**
+   * Record the time taken by an LDAP search in the timer returned by
+   * {@link #getTimer}, if there is one, and trace the search if the timer is
+   * tracing operations.
+   *
+   * @param searchRequest  The search request.
+   * @param entries        The number of entries returned by the search.
+   * @param startTime      The value of {@code System.nanoTime()} when the
+   *                       search began.
+   */
+  protected void recordSearch(final SearchRequest searchRequest,
+                              final int entries, final long startTime)
+  {
+    final RequestTimer requestTimer = getTimer();
+    if (requestTimer != null)
+    {
+      final long nanos = System.nanoTime() - startTime;
+      requestTimer.addOperation(RequestPhase.LDAP, OPERATION_SEARCH, nanos);
+      if (requestTimer.reserveTrace())
+      {
+        // The filter is only formatted if the trace is read.
+        requestTimer.addTrace(new OperationTrace(OPERATION_SEARCH,
+            searchRequest.getBaseDN(), searchRequest.getScope().getName(),
+            searchRequest.getFilter(), entries, nanos));
+      }
+    }
+  }
+
+
+
   /**
    * Add any common controls that may be required for LDAP requests.
    *
@@ -103,7 +388,24 @@ public class LDAPRequestInterface
        throws LDAPSearchException
   {
     addControls(searchRequest);
-    return ldapInterface.searchForEntry(searchRequest);
+    final long startTime = System.nanoTime();
+    int entries = 0;
+    try
+    {
+      final SearchResultEntry entry =
+          ldapInterface.searchForEntry(searchRequest);
+      entries = entry == null ? 0 : 1;
+      return entry;
+    }
+    catch (LDAPSearchException e)
+    {
+      entries = e.getEntryCount();
+      throw e;
+    }
+    finally
+    {
+      recordSearch(searchRequest, entries, startTime);
+    }
   }
 
 
@@ -126,7 +428,23 @@ public class LDAPRequestInterface
        throws LDAPSearchException
   {
     addControls(searchRequest);
-    return ldapInterface.search(searchRequest);
+    final long startTime = System.nanoTime();
+    int entries = 0;
+    try
+    {
+      final SearchResult result = ldapInterface.search(searchRequest);
+      entries = result.getEntryCount();
+      return result;
+    }
+    catch (LDAPSearchException e)
+    {
+      entries = e.getEntryCount();
+      throw e;
+    }
+    finally
+    {
+      recordSearch(searchRequest, entries, startTime);
+    }
   }
 
 
@@ -147,7 +465,15 @@ public class LDAPRequestInterface
        throws LDAPException
   {
     addControls(modifyRequest);
-    return ldapInterface.modify(modifyRequest);
+    final long startTime = System.nanoTime();
+    try
+    {
+      return ldapInterface.modify(modifyRequest);
+    }
+    finally
+    {
+      recordOperation(OPERATION_MODIFY, modifyRequest.getDN(), startTime);
+    }
   }
 
 
@@ -168,7 +494,15 @@ public class LDAPRequestInterface
        throws LDAPException
   {
     addControls(modifyDNRequest);
-    return ldapInterface.modifyDN(modifyDNRequest);
+    final long startTime = System.nanoTime();
+    try
+    {
+      return ldapInterface.modifyDN(modifyDNRequest);
+    }
+    finally
+    {
+      recordOperation(OPERATION_MODIFY_DN, modifyDNRequest.getDN(), startTime);
+    }
   }
 
 
@@ -189,7 +523,15 @@ public class LDAPRequestInterface
        throws LDAPException
   {
     addControls(addRequest);
-    return ldapInterface.add(addRequest);
+    final long startTime = System.nanoTime();
+    try
+    {
+      return ldapInterface.add(addRequest);
+    }
+    finally
+    {
+      recordOperation(OPERATION_ADD, addRequest.getDN(), startTime);
+    }
   }
 
 
@@ -210,6 +552,211 @@ public class LDAPRequestInterface
        throws LDAPException
   {
     addControls(deleteRequest);
-    return ldapInterface.delete(deleteRequest);
+    final long startTime = System.nanoTime();
+    try
+    {
+      return ldapInterface.delete(deleteRequest);
+    }
+    finally
+    {
+      recordOperation(OPERATION_DELETE, deleteRequest.getDN(), startTime);
+    }
+  }
+
+
+
+  /**
+   * Processes the provided add, delete, modify and modify DN requests as a
+   * single atomic unit using the multi-update extended operation, so that
+   * either all of the updates are applied or none of them are. The common
+   * controls are added to each of the updates.
+   *
+   * @param  updateRequests  The update requests to be processed, in the order
+   *                         in which they are to be applied.  They must all be
+   *                         add, delete, modify or modify DN requests.
+   *
+   * @return  The result of processing the multi-update extended operation,
+   *          which includes the results of the individual updates.
+   *
+   * @throws  LDAPException  If the wrapped LDAP interface does not support
+   *                         extended operations, or if a problem is encountered
+   *                         while sending the request or reading the response.
+   */
+  public MultiUpdateExtendedResult multiUpdate(
+      final List<LDAPRequest> updateRequests)
+       throws LDAPException
+  {
+    for (final LDAPRequest updateRequest : updateRequests)
+    {
+      addControls((UpdatableLDAPRequest) updateRequest);
+    }
+
+    final MultiUpdateExtendedRequest request =
+        new MultiUpdateExtendedRequest(MultiUpdateErrorBehavior.ATOMIC,
+                                       updateRequests);
+    final ExtendedResult result;
+    if (ldapInterface instanceof LDAPConnection)
+    {
+      final long startTime = System.nanoTime();
+      try
+      {
+        result = ((LDAPConnection) ldapInterface).processExtendedOperation(
+            request);
+      }
+      finally
+      {
+        recordOperation(OPERATION_MULTI_UPDATE, null, startTime);
+      }
+    }
+    else if (ldapInterface instanceof AbstractConnectionPool)
+    {
+      final long startTime = System.nanoTime();
+      try
+      {
+        result = ((AbstractConnectionPool) ldapInterface).
+            processExtendedOperation(request);
+      }
+      finally
+      {
+        recordOperation(OPERATION_MULTI_UPDATE, null, startTime);
+      }
+    }
+    else
+    {
+      throw new LDAPException(ResultCode.NOT_SUPPORTED,
+          "The LDAP interface does not support extended operations");
+    }
+
+    if (result instanceof MultiUpdateExtendedResult)
+    {
+      return (MultiUpdateExtendedResult) result;
+    }
+    return new MultiUpdateExtendedResult(result);
+  }
+
+
+
+  /**
+   * Processes the provided independent search requests, concurrently if a
+   * search executor has been provided. The search requests must not be
+   * configured with a search result listener, so that matching entries are
+   * returned in the search results rather than being delivered on the threads
+   * processing the searches.
+   * <p>
+   * A search that does not complete successfully does not cause the other
+   * searches to be abandoned. Instead, its result is returned in the
+   * corresponding position of the list, with whatever entries were returned
+   * before it failed, and the caller decides which result codes are
+   * acceptable.
+   *
+   * @param  searchRequests  The search requests to be processed.
+   *
+   * @return  The search results, in the same order as the search requests.
+   *
+   * @throws  LDAPSearchException  If the thread was interrupted while waiting
+   *                               for the searches to complete.
+   */
+  public List<SearchResult> search(final List<SearchRequest> searchRequests)
+       throws LDAPSearchException
+  {
+    final List<SearchResult> results =
+        new ArrayList<SearchResult>(searchRequests.size());
+    final ExecutorService executor = searchExecutor;
+    if (executor == null || searchRequests.size() < 2)
+    {
+      for (final SearchRequest searchRequest : searchRequests)
+      {
+        results.add(searchQuietly(searchRequest));
+      }
+      return results;
+    }
+
+    // Submit all but the first search, and process the first search on this
+    // thread while the others are in progress.
+    final List<Future<SearchResult>> futures =
+        new ArrayList<Future<SearchResult>>(searchRequests.size() - 1);
+    for (final SearchRequest searchRequest :
+        searchRequests.subList(1, searchRequests.size()))
+    {
+      try
+      {
+        futures.add(executor.submit(new Callable<SearchResult>()
+        {
+          public SearchResult call()
+          {
+            return searchQuietly(searchRequest);
+          }
+        }));
+      }
+      catch (RejectedExecutionException e)
+      {
+        // The executor is saturated. Process the search when its result is
+        // needed.
+        Debug.debugException(e);
+        futures.add(null);
+      }
+    }
+
+    results.add(searchQuietly(searchRequests.get(0)));
+    for (int i = 0; i < futures.size(); i++)
+    {
+      final Future<SearchResult> future = futures.get(i);
+      if (future == null)
+      {
+        results.add(searchQuietly(searchRequests.get(i + 1)));
+        continue;
+      }
+
+      try
+      {
+        results.add(future.get());
+      }
+      catch (InterruptedException e)
+      {
+        Debug.debugException(e);
+        for (final Future<SearchResult> f : futures)
+        {
+          if (f != null)
+          {
+            f.cancel(true);
+          }
+        }
+        Thread.currentThread().interrupt();
+        throw new LDAPSearchException(ResultCode.LOCAL_ERROR,
+            "Interrupted while waiting for a search to complete", e);
+      }
+      catch (ExecutionException e)
+      {
+        Debug.debugException(e);
+        results.add(new LDAPSearchException(ResultCode.LOCAL_ERROR,
+            "Unexpected error while processing a search: " +
+            e.getCause(), e.getCause()).getSearchResult());
+      }
+    }
+
+    return results;
+  }
+
+
+
+  /**
+   * Processes the provided search request, returning the result of a search
+   * that did not complete successfully rather than throwing an exception.
+   *
+   * @param  searchRequest  The search request to be processed.
+   *
+   * @return  The search result.
+   */
+  private SearchResult searchQuietly(final SearchRequest searchRequest)
+  {
+    try
+    {
+      return search(searchRequest);
+    }
+    catch (LDAPSearchException e)
+    {
+      Debug.debugException(e);
+      return e.getSearchResult();
+    }
   }
 }
@@ -17,14 +17,18 @@
 
 package com.unboundid.scim.ldap;
 
+import com.unboundid.ldap.sdk.Attribute;
 import com.unboundid.ldap.sdk.Control;
 import com.unboundid.ldap.sdk.DN;
 import com.unboundid.ldap.sdk.Entry;
 import com.unboundid.ldap.sdk.Filter;
 import com.unboundid.ldap.sdk.LDAPException;
 import com.unboundid.ldap.sdk.LDAPSearchException;
+import com.unboundid.ldap.sdk.Modification;
+import com.unboundid.ldap.sdk.ModifyRequest;
 import com.unboundid.ldap.sdk.ResultCode;
 import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResult;
 import com.unboundid.ldap.sdk.SearchResultEntry;
 import com.unboundid.ldap.sdk.SearchScope;
 import com.unboundid.scim.schema.CoreSchema;
@@ -34,10 +38,13 @@ import com.unboundid.scim.sdk.ResourceNotFoundException;
 import com.unboundid.scim.sdk.SCIMException;
 import com.unboundid.util.StaticUtils;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
@@ -54,6 +61,24 @@ public class LDAPSearchResolver
   private final Set<DN> baseDNs;
   private final Set<DN> excludeBaseDNs;
 
+  /**
+   * The DNs of recently seen resource entries, keyed by resource ID, or
+   * {@code null} if resource IDs are not cached.
+   */
+  private final BoundedCache<String, String> idToDnCache;
+
+  /**
+   * The resource IDs of recently seen resource entries, keyed by DN, or
+   * {@code null} if resource IDs are not cached.
+   */
+  private final BoundedCache<DN, String> dnToIdCache;
+
+  /**
+   * The lower-case names of the sort attributes of the VLV indexes declared
+   * for each base DN.
+   */
+  private final Map<DN, Set<String>> vlvIndexes;
+
   /**
    * Create a new instance of LDAPSearchResolver.
    *
@@ -76,6 +101,37 @@ public class LDAPSearchResolver
     }
     this.baseDNs = Collections.unmodifiableSet(dnSet);
     this.excludeBaseDNs = Collections.unmodifiableSet(excludeBaseDNs);
+
+    final ResourceIDMapping resourceIDMapping =
+        ldapSearchParameters.getResourceIDMapping();
+    if (resourceIDMapping != null && resourceIDMapping.getCacheSize() > 0)
+    {
+      final long timeToLiveMillis =
+          Math.max(resourceIDMapping.getCacheTTLMillis(), 0);
+      this.idToDnCache = new BoundedCache<String, String>(
+          resourceIDMapping.getCacheSize(), timeToLiveMillis);
+      this.dnToIdCache = new BoundedCache<DN, String>(
+          resourceIDMapping.getCacheSize(), timeToLiveMillis);
+    }
+    else
+    {
+      this.idToDnCache = null;
+      this.dnToIdCache = null;
+    }
+
+    final Map<DN, Set<String>> indexes = new HashMap<DN, Set<String>>();
+    for (final VLVIndex vlvIndex : ldapSearchParameters.getVlvIndex())
+    {
+      final DN indexBaseDN = new DN(vlvIndex.getBaseDN());
+      Set<String> sortAttributes = indexes.get(indexBaseDN);
+      if (sortAttributes == null)
+      {
+        sortAttributes = new HashSet<String>();
+        indexes.put(indexBaseDN, sortAttributes);
+      }
+      sortAttributes.add(StaticUtils.toLowerCase(vlvIndex.getSortAttribute()));
+    }
+    this.vlvIndexes = indexes;
   }
 
 
@@ -116,6 +172,56 @@ public class LDAPSearchResolver
 
 
 
+  /**
+   * Retrieves the LDAP attribute by which queries using the VLV request
+   * control are sorted when no sort is requested.
+   *
+   * @return  The default VLV sort attribute.
+   */
+  public String getVLVSortAttribute()
+  {
+    return ldapSearchParameters.getVlvSortAttribute();
+  }
+
+
+
+  /**
+   * Determines whether the VLV request control may be used to search the
+   * given base DNs sorted by the given attribute. If no VLV indexes have been
+   * declared then it is assumed that the directory server has the indexes it
+   * needs.
+   *
+   * @param searchBaseDNs  The base DNs to be searched.
+   * @param sortAttribute  The LDAP attribute by which the results are to be
+   *                       sorted.
+   *
+   * @return  {@code true} if every base DN has a VLV index for the sort
+   *          attribute.
+   */
+  public boolean hasVLVIndex(final Collection<DN> searchBaseDNs,
+                             final String sortAttribute)
+  {
+    if (vlvIndexes.isEmpty())
+    {
+      return true;
+    }
+
+    final String lowerSortAttribute = StaticUtils.toLowerCase(sortAttribute);
+    for (final DN baseDN : searchBaseDNs)
+    {
+      final Set<String> sortAttributes = vlvIndexes.get(baseDN);
+      if (sortAttributes == null ||
+          !sortAttributes.contains(lowerSortAttribute))
+      {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+
+
   /**
    * Determines whether the SCIM resource ID maps to the LDAP DN.
    *
@@ -148,7 +254,8 @@ public class LDAPSearchResolver
 
 
   /**
-   * Retrieve a resource ID from an LDAP entry.
+   * Retrieve a resource ID from an LDAP entry. If resource IDs are cached then
+   * the resource ID and DN of the entry are cached.
    *
    * @param entry  The LDAP entry, which must contain a value for the
    *               resource ID attribute unless the resource ID maps to the
@@ -186,7 +293,9 @@ public class LDAPSearchResolver
             "' because it does not have a value for the '" + idAttribute +
             "' attribute");
       }
-      return entry.getAttributeValue(idAttribute);
+      final String resourceID = entry.getAttributeValue(idAttribute);
+      cacheResourceID(resourceID, entry.getDN());
+      return resourceID;
     }
   }
 
@@ -394,48 +503,59 @@ public class LDAPSearchResolver
                Filter.createEqualityFilter(getIdAttribute(), resourceID),
                  getFilter());
 
-      for (DN baseDN : baseDNs)
+      entry = readCachedEntry(ldapInterface, resourceID, compoundFilter,
+                              controls, attributes);
+      if (entry != null)
       {
-        try
-        {
-          final SearchRequest searchRequest =
-              new SearchRequest(baseDN.toString(), SearchScope.SUB,
-                      compoundFilter, attributes);
-          searchRequest.setSizeLimit(1);
-          searchRequest.addControls(
-              controls.toArray(new Control[controls.size()]));
-          entry = ldapInterface.searchForEntry(searchRequest);
+        return entry;
+      }
 
-          if (entry != null)
+      if (baseDNs.size() > 1 && ldapInterface.getSearchExecutor() != null)
+      {
+        entry = searchBaseDNsConcurrently(ldapInterface, resourceID,
+            compoundFilter, controls, true, attributes);
+      }
+      else
+      {
+        for (DN baseDN : baseDNs)
+        {
+          try
           {
-            for (DN excludeBaseDN : excludeBaseDNs)
+            final SearchRequest searchRequest =
+                new SearchRequest(baseDN.toString(), SearchScope.SUB,
+                        compoundFilter, attributes);
+            searchRequest.setSizeLimit(1);
+            searchRequest.addControls(
+                controls.toArray(new Control[controls.size()]));
+            entry = ldapInterface.searchForEntry(searchRequest);
+
+            if (entry != null)
             {
-              if (excludeBaseDN.isAncestorOf(entry.getParsedDN(), true))
+              for (DN excludeBaseDN : excludeBaseDNs)
+              {
+                if (excludeBaseDN.isAncestorOf(entry.getParsedDN(), true))
+                {
+                  entry = null;
+                  break;
+                }
+              }
+              if(entry != null)
               {
-                entry = null;
                 break;
               }
             }
-            if(entry != null)
-            {
-              break;
-            }
           }
-        }
-        catch (LDAPException e)
-        {
-          Debug.debugException(e);
-          if(e.getResultCode() != ResultCode.INVALID_ATTRIBUTE_SYNTAX)
+          catch (LDAPException e)
           {
-            throw ResourceMapper.toSCIMException(
-                "Error searching for resource '" + resourceID + "': " +
-                    StaticUtils.getExceptionMessage(e), e);
+            Debug.debugException(e);
+            if(!isNotInBaseDN(e.getResultCode()))
+            {
+              throw ResourceMapper.toSCIMException(
+                  "Error searching for resource '" + resourceID + "': " +
+                      StaticUtils.getExceptionMessage(e), e);
+            }
+            entry = null;
           }
-          // This is likely if the provided resource ID value violates
-          // the mapped LDAP attribute's syntax. This should map to 404
-          // instead of 400 since SCIM treats the resource ID as an opaque
-          // value and shouldn't enforce any syntax on it.
-          entry = null;
         }
       }
     }
@@ -446,6 +566,7 @@ public class LDAPSearchResolver
           "Resource '" + resourceID + "' not found");
     }
 
+    cacheResourceID(resourceID, entry.getDN());
     return entry;
   }
 
@@ -480,34 +601,50 @@ public class LDAPSearchResolver
               Filter.createEqualityFilter(getIdAttribute(), resourceID),
               getFilter());
 
-      for (DN baseDN : baseDNs)
+      final Entry cachedEntry = readCachedEntry(ldapInterface, resourceID,
+          compoundFilter, Collections.<Control>emptyList(), "1.1");
+      if (cachedEntry != null)
       {
-        try
+        return cachedEntry.getDN();
+      }
+
+      if (baseDNs.size() > 1 && ldapInterface.getSearchExecutor() != null)
+      {
+        final Entry entry = searchBaseDNsConcurrently(ldapInterface,
+            resourceID, compoundFilter, Collections.<Control>emptyList(),
+            false, getIdAttribute());
+        if (entry != null)
         {
-          final SearchRequest searchRequest =
-             new SearchRequest(baseDN.toString(), SearchScope.SUB,
-                  compoundFilter, getIdAttribute());
-          searchRequest.setSizeLimit(1);
-          Entry entry = ldapInterface.searchForEntry(searchRequest);
-          if (entry != null)
-          {
-            dn = entry.getDN();
-            break;
-          }
+          dn = entry.getDN();
         }
-        catch(LDAPSearchException e)
+      }
+      else
+      {
+        for (DN baseDN : baseDNs)
         {
-          Debug.debugException(e);
-          if(e.getResultCode() != ResultCode.INVALID_ATTRIBUTE_SYNTAX)
+          try
           {
-            throw ResourceMapper.toSCIMException(
-                "Error searching for resource '" + resourceID + "': " +
-                   StaticUtils.getExceptionMessage(e), e);
+            final SearchRequest searchRequest =
+               new SearchRequest(baseDN.toString(), SearchScope.SUB,
+                    compoundFilter, getIdAttribute());
+            searchRequest.setSizeLimit(1);
+            Entry entry = ldapInterface.searchForEntry(searchRequest);
+            if (entry != null)
+            {
+              dn = entry.getDN();
+              break;
+            }
+          }
+          catch(LDAPSearchException e)
+          {
+            Debug.debugException(e);
+            if(!isNotInBaseDN(e.getResultCode()))
+            {
+              throw ResourceMapper.toSCIMException(
+                  "Error searching for resource '" + resourceID + "': " +
+                     StaticUtils.getExceptionMessage(e), e);
+            }
           }
-          // This is likely if the provided resource ID value violates
-          // the mapped LDAP attribute's syntax. This should map to 404
-          // instead of 400 since SCIM treats the resource ID as an opaque
-          // value and shouldn't enforce any syntax on it.
         }
       }
     }
@@ -518,11 +655,190 @@ public class LDAPSearchResolver
           "Resource '" + resourceID + "' not found");
     }
 
+    cacheResourceID(resourceID, dn);
     return dn;
   }
 
 
 
+  /**
+   * Determine the DN of the LDAP entry identified by the given resource ID
+   * without reading the entry, either because the resource ID is the DN or
+   * because the DN has been cached. The entry might no longer be the
+   * resource, so an update of the entry should assert the filter returned by
+   * {@link #getResourceFilter}.
+   *
+   * @param resourceID  The requested SCIM resource ID.
+   *
+   * @return  The probable LDAP DN for the given resource ID, or {@code null}
+   *          if it cannot be determined without reading the entry.
+   */
+  public String getProbableDnFromId(final String resourceID)
+  {
+    if (idMapsToDn())
+    {
+      return isDnInScope(resourceID) ? resourceID : null;
+    }
+
+    if (idToDnCache == null)
+    {
+      return null;
+    }
+    return idToDnCache.get(resourceID);
+  }
+
+
+
+  /**
+   * Create a filter that matches the LDAP entry identified by the given
+   * resource ID, if the entry satisfies the criteria for this resolver.
+   *
+   * @param resourceID  The requested SCIM resource ID.
+   *
+   * @return  A filter that matches the resource entry.
+   */
+  public Filter getResourceFilter(final String resourceID)
+  {
+    if (idMapsToDn())
+    {
+      return getFilter();
+    }
+
+    return Filter.createANDFilter(
+        Filter.createEqualityFilter(getIdAttribute(), resourceID),
+        getFilter());
+  }
+
+
+
+  /**
+   * Search all the base DNs for the entry identified by the given resource ID
+   * concurrently, using the search executor of the LDAP interface. If entries
+   * are found in more than one base DN then the entry from the first base DN
+   * is returned, as it would be if the base DNs were searched one after
+   * another.
+   *
+   * @param ldapInterface  The LDAP interface to use to search for the entry.
+   * @param resourceID     The requested SCIM resource ID.
+   * @param filter         The filter to find the entry in each base DN.
+   * @param controls       A set of search controls, which may be empty.
+   * @param checkExcluded  Whether entries in the excluded base DNs are to be
+   *                       ignored.
+   * @param attributes     The requested LDAP attributes.
+   *
+   * @return  The LDAP entry for the given resource ID, or {@code null} if
+   *          there is none.
+   *
+   * @throws SCIMException  If there was an error searching for the entry.
+   */
+  private SearchResultEntry searchBaseDNsConcurrently(
+      final LDAPRequestInterface ldapInterface,
+      final String resourceID,
+      final Filter filter,
+      final List<Control> controls,
+      final boolean checkExcluded,
+      final String... attributes)
+      throws SCIMException
+  {
+    final List<SearchRequest> searchRequests =
+        new ArrayList<SearchRequest>(baseDNs.size());
+    for (DN baseDN : baseDNs)
+    {
+      final SearchRequest searchRequest =
+          new SearchRequest(baseDN.toString(), SearchScope.SUB,
+              filter, attributes);
+      searchRequest.setSizeLimit(1);
+      searchRequest.addControls(
+          controls.toArray(new Control[controls.size()]));
+      searchRequests.add(searchRequest);
+    }
+
+    try
+    {
+      for (final SearchResult searchResult :
+          ldapInterface.search(searchRequests))
+      {
+        final ResultCode resultCode = searchResult.getResultCode();
+        if (isNotInBaseDN(resultCode))
+        {
+          continue;
+        }
+        else if (!resultCode.equals(ResultCode.SUCCESS))
+        {
+          throw new LDAPSearchException(searchResult);
+        }
+
+        for (final SearchResultEntry entry : searchResult.getSearchEntries())
+        {
+          if (!checkExcluded || !isExcluded(entry.getParsedDN()))
+          {
+            return entry;
+          }
+        }
+      }
+    }
+    catch (LDAPException e)
+    {
+      Debug.debugException(e);
+      throw ResourceMapper.toSCIMException(
+          "Error searching for resource '" + resourceID + "': " +
+              StaticUtils.getExceptionMessage(e), e);
+    }
+
+    return null;
+  }
+
+
+
+  /**
+   * Determine whether the search of a base DN for a resource entry failed
+   * only because the resource cannot be in that base DN, so that the other
+   * base DNs are searched instead of failing the request. The base DNs are
+   * skipped in the same cases whether they are searched one after another or
+   * concurrently.
+   * <p>
+   * A search fails with {@code noSuchObject} if the base entry is missing,
+   * although {@code LDAPInterface.searchForEntry} usually reports that as no
+   * entry. A search fails with {@code invalidAttributeSyntax} if the resource
+   * ID violates the syntax of the mapped LDAP attribute. That should map to
+   * 404 instead of 400 since SCIM treats the resource ID as an opaque value
+   * and shouldn't enforce any syntax on it.
+   *
+   * @param resultCode  The result code of the search.
+   *
+   * @return  {@code true} if the resource is not in the base DN that was
+   *          searched.
+   */
+  private static boolean isNotInBaseDN(final ResultCode resultCode)
+  {
+    return resultCode.equals(ResultCode.NO_SUCH_OBJECT) ||
+           resultCode.equals(ResultCode.INVALID_ATTRIBUTE_SYNTAX);
+  }
+
+
+
+  /**
+   * Determine whether a DN is in one of the excluded base DNs.
+   *
+   * @param dn  The DN for which to make the determination.
+   *
+   * @return  {@code true} if the DN is in one of the excluded base DNs.
+   */
+  private boolean isExcluded(final DN dn)
+  {
+    for (DN excludeBaseDN : excludeBaseDNs)
+    {
+      if (excludeBaseDN.isAncestorOf(dn, true))
+      {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+
+
   /**
    * Determine the resource ID of the resource identified by the given DN.
    *
@@ -544,12 +860,16 @@ public class LDAPSearchResolver
     }
     else
     {
+      // The cached resource IDs are shared by all requesters, so the entry is
+      // still read as this requester to confirm that it exists and that the
+      // requester may see it, but its resource ID attribute is not needed.
+      final String cachedID = getCachedResourceID(dn);
       final Entry entry;
       try
       {
         final SearchRequest searchRequest =
-            new SearchRequest(dn, SearchScope.BASE,
-                getFilter(), getIdAttribute());
+            new SearchRequest(dn, SearchScope.BASE, getFilter(),
+                cachedID == null ? getIdAttribute() : "1.1");
         searchRequest.setSizeLimit(1);
         entry = ldapInterface.searchForEntry(searchRequest);
       }
@@ -562,7 +882,7 @@ public class LDAPSearchResolver
       }
       if (entry != null)
       {
-        return getIdFromEntry(entry);
+        return cachedID == null ? getIdFromEntry(entry) : cachedID;
       }
     }
 
@@ -572,6 +892,179 @@ public class LDAPSearchResolver
 
 
 
+  /**
+   * Remove any resource ID cached for an LDAP entry that has been renamed or
+   * deleted.
+   *
+   * @param dn  The DN of the entry, before any rename.
+   */
+  public void removeCachedResourceID(final String dn)
+  {
+    if (dnToIdCache == null)
+    {
+      return;
+    }
+
+    try
+    {
+      final DN parsedDN = new DN(dn);
+      final String resourceID = dnToIdCache.get(parsedDN);
+      dnToIdCache.remove(parsedDN);
+      if (resourceID != null)
+      {
+        idToDnCache.remove(resourceID);
+      }
+    }
+    catch (LDAPException e)
+    {
+      Debug.debugException(e);
+    }
+  }
+
+
+
+  /**
+   * Remove any resource ID cached for an LDAP entry whose resource ID
+   * attribute has been modified.
+   *
+   * @param modifyRequest  The modify request that has been applied to the
+   *                       entry.
+   */
+  public void removeCachedResourceID(final ModifyRequest modifyRequest)
+  {
+    final String idAttribute = getIdAttribute();
+    if (dnToIdCache == null || idAttribute == null)
+    {
+      return;
+    }
+
+    for (final Modification modification : modifyRequest.getModifications())
+    {
+      if (Attribute.getBaseName(modification.getAttributeName()).
+          equalsIgnoreCase(idAttribute))
+      {
+        removeCachedResourceID(modifyRequest.getDN());
+        return;
+      }
+    }
+  }
+
+
+
+  /**
+   * Cache the DN of the entry for a resource ID.
+   *
+   * @param resourceID  The resource ID.
+   * @param dn          The DN of the resource entry.
+   */
+  private void cacheResourceID(final String resourceID, final String dn)
+  {
+    if (idToDnCache == null || resourceID == null || dn == null)
+    {
+      return;
+    }
+
+    try
+    {
+      dnToIdCache.put(new DN(dn), resourceID);
+      idToDnCache.put(resourceID, dn);
+    }
+    catch (LDAPException e)
+    {
+      Debug.debugException(e);
+    }
+  }
+
+
+
+  /**
+   * Retrieve the cached resource ID of the entry with the given DN.
+   *
+   * @param dn  The DN of the resource entry.
+   *
+   * @return  The cached resource ID, or {@code null} if there is none.
+   */
+  private String getCachedResourceID(final String dn)
+  {
+    if (dnToIdCache == null)
+    {
+      return null;
+    }
+
+    try
+    {
+      return dnToIdCache.get(new DN(dn));
+    }
+    catch (LDAPException e)
+    {
+      Debug.debugException(e);
+      return null;
+    }
+  }
+
+
+
+  /**
+   * Read the entry for a resource ID from the DN cached for the resource ID,
+   * using a base-scoped search that confirms the entry still has the resource
+   * ID and still satisfies the criteria for this resolver. A cached DN that no
+   * longer identifies the resource is removed from the cache.
+   *
+   * @param ldapInterface  The LDAP interface to use to read the entry.
+   * @param resourceID     The requested SCIM resource ID.
+   * @param filter         The filter the entry must match.
+   * @param controls       A set of search controls, which may be empty.
+   * @param attributes     The requested LDAP attributes.
+   *
+   * @return  The LDAP entry for the given resource ID, or {@code null} if
+   *          there is no valid cached DN for the resource ID.
+   */
+  private SearchResultEntry readCachedEntry(
+      final LDAPRequestInterface ldapInterface,
+      final String resourceID,
+      final Filter filter,
+      final List<Control> controls,
+      final String... attributes)
+  {
+    if (idToDnCache == null)
+    {
+      return null;
+    }
+
+    final String dn = idToDnCache.get(resourceID);
+    if (dn == null)
+    {
+      return null;
+    }
+
+    try
+    {
+      final SearchRequest searchRequest =
+          new SearchRequest(dn, SearchScope.BASE, filter, attributes);
+      searchRequest.setSizeLimit(1);
+      searchRequest.addControls(
+          controls.toArray(new Control[controls.size()]));
+      final SearchResultEntry entry =
+          ldapInterface.searchForEntry(searchRequest);
+      if (entry != null && isDnInScope(entry.getDN()))
+      {
+        return entry;
+      }
+    }
+    catch (LDAPException e)
+    {
+      // Fall back to searching the base DNs, which will report the error
+      // if it persists.
+      Debug.debugException(e);
+    }
+
+    removeCachedResourceID(dn);
+    idToDnCache.remove(resourceID);
+    return null;
+  }
+
+
+
   /**
    * Retrieve an attribute mapper for the id attribute.
    *
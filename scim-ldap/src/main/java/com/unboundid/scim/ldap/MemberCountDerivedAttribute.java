@@ -0,0 +1,227 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.ldap;
+
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.scim.schema.AttributeDescriptor;
+import com.unboundid.scim.sdk.AttributePath;
+import com.unboundid.scim.sdk.InvalidResourceException;
+import com.unboundid.scim.sdk.SCIMAttribute;
+import com.unboundid.scim.sdk.SCIMAttributeValue;
+import com.unboundid.scim.sdk.SCIMException;
+import com.unboundid.scim.sdk.SCIMFilter;
+import com.unboundid.scim.sdk.SCIMObject;
+import com.unboundid.scim.sdk.SimpleValue;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+
+
+/**
+ * This class provides a derived attribute implementation for a read-only
+ * attribute of Group resources that holds the number of members of the group.
+ * The count is taken from the member or uniqueMember attribute values in the
+ * group entry, without reading any of the member entries, so it is much
+ * cheaper than the members attribute for listing groups. Dynamic groups have
+ * no member count.
+ * <p>
+ * If the directory server provides an attribute that holds the number of
+ * members of a group, it may be specified with the &lt;countAttribute&gt;
+ * element so that the member values need not be retrieved at all.
+ */
+public class MemberCountDerivedAttribute extends DerivedAttribute
+{
+  /**
+   * The name of the argument that specifies an LDAP attribute holding the
+   * number of members of a group.
+   */
+  private static final String COUNT_ATTRIBUTE = "countAttribute";
+
+  /**
+   * The attribute descriptor for the derived attribute.
+   */
+  private AttributeDescriptor descriptor;
+
+  /**
+   * The LDAP attribute holding the number of members of a group, or
+   * {@code null} if the member values are counted.
+   */
+  private String countAttribute;
+
+  /**
+   * The set of LDAP attribute types needed in the group entry.
+   */
+  private Set<String> ldapAttributeTypes;
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void initialize(final AttributeDescriptor descriptor)
+  {
+    this.descriptor = descriptor;
+
+    this.countAttribute = null;
+    final Object o = getArguments().get(COUNT_ATTRIBUTE);
+    if (o != null && o.toString().trim().length() > 0)
+    {
+      countAttribute = o.toString().trim();
+    }
+
+    if (countAttribute == null)
+    {
+      final Set<String> attributeTypes = new HashSet<String>(2);
+      attributeTypes.add(MembersDerivedAttribute.ATTR_MEMBER);
+      attributeTypes.add(MembersDerivedAttribute.ATTR_UNIQUE_MEMBER);
+      ldapAttributeTypes = Collections.unmodifiableSet(attributeTypes);
+    }
+    else
+    {
+      ldapAttributeTypes = Collections.singleton(countAttribute);
+    }
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public AttributeDescriptor getAttributeDescriptor()
+  {
+    return descriptor;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Set<String> getLDAPAttributeTypes()
+  {
+    return ldapAttributeTypes;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public SCIMAttribute toSCIMAttribute(final Entry entry,
+                                       final LDAPRequestInterface ldapInterface,
+                                       final LDAPSearchResolver searchResolver)
+      throws SCIMException
+  {
+    final Integer count;
+    if (countAttribute != null)
+    {
+      count = entry.getAttributeValueAsInteger(countAttribute);
+    }
+    else if (entry.hasObjectClass(MembersDerivedAttribute.OC_GROUP_OF_URLS))
+    {
+      count = null;
+    }
+    else if (entry.hasObjectClass(
+        MembersDerivedAttribute.OC_GROUP_OF_UNIQUE_NAMES))
+    {
+      count = countValues(entry, MembersDerivedAttribute.ATTR_UNIQUE_MEMBER);
+    }
+    else
+    {
+      count = countValues(entry, MembersDerivedAttribute.ATTR_MEMBER);
+    }
+
+    if (count == null)
+    {
+      return null;
+    }
+
+    return SCIMAttribute.create(
+        descriptor,
+        SCIMAttributeValue.createSimpleValue(new SimpleValue(count)));
+  }
+
+
+
+  /**
+   * Count the values of an attribute in an entry.
+   *
+   * @param entry          The entry.
+   * @param attributeName  The name of the attribute.
+   *
+   * @return  The number of values of the attribute.
+   */
+  private static Integer countValues(final Entry entry,
+                                     final String attributeName)
+  {
+    final Attribute attribute = entry.getAttribute(attributeName);
+    return attribute == null ? 0 : attribute.size();
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void toLDAPAttributes(final SCIMObject scimObject,
+                               final Collection<Attribute> attributes,
+                               final LDAPRequestInterface ldapInterface,
+                               final LDAPSearchResolver searchResolver)
+      throws SCIMException
+  {
+    // The member count is read-only.
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Set<String> toLDAPAttributeTypes(final AttributePath scimAttribute)
+      throws InvalidResourceException
+  {
+    return ldapAttributeTypes;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Filter toLDAPFilter(final SCIMFilter filter,
+                             final LDAPRequestInterface ldapInterface,
+                             final LDAPSearchResolver searchResolver)
+      throws InvalidResourceException
+  {
+    throw new InvalidResourceException(
+        "Filters are not supported for attribute " +
+        getAttributeDescriptor().getName());
+  }
+}
@@ -17,6 +17,7 @@
 
 package com.unboundid.scim.ldap;
 
+import com.unboundid.asn1.ASN1OctetString;
 import com.unboundid.ldap.sdk.Attribute;
 import com.unboundid.ldap.sdk.DN;
 import com.unboundid.ldap.sdk.Entry;
@@ -24,15 +25,19 @@ import com.unboundid.ldap.sdk.Filter;
 import com.unboundid.ldap.sdk.LDAPException;
 import com.unboundid.ldap.sdk.LDAPSearchException;
 import com.unboundid.ldap.sdk.LDAPURL;
+import com.unboundid.ldap.sdk.RDN;
+import com.unboundid.ldap.sdk.ResultCode;
 import com.unboundid.ldap.sdk.SearchRequest;
 import com.unboundid.ldap.sdk.SearchResult;
 import com.unboundid.ldap.sdk.SearchResultEntry;
 import com.unboundid.ldap.sdk.SearchScope;
+import com.unboundid.ldap.sdk.controls.SimplePagedResultsControl;
 import com.unboundid.scim.schema.AttributeDescriptor;
 import com.unboundid.scim.sdk.AttributePath;
 import com.unboundid.scim.sdk.Debug;
 import com.unboundid.scim.sdk.DebugType;
 import com.unboundid.scim.sdk.InvalidResourceException;
+import com.unboundid.scim.sdk.PageParameters;
 import com.unboundid.scim.sdk.ResourceNotFoundException;
 import com.unboundid.scim.sdk.SCIMAttribute;
 import com.unboundid.scim.sdk.SCIMAttributeValue;
@@ -40,11 +45,14 @@ import com.unboundid.scim.sdk.SCIMException;
 import com.unboundid.scim.sdk.SCIMFilter;
 import com.unboundid.scim.sdk.SCIMFilterType;
 import com.unboundid.scim.sdk.SCIMObject;
+import com.unboundid.scim.sdk.SCIMQueryAttributes;
 import com.unboundid.util.StaticUtils;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -65,6 +73,39 @@ import java.util.logging.Level;
  * The &lt;derivation&gt; element for this derived attribute accepts a special
  * child element, &lt;LDAPSearchRef idref="exampleSearchParams"/&gt;, which
  * specifies the LDAP search parameters to use when searching for group members.
+ * <p>
+ * The members of static groups may be retrieved in batches
+ * (&lt;memberBatchSize&gt;) rather than with one base search per member.
+ * Members with the same parent entry are then retrieved with a one-level
+ * search of the parent entry, or, if the directory server provides the
+ * entryDN attribute (&lt;haveEntryDN&gt;true&lt;/haveEntryDN&gt;), members
+ * under the same resource base DN are retrieved with a subtree search using
+ * entryDN filters.
+ * <p>
+ * When the resource IDs map to LDAP DNs, the members of static groups may be
+ * derived from the member DNs without reading any member entries
+ * (&lt;lazyMembers&gt;true&lt;/lazyMembers&gt;). The member type is then
+ * inferred from the scope of the User and Group resources. Members are not
+ * checked against the resource search filters, nor for existence, in this
+ * mode.
+ * <p>
+ * A page of the members of a static group may be requested with the
+ * members.startIndex and members.count query parameters. Only the members in
+ * the page are then mapped to SCIM values. If the directory server supports
+ * ranged retrieval of attribute values
+ * (&lt;rangedMemberRetrieval&gt;true&lt;/rangedMemberRetrieval&gt;), only the
+ * member values in the page are retrieved from the group entry.
+ * <p>
+ * The memberURL searches of dynamic groups may use simple paged results
+ * (&lt;memberURLPageSize&gt;) so that the entries of a large group are not
+ * all held in memory at once, and the number of members of a dynamic group
+ * may be limited (&lt;maxDynamicGroupMembers&gt;). A group that exceeds the
+ * limit results in an error rather than a partial list of members. The
+ * members found by each memberURL may be cached across requests
+ * (&lt;maxMemberURLsCached&gt; and &lt;memberURLCacheTTLMillis&gt;). Since
+ * changes to the member entries are not detected, a TTL should be configured,
+ * and since the cache is not specific to the authenticated user, it should
+ * only be enabled when all clients are permitted to read the member entries.
  */
 public class MembersDerivedAttribute extends DerivedAttribute
 {
@@ -97,6 +138,77 @@ public class MembersDerivedAttribute extends DerivedAttribute
    */
   private static final String MAX_MEMBERS_CACHED = "maxMembersCached";
 
+  /**
+   * The name of the argument that specifies the maximum number of members of
+   * a static group to retrieve with a single search. Values less than two
+   * mean that each member entry is read with its own base search.
+   */
+  private static final String MEMBER_BATCH_SIZE = "memberBatchSize";
+
+  /**
+   * The name of the argument that indicates whether the backend DS provides
+   * the entryDN attribute, which allows members to be retrieved in batches
+   * from anywhere under a resource base DN rather than by parent entry.
+   */
+  private static final String HAVE_ENTRYDN = "haveEntryDN";
+
+  /**
+   * The name of the argument that indicates whether the members of static
+   * groups should be derived from the member DNs without reading the member
+   * entries, where the resource IDs map to LDAP DNs.
+   */
+  private static final String LAZY_MEMBERS = "lazyMembers";
+
+  /**
+   * The name of the argument that indicates whether the directory server
+   * supports ranged retrieval of attribute values (e.g. member;range=0-99),
+   * which allows a page of the members of a static group to be retrieved
+   * without retrieving all the member values.
+   */
+  private static final String RANGED_MEMBER_RETRIEVAL =
+      "rangedMemberRetrieval";
+
+  /**
+   * The prefix of the attribute option used for ranged retrieval of
+   * attribute values.
+   */
+  private static final String RANGE_OPTION_PREFIX = "range=";
+
+  /**
+   * The name of the argument that specifies the page size of the simple paged
+   * results control used for the memberURL searches of dynamic groups. Values
+   * less than one mean that the searches are not paged.
+   */
+  private static final String MEMBER_URL_PAGE_SIZE = "memberURLPageSize";
+
+  /**
+   * The name of the argument that specifies the maximum number of members
+   * a dynamic group may have. Values less than one mean that there is no
+   * limit.
+   */
+  private static final String MAX_DYNAMIC_GROUP_MEMBERS =
+      "maxDynamicGroupMembers";
+
+  /**
+   * The name of the argument that indicates whether to cache the members
+   * found by memberURL searches across HTTP requests, and how many memberURLs
+   * to cache. Values less than one will prevent memberURL caching.
+   */
+  private static final String MAX_MEMBER_URLS_CACHED = "maxMemberURLsCached";
+
+  /**
+   * The name of the argument that specifies the time in milliseconds for
+   * which the members found by a memberURL search remain in the memberURL
+   * cache. Values less than one mean that they do not expire from the cache.
+   */
+  private static final String MEMBER_URL_CACHE_TTL_MILLIS =
+      "memberURLCacheTTLMillis";
+
+  /**
+   * The name of the LDAP entryDN attribute.
+   */
+  private static final String ATTR_ENTRY_DN = "entryDN";
+
   /**
    * The per-request member caches.
    */
@@ -159,6 +271,43 @@ public class MembersDerivedAttribute extends DerivedAttribute
    */
   private int membersToCachePerRequest;
 
+  /**
+   * The maximum number of members to retrieve with a single search.
+   */
+  private int memberBatchSize;
+
+  /**
+   * Indicates whether the backend DS provides the entryDN attribute.
+   */
+  private boolean haveEntryDN;
+
+  /**
+   * Indicates whether members are derived from the member DNs where possible.
+   */
+  private boolean lazyMembers;
+
+  /**
+   * Indicates whether pages of members are retrieved with ranged retrieval.
+   */
+  private boolean rangedMemberRetrieval;
+
+  /**
+   * The page size for memberURL searches, or zero if they are not paged.
+   */
+  private int memberURLPageSize;
+
+  /**
+   * The maximum number of members of a dynamic group, or zero if there is no
+   * limit.
+   */
+  private int maxDynamicGroupMembers;
+
+  /**
+   * The members found by memberURL searches, keyed by memberURL, or
+   * {@code null} if memberURL caching is disabled.
+   */
+  private BoundedCache<String, List<SCIMAttributeValue>> memberURLCache;
+
   /**
    * Indicates if the join attribute is a member, uniqueMember, or memberURL.
    */
@@ -202,12 +351,7 @@ public class MembersDerivedAttribute extends DerivedAttribute
 
     try
     {
-      final Set<String> attrSet = groupResolver.getFilterAndIdAttributes();
-      if(userResolver != null)
-      {
-        attrSet.addAll(userResolver.getFilterAndIdAttributes());
-      }
-      final String[] attrsToGet = attrSet.toArray(new String[attrSet.size()]);
+      final String[] attrsToGet = getMemberAttributesToGet(groupResolver);
 
       String[] members = null;
 
@@ -235,33 +379,12 @@ public class MembersDerivedAttribute extends DerivedAttribute
           final String[] memberURLs = entry.getAttributeValues(ATTR_MEMBER_URL);
           for(String url : memberURLs)
           {
-            final LDAPURL ldapURL = new LDAPURL(url);
-            final SearchRequest searchRequest =
-                new SearchRequest(ldapURL.getBaseDN().toString(),
-                                  SearchScope.SUB, ldapURL.getFilter(),
-                                  attrsToGet);
-            final SearchResult searchResult;
-            try
-            {
-              searchResult = ldapInterface.search(searchRequest);
-            }
-            catch (final LDAPSearchException lse)
+            values.addAll(getMemberURLValues(url, ldapInterface, groupResolver,
+                                             attrsToGet));
+            if (maxDynamicGroupMembers > 0 &&
+                values.size() > maxDynamicGroupMembers)
             {
-              Debug.debugException(lse);
-              continue;
-            }
-
-            if (searchResult.getEntryCount() > 0)
-            {
-              for(SearchResultEntry rEntry : searchResult.getSearchEntries())
-              {
-                final SCIMAttributeValue v =
-                    createMemberValue(groupResolver, rEntry);
-                if (v != null)
-                {
-                  values.add(v);
-                }
-              }
+              throw createTooManyMembersException(entry.getDN());
             }
           }
         }
@@ -271,72 +394,8 @@ public class MembersDerivedAttribute extends DerivedAttribute
       // groups.
       if (members != null)
       {
-        Map<DN, SCIMAttributeValue> memberCache = null;
-        if (membersToCachePerRequest > 0)
-        {
-          memberCache = MEMBER_CACHES.get();
-          if (memberCache == null)
-          {
-            memberCache = new LinkedHashMap<DN, SCIMAttributeValue>();
-            MEMBER_CACHES.set(memberCache);
-          }
-        }
-        for (final String memberDNString : members)
-        {
-          if ((userResolver != null &&
-               userResolver.isDnInScope(memberDNString)) ||
-              groupResolver.isDnInScope(memberDNString))
-          {
-            DN memberDN = new DN(memberDNString);
-            if (memberCache != null)
-            {
-              SCIMAttributeValue cacheValue = memberCache.get(memberDN);
-              if (cacheValue != null)
-              {
-                values.add(cacheValue);
-                continue;
-              }
-            }
-
-            final SearchRequest searchRequest =
-                new SearchRequest(memberDNString, SearchScope.BASE,
-                    OBJECTCLASS_PRESENCE_FILTER, attrsToGet);
-            final SearchResult searchResult;
-            try
-            {
-              searchResult = ldapInterface.search(searchRequest);
-            }
-            catch (final LDAPSearchException lse)
-            {
-              Debug.debugException(lse);
-              continue;
-            }
-
-            if (searchResult.getEntryCount() == 1)
-            {
-              final SearchResultEntry rEntry =
-                  searchResult.getSearchEntries().get(0);
-              final SCIMAttributeValue v =
-                  createMemberValue(groupResolver, rEntry);
-              if (v != null)
-              {
-                if (memberCache != null)
-                {
-                  memberCache.put(memberDN, v);
-                  if (memberCache.size() > membersToCachePerRequest)
-                  {
-                    // We have cached too many members for this request, so we
-                    // remove the oldest member from the cache.
-                    Iterator<DN> it = memberCache.keySet().iterator();
-                    it.next();
-                    it.remove();
-                  }
-                }
-                values.add(v);
-              }
-            }
-          }
-        }
+        addStaticMemberValues(values, members, ldapInterface, groupResolver,
+                              attrsToGet);
       }
     }
     catch (LDAPException e)
@@ -360,118 +419,264 @@ public class MembersDerivedAttribute extends DerivedAttribute
 
 
 
+  /**
+   * {@inheritDoc}
+   * <p>
+   * When a page of members is requested and ranged member retrieval is
+   * enabled, only the requested range of member or uniqueMember values is
+   * retrieved from the group entry.
+   */
   @Override
-  public void initialize(final AttributeDescriptor descriptor)
+  public Set<String> getLDAPAttributeTypes(
+      final SCIMQueryAttributes queryAttributes)
   {
-    this.descriptor = descriptor;
-    if(getArguments().containsKey(LDAP_SEARCH_REF))
+    final PageParameters valuePage = queryAttributes.getValuePage(descriptor);
+    if (!rangedMemberRetrieval || valuePage == null)
     {
-      Object o = getArguments().get(LDAP_SEARCH_REF);
-      if(o instanceof LDAPSearchResolver)
-      {
-        userResolver = (LDAPSearchResolver) o;
-      }
+      return ldapAttributeTypes;
     }
 
-    this.membersToCachePerRequest = 0;
-    Object o = getArguments().get(MAX_MEMBERS_CACHED);
-    if (o != null)
+    final String rangeOption = createRangeOption(
+        Math.max(valuePage.getStartIndex(), 1) - 1, valuePage.getCount());
+    final Set<String> attributeTypes = new HashSet<String>();
+    attributeTypes.add(ATTR_MEMBER + ';' + rangeOption);
+    attributeTypes.add(ATTR_UNIQUE_MEMBER + ';' + rangeOption);
+    attributeTypes.add(ATTR_MEMBER_URL);
+    return attributeTypes;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   * <p>
+   * When a page of the members of a static group is requested, only the
+   * requested page of member or uniqueMember values is mapped to SCIM values,
+   * so the other member entries are never retrieved. The page applies to the
+   * member values in the group entry, and members that are not within the
+   * scope of the User or Group resources are omitted from the page.
+   */
+  @Override
+  public SCIMAttribute searchEntryToSCIMAttribute(
+      final SearchResultEntry entry,
+      final LDAPRequestInterface ldapInterface,
+      final LDAPSearchResolver groupResolver,
+      final SCIMQueryAttributes queryAttributes)
+      throws SCIMException
+  {
+    final PageParameters valuePage = queryAttributes.getValuePage(descriptor);
+
+    final String memberAttribute;
+    if (entry.hasObjectClass(OC_GROUP_OF_NAMES) ||
+        entry.hasObjectClass(OC_GROUP_OF_ENTRIES))
     {
-      try
+      memberAttribute = ATTR_MEMBER;
+    }
+    else if (entry.hasObjectClass(OC_GROUP_OF_UNIQUE_NAMES))
+    {
+      memberAttribute = ATTR_UNIQUE_MEMBER;
+    }
+    else
+    {
+      memberAttribute = null;
+    }
+
+    if (valuePage == null || memberAttribute == null)
+    {
+      return super.searchEntryToSCIMAttribute(entry, ldapInterface,
+                                              groupResolver, queryAttributes);
+    }
+
+    final List<SCIMAttributeValue> values = new ArrayList<SCIMAttributeValue>();
+    try
+    {
+      final String[] members;
+      if (rangedMemberRetrieval)
       {
-        membersToCachePerRequest = Integer.valueOf(o.toString());
+        members = getMemberRange(entry, memberAttribute, valuePage,
+                                 ldapInterface);
       }
-      catch (NumberFormatException nfe)
+      else
       {
-        Debug.debugException(nfe);
+        members = getMemberPage(entry, memberAttribute, valuePage);
       }
+
+      addStaticMemberValues(values, members, ldapInterface, groupResolver,
+                            getMemberAttributesToGet(groupResolver));
+    }
+    catch (LDAPException e)
+    {
+      Debug.debugException(e);
+      throw ResourceMapper.toSCIMException(
+          "Error searching for values of the members attribute: " +
+          StaticUtils.getExceptionMessage(e), e);
     }
 
-    this.joinAttribute = null;
-    Object j = getArguments().get("joinAttribute");
-    if (j != null)
+    if (values.isEmpty())
     {
-      if (j.toString().equalsIgnoreCase("member"))
+      return null;
+    }
+    else
+    {
+      return SCIMAttribute.create(getAttributeDescriptor(),
+                  values.toArray(new SCIMAttributeValue[values.size()]));
+    }
+  }
+
+
+
+  /**
+   * Retrieve the page of member values requested from a group entry that
+   * contains all of its member values.
+   *
+   * @param entry            The group entry.
+   * @param memberAttribute  The name of the member attribute.
+   * @param valuePage        The requested page of values.
+   *
+   * @return  The member values in the requested page.
+   */
+  private static String[] getMemberPage(final Entry entry,
+                                        final String memberAttribute,
+                                        final PageParameters valuePage)
+  {
+    final String[] members = entry.getAttributeValues(memberAttribute);
+    if (members == null)
+    {
+      return new String[0];
+    }
+
+    return Arrays.copyOfRange(members,
+        SCIMQueryAttributes.getPageFromIndex(valuePage, members.length),
+        SCIMQueryAttributes.getPageToIndex(valuePage, members.length));
+  }
+
+
+
+  /**
+   * Retrieve the page of member values requested using ranged attribute
+   * retrieval. The group entry contains the first range of values returned
+   * by the directory server. If the server limits the number of values it
+   * returns in a range, the remaining values are retrieved incrementally
+   * with base searches of the group entry.
+   *
+   * @param entry            The group entry.
+   * @param memberAttribute  The name of the member attribute.
+   * @param valuePage        The requested page of values.
+   * @param ldapInterface    An LDAP interface that may be used to search the
+   *                         DIT.
+   *
+   * @return  The member values in the requested page.
+   *
+   * @throws LDAPException  If an error occurs while retrieving a range.
+   */
+  private static String[] getMemberRange(
+      final Entry entry,
+      final String memberAttribute,
+      final PageParameters valuePage,
+      final LDAPRequestInterface ldapInterface)
+      throws LDAPException
+  {
+    final int count = valuePage.getCount();
+    final List<String> members = new ArrayList<String>();
+    Entry rangeEntry = entry;
+    while (true)
+    {
+      final Attribute attribute =
+          getRangeAttribute(rangeEntry, memberAttribute);
+      if (attribute == null || attribute.size() == 0)
       {
-        joinAttribute = LDAPJoinAttribute.MEMBER;
+        break;
       }
-      else if (j.toString().equalsIgnoreCase("uniqueMember"))
+      members.addAll(Arrays.asList(attribute.getValues()));
+
+      final int high = getRangeHigh(attribute);
+      if (high < 0 || (count > 0 && members.size() >= count))
       {
-        joinAttribute = LDAPJoinAttribute.UNIQUE_MEMBER;
+        break;
       }
-      else if (j.toString().equalsIgnoreCase("memberURL"))
+
+      final SearchResult searchResult = ldapInterface.search(
+          new SearchRequest(entry.getDN(), SearchScope.BASE,
+              OBJECTCLASS_PRESENCE_FILTER,
+              memberAttribute + ';' + createRangeOption(
+                  high + 1, count > 0 ? count - members.size() : 0)));
+      if (searchResult.getEntryCount() != 1)
       {
-        joinAttribute = LDAPJoinAttribute.MEMBER_URL;
+        break;
       }
+      rangeEntry = searchResult.getSearchEntries().get(0);
+    }
+
+    if (count > 0 && members.size() > count)
+    {
+      return members.subList(0, count).toArray(new String[count]);
     }
+
+    return members.toArray(new String[members.size()]);
   }
 
 
 
-  @Override
-  public AttributeDescriptor getAttributeDescriptor()
+  /**
+   * Create the range attribute option to retrieve a range of values of a
+   * multi-valued attribute, e.g. range=0-99.
+   *
+   * @param low    The 0-based index of the first value to retrieve.
+   * @param count  The number of values to retrieve, or zero to retrieve all
+   *               the remaining values.
+   *
+   * @return  The range attribute option.
+   */
+  private static String createRangeOption(final int low, final int count)
   {
-    return descriptor;
+    return RANGE_OPTION_PREFIX + low + '-' +
+           (count > 0 ? String.valueOf(low + count - 1) : "*");
   }
 
 
 
   /**
-   * Create a SCIM value for a group member.
-   *
-   * @param groupResolver  The group resolver.
-   * @param entry          The member entry.
+   * Retrieve the range of values of an attribute from an entry.
    *
-   * @return  The member value created, or {@code null} if the member entry
-   *          is not a SCIM group or user resource.
+   * @param entry          The entry.
+   * @param attributeName  The name of the attribute, without options.
    *
-   * @throws  SCIMException  If the attribute descriptor for the derived
-   *                         attribute is missing a sub-attribute.
+   * @return  The attribute with a range option, or {@code null} if the entry
+   *          has no range of values of the attribute.
    */
-  protected SCIMAttributeValue createMemberValue(
-      final LDAPSearchResolver groupResolver,
-      final Entry entry)
-      throws SCIMException
+  private static Attribute getRangeAttribute(final Entry entry,
+                                             final String attributeName)
   {
-    List<SCIMAttribute> subAttributes = new ArrayList<SCIMAttribute>(2);
-
-    if (userResolver != null)
+    for (final Attribute attribute : entry.getAttributes())
     {
-      if(userResolver.isResourceEntry(entry))
+      if (attribute.getBaseName().equalsIgnoreCase(attributeName) &&
+          getRangeOption(attribute) != null)
       {
-        final String resourceID =
-            userResolver.getIdFromEntry(entry);
-        subAttributes.add(SCIMAttribute.create(
-                getAttributeDescriptor().getSubAttribute("type"),
-                   SCIMAttributeValue.createStringValue("User")));
-        subAttributes.add(SCIMAttribute.create(
-            getAttributeDescriptor().getSubAttribute("value"),
-            SCIMAttributeValue.createStringValue(resourceID)));
-        return SCIMAttributeValue.createComplexValue(subAttributes);
+        return attribute;
       }
     }
 
-    if(groupResolver.isResourceEntry(entry))
-    {
-      final String resourceID =
-          groupResolver.getIdFromEntry(entry);
-      subAttributes.add(SCIMAttribute.create(
-              getAttributeDescriptor().getSubAttribute("type"),
-                 SCIMAttributeValue.createStringValue("Group")));
-      subAttributes.add(SCIMAttribute.create(
-          getAttributeDescriptor().getSubAttribute("value"),
-             SCIMAttributeValue.createStringValue(resourceID)));
-      return SCIMAttributeValue.createComplexValue(subAttributes);
-    }
+    return null;
+  }
 
-    //This group member is not within any SCIM scope
-    if(Debug.debugEnabled())
+
+
+  /**
+   * Retrieve the range option of an attribute.
+   *
+   * @param attribute  The attribute.
+   *
+   * @return  The range option, or {@code null} if the attribute does not have
+   *          a range option.
+   */
+  private static String getRangeOption(final Attribute attribute)
+  {
+    for (final String option : attribute.getOptions())
     {
-      Debug.debug(Level.INFO, DebugType.OTHER,
-                  "Skipping group member '" + entry.getDN() +
-                  "' for group '" + entry.getDN() +
-                  "' because it is not within the scope of the " +
-                  "SCIM User or Group resources.");
+      if (StaticUtils.toLowerCase(option).startsWith(RANGE_OPTION_PREFIX))
+      {
+        return option;
+      }
     }
 
     return null;
@@ -479,6 +684,825 @@ public class MembersDerivedAttribute extends DerivedAttribute
 
 
 
+  /**
+   * Determine the 0-based index of the last value in a range of values
+   * returned by the directory server.
+   *
+   * @param attribute  The attribute with a range option.
+   *
+   * @return  The index of the last value in the range, or -1 if the range
+   *          includes the last value of the attribute.
+   */
+  private static int getRangeHigh(final Attribute attribute)
+  {
+    final String option = getRangeOption(attribute);
+    final String high = option.substring(option.indexOf('-') + 1);
+    if (high.equals("*"))
+    {
+      return -1;
+    }
+
+    try
+    {
+      return Integer.parseInt(high);
+    }
+    catch (NumberFormatException e)
+    {
+      Debug.debugException(e);
+      return -1;
+    }
+  }
+
+
+
+  /**
+   * Retrieve the members of a dynamic group found by one of its memberURLs.
+   * The members are taken from the memberURL cache if possible. Otherwise
+   * the memberURL search is processed, using simple paged results if a page
+   * size is configured so that only one page of entries is held in memory at
+   * a time, and the members found are cached. If a paged search fails, the
+   * members are retrieved with a single search without paging instead.
+   *
+   * @param memberURL      The memberURL.
+   * @param ldapInterface  An LDAP interface that may be used to search the DIT.
+   * @param groupResolver  The group resolver.
+   * @param attrsToGet     The attributes to retrieve from member entries.
+   *
+   * @return  The members found by the memberURL.
+   *
+   * @throws LDAPException  If the memberURL is not valid, the search failed,
+   *                        or the search returned more than the maximum
+   *                        number of members of a dynamic group.
+   * @throws SCIMException  If a member value cannot be created.
+   */
+  private List<SCIMAttributeValue> getMemberURLValues(
+      final String memberURL,
+      final LDAPRequestInterface ldapInterface,
+      final LDAPSearchResolver groupResolver,
+      final String[] attrsToGet)
+      throws LDAPException, SCIMException
+  {
+    if (memberURLCache != null)
+    {
+      final List<SCIMAttributeValue> cachedValues =
+          memberURLCache.get(memberURL);
+      if (cachedValues != null)
+      {
+        return cachedValues;
+      }
+    }
+
+    final LDAPURL ldapURL = new LDAPURL(memberURL);
+    final List<SCIMAttributeValue> values = new ArrayList<SCIMAttributeValue>();
+    int numEntries = 0;
+    // The cookie returned by each search is only valid on the connection
+    // that returned it.
+    final LDAPRequestInterface searchInterface = memberURLPageSize > 0 ?
+        ldapInterface.getPagedSearchInterface() : ldapInterface;
+    try
+    {
+      boolean paged = memberURLPageSize > 0;
+      ASN1OctetString cookie = null;
+      boolean moreResults;
+      do
+      {
+        final SearchRequest searchRequest =
+            new SearchRequest(ldapURL.getBaseDN().toString(),
+                              SearchScope.SUB, ldapURL.getFilter(),
+                              attrsToGet);
+        if (maxDynamicGroupMembers > 0)
+        {
+          // Let the server stop the search as soon as the limit is exceeded.
+          searchRequest.setSizeLimit(maxDynamicGroupMembers);
+        }
+        if (paged)
+        {
+          searchRequest.addControl(
+              new SimplePagedResultsControl(memberURLPageSize, cookie));
+        }
+
+        final SearchResult searchResult;
+        try
+        {
+          searchResult = searchInterface.search(searchRequest);
+        }
+        catch (final LDAPSearchException lse)
+        {
+          Debug.debugException(lse);
+          if (maxDynamicGroupMembers > 0 &&
+              lse.getResultCode().equals(ResultCode.SIZE_LIMIT_EXCEEDED))
+          {
+            throw createTooManyMembersException(memberURL);
+          }
+          if (lse.getResultCode().equals(ResultCode.NO_SUCH_OBJECT))
+          {
+            // The base DN of the memberURL does not exist, so there are no
+            // members.
+            values.clear();
+            break;
+          }
+          if (!paged)
+          {
+            throw lse;
+          }
+
+          // The server may not support paging the search, or may have
+          // discarded the cookie part-way through the results, so search
+          // again from the start without the paged results control.
+          paged = false;
+          cookie = null;
+          numEntries = 0;
+          values.clear();
+          moreResults = true;
+          continue;
+        }
+
+        numEntries += searchResult.getEntryCount();
+        if (maxDynamicGroupMembers > 0 && numEntries > maxDynamicGroupMembers)
+        {
+          throw createTooManyMembersException(memberURL);
+        }
+
+        for(SearchResultEntry rEntry : searchResult.getSearchEntries())
+        {
+          final SCIMAttributeValue v = createMemberValue(groupResolver, rEntry);
+          if (v != null)
+          {
+            values.add(v);
+          }
+        }
+
+        cookie = null;
+        moreResults = false;
+        if (paged)
+        {
+          final SimplePagedResultsControl responseControl =
+              SimplePagedResultsControl.get(searchResult);
+          if (responseControl != null && responseControl.moreResultsToReturn())
+          {
+            cookie = responseControl.getCookie();
+            moreResults = true;
+          }
+        }
+      }
+      while (moreResults);
+    }
+    finally
+    {
+      searchInterface.release();
+    }
+
+    final List<SCIMAttributeValue> memberValues =
+        Collections.unmodifiableList(values);
+    if (memberURLCache != null)
+    {
+      memberURLCache.put(memberURL, memberValues);
+    }
+    return memberValues;
+  }
+
+
+
+  /**
+   * Create the exception thrown when a dynamic group has more than the
+   * maximum number of members.
+   *
+   * @param name  The DN of the dynamic group or the memberURL whose members
+   *              exceeded the limit.
+   *
+   * @return  The exception to be thrown.
+   */
+  private LDAPException createTooManyMembersException(final String name)
+  {
+    return new LDAPException(ResultCode.SIZE_LIMIT_EXCEEDED,
+        "The dynamic group members for '" + name + "' exceed the maximum " +
+        "of " + maxDynamicGroupMembers + " members set by the " +
+        MAX_DYNAMIC_GROUP_MEMBERS + " argument");
+  }
+
+
+  /**
+   * Determine the attributes to retrieve from group member entries.
+   *
+   * @param groupResolver  The group resolver.
+   *
+   * @return  The attributes to retrieve from group member entries.
+   */
+  private String[] getMemberAttributesToGet(
+      final LDAPSearchResolver groupResolver)
+  {
+    final Set<String> attrSet = groupResolver.getFilterAndIdAttributes();
+    if(userResolver != null)
+    {
+      attrSet.addAll(userResolver.getFilterAndIdAttributes());
+    }
+    return attrSet.toArray(new String[attrSet.size()]);
+  }
+
+
+
+  /**
+   * Add the SCIM values for the members of a static group.
+   *
+   * @param values         The list to which the member values are added.
+   * @param members        The member DNs from the group entry.
+   * @param ldapInterface  An LDAP interface that may be used to search the DIT.
+   * @param groupResolver  The group resolver.
+   * @param attrsToGet     The attributes to retrieve from member entries.
+   *
+   * @throws LDAPException  If a member DN is not valid or an error occurs
+   *                        while creating the member searches.
+   * @throws SCIMException  If a member value cannot be created.
+   */
+  private void addStaticMemberValues(
+      final List<SCIMAttributeValue> values,
+      final String[] members,
+      final LDAPRequestInterface ldapInterface,
+      final LDAPSearchResolver groupResolver,
+      final String[] attrsToGet)
+      throws LDAPException, SCIMException
+  {
+    Map<DN, SCIMAttributeValue> memberCache = null;
+    if (membersToCachePerRequest > 0)
+    {
+      memberCache = MEMBER_CACHES.get();
+      if (memberCache == null)
+      {
+        memberCache = new LinkedHashMap<DN, SCIMAttributeValue>();
+        MEMBER_CACHES.set(memberCache);
+      }
+    }
+
+    final List<DN> memberDNs = new ArrayList<DN>(members.length);
+    final List<DN> uncachedMemberDNs = new ArrayList<DN>();
+    final Map<DN, SCIMAttributeValue> memberValues =
+        new HashMap<DN, SCIMAttributeValue>();
+    for (final String memberDNString : members)
+    {
+      if ((userResolver != null &&
+           userResolver.isDnInScope(memberDNString)) ||
+          groupResolver.isDnInScope(memberDNString))
+      {
+        DN memberDN = new DN(memberDNString);
+        memberDNs.add(memberDN);
+        if (memberCache != null)
+        {
+          SCIMAttributeValue cacheValue = memberCache.get(memberDN);
+          if (cacheValue != null)
+          {
+            memberValues.put(memberDN, cacheValue);
+            continue;
+          }
+        }
+        if (lazyMembers)
+        {
+          final SCIMAttributeValue v =
+              createMemberValueFromDN(groupResolver, memberDN);
+          if (v != null)
+          {
+            memberValues.put(memberDN, v);
+            continue;
+          }
+        }
+        uncachedMemberDNs.add(memberDN);
+      }
+    }
+
+    for (final SearchResultEntry rEntry :
+        getMemberEntries(ldapInterface, groupResolver, uncachedMemberDNs,
+                         attrsToGet))
+    {
+      final SCIMAttributeValue v = createMemberValue(groupResolver, rEntry);
+      if (v != null)
+      {
+        final DN memberDN = rEntry.getParsedDN();
+        memberValues.put(memberDN, v);
+        if (memberCache != null)
+        {
+          memberCache.put(memberDN, v);
+          if (memberCache.size() > membersToCachePerRequest)
+          {
+            // We have cached too many members for this request, so we
+            // remove the oldest member from the cache.
+            Iterator<DN> it = memberCache.keySet().iterator();
+            it.next();
+            it.remove();
+          }
+        }
+      }
+    }
+
+    // Return the members in the order they appear in the group entry.
+    for (final DN memberDN : memberDNs)
+    {
+      final SCIMAttributeValue v = memberValues.get(memberDN);
+      if (v != null)
+      {
+        values.add(v);
+      }
+    }
+  }
+
+
+  @Override
+  public void initialize(final AttributeDescriptor descriptor)
+  {
+    this.descriptor = descriptor;
+    if(getArguments().containsKey(LDAP_SEARCH_REF))
+    {
+      Object o = getArguments().get(LDAP_SEARCH_REF);
+      if(o instanceof LDAPSearchResolver)
+      {
+        userResolver = (LDAPSearchResolver) o;
+      }
+    }
+
+    this.membersToCachePerRequest = 0;
+    Object o = getArguments().get(MAX_MEMBERS_CACHED);
+    if (o != null)
+    {
+      try
+      {
+        membersToCachePerRequest = Integer.valueOf(o.toString());
+      }
+      catch (NumberFormatException nfe)
+      {
+        Debug.debugException(nfe);
+      }
+    }
+
+    this.memberBatchSize = 0;
+    o = getArguments().get(MEMBER_BATCH_SIZE);
+    if (o != null)
+    {
+      try
+      {
+        memberBatchSize = Integer.valueOf(o.toString());
+      }
+      catch (NumberFormatException nfe)
+      {
+        Debug.debugException(nfe);
+      }
+    }
+
+    this.haveEntryDN = false;
+    o = getArguments().get(HAVE_ENTRYDN);
+    if (o != null)
+    {
+      haveEntryDN = Boolean.valueOf(o.toString());
+    }
+
+    this.lazyMembers = false;
+    o = getArguments().get(LAZY_MEMBERS);
+    if (o != null)
+    {
+      lazyMembers = Boolean.valueOf(o.toString());
+    }
+
+    this.rangedMemberRetrieval = false;
+    o = getArguments().get(RANGED_MEMBER_RETRIEVAL);
+    if (o != null)
+    {
+      rangedMemberRetrieval = Boolean.valueOf(o.toString());
+    }
+
+    this.memberURLPageSize = 0;
+    o = getArguments().get(MEMBER_URL_PAGE_SIZE);
+    if (o != null)
+    {
+      try
+      {
+        memberURLPageSize = Math.max(Integer.valueOf(o.toString()), 0);
+      }
+      catch (NumberFormatException nfe)
+      {
+        Debug.debugException(nfe);
+      }
+    }
+
+    this.maxDynamicGroupMembers = 0;
+    o = getArguments().get(MAX_DYNAMIC_GROUP_MEMBERS);
+    if (o != null)
+    {
+      try
+      {
+        maxDynamicGroupMembers = Math.max(Integer.valueOf(o.toString()), 0);
+      }
+      catch (NumberFormatException nfe)
+      {
+        Debug.debugException(nfe);
+      }
+    }
+
+    int memberURLsToCache = 0;
+    o = getArguments().get(MAX_MEMBER_URLS_CACHED);
+    if (o != null)
+    {
+      try
+      {
+        memberURLsToCache = Integer.valueOf(o.toString());
+      }
+      catch (NumberFormatException nfe)
+      {
+        Debug.debugException(nfe);
+      }
+    }
+
+    long memberURLCacheTTLMillis = 0;
+    o = getArguments().get(MEMBER_URL_CACHE_TTL_MILLIS);
+    if (o != null)
+    {
+      try
+      {
+        memberURLCacheTTLMillis = Long.valueOf(o.toString());
+      }
+      catch (NumberFormatException nfe)
+      {
+        Debug.debugException(nfe);
+      }
+    }
+
+    this.memberURLCache = null;
+    if (memberURLsToCache > 0)
+    {
+      memberURLCache = new BoundedCache<String, List<SCIMAttributeValue>>(
+          memberURLsToCache, Math.max(memberURLCacheTTLMillis, 0));
+    }
+
+    this.joinAttribute = null;
+    Object j = getArguments().get("joinAttribute");
+    if (j != null)
+    {
+      if (j.toString().equalsIgnoreCase("member"))
+      {
+        joinAttribute = LDAPJoinAttribute.MEMBER;
+      }
+      else if (j.toString().equalsIgnoreCase("uniqueMember"))
+      {
+        joinAttribute = LDAPJoinAttribute.UNIQUE_MEMBER;
+      }
+      else if (j.toString().equalsIgnoreCase("memberURL"))
+      {
+        joinAttribute = LDAPJoinAttribute.MEMBER_URL;
+      }
+    }
+  }
+
+
+
+  @Override
+  public AttributeDescriptor getAttributeDescriptor()
+  {
+    return descriptor;
+  }
+
+
+
+  /**
+   * Create a SCIM value for a group member.
+   *
+   * @param groupResolver  The group resolver.
+   * @param entry          The member entry.
+   *
+   * @return  The member value created, or {@code null} if the member entry
+   *          is not a SCIM group or user resource.
+   *
+   * @throws  SCIMException  If the attribute descriptor for the derived
+   *                         attribute is missing a sub-attribute.
+   */
+  protected SCIMAttributeValue createMemberValue(
+      final LDAPSearchResolver groupResolver,
+      final Entry entry)
+      throws SCIMException
+  {
+    List<SCIMAttribute> subAttributes = new ArrayList<SCIMAttribute>(2);
+
+    if (userResolver != null)
+    {
+      if(userResolver.isResourceEntry(entry))
+      {
+        final String resourceID =
+            userResolver.getIdFromEntry(entry);
+        subAttributes.add(SCIMAttribute.create(
+                getAttributeDescriptor().getSubAttribute("type"),
+                   SCIMAttributeValue.createStringValue("User")));
+        subAttributes.add(SCIMAttribute.create(
+            getAttributeDescriptor().getSubAttribute("value"),
+            SCIMAttributeValue.createStringValue(resourceID)));
+        return SCIMAttributeValue.createComplexValue(subAttributes);
+      }
+    }
+
+    if(groupResolver.isResourceEntry(entry))
+    {
+      final String resourceID =
+          groupResolver.getIdFromEntry(entry);
+      subAttributes.add(SCIMAttribute.create(
+              getAttributeDescriptor().getSubAttribute("type"),
+                 SCIMAttributeValue.createStringValue("Group")));
+      subAttributes.add(SCIMAttribute.create(
+          getAttributeDescriptor().getSubAttribute("value"),
+             SCIMAttributeValue.createStringValue(resourceID)));
+      return SCIMAttributeValue.createComplexValue(subAttributes);
+    }
+
+    //This group member is not within any SCIM scope
+    if(Debug.debugEnabled())
+    {
+      Debug.debug(Level.INFO, DebugType.OTHER,
+                  "Skipping group member '" + entry.getDN() +
+                  "' for group '" + entry.getDN() +
+                  "' because it is not within the scope of the " +
+                  "SCIM User or Group resources.");
+    }
+
+    return null;
+  }
+
+
+
+  /**
+   * Create a SCIM value for a group member from the member DN alone, without
+   * reading the member entry. This is only possible when the resource ID of
+   * every resource type whose scope includes the member DN maps to the LDAP
+   * DN. The type is omitted if the member DN is within the scope of both the
+   * User and the Group resources.
+   *
+   * @param groupResolver  The group resolver.
+   * @param memberDN       The member DN.
+   *
+   * @return  The member value created, or {@code null} if the member entry
+   *          must be read to determine the resource ID.
+   *
+   * @throws  SCIMException  If the attribute descriptor for the derived
+   *                         attribute is missing a sub-attribute.
+   */
+  private SCIMAttributeValue createMemberValueFromDN(
+      final LDAPSearchResolver groupResolver,
+      final DN memberDN)
+      throws SCIMException
+  {
+    final String dnString = memberDN.toString();
+    final boolean isUserDN =
+        userResolver != null && userResolver.isDnInScope(dnString);
+    final boolean isGroupDN = groupResolver.isDnInScope(dnString);
+    if ((isUserDN && !userResolver.idMapsToDn()) ||
+        (isGroupDN && !groupResolver.idMapsToDn()))
+    {
+      return null;
+    }
+
+    final List<SCIMAttribute> subAttributes = new ArrayList<SCIMAttribute>(2);
+    if (isUserDN != isGroupDN)
+    {
+      subAttributes.add(SCIMAttribute.create(
+          getAttributeDescriptor().getSubAttribute("type"),
+          SCIMAttributeValue.createStringValue(isUserDN ? "User" : "Group")));
+    }
+    // The resource ID is the normalized DN, as in getIdFromEntry.
+    subAttributes.add(SCIMAttribute.create(
+        getAttributeDescriptor().getSubAttribute("value"),
+        SCIMAttributeValue.createStringValue(memberDN.toNormalizedString())));
+    return SCIMAttributeValue.createComplexValue(subAttributes);
+  }
+
+
+
+  /**
+   * Retrieve the entries of a set of group members. When a member batch size
+   * is configured, the members are retrieved with a search for every batch of
+   * members that have the same parent entry, or that are under the same
+   * resource base DN if the directory server provides the entryDN attribute.
+   * Otherwise, each member entry is read with a base search. Members that are
+   * only within the scope of the User resources or only within the scope of
+   * the Group resources are retrieved with the search filter of those
+   * resources, so that the directory server only returns resource entries.
+   *
+   * @param ldapInterface  An LDAP interface that may be used to search the DIT.
+   * @param groupResolver  The group resolver.
+   * @param memberDNs      The DNs of the members to retrieve. They must all be
+   *                       within the scope of the user or group resolver.
+   * @param attributes     The attributes to retrieve.
+   *
+   * @return  The member entries that were found.
+   *
+   * @throws LDAPException  If an error occurs while creating the searches.
+   */
+  private List<SearchResultEntry> getMemberEntries(
+      final LDAPRequestInterface ldapInterface,
+      final LDAPSearchResolver groupResolver,
+      final List<DN> memberDNs,
+      final String... attributes)
+      throws LDAPException
+  {
+    final List<SearchResultEntry> entries = new ArrayList<SearchResultEntry>();
+    if (memberDNs.isEmpty())
+    {
+      return entries;
+    }
+
+    if (memberBatchSize < 2)
+    {
+      for (final DN memberDN : memberDNs)
+      {
+        final SearchRequest searchRequest =
+            new SearchRequest(memberDN.toString(), SearchScope.BASE,
+                OBJECTCLASS_PRESENCE_FILTER, attributes);
+        final SearchResult searchResult;
+        try
+        {
+          searchResult = ldapInterface.search(searchRequest);
+        }
+        catch (final LDAPSearchException lse)
+        {
+          Debug.debugException(lse);
+          continue;
+        }
+
+        if (searchResult.getEntryCount() == 1)
+        {
+          entries.add(searchResult.getSearchEntries().get(0));
+        }
+      }
+      return entries;
+    }
+
+    // Partition the members by the search that can retrieve them.
+    final Map<String, MemberSearch> memberSearches =
+        new LinkedHashMap<String, MemberSearch>();
+    for (final DN memberDN : memberDNs)
+    {
+      final String dnString = memberDN.toString();
+      final boolean isUserDN =
+          userResolver != null && userResolver.isDnInScope(dnString);
+      final boolean isGroupDN = groupResolver.isDnInScope(dnString);
+
+      final Filter filter;
+      final LDAPSearchResolver resolver;
+      if (isUserDN && !isGroupDN)
+      {
+        filter = userResolver.getFilter();
+        resolver = userResolver;
+      }
+      else if (isGroupDN && !isUserDN)
+      {
+        filter = groupResolver.getFilter();
+        resolver = groupResolver;
+      }
+      else
+      {
+        filter = OBJECTCLASS_PRESENCE_FILTER;
+        resolver = isUserDN ? userResolver : groupResolver;
+      }
+
+      final DN baseDN;
+      final SearchScope scope;
+      final Filter memberFilter;
+      if (haveEntryDN)
+      {
+        baseDN = getBaseDN(resolver, memberDN);
+        scope = SearchScope.SUB;
+        memberFilter =
+            Filter.createEqualityFilter(ATTR_ENTRY_DN, memberDN.toString());
+      }
+      else if (memberDN.getParent() != null)
+      {
+        baseDN = memberDN.getParent();
+        scope = SearchScope.ONE;
+        memberFilter = createRDNFilter(memberDN.getRDN());
+      }
+      else
+      {
+        baseDN = memberDN;
+        scope = SearchScope.BASE;
+        memberFilter = OBJECTCLASS_PRESENCE_FILTER;
+      }
+
+      final String key = baseDN.toNormalizedString() + '\n' +
+                         filter.toNormalizedString();
+      MemberSearch memberSearch = memberSearches.get(key);
+      if (memberSearch == null)
+      {
+        memberSearch = new MemberSearch(baseDN, scope, filter);
+        memberSearches.put(key, memberSearch);
+      }
+      memberSearch.memberFilters.add(memberFilter);
+    }
+
+    final List<SearchRequest> searchRequests = new ArrayList<SearchRequest>();
+    for (final MemberSearch memberSearch : memberSearches.values())
+    {
+      final List<Filter> memberFilters = memberSearch.memberFilters;
+      for (int i = 0; i < memberFilters.size(); i += memberBatchSize)
+      {
+        final List<Filter> batch = memberFilters.subList(i,
+            Math.min(i + memberBatchSize, memberFilters.size()));
+        searchRequests.add(
+            new SearchRequest(memberSearch.baseDN.toString(),
+                memberSearch.scope,
+                Filter.createANDFilter(Filter.createORFilter(batch),
+                                       memberSearch.filter),
+                attributes));
+      }
+    }
+
+    for (final SearchResult searchResult : ldapInterface.search(searchRequests))
+    {
+      if (searchResult.getResultCode() != ResultCode.SUCCESS &&
+          Debug.debugEnabled())
+      {
+        Debug.debug(Level.INFO, DebugType.OTHER,
+                    "Search for group members returned result " +
+                    searchResult.getResultCode() + ": " +
+                    searchResult.getDiagnosticMessage());
+      }
+      entries.addAll(searchResult.getSearchEntries());
+    }
+
+    return entries;
+  }
+
+
+
+  /**
+   * Determine the base DN of a resolver under which an entry is found.
+   *
+   * @param resolver  The resolver.
+   * @param dn        The DN of an entry within the scope of the resolver.
+   *
+   * @return  The base DN under which the entry is found.
+   */
+  private static DN getBaseDN(final LDAPSearchResolver resolver, final DN dn)
+  {
+    for (final DN baseDN : resolver.getBaseDNs())
+    {
+      if (dn.isDescendantOf(baseDN, true))
+      {
+        return baseDN;
+      }
+    }
+
+    return dn;
+  }
+
+
+
+  /**
+   * Create a filter that matches an entry by its RDN, for use in a one-level
+   * search of its parent entry.
+   *
+   * @param rdn  The RDN of the entry.
+   *
+   * @return  A filter matching the RDN attribute values.
+   */
+  private static Filter createRDNFilter(final RDN rdn)
+  {
+    final String[] names = rdn.getAttributeNames();
+    final byte[][] values = rdn.getByteArrayAttributeValues();
+    if (names.length == 1)
+    {
+      return Filter.createEqualityFilter(names[0], values[0]);
+    }
+
+    final List<Filter> components = new ArrayList<Filter>(names.length);
+    for (int i = 0; i < names.length; i++)
+    {
+      components.add(Filter.createEqualityFilter(names[i], values[i]));
+    }
+    return Filter.createANDFilter(components);
+  }
+
+
+
+  /**
+   * A search for group member entries, which is processed with one search
+   * request for every batch of members.
+   */
+  private static final class MemberSearch
+  {
+    private final DN baseDN;
+    private final SearchScope scope;
+    private final Filter filter;
+    private final List<Filter> memberFilters = new ArrayList<Filter>();
+
+    /**
+     * Create a new member search.
+     *
+     * @param baseDN  The base DN of the search.
+     * @param scope   The scope of the search.
+     * @param filter  The filter that the member entries must match.
+     */
+    private MemberSearch(final DN baseDN, final SearchScope scope,
+                         final Filter filter)
+    {
+      this.baseDN = baseDN;
+      this.scope = scope;
+      this.filter = filter;
+    }
+  }
+
+
+
   /**
    * {@inheritDoc}
    */
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.ldap;
+
+import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.SearchScope;
+import com.unboundid.scim.sdk.SortParameters;
+
+import java.util.Collection;
+
+
+
+/**
+ * This class keeps the simple paged results cookies of recent queries, so
+ * that a query for the next page of results can resume the LDAP search where
+ * the previous page ended instead of searching from the first result again.
+ * <p>
+ * A paging session is identified by the authenticated user, the search
+ * criteria and the 1-based index of the next result. Each session may be
+ * resumed once. Sessions that are not resumed within the idle timeout are
+ * discarded, as are the oldest sessions when the maximum number of sessions
+ * is exceeded.
+ */
+final class PagedResultsSessionStore
+{
+  /**
+   * The paging sessions, keyed by query and position.
+   */
+  private final BoundedCache<String, Position> sessions;
+
+
+
+  /**
+   * Create a new paging session store.
+   *
+   * @param maxSessions        The maximum number of sessions to be kept.
+   * @param idleTimeoutMillis  The time in milliseconds after which a session
+   *                           that has not been resumed is discarded, or zero
+   *                           if sessions are only discarded when the maximum
+   *                           number is exceeded.
+   */
+  PagedResultsSessionStore(final int maxSessions,
+                           final long idleTimeoutMillis)
+  {
+    this.sessions =
+        new BoundedCache<String, Position>(maxSessions, idleTimeoutMillis);
+  }
+
+
+
+  /**
+   * Create a key identifying the searches for a query. The simple paged
+   * results cookie may only be used with a search that is identical to the
+   * one that returned it, so every search parameter is part of the key.
+   *
+   * @param authID          The authenticated user ID for the query.
+   * @param baseDNs         The base DNs to be searched.
+   * @param scope           The scope of the searches.
+   * @param filter          The LDAP filter for the searches.
+   * @param sortParameters  The sort parameters of the query, or {@code null}.
+   * @param attributes      The LDAP attributes to be requested.
+   *
+   * @return  The key identifying the searches for the query.
+   */
+  static String getQueryKey(final String authID,
+                            final Collection<DN> baseDNs,
+                            final SearchScope scope,
+                            final Filter filter,
+                            final SortParameters sortParameters,
+                            final String[] attributes)
+  {
+    final StringBuilder builder = new StringBuilder();
+    builder.append(authID);
+    for (final DN baseDN : baseDNs)
+    {
+      builder.append('\n');
+      builder.append(baseDN.toNormalizedString());
+    }
+    builder.append('\n');
+    builder.append(scope);
+    builder.append('\n');
+    filter.toNormalizedString(builder);
+    if (sortParameters != null)
+    {
+      builder.append('\n');
+      builder.append(sortParameters.getSortBy());
+      builder.append(' ');
+      builder.append(sortParameters.getSortOrder());
+    }
+    for (final String attribute : attributes)
+    {
+      builder.append('\n');
+      builder.append(attribute);
+    }
+    return builder.toString();
+  }
+
+
+
+  /**
+   * Remove and return the paging session for a query that ended at the given
+   * position.
+   *
+   * @param queryKey    The key identifying the searches for the query.
+   * @param startIndex  The 1-based index of the next result to be returned.
+   *
+   * @return  The position at which the searches should be resumed, or
+   *          {@code null} if there is no paging session.
+   */
+  Position take(final String queryKey, final int startIndex)
+  {
+    final String key = getSessionKey(queryKey, startIndex);
+    final Position position = sessions.get(key);
+    if (position != null)
+    {
+      sessions.remove(key);
+    }
+    return position;
+  }
+
+
+
+  /**
+   * Keep a paging session for a query so that it may be resumed.
+   *
+   * @param queryKey    The key identifying the searches for the query.
+   * @param startIndex  The 1-based index of the next result to be returned.
+   * @param baseDN      The base DN in which the next result will be found.
+   * @param cookie      The simple paged results cookie from which to resume
+   *                    the search of the base DN, or {@code null} if the
+   *                    search of the base DN has not started.
+   * @param sizes       The result set size of each base DN of the query, in
+   *                    order, or -1 for a size that is not known.
+   */
+  void put(final String queryKey, final int startIndex, final DN baseDN,
+           final ASN1OctetString cookie, final int[] sizes)
+  {
+    sessions.put(getSessionKey(queryKey, startIndex),
+                 new Position(baseDN, cookie, sizes.clone()));
+  }
+
+
+
+  /**
+   * Create the key of a paging session.
+   *
+   * @param queryKey    The key identifying the searches for the query.
+   * @param startIndex  The 1-based index of the next result to be returned.
+   *
+   * @return  The key of the paging session.
+   */
+  private static String getSessionKey(final String queryKey,
+                                      final int startIndex)
+  {
+    return startIndex + "\n" + queryKey;
+  }
+
+
+
+  /**
+   * The position at which the searches for a query may be resumed.
+   */
+  static final class Position
+  {
+    private final DN baseDN;
+    private final ASN1OctetString cookie;
+    private final int[] sizes;
+
+    /**
+     * Create a new position.
+     *
+     * @param baseDN  The base DN in which the next result will be found.
+     * @param cookie  The simple paged results cookie, or {@code null}.
+     * @param sizes   The result set size of each base DN of the query.
+     */
+    private Position(final DN baseDN, final ASN1OctetString cookie,
+                     final int[] sizes)
+    {
+      this.baseDN = baseDN;
+      this.cookie = cookie;
+      this.sizes = sizes;
+    }
+
+    /**
+     * Retrieve the base DN in which the next result will be found.
+     *
+     * @return  The base DN in which the next result will be found.
+     */
+    DN getBaseDN()
+    {
+      return baseDN;
+    }
+
+    /**
+     * Retrieve the simple paged results cookie from which to resume the
+     * search of the base DN.
+     *
+     * @return  The simple paged results cookie, or {@code null} if the search
+     *          of the base DN has not started.
+     */
+    ASN1OctetString getCookie()
+    {
+      return cookie;
+    }
+
+    /**
+     * Retrieve the result set size of each base DN of the query, as counted
+     * by the first page of the query.
+     *
+     * @return  A copy of the result set size of each base DN, in order, with
+     *          -1 for a size that is not known.
+     */
+    int[] getBaseDNSizes()
+    {
+      return sizes.clone();
+    }
+  }
+}
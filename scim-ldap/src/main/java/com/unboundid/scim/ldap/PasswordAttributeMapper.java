@@ -24,6 +24,7 @@ import com.unboundid.scim.schema.AttributeDescriptor;
 import com.unboundid.scim.sdk.InvalidResourceException;
 import com.unboundid.scim.sdk.SCIMAttribute;
 import com.unboundid.scim.sdk.SCIMFilter;
+import com.unboundid.scim.sdk.SCIMFilterType;
 import com.unboundid.scim.sdk.SortParameters;
 
 /**
@@ -68,4 +69,10 @@ public class PasswordAttributeMapper extends SimpleAttributeMapper
     // Filters on password won't matching anything.
     return null;
   }
+
+  @Override
+  public boolean isExactFilter(final SCIMFilterType filterType)
+  {
+    return false;
+  }
 }
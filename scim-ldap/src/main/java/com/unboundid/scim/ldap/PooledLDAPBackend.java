@@ -0,0 +1,257 @@
+/*
+ * Copyright 2012-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.ldap;
+
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.controls.ProxiedAuthorizationV2RequestControl;
+import com.unboundid.scim.schema.ResourceDescriptor;
+import com.unboundid.scim.sdk.Debug;
+import com.unboundid.scim.sdk.DebugType;
+import com.unboundid.scim.sdk.SCIMException;
+import com.unboundid.scim.sdk.UnauthorizedException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.logging.Level;
+
+
+
+/**
+ * This class is an LDAP backend that processes requests on connections from
+ * LDAP connection pools. Searches may be processed on a separate pool of
+ * connections to read-only replicas, while updates, and the reads made for
+ * them, are processed on the pool of connections to the primary server.
+ * Requests are made on behalf of the authenticated user with the proxied
+ * authorization v2 request control, so the connections in the pools must be
+ * authenticated as a user that is permitted to use that control. Requests
+ * without an authorization ID are rejected unless
+ * {@link #setAllowPoolIdentity} has been used to allow them to be made as
+ * the user authenticated on the pooled connections.
+ * <p>
+ * Paging sessions are not kept between queries, because the connection that
+ * returned a simple paged results cookie is returned to the pool at the end
+ * of each query. The searches for a single query or memberURL are processed
+ * on one connection.
+ * <p>
+ * Statistics about the connection checkouts of each pool are included in the
+ * monitor data. The backend closes the pools when it is finalized.
+ */
+public class PooledLDAPBackend extends LDAPBackend
+{
+  /**
+   * The pool for searches.
+   */
+  private final ConnectionPoolMonitor readPool;
+
+  /**
+   * The pool for updates.
+   */
+  private final ConnectionPoolMonitor writePool;
+
+  /**
+   * The executor on which independent searches may be processed
+   * concurrently, or {@code null} if searches are processed sequentially.
+   */
+  private volatile ExecutorService searchExecutor;
+
+  /**
+   * Indicates whether requests without an authorization ID may be made as the
+   * user authenticated on the pooled connections.
+   */
+  private volatile boolean allowPoolIdentity = false;
+
+
+
+  /**
+   * Create a new instance of a pooled LDAP backend.
+   *
+   * @param  resourceMappers  The resource mappers configured for SCIM resource
+   *                          end-points.
+   * @param  writePool        The pool of connections to the primary server,
+   *                          for updates.
+   * @param  readPool         The pool of connections to read-only replicas,
+   *                          for searches, or {@code null} if searches are
+   *                          to use the write pool.
+   */
+  public PooledLDAPBackend(
+      final Map<ResourceDescriptor, ResourceMapper> resourceMappers,
+      final LDAPConnectionPool writePool,
+      final LDAPConnectionPool readPool)
+  {
+    super(resourceMappers);
+    this.writePool = new ConnectionPoolMonitor("ldap-write-pool", writePool);
+    if (readPool == null || readPool == writePool)
+    {
+      this.readPool = this.writePool;
+    }
+    else
+    {
+      this.readPool = new ConnectionPoolMonitor("ldap-read-pool", readPool);
+    }
+  }
+
+
+
+  /**
+   * Specifies an executor on which independent searches, such as searches of
+   * several base DNs, may be processed concurrently.
+   *
+   * @param searchExecutor  The executor on which searches may be processed
+   *                        concurrently, or {@code null} if searches are to be
+   *                        processed sequentially.
+   *
+   * @see LDAPRequestInterface#setSearchExecutor
+   */
+  public void setSearchExecutor(final ExecutorService searchExecutor)
+  {
+    this.searchExecutor = searchExecutor;
+  }
+
+
+
+  /**
+   * Specifies whether requests without an authorization ID, such as requests
+   * with no authenticated user, may be made as the user authenticated on the
+   * pooled connections. That user is usually privileged, so these requests
+   * are rejected by default.
+   *
+   * @param allowPoolIdentity  {@code true} if requests without an
+   *                           authorization ID are to be made as the user
+   *                           authenticated on the pooled connections, or
+   *                           {@code false} if they are to be rejected.
+   */
+  public void setAllowPoolIdentity(final boolean allowPoolIdentity)
+  {
+    this.allowPoolIdentity = allowPoolIdentity;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   * <p>
+   * Paging sessions are not supported by this backend, so this method does
+   * not enable them.
+   */
+  @Override
+  public void setPagedResultsSessions(final int maxSessions,
+                                      final long idleTimeoutMillis)
+  {
+    if (maxSessions > 0)
+    {
+      Debug.debug(Level.WARNING, DebugType.OTHER,
+          "Paging sessions are not kept by a pooled LDAP backend because " +
+          "a simple paged results cookie is only valid on the connection " +
+          "that returned it");
+    }
+    super.setPagedResultsSessions(0, 0);
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected LDAPRequestInterface getLDAPRequestInterface(final String userID)
+      throws SCIMException
+  {
+    final PooledLDAPRequestInterface ldapInterface;
+    final String authzID = getAuthorizationID(userID);
+    if (authzID == null)
+    {
+      if (!allowPoolIdentity)
+      {
+        throw new UnauthorizedException(
+            "The request has no authorization ID");
+      }
+      ldapInterface = new PooledLDAPRequestInterface(readPool, writePool);
+    }
+    else
+    {
+      ldapInterface = new PooledLDAPRequestInterface(readPool, writePool,
+          new ProxiedAuthorizationV2RequestControl(authzID));
+    }
+    ldapInterface.setSearchExecutor(searchExecutor);
+    return ldapInterface;
+  }
+
+
+
+  /**
+   * Determine the authorization ID to use in the proxied authorization
+   * control for requests made by a user. This implementation uses a
+   * "dn:" authorization ID if the user ID is a DN, or a "u:" authorization
+   * ID otherwise.
+   *
+   * @param userID  The authenticated user ID for the request being processed.
+   *
+   * @return  The authorization ID, or {@code null} if requests are to be made
+   *          as the user authenticated on the pooled connections, which is
+   *          only permitted if {@link #setAllowPoolIdentity} has been used
+   *          to allow it.
+   */
+  protected String getAuthorizationID(final String userID)
+  {
+    if (userID == null)
+    {
+      return null;
+    }
+
+    if (DN.isValidDN(userID))
+    {
+      return "dn:" + userID;
+    }
+    return "u:" + userID;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Map<String, Map<String, Long>> getMonitorData()
+  {
+    final Map<String, Map<String, Long>> data =
+        new LinkedHashMap<String, Map<String, Long>>();
+    data.put(writePool.getName(), writePool.getMonitorData());
+    if (readPool != writePool)
+    {
+      data.put(readPool.getName(), readPool.getMonitorData());
+    }
+    return data;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void finalizeBackend()
+  {
+    if (readPool != writePool)
+    {
+      readPool.getPool().close();
+    }
+    writePool.getPool().close();
+  }
+}
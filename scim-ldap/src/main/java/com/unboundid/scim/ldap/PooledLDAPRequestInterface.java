@@ -0,0 +1,406 @@
+/*
+ * Copyright 2012-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.ldap;
+
+import com.unboundid.ldap.sdk.AddRequest;
+import com.unboundid.ldap.sdk.Control;
+import com.unboundid.ldap.sdk.DeleteRequest;
+import com.unboundid.ldap.sdk.ExtendedResult;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.LDAPRequest;
+import com.unboundid.ldap.sdk.LDAPResult;
+import com.unboundid.ldap.sdk.LDAPSearchException;
+import com.unboundid.ldap.sdk.ModifyDNRequest;
+import com.unboundid.ldap.sdk.ModifyRequest;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.UpdatableLDAPRequest;
+import com.unboundid.ldap.sdk.unboundidds.extensions.MultiUpdateErrorBehavior;
+import com.unboundid.ldap.sdk.unboundidds.extensions.MultiUpdateExtendedRequest;
+import com.unboundid.ldap.sdk.unboundidds.extensions.MultiUpdateExtendedResult;
+
+import java.util.List;
+
+
+
+/**
+ * This class is an LDAP request interface that processes requests on
+ * connections checked out of LDAP connection pools. Searches are processed
+ * on connections from the read pool, which may be connected to read-only
+ * replicas, and updates on connections from the write pool. Reads made for
+ * an update use the write pool, so that they see the current state of the
+ * entries being updated.
+ */
+public class PooledLDAPRequestInterface extends LDAPRequestInterface
+{
+  /**
+   * The pool for searches.
+   */
+  private final ConnectionPoolMonitor readPool;
+
+  /**
+   * The pool for updates.
+   */
+  private final ConnectionPoolMonitor writePool;
+
+
+
+  /**
+   * Create a new instance of this LDAP request interface.
+   *
+   * @param readPool   The pool for searches.
+   * @param writePool  The pool for updates, and for the searches made for an
+   *                   update.
+   * @param controls   A set of controls to be inserted into each request.
+   */
+  public PooledLDAPRequestInterface(final ConnectionPoolMonitor readPool,
+                                    final ConnectionPoolMonitor writePool,
+                                    final Control... controls)
+  {
+    super(writePool.getPool(), controls);
+    this.readPool  = readPool;
+    this.writePool = writePool;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public LDAPRequestInterface getUpdateInterface()
+  {
+    if (readPool == writePool)
+    {
+      return this;
+    }
+
+    final PooledLDAPRequestInterface updateInterface =
+        new PooledLDAPRequestInterface(writePool, writePool, getControls());
+    updateInterface.setSearchExecutor(getSearchExecutor());
+    return updateInterface;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   * <p>
+   * This implementation checks a connection out of the read pool, and
+   * returns an interface that processes every search on that connection, so
+   * that each cookie is returned to the connection and server that issued
+   * it.
+   */
+  @Override
+  public LDAPRequestInterface getPagedSearchInterface()
+      throws LDAPException
+  {
+    final LDAPConnection connection = readPool.getConnection();
+    final LDAPRequestInterface updateInterface = getUpdateInterface();
+    return new LDAPRequestInterface(connection, getTimer(), getControls())
+    {
+      @Override
+      public LDAPRequestInterface getUpdateInterface()
+      {
+        return updateInterface;
+      }
+
+      @Override
+      public LDAPRequestInterface getPagedSearchInterface()
+      {
+        return this;
+      }
+
+      @Override
+      public void release()
+      {
+        if (connection.isConnected())
+        {
+          readPool.releaseConnection(connection);
+        }
+        else
+        {
+          readPool.releaseDefunctConnection(connection);
+        }
+      }
+    };
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public SearchResultEntry searchForEntry(final SearchRequest searchRequest)
+       throws LDAPSearchException
+  {
+    addControls(searchRequest);
+    final long startTime = System.nanoTime();
+    final LDAPConnection connection = getReadConnection();
+    int entries = 0;
+    try
+    {
+      final SearchResultEntry entry = connection.searchForEntry(searchRequest);
+      entries = entry == null ? 0 : 1;
+      readPool.releaseConnection(connection);
+      return entry;
+    }
+    catch (LDAPSearchException e)
+    {
+      entries = e.getEntryCount();
+      readPool.releaseConnectionAfterException(connection, e);
+      throw e;
+    }
+    catch (RuntimeException e)
+    {
+      readPool.releaseDefunctConnection(connection);
+      throw e;
+    }
+    finally
+    {
+      recordSearch(searchRequest, entries, startTime);
+    }
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public SearchResult search(final SearchRequest searchRequest)
+       throws LDAPSearchException
+  {
+    addControls(searchRequest);
+    final long startTime = System.nanoTime();
+    final LDAPConnection connection = getReadConnection();
+    int entries = 0;
+    try
+    {
+      final SearchResult result = connection.search(searchRequest);
+      entries = result.getEntryCount();
+      readPool.releaseConnection(connection);
+      return result;
+    }
+    catch (LDAPSearchException e)
+    {
+      entries = e.getEntryCount();
+      readPool.releaseConnectionAfterException(connection, e);
+      throw e;
+    }
+    catch (RuntimeException e)
+    {
+      readPool.releaseDefunctConnection(connection);
+      throw e;
+    }
+    finally
+    {
+      recordSearch(searchRequest, entries, startTime);
+    }
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public LDAPResult modify(final ModifyRequest modifyRequest)
+       throws LDAPException
+  {
+    addControls(modifyRequest);
+    return processUpdate(modifyRequest, OPERATION_MODIFY,
+                         modifyRequest.getDN());
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public LDAPResult modifyDN(final ModifyDNRequest modifyDNRequest)
+       throws LDAPException
+  {
+    addControls(modifyDNRequest);
+    return processUpdate(modifyDNRequest, OPERATION_MODIFY_DN,
+                         modifyDNRequest.getDN());
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public LDAPResult add(final AddRequest addRequest)
+       throws LDAPException
+  {
+    addControls(addRequest);
+    return processUpdate(addRequest, OPERATION_ADD,
+                         addRequest.getDN());
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public LDAPResult delete(final DeleteRequest deleteRequest)
+       throws LDAPException
+  {
+    addControls(deleteRequest);
+    return processUpdate(deleteRequest, OPERATION_DELETE,
+                         deleteRequest.getDN());
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public MultiUpdateExtendedResult multiUpdate(
+      final List<LDAPRequest> updateRequests)
+       throws LDAPException
+  {
+    for (final LDAPRequest updateRequest : updateRequests)
+    {
+      addControls((UpdatableLDAPRequest) updateRequest);
+    }
+
+    final MultiUpdateExtendedRequest request =
+        new MultiUpdateExtendedRequest(MultiUpdateErrorBehavior.ATOMIC,
+                                       updateRequests);
+    final long startTime = System.nanoTime();
+    final LDAPConnection connection = writePool.getConnection();
+    final ExtendedResult result;
+    try
+    {
+      result = connection.processExtendedOperation(request);
+      writePool.releaseConnection(connection);
+    }
+    catch (LDAPException e)
+    {
+      writePool.releaseConnectionAfterException(connection, e);
+      throw e;
+    }
+    catch (RuntimeException e)
+    {
+      writePool.releaseDefunctConnection(connection);
+      throw e;
+    }
+    finally
+    {
+      recordOperation(OPERATION_MULTI_UPDATE, null, startTime);
+    }
+
+    if (result instanceof MultiUpdateExtendedResult)
+    {
+      return (MultiUpdateExtendedResult) result;
+    }
+    return new MultiUpdateExtendedResult(result);
+  }
+
+
+
+  /**
+   * Check out a connection from the read pool.
+   *
+   * @return  The connection.
+   *
+   * @throws LDAPSearchException  If a connection could not be checked out.
+   */
+  private LDAPConnection getReadConnection()
+      throws LDAPSearchException
+  {
+    try
+    {
+      return readPool.getConnection();
+    }
+    catch (LDAPException e)
+    {
+      throw new LDAPSearchException(e);
+    }
+  }
+
+
+
+  /**
+   * Process an add, delete, modify or modify DN request on a connection from
+   * the write pool.
+   *
+   * @param updateRequest  The update request, to which the common controls
+   *                       have been added.
+   * @param operation      The name under which the update is timed.
+   * @param dn             The DN of the entry updated.
+   *
+   * @return  The result of processing the update.
+   *
+   * @throws LDAPException  If the server rejects the update, or if a problem
+   *                        is encountered while checking out a connection,
+   *                        sending the request or reading the response.
+   */
+  private LDAPResult processUpdate(final LDAPRequest updateRequest,
+                                   final String operation, final String dn)
+      throws LDAPException
+  {
+    final long startTime = System.nanoTime();
+    final LDAPConnection connection = writePool.getConnection();
+    try
+    {
+      final LDAPResult result;
+      if (updateRequest instanceof AddRequest)
+      {
+        result = connection.add((AddRequest) updateRequest);
+      }
+      else if (updateRequest instanceof DeleteRequest)
+      {
+        result = connection.delete((DeleteRequest) updateRequest);
+      }
+      else if (updateRequest instanceof ModifyDNRequest)
+      {
+        result = connection.modifyDN((ModifyDNRequest) updateRequest);
+      }
+      else
+      {
+        result = connection.modify((ModifyRequest) updateRequest);
+      }
+      writePool.releaseConnection(connection);
+      return result;
+    }
+    catch (LDAPException e)
+    {
+      writePool.releaseConnectionAfterException(connection, e);
+      throw e;
+    }
+    catch (RuntimeException e)
+    {
+      writePool.releaseDefunctConnection(connection);
+      throw e;
+    }
+    finally
+    {
+      recordOperation(operation, dn, startTime);
+    }
+  }
+}
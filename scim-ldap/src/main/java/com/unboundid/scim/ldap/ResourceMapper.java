@@ -24,6 +24,7 @@ import com.unboundid.ldap.sdk.Entry;
 import com.unboundid.ldap.sdk.Filter;
 import com.unboundid.ldap.sdk.LDAPException;
 import com.unboundid.ldap.sdk.Modification;
+import com.unboundid.ldap.sdk.ModifyRequest;
 import com.unboundid.ldap.sdk.ModificationType;
 import com.unboundid.ldap.sdk.ResultCode;
 import com.unboundid.ldap.sdk.SearchResultEntry;
@@ -37,6 +38,7 @@ import com.unboundid.scim.sdk.Debug;
 import com.unboundid.scim.sdk.DebugType;
 import com.unboundid.scim.sdk.ForbiddenException;
 import com.unboundid.scim.sdk.InvalidResourceException;
+import com.unboundid.scim.sdk.PageParameters;
 import com.unboundid.scim.sdk.PreconditionFailedException;
 import com.unboundid.scim.sdk.ResourceConflictException;
 import com.unboundid.scim.sdk.ResourceNotFoundException;
@@ -172,6 +174,31 @@ public class ResourceMapper
    */
   protected AttributeMapper passwordAttributeMapper;
 
+  /**
+   * The maximum number of compiled filter plans to be cached.
+   */
+  private static final int MAX_FILTER_PLANS = 1000;
+
+  /**
+   * The compiled filter plans for recently mapped SCIM filters, keyed by the
+   * shape of the filter.
+   */
+  private final BoundedCache<String, FilterPlan> filterPlans =
+      new BoundedCache<String, FilterPlan>(MAX_FILTER_PLANS, 0);
+
+  /**
+   * The maximum number of LDAP attribute projection plans to be cached.
+   */
+  private static final int MAX_PROJECTION_PLANS = 1000;
+
+  /**
+   * The LDAP attributes to request for recently seen combinations of query
+   * attributes and additional LDAP attributes, keyed by the normalized form
+   * of the combination.
+   */
+  private final BoundedCache<List<Object>, String[]> projectionPlans =
+      new BoundedCache<List<Object>, String[]>(MAX_PROJECTION_PLANS, 0);
+
   /**
    * Create a new instance of this resource mapper. All resource mappers must
    * provide a default constructor, but any initialization should be done
@@ -643,6 +670,9 @@ public class ResourceMapper
       this.derivedAttributes.put(derivedAttribute.getAttributeDescriptor(),
                                  derivedAttribute);
     }
+
+    filterPlans.clear();
+    projectionPlans.clear();
   }
 
 
@@ -738,7 +768,8 @@ public class ResourceMapper
       if (queryAttributes.isAttributeRequested(e.getKey()))
       {
         final DerivedAttribute derivedAttribute = e.getValue();
-        ldapAttributes.addAll(derivedAttribute.getLDAPAttributeTypes());
+        ldapAttributes.addAll(
+            derivedAttribute.getLDAPAttributeTypes(queryAttributes));
       }
     }
 
@@ -754,6 +785,84 @@ public class ResourceMapper
 
 
 
+  /**
+   * Retrieve the LDAP attributes that should be requested in order to return
+   * the specified query attributes, together with some additional LDAP
+   * attributes needed by the caller, such as the attributes used in a search
+   * filter. The array is computed once for each combination of the SCIM
+   * attributes that are mapped by this resource mapper, the pages of values
+   * requested for derived attributes and the additional attributes, and is
+   * then shared by all requests for the same combination, so it must not be
+   * modified.
+   *
+   * @param queryAttributes       The requested query attributes.
+   * @param additionalAttributes  LDAP attributes to be requested in addition
+   *                              to those mapped from the query attributes.
+   * @param filterAttributes      More LDAP attributes to be requested, such
+   *                              as those used in a search filter, or
+   *                              {@code null} if there are none.
+   *
+   * @return  The LDAP attributes that should be requested.
+   */
+  public String[] getLDAPAttributeProjection(
+      final SCIMQueryAttributes queryAttributes,
+      final Set<String> additionalAttributes,
+      final Set<String> filterAttributes)
+  {
+    final List<Object> key = new ArrayList<Object>();
+    key.add(additionalAttributes);
+    key.add(filterAttributes);
+    key.add(queryAttributes.isDebugSearchIndex());
+    if (queryAttributes.allAttributesRequested())
+    {
+      key.add(Boolean.TRUE);
+    }
+    else
+    {
+      final Set<AttributeDescriptor> mappedDescriptors =
+          new HashSet<AttributeDescriptor>();
+      for (final AttributeDescriptor descriptor :
+          queryAttributes.getDescriptors().keySet())
+      {
+        if (attributeMappers.containsKey(descriptor) ||
+            derivedAttributes.containsKey(descriptor))
+        {
+          mappedDescriptors.add(descriptor);
+        }
+      }
+      key.add(mappedDescriptors);
+    }
+
+    // Derived attributes may request a range of values of an LDAP attribute
+    // for a page of values, so the pages requested are part of the key.
+    for (final AttributeDescriptor descriptor : derivedAttributes.keySet())
+    {
+      final PageParameters valuePage = queryAttributes.getValuePage(descriptor);
+      if (valuePage != null && queryAttributes.isAttributeRequested(descriptor))
+      {
+        key.add(descriptor);
+        key.add(valuePage.getStartIndex());
+        key.add(valuePage.getCount());
+      }
+    }
+
+    String[] plan = projectionPlans.get(key);
+    if (plan == null)
+    {
+      final Set<String> ldapAttributes = toLDAPAttributeTypes(queryAttributes);
+      ldapAttributes.addAll(additionalAttributes);
+      if (filterAttributes != null)
+      {
+        ldapAttributes.addAll(filterAttributes);
+      }
+      plan = ldapAttributes.toArray(new String[ldapAttributes.size()]);
+      projectionPlans.put(key, plan);
+    }
+    return plan;
+  }
+
+
+
   /**
    * Retrieve the set of LDAP attribute types that are mapped from the given
    * set of SCIM attributes.
@@ -1302,6 +1411,51 @@ public class ResourceMapper
 
 
 
+  /**
+   * Retrieves the LDAP attribute by which queries using the VLV request
+   * control are sorted when no sort is requested.
+   *
+   * @return  The default VLV sort attribute.
+   */
+  public String getVLVSortAttribute()
+  {
+    return searchResolver.getVLVSortAttribute();
+  }
+
+
+
+  /**
+   * Determines whether the VLV request control may be used for a query of
+   * the given base DNs. The VLV request control is only used if the directory
+   * server has a VLV index for the sort attribute in each base DN, so that
+   * queries that do not match an index can use simple paged results instead
+   * of an unindexed server-side sort.
+   *
+   * @param searchBaseDNs   The base DNs to be searched.
+   * @param sortParameters  The sort parameters of the query, or {@code null}
+   *                        if the default VLV sort attribute is to be used.
+   *
+   * @return  {@code true} if the VLV request control may be used.
+   *
+   * @throws SCIMException  If the sort parameters could not be mapped.
+   */
+  public boolean supportsVLV(final Collection<DN> searchBaseDNs,
+                             final SortParameters sortParameters)
+      throws SCIMException
+  {
+    String sortAttribute = getVLVSortAttribute();
+    if (sortParameters != null)
+    {
+      final ServerSideSortRequestControl c =
+          (ServerSideSortRequestControl) toLDAPSortControl(sortParameters);
+      sortAttribute = c.getSortKeys()[0].getAttributeName();
+    }
+
+    return searchResolver.hasVLVIndex(searchBaseDNs, sortAttribute);
+  }
+
+
+
   /**
    * Map the attributes in an LDAP entry to SCIM attributes.
    *
@@ -1363,7 +1517,7 @@ public class ResourceMapper
           final DerivedAttribute derivedAttribute = e.getValue();
           final SCIMAttribute attribute =
               derivedAttribute.searchEntryToSCIMAttribute(
-                  entry, ldapInterface, searchResolver);
+                  entry, ldapInterface, searchResolver, queryAttributes);
           if (attribute != null)
           {
             final SCIMAttribute paredAttribute =
@@ -1391,8 +1545,10 @@ public class ResourceMapper
         final SCIMAttribute attribute = attributeMapper.toSCIMAttribute(entry);
         if (attribute != null)
         {
-          final SCIMAttribute paredAttribute =
-              queryAttributes.pareAttribute(attribute);
+          final SCIMAttribute pagedAttribute =
+              queryAttributes.pageAttribute(attribute);
+          final SCIMAttribute paredAttribute = pagedAttribute == null ?
+              null : queryAttributes.pareAttribute(pagedAttribute);
           if (paredAttribute != null)
           {
             attributes.add(paredAttribute);
@@ -1544,16 +1700,38 @@ public class ResourceMapper
   protected Filter toLDAPFilterComponent(final SCIMFilter filter,
                                        final LDAPRequestInterface ldapInterface)
       throws SCIMException {
+    return toLDAPFilterComponent(filter, getFilterPlan(filter), ldapInterface);
+  }
+
+
+
+  /**
+   * Map a SCIM filter component to an LDAP filter component using a compiled
+   * filter plan.
+   *
+   * @param filter         The SCIM filter component to be mapped.
+   * @param plan           The compiled plan for the filter component.
+   * @param ldapInterface  An optional LDAP interface that can be used to
+   *                       map filters using derive attributes.
+   * @return  The LDAP filter component, or {@code null} if the filter
+   *          component could not be mapped and will not match anything.
+   * @throws SCIMException  If an error occurs during the mapping.
+   */
+  private Filter toLDAPFilterComponent(final SCIMFilter filter,
+                                       final FilterPlan plan,
+                                       final LDAPRequestInterface ldapInterface)
+      throws SCIMException {
     final SCIMFilterType filterType = filter.getFilterType();
+    final List<SCIMFilter> components = filter.getFilterComponents();
 
     switch (filterType)
     {
       case AND:
         final List<Filter> andFilterComponents = new ArrayList<Filter>();
-        for (SCIMFilter f : filter.getFilterComponents())
+        for (int i = 0; i < components.size(); i++)
         {
-          final Filter filterComponent =
-              toLDAPFilterComponent(f, ldapInterface);
+          final Filter filterComponent = toLDAPFilterComponent(
+              components.get(i), plan.components.get(i), ldapInterface);
           if (filterComponent != null)
           {
             andFilterComponents.add(filterComponent);
@@ -1568,10 +1746,10 @@ public class ResourceMapper
 
       case OR:
         final List<Filter> orFilterComponents = new ArrayList<Filter>();
-        for (SCIMFilter f : filter.getFilterComponents())
+        for (int i = 0; i < components.size(); i++)
         {
-          final Filter filterComponent =
-              toLDAPFilterComponent(f, ldapInterface);
+          final Filter filterComponent = toLDAPFilterComponent(
+              components.get(i), plan.components.get(i), ldapInterface);
           if (filterComponent != null)
           {
             orFilterComponents.add(filterComponent);
@@ -1579,6 +1757,152 @@ public class ResourceMapper
         }
         return Filter.createORFilter(orFilterComponents);
 
+      default:
+        final List<Filter> filters = new ArrayList<Filter>(2);
+        if (plan.attributeMapper != null)
+        {
+          filters.add(plan.attributeMapper.toLDAPFilter(filter));
+        }
+        if(plan.derivedAttribute != null && ldapInterface != null)
+        {
+          filters.add(plan.derivedAttribute.toLDAPFilter(filter,
+              ldapInterface, searchResolver));
+        }
+
+        if (filters.size() == 2)
+        {
+          return Filter.createORFilter(filters);
+        }
+        if (!filters.isEmpty())
+        {
+          return filters.get(0);
+        }
+        return null;
+    }
+  }
+
+
+
+  /**
+   * Determines whether the LDAP filter mapped from a SCIM filter matches
+   * exactly the entries that match the SCIM filter. This is the case when
+   * every filter component is an exact match on an attribute mapped by an
+   * attribute mapper, such as an equality match on a case-insensitive string
+   * attribute, and no component involves a derived attribute. The search
+   * results of an exact filter do not need to be filtered again using the
+   * SCIM filter. Subclasses that override {@link #toLDAPFilterComponent}
+   * should also override this method.
+   *
+   * @param filter  The SCIM filter.
+   *
+   * @return  {@code true} if the mapped LDAP filter is exact.
+   *
+   * @throws SCIMException  If the filter references an undefined attribute.
+   */
+  public boolean isExactFilter(final SCIMFilter filter)
+      throws SCIMException
+  {
+    return getFilterPlan(filter).exact;
+  }
+
+
+
+  /**
+   * Retrieve the compiled plan for mapping a SCIM filter, compiling it if
+   * there is no cached plan for a filter of the same shape. Filters have the
+   * same shape if they differ only in their values.
+   *
+   * @param filter  The SCIM filter to be mapped.
+   *
+   * @return  The compiled plan for the filter.
+   *
+   * @throws SCIMException  If the filter references an undefined attribute.
+   */
+  private FilterPlan getFilterPlan(final SCIMFilter filter)
+      throws SCIMException
+  {
+    final StringBuilder builder = new StringBuilder();
+    appendFilterShape(filter, builder);
+    final String shape = builder.toString();
+
+    FilterPlan plan = filterPlans.get(shape);
+    if (plan == null)
+    {
+      plan = compileFilterPlan(filter);
+      filterPlans.put(shape, plan);
+    }
+    return plan;
+  }
+
+
+
+  /**
+   * Append the shape of a SCIM filter, which is the filter without its
+   * values, to the provided buffer.
+   *
+   * @param filter   The SCIM filter.
+   * @param builder  The buffer to which the shape is to be appended.
+   */
+  private static void appendFilterShape(final SCIMFilter filter,
+                                        final StringBuilder builder)
+  {
+    builder.append(filter.getFilterType());
+    builder.append('(');
+    switch (filter.getFilterType())
+    {
+      case AND:
+      case OR:
+        for (final SCIMFilter component : filter.getFilterComponents())
+        {
+          appendFilterShape(component, builder);
+        }
+        break;
+
+      default:
+        final AttributePath path = filter.getFilterAttribute();
+        builder.append(StaticUtils.toLowerCase(path.getAttributeSchema()));
+        builder.append(SCIMConstants.SEPARATOR_CHAR_QUALIFIED_ATTRIBUTE);
+        builder.append(StaticUtils.toLowerCase(path.getAttributeName()));
+        if (path.getSubAttributeName() != null)
+        {
+          builder.append('.');
+          builder.append(StaticUtils.toLowerCase(path.getSubAttributeName()));
+        }
+        break;
+    }
+    builder.append(')');
+  }
+
+
+
+  /**
+   * Compile the plan for mapping a SCIM filter by resolving the attribute
+   * mappers and derived attributes referenced by the filter.
+   *
+   * @param filter  The SCIM filter to be mapped.
+   *
+   * @return  The compiled plan for the filter.
+   *
+   * @throws SCIMException  If the filter references an undefined attribute.
+   */
+  private FilterPlan compileFilterPlan(final SCIMFilter filter)
+      throws SCIMException
+  {
+    switch (filter.getFilterType())
+    {
+      case AND:
+      case OR:
+        final List<FilterPlan> components =
+            new ArrayList<FilterPlan>(filter.getFilterComponents().size());
+        boolean exact = !filter.getFilterComponents().isEmpty();
+        for (final SCIMFilter component : filter.getFilterComponents())
+        {
+          final FilterPlan componentPlan = compileFilterPlan(component);
+          components.add(componentPlan);
+          exact &= componentPlan.exact;
+        }
+        return new FilterPlan(components, null, null, exact);
+
       default:
         final AttributePath filterAttribute = filter.getFilterAttribute();
         final AttributeDescriptor attributeDescriptor =
@@ -1604,32 +1928,69 @@ public class ResourceMapper
           attributeMapper = attributeMappers.get(attributeDescriptor);
         }
 
-        DerivedAttribute derivedAttribute =
+        final DerivedAttribute derivedAttribute =
             derivedAttributes.get(attributeDescriptor);
+        return new FilterPlan(Collections.<FilterPlan>emptyList(),
+            attributeMapper, derivedAttribute,
+            attributeMapper != null && derivedAttribute == null &&
+            attributeMapper.isExactFilter(filter.getFilterType()));
+    }
+  }
 
-        final List<Filter> filters = new ArrayList<Filter>(2);
-        if (attributeMapper != null)
-        {
-          filters.add(attributeMapper.toLDAPFilter(filter));
-        }
-        if(derivedAttribute != null && ldapInterface != null)
-        {
-          filters.add(derivedAttribute.toLDAPFilter(filter, ldapInterface,
-              searchResolver));
-        }
 
-        if (filters.size() == 2)
-        {
-          return Filter.createORFilter(filters);
-        }
-        if (!filters.isEmpty())
-        {
-          return filters.get(0);
-        }
-        return null;
+
+  /**
+   * A compiled plan for mapping SCIM filters of a given shape to LDAP
+   * filters. The plan mirrors the structure of the SCIM filter.
+   */
+  private static final class FilterPlan
+  {
+    /**
+     * The plans for the components of an AND or OR filter.
+     */
+    private final List<FilterPlan> components;
+
+    /**
+     * The attribute mapper for the attribute of a filter component, or
+     * {@code null} if there is none.
+     */
+    private final AttributeMapper attributeMapper;
+
+    /**
+     * The derived attribute for the attribute of a filter component, or
+     * {@code null} if there is none.
+     */
+    private final DerivedAttribute derivedAttribute;
+
+    /**
+     * Indicates whether the mapped LDAP filter matches exactly the entries
+     * that match the SCIM filter.
+     */
+    private final boolean exact;
+
+    /**
+     * Create a new compiled filter plan.
+     *
+     * @param components        The plans for the components of an AND or OR
+     *                          filter.
+     * @param attributeMapper   The attribute mapper for a filter component.
+     * @param derivedAttribute  The derived attribute for a filter component.
+     * @param exact             Whether the mapped LDAP filter is exact.
+     */
+    private FilterPlan(final List<FilterPlan> components,
+                       final AttributeMapper attributeMapper,
+                       final DerivedAttribute derivedAttribute,
+                       final boolean exact)
+    {
+      this.components = components;
+      this.attributeMapper = attributeMapper;
+      this.derivedAttribute = derivedAttribute;
+      this.exact = exact;
     }
   }
 
+
+
   /**
    * Gets an AttributeMapper for the SCIM Meta object (part of the core schema).
    *
@@ -1735,6 +2096,81 @@ public class ResourceMapper
 
 
 
+  /**
+   * Remove any resource ID cached for an LDAP entry that has been renamed or
+   * deleted.
+   *
+   * @param dn  The DN of the entry, before any rename.
+   */
+  public void removeCachedResourceID(final String dn)
+  {
+    if (searchResolver != null)
+    {
+      searchResolver.removeCachedResourceID(dn);
+    }
+  }
+
+
+
+  /**
+   * Remove any resource ID cached for an LDAP entry whose resource ID
+   * attribute has been modified.
+   *
+   * @param modifyRequest  The modify request that has been applied to the
+   *                       entry.
+   */
+  public void removeCachedResourceID(final ModifyRequest modifyRequest)
+  {
+    if (searchResolver != null)
+    {
+      searchResolver.removeCachedResourceID(modifyRequest);
+    }
+  }
+
+
+
+  /**
+   * Determine the DN of the LDAP entry identified by the given resource ID
+   * without reading the entry, if possible. The entry might no longer be the
+   * resource, so an update of the entry should assert the filter returned by
+   * {@link #getResourceFilter}.
+   *
+   * @param resourceID  The requested SCIM resource ID.
+   *
+   * @return  The probable LDAP DN for the given resource ID, or {@code null}
+   *          if it cannot be determined without reading the entry.
+   */
+  public String getProbableDnFromId(final String resourceID)
+  {
+    if (searchResolver == null)
+    {
+      return null;
+    }
+    return searchResolver.getProbableDnFromId(resourceID);
+  }
+
+
+
+  /**
+   * Create a filter that matches the LDAP entry identified by the given
+   * resource ID.
+   *
+   * @param resourceID  The requested SCIM resource ID.
+   *
+   * @return  A filter that matches the resource entry, or {@code null} if
+   *          there is no search resolver for this mapper.
+   */
+  public Filter getResourceFilter(final String resourceID)
+  {
+    if (searchResolver == null)
+    {
+      return null;
+    }
+    return searchResolver.getResourceFilter(resourceID);
+  }
+
+
+
   /**
    * Read the LDAP entry identified by the given resource ID. No attributes
    * are returned from the entry.
@@ -95,7 +95,7 @@ public class ResourceSearchResultListener extends SCIMSearchResultListener
    */
   public void searchEntryReturned(final SearchResultEntry searchEntry)
   {
-    if (resources.size() >= maxResults)
+    if (getResourceCount() >= maxResults)
     {
       totalResults.incrementAndGet();
       return;
@@ -107,7 +107,7 @@ public class ResourceSearchResultListener extends SCIMSearchResultListener
       if (resource != null)
       {
         totalResults.incrementAndGet();
-        resources.add(resource);
+        addResource(resource);
       }
     }
     catch (SCIMException e)
@@ -119,6 +119,33 @@ public class ResourceSearchResultListener extends SCIMSearchResultListener
 
 
 
+  /**
+   * Add a SCIM object to be returned.
+   *
+   * @param resource  The SCIM object to be returned.
+   *
+   * @throws SCIMException  If the SCIM object could not be added.
+   */
+  protected void addResource(final BaseResource resource)
+      throws SCIMException
+  {
+    resources.add(resource);
+  }
+
+
+
+  /**
+   * Retrieve the number of SCIM objects that have been added so far.
+   *
+   * @return  The number of SCIM objects that have been added so far.
+   */
+  protected int getResourceCount()
+  {
+    return resources.size();
+  }
+
+
+
   /**
    * Indicates that the provided search result reference has been returned by
    * the server and may be processed by this search result listener.
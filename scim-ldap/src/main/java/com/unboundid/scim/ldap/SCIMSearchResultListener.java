@@ -69,6 +69,12 @@ public abstract class SCIMSearchResultListener {
    */
   private final SCIMQueryAttributes attributes;
 
+  /**
+   * Indicates whether the LDAP filter matches exactly the entries that match
+   * the SCIM filter, so that the SCIM filter need not be evaluated again.
+   */
+  private final boolean exactFilter;
+
 
   /**
    * The LDAPBackend that is processing the SCIM request.
@@ -85,7 +91,9 @@ public abstract class SCIMSearchResultListener {
    * @param ldapInterface  An LDAP interface that can be used to
    *                       derive attributes from other entries.
    *
-   * @throws com.unboundid.scim.sdk.SCIMException  Should never be thrown.
+   * @throws com.unboundid.scim.sdk.SCIMException  If the request filter
+   *                                               references an undefined
+   *                                               attribute.
    */
   public SCIMSearchResultListener(final LDAPBackend backend,
                                   final GetResourcesRequest request,
@@ -97,7 +105,17 @@ public abstract class SCIMSearchResultListener {
         backend.getResourceMapper(request.getResourceDescriptor());
     this.request        = request;
     this.ldapInterface  = ldapInterface;
-    this.attributes     = getFilterAttributes().merge(request.getAttributes());
+    this.exactFilter    = request.getFilter() != null &&
+                          resourceMapper.isExactFilter(request.getFilter());
+    if (exactFilter)
+    {
+      this.attributes   = request.getAttributes();
+    }
+    else
+    {
+      this.attributes   =
+          getFilterAttributes().merge(request.getAttributes());
+    }
   }
 
 
@@ -231,9 +249,17 @@ public abstract class SCIMSearchResultListener {
     ldapBackend.setIdAndMetaAttributes(resourceMapper, resource, request,
         searchEntry, null);
 
-    if (request.getFilter() == null ||
+    if (request.getFilter() == null || exactFilter ||
         scimObject.matchesFilter(request.getFilter()))
     {
+      if (attributes != request.getAttributes())
+      {
+        // The filter is evaluated against all of the values of the
+        // attributes it references, so pages of values requested for them
+        // can only be applied now.
+        request.getAttributes().pageValues(scimObject, attributes);
+      }
+
       if (request.getAttributes().allAttributesRequested() ||
           resourceMapper.getDefaultSchemaURI().equals(
               SCHEMA_URI_UBID_LDAP))
@@ -23,6 +23,8 @@ import com.unboundid.ldap.sdk.Entry;
 import com.unboundid.ldap.sdk.Filter;
 import com.unboundid.ldap.sdk.controls.ServerSideSortRequestControl;
 import com.unboundid.ldap.sdk.controls.SortKey;
+import com.unboundid.ldap.sdk.schema.AttributeTypeDefinition;
+import com.unboundid.ldap.sdk.schema.Schema;
 import com.unboundid.scim.schema.AttributeDescriptor;
 import com.unboundid.scim.sdk.AttributePath;
 import com.unboundid.scim.sdk.InvalidResourceException;
@@ -50,6 +52,12 @@ public class SimpleAttributeMapper extends AttributeMapper
    */
   private final AttributeTransformation attributeTransformation;
 
+  /**
+   * Indicates whether an LDAP equality filter on the mapped attribute matches
+   * exactly the entries that the SCIM equality filter matches.
+   */
+  private final boolean exactEquality;
+
 
 
   /**
@@ -62,9 +70,91 @@ public class SimpleAttributeMapper extends AttributeMapper
    */
   public SimpleAttributeMapper(final AttributeDescriptor attributeDescriptor,
                                final AttributeTransformation transformation)
+  {
+    this(attributeDescriptor, transformation, false);
+  }
+
+
+
+  /**
+   * Create a new instance of a simple attribute mapper.
+   *
+   * @param attributeDescriptor  The SCIM attribute type that is mapped by this
+   *                             attribute mapper.
+   * @param transformation     The attribute transformation to be applied
+   *                           by this attribute mapper.
+   * @param exactEquality      Indicates whether an LDAP equality filter on the
+   *                           mapped attribute matches exactly the entries
+   *                           that the SCIM equality filter matches.
+   */
+  public SimpleAttributeMapper(final AttributeDescriptor attributeDescriptor,
+                               final AttributeTransformation transformation,
+                               final boolean exactEquality)
   {
     super(attributeDescriptor);
     this.attributeTransformation = transformation;
+    this.exactEquality = exactEquality;
+  }
+
+
+
+  /**
+   * Determine whether an LDAP equality filter on an LDAP attribute matches
+   * exactly the entries that the SCIM equality filter on a SCIM string
+   * attribute matches. This is only the case if the LDAP schema defines the
+   * LDAP attribute as single-valued, with an equality matching rule that
+   * has the same case sensitivity as the SCIM attribute.
+   *
+   * @param attributeDescriptor  The SCIM attribute type.
+   * @param transformation       The attribute transformation applied to the
+   *                             SCIM attribute.
+   * @param ldapSchema           The LDAP schema, or {@code null} if it is not
+   *                             available, in which case equality filters are
+   *                             not considered exact.
+   *
+   * @return  {@code true} if LDAP equality filters are exact.
+   */
+  static boolean isExactEquality(
+      final AttributeDescriptor attributeDescriptor,
+      final AttributeTransformation transformation,
+      final Schema ldapSchema)
+  {
+    if (ldapSchema == null ||
+        attributeDescriptor.getDataType() !=
+            AttributeDescriptor.DataType.STRING ||
+        !(transformation.getTransformation() instanceof DefaultTransformation))
+    {
+      return false;
+    }
+
+    final AttributeTypeDefinition attributeType =
+        ldapSchema.getAttributeType(transformation.getLdapAttribute());
+    if (attributeType == null || !attributeType.isSingleValued())
+    {
+      return false;
+    }
+
+    final String matchingRule =
+        attributeType.getEqualityMatchingRule(ldapSchema);
+    if (matchingRule == null)
+    {
+      return false;
+    }
+
+    if (attributeDescriptor.isCaseExact())
+    {
+      return matchingRule.equalsIgnoreCase("caseExactMatch") ||
+             matchingRule.equals("2.5.13.5") ||
+             matchingRule.equalsIgnoreCase("caseExactIA5Match") ||
+             matchingRule.equals("1.3.6.1.4.1.1466.109.114.1");
+    }
+    else
+    {
+      return matchingRule.equalsIgnoreCase("caseIgnoreMatch") ||
+             matchingRule.equals("2.5.13.2") ||
+             matchingRule.equalsIgnoreCase("caseIgnoreIA5Match") ||
+             matchingRule.equals("1.3.6.1.4.1.1466.109.114.2");
+    }
   }
 
 
@@ -161,6 +251,14 @@ public class SimpleAttributeMapper extends AttributeMapper
 
 
 
+  @Override
+  public boolean isExactFilter(final SCIMFilterType filterType)
+  {
+    return filterType == SCIMFilterType.EQUALITY && exactEquality;
+  }
+
+
+
   @Override
   public Set<String> toLDAPAttributeTypes(final AttributePath scimAttribute)
       throws InvalidResourceException
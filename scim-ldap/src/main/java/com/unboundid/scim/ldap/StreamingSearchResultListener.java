@@ -0,0 +1,142 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.ldap;
+
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.scim.data.BaseResource;
+import com.unboundid.scim.marshal.ResourcesStreamMarshaller;
+import com.unboundid.scim.sdk.Debug;
+import com.unboundid.scim.sdk.GetResourcesRequest;
+import com.unboundid.scim.sdk.SCIMException;
+
+
+
+/**
+ * This class provides a search result listener that writes SCIM objects
+ * to a stream marshaller as soon as they are returned by the LDAP server,
+ * rather than keeping them in memory.
+ */
+public class StreamingSearchResultListener extends ResourceSearchResultListener
+{
+  /**
+   * The serial version ID required for this serializable class.
+   */
+  private static final long serialVersionUID = 3526815237744861190L;
+
+  /**
+   * The stream marshaller to which SCIM objects are written.
+   */
+  private final ResourcesStreamMarshaller marshaller;
+
+  /**
+   * The number of SCIM objects that have been written.
+   */
+  private int resourceCount;
+
+  /**
+   * The exception that caused writing to fail, or {@code null} if writing
+   * has not failed.
+   */
+  private SCIMException writeException;
+
+
+
+  /**
+   * Create a new search result listener to stream SCIM objects.
+   *
+   * @param backend        The LDAP backend that is processing the SCIM request.
+   * @param request        The request that is being processed.
+   * @param ldapInterface  An LDAP interface that can be used to
+   *                       derive attributes from other entries.
+   * @param maxResults     The maximum number of resources that may be written.
+   * @param marshaller     The stream marshaller to which SCIM objects are
+   *                       written.
+   *
+   * @throws SCIMException  Should never be thrown.
+   */
+  public StreamingSearchResultListener(
+      final LDAPBackend backend, final GetResourcesRequest request,
+      final LDAPRequestInterface ldapInterface, final int maxResults,
+      final ResourcesStreamMarshaller marshaller)
+      throws SCIMException
+  {
+    super(backend, request, ldapInterface, maxResults);
+    this.marshaller = marshaller;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void searchEntryReturned(final SearchResultEntry searchEntry)
+  {
+    if (writeException != null)
+    {
+      // There is no point mapping any more entries.
+      return;
+    }
+
+    super.searchEntryReturned(searchEntry);
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected void addResource(final BaseResource resource)
+  {
+    try
+    {
+      marshaller.writeResource(resource);
+      resourceCount++;
+    }
+    catch (SCIMException e)
+    {
+      Debug.debugException(e);
+      writeException = e;
+    }
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected int getResourceCount()
+  {
+    return resourceCount;
+  }
+
+
+
+  /**
+   * Retrieve the exception that caused writing to fail.
+   *
+   * @return  The exception that caused writing to fail, or {@code null} if
+   *          all SCIM objects were written successfully.
+   */
+  public SCIMException getWriteException()
+  {
+    return writeException;
+  }
+}
@@ -0,0 +1,379 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.ldap;
+
+import com.unboundid.ldap.sdk.AddRequest;
+import com.unboundid.ldap.sdk.DeleteRequest;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.LDAPRequest;
+import com.unboundid.ldap.sdk.LDAPResult;
+import com.unboundid.ldap.sdk.LDAPSearchException;
+import com.unboundid.ldap.sdk.ModifyRequest;
+import com.unboundid.ldap.sdk.OperationType;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.unboundidds.extensions.MultiUpdateChangesApplied;
+import com.unboundid.ldap.sdk.unboundidds.extensions.MultiUpdateErrorBehavior;
+import com.unboundid.ldap.sdk.unboundidds.extensions.MultiUpdateExtendedRequest;
+import com.unboundid.ldap.sdk.unboundidds.extensions.MultiUpdateExtendedResult;
+import com.unboundid.scim.data.BaseResource;
+import com.unboundid.scim.data.Name;
+import com.unboundid.scim.data.UserResource;
+import com.unboundid.scim.schema.CoreSchema;
+import com.unboundid.scim.schema.ResourceDescriptor;
+import com.unboundid.scim.sdk.BulkRequestResult;
+import com.unboundid.scim.sdk.DeleteResourceRequest;
+import com.unboundid.scim.sdk.PostResourceRequest;
+import com.unboundid.scim.sdk.SCIMException;
+import com.unboundid.scim.sdk.SCIMQueryAttributes;
+import com.unboundid.scim.sdk.SCIMRequest;
+import com.unboundid.util.ObjectPair;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.testng.Assert.*;
+
+
+
+/**
+ * This class provides test coverage for the bulk requests that an
+ * {@link LDAPBackend} applies together with a multi-update extended
+ * operation.
+ */
+public class ApplyBulkRequestsTestCase
+    extends LDAPTestCase
+{
+  /**
+   * Verify that requests are applied together with a single multi-update
+   * extended operation, and that each gets its own response.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testApplyTogether()
+      throws Exception
+  {
+    final String deletedDN = addUser("bulk.deleted");
+    final Map<ResourceDescriptor, ResourceMapper> mappers =
+        getResourceMappers();
+    final ResourceDescriptor userDescriptor =
+        getResourceDescriptor(mappers, "User");
+    final RecordingLDAPRequestInterface ldapInterface =
+        createMultiUpdateInterface(true, null, null);
+    final LDAPBackend backend = createBackend(mappers, ldapInterface);
+    backend.setMaxBulkRequestsApplied(10);
+
+    final String deletedID = getDirectoryServer().getEntry(
+        deletedDN, "entryUUID").getAttributeValue("entryUUID");
+    final List<BulkRequestResult> results = backend.applyBulkRequests(
+        Arrays.<SCIMRequest>asList(
+            createPost(userDescriptor, "bulk.added.1"),
+            new DeleteResourceRequest(BASE_URI, "cn=Directory Manager",
+                userDescriptor, deletedID),
+            createPost(userDescriptor, "bulk.added.2")));
+
+    assertNotNull(results);
+    assertEquals(getMultiUpdateCount(ldapInterface), 1);
+    assertEquals(results.size(), 3);
+    assertUserName(results.get(0).getResource(), "bulk.added.1");
+    assertNull(results.get(1).getResource());
+    assertUserName(results.get(2).getResource(), "bulk.added.2");
+    assertNull(getDirectoryServer().getEntry(deletedDN));
+  }
+
+
+
+  /**
+   * Verify that a failure to create the response of one applied request
+   * does not affect the responses of the other requests.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testCompletionFailure()
+      throws Exception
+  {
+    final Map<ResourceDescriptor, ResourceMapper> mappers =
+        getResourceMappers();
+    final ResourceDescriptor userDescriptor =
+        getResourceDescriptor(mappers, "User");
+    final LDAPBackend backend = createBackend(mappers,
+        createMultiUpdateInterface(true,
+            "uid=bulk.unreadable,ou=people,dc=example,dc=com", null));
+    backend.setMaxBulkRequestsApplied(10);
+
+    final List<BulkRequestResult> results = backend.applyBulkRequests(
+        Arrays.<SCIMRequest>asList(
+            createPost(userDescriptor, "bulk.readable.1"),
+            createPost(userDescriptor, "bulk.unreadable"),
+            createPost(userDescriptor, "bulk.readable.2")));
+
+    assertNotNull(results);
+    assertUserName(results.get(0).getResource(), "bulk.readable.1");
+    try
+    {
+      results.get(1).getResource();
+      fail("The response of a request that could not be read back was " +
+           "created");
+    }
+    catch (SCIMException e)
+    {
+      // Expected.
+    }
+    assertUserName(results.get(2).getResource(), "bulk.readable.2");
+    assertNotNull(getDirectoryServer().getEntry(
+        "uid=bulk.unreadable,ou=people,dc=example,dc=com"));
+  }
+
+
+
+  /**
+   * Verify that nothing is applied if the multi-update extended operation
+   * does not apply all of the updates, or if too many requests are to be
+   * applied together.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testAtomicFallback()
+      throws Exception
+  {
+    final Map<ResourceDescriptor, ResourceMapper> mappers =
+        getResourceMappers();
+    final ResourceDescriptor userDescriptor =
+        getResourceDescriptor(mappers, "User");
+    final List<SCIMRequest> requests = Arrays.<SCIMRequest>asList(
+        createPost(userDescriptor, "bulk.rejected.1"),
+        createPost(userDescriptor, "bulk.rejected.2"));
+
+    final RecordingLDAPRequestInterface ldapInterface =
+        createMultiUpdateInterface(false, null, null);
+    final LDAPBackend backend = createBackend(mappers, ldapInterface);
+    backend.setMaxBulkRequestsApplied(10);
+    assertNull(backend.applyBulkRequests(requests));
+    assertEquals(getMultiUpdateCount(ldapInterface), 1);
+
+    // The in-memory directory server does not support the operation.
+    final LDAPBackend unsupportedBackend = createBackend(mappers);
+    unsupportedBackend.setMaxBulkRequestsApplied(10);
+    assertNull(unsupportedBackend.applyBulkRequests(requests));
+
+    backend.setMaxBulkRequestsApplied(1);
+    assertNull(backend.applyBulkRequests(requests));
+    assertEquals(getMultiUpdateCount(ldapInterface), 1);
+
+    assertNull(getDirectoryServer().getEntry(
+        "uid=bulk.rejected.1,ou=people,dc=example,dc=com"));
+    assertNull(getDirectoryServer().getEntry(
+        "uid=bulk.rejected.2,ou=people,dc=example,dc=com"));
+  }
+
+
+
+  /**
+   * Verify that requests are not processed again if the outcome of the
+   * multi-update extended operation is unknown.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testUnknownOutcome()
+      throws Exception
+  {
+    final Map<ResourceDescriptor, ResourceMapper> mappers =
+        getResourceMappers();
+    final ResourceDescriptor userDescriptor =
+        getResourceDescriptor(mappers, "User");
+
+    for (final ResultCode resultCode :
+        Arrays.asList(ResultCode.SERVER_DOWN, ResultCode.TIMEOUT))
+    {
+      final String userName = "bulk.unknown." + resultCode.intValue();
+      final RecordingLDAPRequestInterface ldapInterface =
+          createMultiUpdateInterface(true, null, resultCode);
+      final LDAPBackend backend = createBackend(mappers, ldapInterface);
+      backend.setMaxBulkRequestsApplied(10);
+
+      try
+      {
+        backend.applyBulkRequests(Arrays.<SCIMRequest>asList(
+            createPost(userDescriptor, userName)));
+        fail("Requests whose outcome is unknown were processed again");
+      }
+      catch (SCIMException e)
+      {
+        // Expected.
+      }
+      assertEquals(getMultiUpdateCount(ldapInterface), 1);
+      assertEquals(ldapInterface.getRequests(AddRequest.class, null).size(),
+                   0);
+      assertNotNull(getDirectoryServer().getEntry(
+          "uid=" + userName + ",ou=people,dc=example,dc=com"));
+    }
+  }
+
+
+
+  /**
+   * Create a request to add a user.
+   *
+   * @param userDescriptor  The User resource descriptor.
+   * @param userName        The userName of the user.
+   *
+   * @return  The request.
+   *
+   * @throws SCIMException  If the request attributes are not valid.
+   */
+  private static PostResourceRequest createPost(
+      final ResourceDescriptor userDescriptor, final String userName)
+      throws SCIMException
+  {
+    final UserResource user = new UserResource(CoreSchema.USER_DESCRIPTOR);
+    user.setUserName(userName);
+    user.setName(new Name(userName, userName, null, userName, null, null));
+    return new PostResourceRequest(BASE_URI, "cn=Directory Manager",
+        userDescriptor, user.getScimObject(),
+        new SCIMQueryAttributes(userDescriptor, null));
+  }
+
+
+
+  /**
+   * Verify the userName of a user.
+   *
+   * @param resource  The user.
+   * @param userName  The expected userName.
+   */
+  private static void assertUserName(final BaseResource resource,
+                                     final String userName)
+  {
+    assertNotNull(resource);
+    assertEquals(new UserResource(CoreSchema.USER_DESCRIPTOR,
+                                  resource.getScimObject()).getUserName(),
+                 userName);
+  }
+
+
+
+  /**
+   * Retrieve the number of multi-update extended operations processed.
+   *
+   * @param ldapInterface  The LDAP request interface.
+   *
+   * @return  The number of multi-update extended operations processed.
+   *
+   * @throws LDAPException  If a DN could not be parsed.
+   */
+  private static int getMultiUpdateCount(
+      final RecordingLDAPRequestInterface ldapInterface)
+      throws LDAPException
+  {
+    return ldapInterface.getRequests(
+        MultiUpdateExtendedRequest.class, null).size();
+  }
+
+
+
+  /**
+   * Create an LDAP request interface whose multi-update extended operations
+   * are simulated by processing each update in turn, since the in-memory
+   * directory server does not support the operation.
+   *
+   * @param applyUpdates    Indicates whether the updates are applied, or
+   *                        whether none of them is applied as if one of them
+   *                        would fail.
+   * @param unreadableDN    The DN of an entry that cannot be read, or
+   *                        {@code null} if all entries can be read.
+   * @param lostResultCode  The result code of an exception to throw after
+   *                        the updates are applied, as if the response were
+   *                        lost, or {@code null} if the result is returned.
+   *
+   * @return  The LDAP request interface.
+   */
+  private RecordingLDAPRequestInterface createMultiUpdateInterface(
+      final boolean applyUpdates,
+      final String unreadableDN,
+      final ResultCode lostResultCode)
+  {
+    return new RecordingLDAPRequestInterface()
+    {
+      @Override
+      protected LDAPRequest prepareRequest(final LDAPRequest request)
+          throws LDAPException
+      {
+        if (request instanceof SearchRequest &&
+            ((SearchRequest) request).getBaseDN().equalsIgnoreCase(
+                unreadableDN))
+        {
+          throw new LDAPSearchException(ResultCode.UNAVAILABLE,
+              "The entry cannot be read");
+        }
+        return request;
+      }
+
+      @Override
+      public MultiUpdateExtendedResult multiUpdate(
+          final List<LDAPRequest> updateRequests)
+          throws LDAPException
+      {
+        record(new MultiUpdateExtendedRequest(
+            MultiUpdateErrorBehavior.ATOMIC, updateRequests));
+        if (!applyUpdates)
+        {
+          return new MultiUpdateExtendedResult(1,
+              ResultCode.ENTRY_ALREADY_EXISTS, null, null, null,
+              MultiUpdateChangesApplied.NONE, null);
+        }
+
+        final List<ObjectPair<OperationType, LDAPResult>> results =
+            new ArrayList<ObjectPair<OperationType, LDAPResult>>();
+        for (final LDAPRequest updateRequest : updateRequests)
+        {
+          if (updateRequest instanceof AddRequest)
+          {
+            results.add(new ObjectPair<OperationType, LDAPResult>(
+                OperationType.ADD,
+                getConnectionPool().add((AddRequest) updateRequest)));
+          }
+          else if (updateRequest instanceof DeleteRequest)
+          {
+            results.add(new ObjectPair<OperationType, LDAPResult>(
+                OperationType.DELETE,
+                getConnectionPool().delete((DeleteRequest) updateRequest)));
+          }
+          else
+          {
+            results.add(new ObjectPair<OperationType, LDAPResult>(
+                OperationType.MODIFY,
+                getConnectionPool().modify((ModifyRequest) updateRequest)));
+          }
+        }
+        if (lostResultCode != null)
+        {
+          throw new LDAPException(lostResultCode, "The response was lost");
+        }
+        return new MultiUpdateExtendedResult(1, ResultCode.SUCCESS, null,
+            null, null, MultiUpdateChangesApplied.ALL, results);
+      }
+    };
+  }
+}
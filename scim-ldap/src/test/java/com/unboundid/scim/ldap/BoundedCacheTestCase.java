@@ -0,0 +1,130 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.ldap;
+
+import com.unboundid.scim.SCIMTestCase;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+
+
+/**
+ * This class provides test coverage for the {@link BoundedCache}.
+ */
+public class BoundedCacheTestCase
+    extends SCIMTestCase
+{
+  /**
+   * Verify that values are cached, replaced and removed.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testPutAndRemove()
+      throws Exception
+  {
+    final BoundedCache<String, String> cache =
+        new BoundedCache<String, String>(10, 0);
+    assertNull(cache.get("a"));
+
+    cache.put("a", "1");
+    cache.put("b", "2");
+    assertEquals(cache.get("a"), "1");
+    assertEquals(cache.get("b"), "2");
+    assertEquals(cache.size(), 2);
+
+    cache.put("a", "3");
+    assertEquals(cache.get("a"), "3");
+    assertEquals(cache.size(), 2);
+
+    cache.remove("a");
+    assertNull(cache.get("a"));
+    assertEquals(cache.size(), 1);
+
+    cache.clear();
+    assertNull(cache.get("b"));
+    assertEquals(cache.size(), 0);
+  }
+
+
+
+  /**
+   * Verify that the oldest values are evicted when the cache grows beyond
+   * its maximum size, until it is a quarter below its maximum size.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testEviction()
+      throws Exception
+  {
+    final BoundedCache<Integer, String> cache =
+        new BoundedCache<Integer, String>(8, 0);
+    for (int i = 1; i <= 8; i++)
+    {
+      cache.put(i, String.valueOf(i));
+      Thread.sleep(2);
+    }
+    assertEquals(cache.size(), 8);
+
+    cache.put(9, "9");
+    assertEquals(cache.size(), 6);
+    for (int i = 1; i <= 3; i++)
+    {
+      assertNull(cache.get(i));
+    }
+    for (int i = 4; i <= 9; i++)
+    {
+      assertEquals(cache.get(i), String.valueOf(i));
+    }
+  }
+
+
+
+  /**
+   * Verify that values expire once their time to live has elapsed, and that
+   * expired values are evicted before the oldest valid values.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testExpiration()
+      throws Exception
+  {
+    final BoundedCache<String, String> cache =
+        new BoundedCache<String, String>(4, 30);
+    cache.put("a", "1");
+    cache.put("b", "2");
+    cache.put("c", "3");
+    cache.put("d", "4");
+    assertEquals(cache.get("a"), "1");
+
+    Thread.sleep(50);
+    assertNull(cache.get("a"));
+    assertEquals(cache.size(), 3);
+
+    // Adding the values that take the cache beyond its maximum size evicts
+    // the expired values only.
+    cache.put("e", "5");
+    cache.put("f", "6");
+    assertEquals(cache.size(), 2);
+    assertEquals(cache.get("e"), "5");
+    assertEquals(cache.get("f"), "6");
+  }
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.ldap;
+
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.Modification;
+import com.unboundid.ldap.sdk.ModificationType;
+import com.unboundid.ldap.sdk.ModifyRequest;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.scim.data.BaseResource;
+import com.unboundid.scim.data.Name;
+import com.unboundid.scim.data.UserResource;
+import com.unboundid.scim.schema.CoreSchema;
+import com.unboundid.scim.schema.ResourceDescriptor;
+import com.unboundid.scim.sdk.GetResourceRequest;
+import com.unboundid.scim.sdk.PreconditionFailedException;
+import com.unboundid.scim.sdk.PutResourceRequest;
+import com.unboundid.scim.sdk.ResourceNotFoundException;
+import com.unboundid.scim.sdk.SCIMQueryAttributes;
+import org.testng.annotations.Test;
+
+import java.util.Map;
+
+import static org.testng.Assert.*;
+
+
+
+/**
+ * This class provides test coverage for the entry snapshots from which an
+ * {@link LDAPBackend} computes the modifications for a PUT request.
+ */
+public class EntrySnapshotTestCase
+    extends LDAPTestCase
+{
+  /**
+   * Verify that a PUT whose If-Match header names the entity tag of a kept
+   * entry does not read the entry before modifying it.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testPutFromSnapshot()
+      throws Exception
+  {
+    final String userDN = addUser("snapshot.put");
+    final String id = getDirectoryServer().getEntry(
+        userDN, "entryUUID").getAttributeValue("entryUUID");
+    final Map<ResourceDescriptor, ResourceMapper> mappers =
+        getResourceMappers();
+    final ResourceDescriptor userDescriptor =
+        getResourceDescriptor(mappers, "User");
+    final RecordingLDAPRequestInterface ldapInterface =
+        new RecordingLDAPRequestInterface();
+    final LDAPBackend backend = createBackend(mappers, ldapInterface);
+    backend.setEntityTagAttribute("modifyTimestamp");
+
+    // Without snapshots, the entry is read before it is modified.
+    String version = getVersion(backend, userDescriptor, id);
+    final int readsWithoutSnapshot = put(backend, userDescriptor, id,
+        "snapshot.put", "first", version, ldapInterface);
+    assertEquals(getModifyCount(ldapInterface, userDN), 1);
+
+    backend.setEntrySnapshots(10, 0);
+    assertTrue(backend.isEntrySnapshots());
+    Thread.sleep(5);
+    version = getVersion(backend, userDescriptor, id);
+    assertEquals(put(backend, userDescriptor, id, "snapshot.put", "second",
+                     version, ldapInterface),
+                 readsWithoutSnapshot - 1);
+    assertEquals(getModifyCount(ldapInterface, userDN), 2);
+    assertEquals(getTitle(userDN), "second");
+
+    // A wildcard If-Match header does not name the entity tag of the kept
+    // entry.
+    Thread.sleep(5);
+    getVersion(backend, userDescriptor, id);
+    assertEquals(put(backend, userDescriptor, id, "snapshot.put", "third",
+                     "*", ldapInterface),
+                 readsWithoutSnapshot);
+    assertEquals(getTitle(userDN), "third");
+  }
+
+
+
+  /**
+   * Verify that a PUT computed from a kept entry that has since been changed
+   * or deleted is processed again from the current entry, so that the
+   * outcome is the same as without snapshots.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testStaleSnapshot()
+      throws Exception
+  {
+    final String userDN = addUser("snapshot.stale");
+    final String id = getDirectoryServer().getEntry(
+        userDN, "entryUUID").getAttributeValue("entryUUID");
+    final Map<ResourceDescriptor, ResourceMapper> mappers =
+        getResourceMappers();
+    final ResourceDescriptor userDescriptor =
+        getResourceDescriptor(mappers, "User");
+    final RecordingLDAPRequestInterface ldapInterface =
+        new RecordingLDAPRequestInterface();
+    final LDAPBackend backend = createBackend(mappers, ldapInterface);
+    backend.setEntityTagAttribute("modifyTimestamp");
+    backend.setEntrySnapshots(10, 0);
+
+    final String version = getVersion(backend, userDescriptor, id);
+
+    // Change the entry directly so that the modify timestamp changes.
+    Thread.sleep(5);
+    getDirectoryServer().modify(userDN, new Modification(
+        ModificationType.REPLACE, "title", "direct"));
+
+    try
+    {
+      put(backend, userDescriptor, id, "snapshot.stale", "stale", version,
+          ldapInterface);
+      fail("A PUT with a stale If-Match header was applied");
+    }
+    catch (PreconditionFailedException e)
+    {
+      // Expected.
+    }
+    assertEquals(getModifyCount(ldapInterface, userDN), 1);
+    assertEquals(getTitle(userDN), "direct");
+
+    final String currentVersion = getVersion(backend, userDescriptor, id);
+    getDirectoryServer().delete(userDN);
+    try
+    {
+      put(backend, userDescriptor, id, "snapshot.stale", "deleted",
+          currentVersion, ldapInterface);
+      fail("A PUT of a deleted entry was applied");
+    }
+    catch (ResourceNotFoundException e)
+    {
+      // Expected.
+    }
+    assertEquals(getModifyCount(ldapInterface, userDN), 2);
+  }
+
+
+
+  /**
+   * Retrieve a user, so that the backend may keep its entry, and return its
+   * version.
+   *
+   * @param backend         The backend.
+   * @param userDescriptor  The User resource descriptor.
+   * @param id              The resource ID of the user.
+   *
+   * @return  The version of the user.
+   *
+   * @throws Exception  If the user could not be retrieved.
+   */
+  private static String getVersion(final LDAPBackend backend,
+                                   final ResourceDescriptor userDescriptor,
+                                   final String id)
+      throws Exception
+  {
+    final BaseResource user = backend.getResource(new GetResourceRequest(
+        BASE_URI, "cn=Directory Manager", userDescriptor, id,
+        new SCIMQueryAttributes(userDescriptor, null)));
+    assertNotNull(user.getMeta().getVersion());
+    return user.getMeta().getVersion();
+  }
+
+
+
+  /**
+   * Replace a user, changing its title.
+   *
+   * @param backend         The backend.
+   * @param userDescriptor  The User resource descriptor.
+   * @param id              The resource ID of the user.
+   * @param userName        The userName of the user, which is the uid of
+   *                        its entry.
+   * @param title           The new title of the user.
+   * @param ifMatch         The value of the If-Match header.
+   * @param ldapInterface   The LDAP request interface of the backend.
+   *
+   * @return  The number of times the user entry was read for the request.
+   *
+   * @throws Exception  If the user could not be replaced.
+   */
+  private static int put(final LDAPBackend backend,
+                         final ResourceDescriptor userDescriptor,
+                         final String id,
+                         final String userName,
+                         final String title,
+                         final String ifMatch,
+                         final RecordingLDAPRequestInterface ldapInterface)
+      throws Exception
+  {
+    final UserResource user = new UserResource(CoreSchema.USER_DESCRIPTOR);
+    user.setUserName(userName);
+    user.setName(new Name(userName, userName, null, userName, null, null));
+    user.setTitle(title);
+
+    final String dn = "uid=" + userName + ",ou=people,dc=example,dc=com";
+    final int readsBefore = getReadCount(ldapInterface, dn, id);
+    backend.putResource(new PutResourceRequest(BASE_URI,
+        "cn=Directory Manager", userDescriptor, id, user.getScimObject(),
+        new SCIMQueryAttributes(userDescriptor, null), null, ifMatch, null));
+    return getReadCount(ldapInterface, dn, id) - readsBefore;
+  }
+
+
+
+  /**
+   * Retrieve the title of an entry directly from the directory server.
+   *
+   * @param dn  The DN of the entry.
+   *
+   * @return  The title of the entry.
+   *
+   * @throws Exception  If the entry could not be read.
+   */
+  private String getTitle(final String dn)
+      throws Exception
+  {
+    return getDirectoryServer().getEntry(dn, "title")
+        .getAttributeValue("title");
+  }
+
+
+
+  /**
+   * Retrieve the number of searches processed for an entry, either by its DN
+   * or by its entryUUID.
+   *
+   * @param ldapInterface  The LDAP request interface of the backend.
+   * @param dn             The DN of the entry.
+   * @param id             The entryUUID of the entry.
+   *
+   * @return  The number of searches for the entry.
+   *
+   * @throws LDAPException  If a DN could not be parsed.
+   */
+  private static int getReadCount(
+      final RecordingLDAPRequestInterface ldapInterface,
+      final String dn, final String id)
+      throws LDAPException
+  {
+    int reads = 0;
+    for (final SearchRequest searchRequest :
+        ldapInterface.getRequests(SearchRequest.class, null))
+    {
+      if (searchRequest.getBaseDN().equalsIgnoreCase(dn) ||
+          searchRequest.getFilter().toString().contains(id))
+      {
+        reads++;
+      }
+    }
+    return reads;
+  }
+
+
+
+  /**
+   * Retrieve the number of modifies of an entry attempted.
+   *
+   * @param ldapInterface  The LDAP request interface of the backend.
+   * @param dn             The DN of the entry.
+   *
+   * @return  The number of modifies of the entry attempted.
+   *
+   * @throws LDAPException  If a DN could not be parsed.
+   */
+  private static int getModifyCount(
+      final RecordingLDAPRequestInterface ldapInterface, final String dn)
+      throws LDAPException
+  {
+    return ldapInterface.getRequests(ModifyRequest.class, dn).size();
+  }
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.ldap;
+
+import com.unboundid.ldap.sdk.Control;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.LDAPRequest;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.controls.MatchedValuesRequestControl;
+import com.unboundid.scim.data.BaseResource;
+import com.unboundid.scim.schema.ResourceDescriptor;
+import com.unboundid.scim.sdk.GetResourceRequest;
+import com.unboundid.scim.sdk.SCIMAttribute;
+import com.unboundid.scim.sdk.SCIMAttributeValue;
+import com.unboundid.scim.sdk.SCIMConstants;
+import com.unboundid.scim.sdk.SCIMQueryAttributes;
+import org.testng.annotations.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.testng.Assert.*;
+
+
+
+/**
+ * This class provides test coverage for the {@link GroupsDerivedAttribute}.
+ */
+public class GroupsDerivedAttributeTestCase
+    extends LDAPTestCase
+{
+  /**
+   * Verify that the groups listed in the isMemberOf attribute are retrieved
+   * in batches with the critical matched values control, and that directness
+   * is determined with a search for the groups having the user as a member
+   * once the server rejects the control.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testMatchedValuesFallback()
+      throws Exception
+  {
+    final String userDN = "uid=groups.matched,ou=people,dc=example,dc=com";
+    final String directDN = addGroup("matched-direct",
+        "objectClass: groupOfNames",
+        "member: " + userDN,
+        "member: uid=other,ou=people,dc=example,dc=com");
+    final String indirectDN = addGroup("matched-indirect",
+        "objectClass: groupOfNames",
+        "member: " + directDN);
+    addUser("groups.matched",
+        "isMemberOf: " + directDN,
+        "isMemberOf: " + indirectDN);
+
+    final Map<ResourceDescriptor, ResourceMapper> mappers =
+        getResourceMappers();
+    final DerivedAttribute groups =
+        getDerivedAttribute(mappers, "User", "groups");
+    groups.getArguments().put("haveIsMemberOf", "true");
+    groups.getArguments().put("haveEntryDN", "true");
+    groups.initialize(groups.getAttributeDescriptor());
+
+    final Map<String, String> expected = new HashMap<String, String>();
+    expected.put("matched-direct", "direct");
+    expected.put("matched-indirect", "indirect");
+
+    final RecordingLDAPRequestInterface ldapInterface =
+        createMatchedValuesInterface(true);
+    final LDAPBackend backend = createBackend(mappers, ldapInterface);
+    assertEquals(getGroupTypes(backend, mappers, userDN), expected);
+    assertEquals(getGroupTypes(backend, mappers, userDN), expected);
+    assertEquals(getMatchedValuesSearchCount(ldapInterface), 2);
+
+    // The in-memory directory server does not support the control, so it
+    // rejects the searches with the critical control, after which the
+    // control is no longer requested.
+    final RecordingLDAPRequestInterface rejectingInterface =
+        createMatchedValuesInterface(false);
+    final LDAPBackend rejectingBackend =
+        createBackend(mappers, rejectingInterface);
+    assertEquals(getGroupTypes(rejectingBackend, mappers, userDN), expected);
+    assertEquals(getMatchedValuesSearchCount(rejectingInterface), 1);
+    assertEquals(getGroupTypes(rejectingBackend, mappers, userDN), expected);
+    assertEquals(getMatchedValuesSearchCount(rejectingInterface), 1);
+  }
+
+
+
+  /**
+   * Verify that nested groups are found with one search per level of
+   * nesting, that a cycle of nested groups ends the traversal, and that the
+   * traversal is bounded by the maximum nesting depth and number of groups.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testNestedGroups()
+      throws Exception
+  {
+    final String userDN = "uid=groups.nested,ou=people,dc=example,dc=com";
+    final String level1DN = "cn=nested-1,dc=example,dc=com";
+    final String level2DN = "cn=nested-2,dc=example,dc=com";
+    final String level3DN = "cn=nested-3,dc=example,dc=com";
+    addUser("groups.nested");
+    addGroup("nested-1", "objectClass: groupOfNames",
+             "member: " + userDN, "member: " + level3DN);
+    addGroup("nested-2", "objectClass: groupOfNames", "member: " + level1DN);
+    addGroup("nested-3", "objectClass: groupOfUniqueNames",
+             "uniqueMember: " + level2DN);
+
+    final Map<String, String> expected = new HashMap<String, String>();
+    expected.put("nested-1", "direct");
+    expected.put("nested-2", "indirect");
+    expected.put("nested-3", "indirect");
+
+    // The fourth level finds the first group again, which ends the
+    // traversal.
+    final RecordingLDAPRequestInterface ldapInterface =
+        new RecordingLDAPRequestInterface();
+    assertEquals(getNestedGroupTypes(userDN, ldapInterface, null, null),
+                 expected);
+    assertEquals(getGroupSearchCount(ldapInterface), 4);
+
+    expected.remove("nested-3");
+    ldapInterface.clearRequests();
+    assertEquals(getNestedGroupTypes(userDN, ldapInterface, "1", null),
+                 expected);
+    assertEquals(getGroupSearchCount(ldapInterface), 2);
+
+    ldapInterface.clearRequests();
+    assertEquals(getNestedGroupTypes(userDN, ldapInterface, null, "2"),
+                 expected);
+    assertEquals(getGroupSearchCount(ldapInterface), 2);
+  }
+
+
+
+  /**
+   * Retrieve the groups of a user without the isMemberOf attribute.
+   *
+   * @param userDN                The DN of the user entry.
+   * @param ldapInterface         The LDAP request interface on which the
+   *                              user is retrieved.
+   * @param maxGroupNestingDepth  The maxGroupNestingDepth argument, or
+   *                              {@code null} if there is no limit.
+   * @param maxGroups             The maxGroups argument, or {@code null} if
+   *                              there is no limit.
+   *
+   * @return  The type of each group of the user, keyed by the display name
+   *          of the group.
+   *
+   * @throws Exception  If the user could not be retrieved.
+   */
+  private Map<String, String> getNestedGroupTypes(
+      final String userDN,
+      final RecordingLDAPRequestInterface ldapInterface,
+      final String maxGroupNestingDepth,
+      final String maxGroups)
+      throws Exception
+  {
+    final Map<ResourceDescriptor, ResourceMapper> mappers =
+        getResourceMappers();
+    final DerivedAttribute groups =
+        getDerivedAttribute(mappers, "User", "groups");
+    if (maxGroupNestingDepth != null)
+    {
+      groups.getArguments().put("maxGroupNestingDepth", maxGroupNestingDepth);
+    }
+    if (maxGroups != null)
+    {
+      groups.getArguments().put("maxGroups", maxGroups);
+    }
+    groups.initialize(groups.getAttributeDescriptor());
+
+    return getGroupTypes(createBackend(mappers, ldapInterface), mappers,
+                         userDN);
+  }
+
+
+
+  /**
+   * Retrieve the groups of a user.
+   *
+   * @param backend  The backend with which to retrieve the user.
+   * @param mappers  The resource mappers of the backend.
+   * @param userDN   The DN of the user entry.
+   *
+   * @return  The type of each group of the user, keyed by the display name
+   *          of the group.
+   *
+   * @throws Exception  If the user could not be retrieved.
+   */
+  private Map<String, String> getGroupTypes(
+      final LDAPBackend backend,
+      final Map<ResourceDescriptor, ResourceMapper> mappers,
+      final String userDN)
+      throws Exception
+  {
+    final ResourceDescriptor userDescriptor =
+        getResourceDescriptor(mappers, "User");
+    final String userID = getDirectoryServer().getEntry(
+        userDN, "entryUUID").getAttributeValue("entryUUID");
+    final BaseResource user = backend.getResource(new GetResourceRequest(
+        BASE_URI, "cn=Directory Manager", userDescriptor, userID,
+        new SCIMQueryAttributes(userDescriptor, "groups")));
+
+    final Map<String, String> groupTypes = new HashMap<String, String>();
+    final SCIMAttribute groups = user.getScimObject().getAttribute(
+        SCIMConstants.SCHEMA_URI_CORE, "groups");
+    if (groups != null)
+    {
+      for (final SCIMAttributeValue value : groups.getValues())
+      {
+        groupTypes.put(
+            value.getAttribute("display").getValue().getStringValue(),
+            value.getAttribute("type").getValue().getStringValue());
+      }
+    }
+    return groupTypes;
+  }
+
+
+
+  /**
+   * Retrieve the number of searches processed for groups, which are the
+   * searches that are not for entries under ou=people,dc=example,dc=com.
+   *
+   * @param ldapInterface  The LDAP request interface.
+   *
+   * @return  The number of group searches processed.
+   *
+   * @throws LDAPException  If a DN could not be parsed.
+   */
+  private static int getGroupSearchCount(
+      final RecordingLDAPRequestInterface ldapInterface)
+      throws LDAPException
+  {
+    return ldapInterface.getRequests(SearchRequest.class, null).size() -
+        ldapInterface.getRequests(SearchRequest.class,
+                                  "ou=people,dc=example,dc=com").size();
+  }
+
+
+
+  /**
+   * Retrieve the number of searches processed with the matched values
+   * control.
+   *
+   * @param ldapInterface  The LDAP request interface.
+   *
+   * @return  The number of searches with the matched values control.
+   *
+   * @throws LDAPException  If a DN could not be parsed.
+   */
+  private static int getMatchedValuesSearchCount(
+      final RecordingLDAPRequestInterface ldapInterface)
+      throws LDAPException
+  {
+    int searches = 0;
+    for (final SearchRequest searchRequest :
+        ldapInterface.getRequests(SearchRequest.class, null))
+    {
+      if (searchRequest.hasControl(
+          MatchedValuesRequestControl.MATCHED_VALUES_REQUEST_OID))
+      {
+        searches++;
+      }
+    }
+    return searches;
+  }
+
+
+
+  /**
+   * Create an LDAP request interface that requires the matched values
+   * control to be critical, and that may process the searches with the
+   * control as a server that supports it would if the member values of the
+   * groups were not limited.
+   *
+   * @param supported  Indicates whether the control is removed from the
+   *                   searches before they are sent to the in-memory
+   *                   directory server, which does not support it.
+   *
+   * @return  The LDAP request interface.
+   */
+  private RecordingLDAPRequestInterface createMatchedValuesInterface(
+      final boolean supported)
+  {
+    return new RecordingLDAPRequestInterface()
+    {
+      @Override
+      protected LDAPRequest prepareRequest(final LDAPRequest request)
+      {
+        final Control control = request.getControl(
+            MatchedValuesRequestControl.MATCHED_VALUES_REQUEST_OID);
+        if (control == null)
+        {
+          return request;
+        }
+
+        assertTrue(control.isCritical());
+        if (!supported)
+        {
+          return request;
+        }
+        final SearchRequest supportedRequest =
+            ((SearchRequest) request).duplicate();
+        supportedRequest.removeControl(control);
+        return supportedRequest;
+      }
+    };
+  }
+}
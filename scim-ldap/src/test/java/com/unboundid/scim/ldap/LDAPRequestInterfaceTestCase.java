@@ -0,0 +1,84 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.ldap;
+
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchScope;
+import com.unboundid.scim.sdk.RequestTimer;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+
+
+/**
+ * This class provides test coverage for the {@link LDAPRequestInterface}.
+ */
+public class LDAPRequestInterfaceTestCase
+    extends LDAPTestCase
+{
+  /**
+   * Verify that an operation is recorded in the timer of the request being
+   * processed by the current thread, and only in the timer of the request
+   * for which the interface was created if the thread has none.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testOperationTimer()
+      throws Exception
+  {
+    final RequestTimer createdTimer = new RequestTimer();
+    final RequestTimer currentTimer = new RequestTimer();
+    final LDAPRequestInterface ldapInterface;
+    RequestTimer.setCurrent(createdTimer);
+    try
+    {
+      ldapInterface = new LDAPRequestInterface(getConnectionPool());
+    }
+    finally
+    {
+      RequestTimer.setCurrent(null);
+    }
+
+    final SearchRequest searchRequest = new SearchRequest(
+        "dc=example,dc=com", SearchScope.BASE, "(objectClass=*)", "1.1");
+    RequestTimer.setCurrent(currentTimer);
+    try
+    {
+      ldapInterface.search(searchRequest);
+    }
+    finally
+    {
+      RequestTimer.setCurrent(null);
+    }
+    assertEquals(currentTimer.getOperationCount(
+        LDAPRequestInterface.OPERATION_SEARCH), 1);
+    assertEquals(createdTimer.getOperationCount(
+        LDAPRequestInterface.OPERATION_SEARCH), 0);
+
+    // A thread that is not processing a request, such as that of a search
+    // executor, records the operation in the timer of the request for which
+    // the interface was created.
+    ldapInterface.search(searchRequest);
+    assertEquals(currentTimer.getOperationCount(
+        LDAPRequestInterface.OPERATION_SEARCH), 1);
+    assertEquals(createdTimer.getOperationCount(
+        LDAPRequestInterface.OPERATION_SEARCH), 1);
+  }
+}
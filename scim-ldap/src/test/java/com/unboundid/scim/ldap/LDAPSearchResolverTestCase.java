@@ -0,0 +1,287 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.ldap;
+
+import com.unboundid.ldap.sdk.Control;
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.LDAPSearchException;
+import com.unboundid.ldap.sdk.Modification;
+import com.unboundid.ldap.sdk.ModificationType;
+import com.unboundid.ldap.sdk.ModifyRequest;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.scim.sdk.ResourceNotFoundException;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.testng.Assert.*;
+
+
+
+/**
+ * This class provides test coverage for the {@link LDAPSearchResolver}.
+ */
+public class LDAPSearchResolverTestCase
+    extends LDAPTestCase
+{
+  private static final String PEOPLE_DN = "ou=people,dc=example,dc=com";
+
+  private static final String MISSING_DN = "ou=missing,dc=example,dc=com";
+
+
+
+  /**
+   * Verify that a cached resource ID is removed when the resource ID
+   * attribute of the entry is modified, and only then.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testModifiedResourceID()
+      throws Exception
+  {
+    final String dn = addUser("cache.modified", "employeeNumber: 1");
+    final LDAPSearchResolver resolver = createResolver(10, 0, PEOPLE_DN);
+    final LDAPRequestInterface ldapInterface =
+        new LDAPRequestInterface(getConnectionPool());
+    assertEquals(resolver.getIdFromDn(ldapInterface, dn), "1");
+
+    // A change made directly in the directory server is not seen while the
+    // resource ID is cached.
+    setEmployeeNumber(dn, "2");
+    assertEquals(resolver.getIdFromDn(ldapInterface, dn), "1");
+
+    resolver.removeCachedResourceID(new ModifyRequest(dn,
+        new Modification(ModificationType.REPLACE, "description", "x")));
+    assertEquals(resolver.getIdFromDn(ldapInterface, dn), "1");
+
+    resolver.removeCachedResourceID(new ModifyRequest(dn,
+        new Modification(ModificationType.REPLACE, "employeeNumber;x-opt",
+                         "2")));
+    assertEquals(resolver.getIdFromDn(ldapInterface, dn), "2");
+
+    setEmployeeNumber(dn, "3");
+    resolver.removeCachedResourceID(dn);
+    assertEquals(resolver.getIdFromDn(ldapInterface, dn), "3");
+  }
+
+
+
+  /**
+   * Verify that cached resource IDs expire by default, so that a change made
+   * directly in the directory server is eventually seen.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testExpiredResourceID()
+      throws Exception
+  {
+    assertTrue(new ResourceIDMapping().getCacheTTLMillis() > 0);
+
+    final String dn = addUser("cache.expired", "employeeNumber: 1");
+    final LDAPSearchResolver resolver = createResolver(10, 20, PEOPLE_DN);
+    final LDAPRequestInterface ldapInterface =
+        new LDAPRequestInterface(getConnectionPool());
+    assertEquals(resolver.getIdFromDn(ldapInterface, dn), "1");
+
+    setEmployeeNumber(dn, "2");
+    Thread.sleep(50);
+    assertEquals(resolver.getIdFromDn(ldapInterface, dn), "2");
+  }
+
+
+
+  /**
+   * Verify that a cached resource ID is only returned to a requester who can
+   * read the entry, since the cache is shared by all requesters.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testCachedResourceIDAccess()
+      throws Exception
+  {
+    final String dn = addUser("cache.access", "employeeNumber: 1");
+    final LDAPSearchResolver resolver = createResolver(10, 0, PEOPLE_DN);
+    assertEquals(resolver.getIdFromDn(
+        new LDAPRequestInterface(getConnectionPool()), dn), "1");
+
+    // The entry is still read, without its attributes, for a cached ID.
+    final List<SearchRequest> searches = new ArrayList<SearchRequest>();
+    final LDAPRequestInterface recordingInterface =
+        new LDAPRequestInterface(getConnectionPool())
+        {
+          @Override
+          public SearchResultEntry searchForEntry(
+              final SearchRequest searchRequest)
+              throws LDAPSearchException
+          {
+            searches.add(searchRequest);
+            return super.searchForEntry(searchRequest);
+          }
+        };
+    assertEquals(resolver.getIdFromDn(recordingInterface, dn), "1");
+    assertEquals(searches.size(), 1);
+    assertEquals(Arrays.asList(searches.get(0).getAttributes()),
+                 Arrays.asList("1.1"));
+
+    // A requester who cannot see the entry does not get its cached ID.
+    final LDAPRequestInterface deniedInterface =
+        new LDAPRequestInterface(getConnectionPool())
+        {
+          @Override
+          public SearchResultEntry searchForEntry(
+              final SearchRequest searchRequest)
+          {
+            return null;
+          }
+        };
+    try
+    {
+      resolver.getIdFromDn(deniedInterface, dn);
+      fail("A cached resource ID was returned for an entry that the " +
+           "requester cannot read");
+    }
+    catch (ResourceNotFoundException e)
+    {
+      // Expected.
+    }
+  }
+
+
+
+  /**
+   * Verify that a base DN whose base entry is missing is skipped in the same
+   * way whether the base DNs are searched one after another or concurrently,
+   * and whether or not the missing base entry is reported as an error.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testMissingBaseDN()
+      throws Exception
+  {
+    final String dn = addUser("resolver.missing", "employeeNumber: 11");
+    final ExecutorService executor = Executors.newFixedThreadPool(2);
+    try
+    {
+      for (final boolean concurrent : new boolean[] { false, true })
+      {
+        final LDAPRequestInterface ldapInterface =
+            new LDAPRequestInterface(getConnectionPool())
+            {
+              @Override
+              public SearchResultEntry searchForEntry(
+                  final SearchRequest searchRequest)
+                  throws LDAPSearchException
+              {
+                if (searchRequest.getBaseDN().equals(MISSING_DN))
+                {
+                  throw new LDAPSearchException(ResultCode.NO_SUCH_OBJECT,
+                      "The base entry does not exist");
+                }
+                return super.searchForEntry(searchRequest);
+              }
+            };
+        if (concurrent)
+        {
+          ldapInterface.setSearchExecutor(executor);
+        }
+
+        for (final LDAPSearchResolver resolver : Arrays.asList(
+            createResolver(0, 0, PEOPLE_DN, MISSING_DN),
+            createResolver(0, 0, MISSING_DN, PEOPLE_DN)))
+        {
+          assertEquals(resolver.getDnFromId(ldapInterface, "11"), dn);
+          assertEquals(resolver.getEntry(ldapInterface, "11",
+              Collections.<Control>emptyList()).getDN(), dn);
+          try
+          {
+            resolver.getDnFromId(ldapInterface, "12");
+            fail("A resource that does not exist was found");
+          }
+          catch (ResourceNotFoundException e)
+          {
+            // Expected.
+          }
+        }
+      }
+    }
+    finally
+    {
+      executor.shutdown();
+    }
+  }
+
+
+
+  /**
+   * Create a resolver for user entries that maps the resource ID to the
+   * employeeNumber attribute.
+   *
+   * @param cacheSize       The maximum number of resource IDs cached.
+   * @param cacheTTLMillis  The time to live of cached resource IDs.
+   * @param baseDNs         The base DNs of the user entries.
+   *
+   * @return  The resolver.
+   *
+   * @throws Exception  If the resolver could not be created.
+   */
+  private static LDAPSearchResolver createResolver(final int cacheSize,
+                                                   final long cacheTTLMillis,
+                                                   final String... baseDNs)
+      throws Exception
+  {
+    final ResourceIDMapping resourceIDMapping = new ResourceIDMapping();
+    resourceIDMapping.setLdapAttribute("employeeNumber");
+    resourceIDMapping.setCreatedBy(CreatedBy.DIRECTORY);
+    resourceIDMapping.setCacheSize(cacheSize);
+    resourceIDMapping.setCacheTTLMillis(cacheTTLMillis);
+
+    final LDAPSearchParameters parameters = new LDAPSearchParameters();
+    parameters.getBaseDN().addAll(Arrays.asList(baseDNs));
+    parameters.setFilter("(objectClass=inetOrgPerson)");
+    parameters.setResourceIDMapping(resourceIDMapping);
+    return new LDAPSearchResolver(parameters, Collections.<DN>emptySet());
+  }
+
+
+
+  /**
+   * Replace the employeeNumber of an entry directly in the directory server.
+   *
+   * @param dn              The DN of the entry.
+   * @param employeeNumber  The new employeeNumber.
+   *
+   * @throws Exception  If the entry could not be modified.
+   */
+  private void setEmployeeNumber(final String dn, final String employeeNumber)
+      throws Exception
+  {
+    getDirectoryServer().modify(dn, new Modification(
+        ModificationType.REPLACE, "employeeNumber", employeeNumber));
+  }
+}
@@ -0,0 +1,681 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.ldap;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.sdk.AddRequest;
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.DeleteRequest;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.LDAPRequest;
+import com.unboundid.ldap.sdk.LDAPResult;
+import com.unboundid.ldap.sdk.LDAPSearchException;
+import com.unboundid.ldap.sdk.ModifyDNRequest;
+import com.unboundid.ldap.sdk.ModifyRequest;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.unboundidds.extensions.MultiUpdateErrorBehavior;
+import com.unboundid.ldap.sdk.unboundidds.extensions.MultiUpdateExtendedRequest;
+import com.unboundid.ldap.sdk.unboundidds.extensions.MultiUpdateExtendedResult;
+import com.unboundid.scim.SCIMTestCase;
+import com.unboundid.scim.schema.ResourceDescriptor;
+import com.unboundid.scim.sdk.GetResourcesRequest;
+import com.unboundid.scim.sdk.PageParameters;
+import com.unboundid.scim.sdk.SCIMException;
+import com.unboundid.scim.sdk.SCIMFilter;
+import com.unboundid.scim.sdk.SCIMQueryAttributes;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+
+/**
+ * This class provides the superclass for test cases that process requests
+ * on an in-memory directory server, using the resource mappings in
+ * resources.xml. The server is started before the tests of a test case and
+ * holds the base entries dc=example,dc=com, ou=people,dc=example,dc=com and
+ * ou=groups,dc=example,dc=com. Schema checking is disabled so that entries
+ * may hold attributes such as isMemberOf.
+ */
+public abstract class LDAPTestCase
+    extends SCIMTestCase
+{
+  /**
+   * The base URI of the SCIM service provider.
+   */
+  protected static final URI BASE_URI = URI.create("http://localhost/");
+
+  private InMemoryDirectoryServer server;
+  private LDAPConnectionPool pool;
+
+
+
+  /**
+   * Start the in-memory directory server.
+   *
+   * @throws Exception  If the server could not be started.
+   */
+  @BeforeClass
+  public void startDirectoryServer()
+      throws Exception
+  {
+    final InMemoryDirectoryServerConfig config =
+        new InMemoryDirectoryServerConfig("dc=example,dc=com");
+    config.setSchema(null);
+    server = new InMemoryDirectoryServer(config);
+    server.add("dn: dc=example,dc=com",
+               "objectClass: top",
+               "objectClass: domain",
+               "dc: example");
+    server.add("dn: ou=people,dc=example,dc=com",
+               "objectClass: top",
+               "objectClass: organizationalUnit",
+               "ou: people");
+    server.add("dn: ou=groups,dc=example,dc=com",
+               "objectClass: top",
+               "objectClass: organizationalUnit",
+               "ou: groups");
+    server.startListening();
+    pool = server.getConnectionPool(4);
+  }
+
+
+
+  /**
+   * Stop the in-memory directory server.
+   */
+  @AfterClass
+  public void stopDirectoryServer()
+  {
+    pool.close();
+    server.shutDown(true);
+  }
+
+
+
+  /**
+   * Retrieve the in-memory directory server.
+   *
+   * @return  The in-memory directory server.
+   */
+  protected InMemoryDirectoryServer getDirectoryServer()
+  {
+    return server;
+  }
+
+
+
+  /**
+   * Retrieve a pool of connections to the in-memory directory server.
+   *
+   * @return  A pool of connections to the in-memory directory server.
+   */
+  protected LDAPConnectionPool getConnectionPool()
+  {
+    return pool;
+  }
+
+
+
+  /**
+   * Add a user entry to ou=people,dc=example,dc=com.
+   *
+   * @param uid                   The uid of the user.
+   * @param additionalAttributes  Any additional attributes of the entry, in
+   *                              LDIF form.
+   *
+   * @return  The DN of the user entry.
+   *
+   * @throws Exception  If the entry could not be added.
+   */
+  protected String addUser(final String uid,
+                           final String... additionalAttributes)
+      throws Exception
+  {
+    final String dn = "uid=" + uid + ",ou=people,dc=example,dc=com";
+    final String[] ldif = new String[8 + additionalAttributes.length];
+    ldif[0] = "dn: " + dn;
+    ldif[1] = "objectClass: top";
+    ldif[2] = "objectClass: person";
+    ldif[3] = "objectClass: organizationalPerson";
+    ldif[4] = "objectClass: inetOrgPerson";
+    ldif[5] = "uid: " + uid;
+    ldif[6] = "cn: " + uid;
+    ldif[7] = "sn: " + uid;
+    System.arraycopy(additionalAttributes, 0, ldif, 8,
+                     additionalAttributes.length);
+    server.add(ldif);
+    return dn;
+  }
+
+
+
+  /**
+   * Add a group entry to dc=example,dc=com.
+   *
+   * @param cn          The cn of the group.
+   * @param attributes  The other attributes of the group entry, in LDIF form.
+   *
+   * @return  The DN of the group entry.
+   *
+   * @throws Exception  If the entry could not be added.
+   */
+  protected String addGroup(final String cn, final String... attributes)
+      throws Exception
+  {
+    final String dn = "cn=" + cn + ",dc=example,dc=com";
+    final String[] ldif = new String[3 + attributes.length];
+    ldif[0] = "dn: " + dn;
+    ldif[1] = "objectClass: top";
+    ldif[2] = "cn: " + cn;
+    System.arraycopy(attributes, 0, ldif, 3, attributes.length);
+    server.add(ldif);
+    return dn;
+  }
+
+
+
+  /**
+   * Create the resource mappers in resources.xml.
+   *
+   * @return  The resource mappers keyed by resource descriptor.
+   *
+   * @throws Exception  If the resource mappers could not be created.
+   */
+  protected static Map<ResourceDescriptor, ResourceMapper> getResourceMappers()
+      throws Exception
+  {
+    final Map<ResourceDescriptor, ResourceMapper> mappers =
+        new LinkedHashMap<ResourceDescriptor, ResourceMapper>();
+    for (final ResourceMapper mapper : ResourceMapper.parse(
+        getResourceFile("/com/unboundid/scim/ldap/resources.xml")))
+    {
+      mappers.put(mapper.getResourceDescriptor(), mapper);
+    }
+    return mappers;
+  }
+
+
+
+  /**
+   * Retrieve the descriptor of a resource from a set of resource mappers.
+   *
+   * @param mappers  The resource mappers keyed by resource descriptor.
+   * @param name     The name of the resource, such as User.
+   *
+   * @return  The resource descriptor.
+   */
+  protected static ResourceDescriptor getResourceDescriptor(
+      final Map<ResourceDescriptor, ResourceMapper> mappers,
+      final String name)
+  {
+    for (final ResourceDescriptor descriptor : mappers.keySet())
+    {
+      if (descriptor.getName().equals(name))
+      {
+        return descriptor;
+      }
+    }
+    throw new RuntimeException("No " + name + " resource mapper found");
+  }
+
+
+
+  /**
+   * Retrieve a derived attribute of a resource mapper. The arguments of the
+   * derived attribute may be changed by a test, after which the derived
+   * attribute must be initialized again.
+   *
+   * @param mappers        The resource mappers keyed by resource descriptor.
+   * @param resourceName   The name of the resource, such as Group.
+   * @param attributeName  The name of the derived attribute, such as members.
+   *
+   * @return  The derived attribute.
+   */
+  protected static DerivedAttribute getDerivedAttribute(
+      final Map<ResourceDescriptor, ResourceMapper> mappers,
+      final String resourceName, final String attributeName)
+  {
+    final ResourceMapper mapper =
+        mappers.get(getResourceDescriptor(mappers, resourceName));
+    for (final DerivedAttribute derivedAttribute :
+        mapper.derivedAttributes.values())
+    {
+      if (derivedAttribute.getAttributeDescriptor().getName().equals(
+          attributeName))
+      {
+        return derivedAttribute;
+      }
+    }
+    throw new RuntimeException("No " + attributeName + " derived attribute " +
+                               "found for the " + resourceName + " resource");
+  }
+
+
+
+  /**
+   * Create an LDAP backend that processes requests on the pool of
+   * connections to the in-memory directory server.
+   *
+   * @param mappers  The resource mappers keyed by resource descriptor.
+   *
+   * @return  The LDAP backend.
+   */
+  protected LDAPBackend createBackend(
+      final Map<ResourceDescriptor, ResourceMapper> mappers)
+  {
+    return new TestLDAPBackend(mappers);
+  }
+
+
+
+  /**
+   * Create an LDAP backend that processes every request on the provided LDAP
+   * request interface, such as a {@link RecordingLDAPRequestInterface}.
+   *
+   * @param mappers        The resource mappers keyed by resource descriptor.
+   * @param ldapInterface  The LDAP request interface on which requests are
+   *                       processed.
+   *
+   * @return  The LDAP backend.
+   */
+  protected LDAPBackend createBackend(
+      final Map<ResourceDescriptor, ResourceMapper> mappers,
+      final LDAPRequestInterface ldapInterface)
+  {
+    return new TestLDAPBackend(mappers)
+    {
+      @Override
+      protected LDAPRequestInterface getLDAPRequestInterface(
+          final String userID)
+      {
+        return ldapInterface;
+      }
+    };
+  }
+
+
+
+  /**
+   * Create a query request.
+   *
+   * @param descriptor  The descriptor of the resource queried.
+   * @param filter      The SCIM filter of the query, or {@code null}.
+   * @param startIndex  The 1-based index of the first result, or zero if the
+   *                    query is not paged.
+   * @param count       The number of results requested.
+   * @param attributes  The attributes requested, or {@code null} for all of
+   *                    them.
+   *
+   * @return  The query request.
+   *
+   * @throws SCIMException  If the request is not valid.
+   */
+  protected static GetResourcesRequest createQuery(
+      final ResourceDescriptor descriptor, final String filter,
+      final int startIndex, final int count, final String attributes)
+      throws SCIMException
+  {
+    return new GetResourcesRequest(BASE_URI, "cn=Directory Manager",
+        descriptor, filter == null ? null : SCIMFilter.parse(filter),
+        null, null, null,
+        startIndex > 0 ? new PageParameters(startIndex, count) : null,
+        new SCIMQueryAttributes(descriptor, attributes));
+  }
+
+
+
+  /**
+   * An LDAP backend that processes requests on the pool of connections to
+   * the in-memory directory server.
+   */
+  protected class TestLDAPBackend
+      extends LDAPBackend
+  {
+    /**
+     * Create a new test LDAP backend.
+     *
+     * @param mappers  The resource mappers keyed by resource descriptor.
+     */
+    protected TestLDAPBackend(
+        final Map<ResourceDescriptor, ResourceMapper> mappers)
+    {
+      super(mappers);
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected LDAPRequestInterface getLDAPRequestInterface(
+        final String userID)
+    {
+      return new LDAPRequestInterface(pool);
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void finalizeBackend()
+    {
+      // The pool is closed when the directory server is stopped.
+    }
+  }
+
+
+
+  /**
+   * An LDAP request interface that records the requests it processes on the
+   * pool of connections to the in-memory directory server. Paged searches
+   * are also processed on this interface so that they are recorded. Tests
+   * may override {@link #prepareRequest} to reject or replace requests.
+   */
+  protected class RecordingLDAPRequestInterface
+      extends LDAPRequestInterface
+  {
+    private final List<LDAPRequest> requests =
+        Collections.synchronizedList(new ArrayList<LDAPRequest>());
+
+
+
+    /**
+     * Create a new recording LDAP request interface.
+     */
+    protected RecordingLDAPRequestInterface()
+    {
+      super(pool);
+    }
+
+
+
+    /**
+     * Retrieve the requests processed, in the order they were processed.
+     *
+     * @return  The requests processed.
+     */
+    public List<LDAPRequest> getRequests()
+    {
+      synchronized (requests)
+      {
+        return new ArrayList<LDAPRequest>(requests);
+      }
+    }
+
+
+
+    /**
+     * Retrieve the requests of a given type processed for the entries at or
+     * below a DN, in the order they were processed.
+     *
+     * @param type    The type of request.
+     * @param baseDN  The DN of the entries, or {@code null} for requests for
+     *                any entry.
+     * @param <T>     The type of request.
+     *
+     * @return  The requests processed.
+     *
+     * @throws LDAPException  If a DN could not be parsed.
+     */
+    public <T extends LDAPRequest> List<T> getRequests(final Class<T> type,
+                                                       final String baseDN)
+        throws LDAPException
+    {
+      final List<T> matchingRequests = new ArrayList<T>();
+      for (final LDAPRequest request : getRequests())
+      {
+        if (!type.isInstance(request))
+        {
+          continue;
+        }
+
+        final String dn = getDN(request);
+        if (baseDN == null ||
+            (dn != null && new DN(dn).isDescendantOf(baseDN, true)))
+        {
+          matchingRequests.add(type.cast(request));
+        }
+      }
+      return matchingRequests;
+    }
+
+
+
+    /**
+     * Discard the requests recorded so far.
+     */
+    public void clearRequests()
+    {
+      requests.clear();
+    }
+
+
+
+    /**
+     * Record a request.
+     *
+     * @param request  The request processed.
+     */
+    protected void record(final LDAPRequest request)
+    {
+      requests.add(request);
+    }
+
+
+
+    /**
+     * Prepare a recorded request to be processed. This implementation
+     * returns the request unchanged.
+     *
+     * @param request  The request recorded.
+     *
+     * @return  The request to be processed in its place.
+     *
+     * @throws LDAPException  To reject the request.
+     */
+    protected LDAPRequest prepareRequest(final LDAPRequest request)
+        throws LDAPException
+    {
+      return request;
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public LDAPRequestInterface getPagedSearchInterface()
+    {
+      return this;
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SearchResultEntry searchForEntry(final SearchRequest searchRequest)
+        throws LDAPSearchException
+    {
+      return super.searchForEntry(prepareSearch(searchRequest));
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SearchResult search(final SearchRequest searchRequest)
+        throws LDAPSearchException
+    {
+      return super.search(prepareSearch(searchRequest));
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public LDAPResult modify(final ModifyRequest modifyRequest)
+        throws LDAPException
+    {
+      record(modifyRequest);
+      return super.modify((ModifyRequest) prepareRequest(modifyRequest));
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public LDAPResult modifyDN(final ModifyDNRequest modifyDNRequest)
+        throws LDAPException
+    {
+      record(modifyDNRequest);
+      return super.modifyDN(
+          (ModifyDNRequest) prepareRequest(modifyDNRequest));
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public LDAPResult add(final AddRequest addRequest)
+        throws LDAPException
+    {
+      record(addRequest);
+      return super.add((AddRequest) prepareRequest(addRequest));
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public LDAPResult delete(final DeleteRequest deleteRequest)
+        throws LDAPException
+    {
+      record(deleteRequest);
+      return super.delete((DeleteRequest) prepareRequest(deleteRequest));
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public MultiUpdateExtendedResult multiUpdate(
+        final List<LDAPRequest> updateRequests)
+        throws LDAPException
+    {
+      final MultiUpdateExtendedRequest request =
+          new MultiUpdateExtendedRequest(MultiUpdateErrorBehavior.ATOMIC,
+                                         updateRequests);
+      record(request);
+      prepareRequest(request);
+      return super.multiUpdate(updateRequests);
+    }
+
+
+
+    /**
+     * Record and prepare a search request.
+     *
+     * @param searchRequest  The search request.
+     *
+     * @return  The search request to be processed in its place.
+     *
+     * @throws LDAPSearchException  If the search is rejected.
+     */
+    private SearchRequest prepareSearch(final SearchRequest searchRequest)
+        throws LDAPSearchException
+    {
+      record(searchRequest);
+      try
+      {
+        return (SearchRequest) prepareRequest(searchRequest);
+      }
+      catch (LDAPSearchException e)
+      {
+        throw e;
+      }
+      catch (LDAPException e)
+      {
+        throw new LDAPSearchException(e);
+      }
+    }
+
+
+
+    /**
+     * Retrieve the DN targeted by a request.
+     *
+     * @param request  The request.
+     *
+     * @return  The DN targeted by the request, or {@code null} if it does not
+     *          target a single DN.
+     */
+    private String getDN(final LDAPRequest request)
+    {
+      if (request instanceof SearchRequest)
+      {
+        return ((SearchRequest) request).getBaseDN();
+      }
+      else if (request instanceof AddRequest)
+      {
+        return ((AddRequest) request).getDN();
+      }
+      else if (request instanceof ModifyRequest)
+      {
+        return ((ModifyRequest) request).getDN();
+      }
+      else if (request instanceof ModifyDNRequest)
+      {
+        return ((ModifyDNRequest) request).getDN();
+      }
+      else if (request instanceof DeleteRequest)
+      {
+        return ((DeleteRequest) request).getDN();
+      }
+      return null;
+    }
+  }
+}
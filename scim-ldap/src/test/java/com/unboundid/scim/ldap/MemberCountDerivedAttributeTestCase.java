@@ -0,0 +1,155 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.ldap;
+
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.scim.SCIMTestCase;
+import com.unboundid.scim.schema.AttributeDescriptor;
+import com.unboundid.scim.sdk.InvalidResourceException;
+import com.unboundid.scim.sdk.SCIMAttribute;
+import com.unboundid.scim.sdk.SCIMFilter;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+
+
+/**
+ * This class provides test coverage for the
+ * {@link MemberCountDerivedAttribute}.
+ */
+public class MemberCountDerivedAttributeTestCase
+    extends SCIMTestCase
+{
+  /**
+   * Verify that the member values of static groups are counted, and that
+   * dynamic groups have no member count.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testCountValues()
+      throws Exception
+  {
+    final MemberCountDerivedAttribute memberCount =
+        createMemberCount(null);
+    assertTrue(memberCount.getLDAPAttributeTypes().contains("member"));
+    assertTrue(memberCount.getLDAPAttributeTypes().contains("uniqueMember"));
+
+    assertEquals(getCount(memberCount, new Entry("cn=names,dc=example,dc=com",
+        new Attribute("objectClass", "top", "groupOfNames"),
+        new Attribute("member", "uid=a,dc=example,dc=com",
+                      "uid=b,dc=example,dc=com"))), Long.valueOf(2));
+    assertEquals(getCount(memberCount, new Entry("cn=unique,dc=example,dc=com",
+        new Attribute("objectClass", "top", "groupOfUniqueNames"),
+        new Attribute("uniqueMember", "uid=a,dc=example,dc=com",
+                      "uid=b,dc=example,dc=com", "uid=c,dc=example,dc=com"),
+        new Attribute("member", "uid=d,dc=example,dc=com"))),
+        Long.valueOf(3));
+    assertEquals(getCount(memberCount, new Entry("cn=empty,dc=example,dc=com",
+        new Attribute("objectClass", "top", "groupOfNames"))),
+        Long.valueOf(0));
+    assertNull(getCount(memberCount, new Entry("cn=urls,dc=example,dc=com",
+        new Attribute("objectClass", "top", "groupOfURLs"),
+        new Attribute("memberURL", "ldap:///dc=example,dc=com??sub?(uid=*)"))));
+  }
+
+
+
+  /**
+   * Verify that the member count is taken from a count attribute when one is
+   * configured, and that the member count cannot be used in filters.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testCountAttribute()
+      throws Exception
+  {
+    final MemberCountDerivedAttribute memberCount =
+        createMemberCount("numMembers");
+    assertEquals(memberCount.getLDAPAttributeTypes().size(), 1);
+    assertTrue(memberCount.getLDAPAttributeTypes().contains("numMembers"));
+
+    assertEquals(getCount(memberCount, new Entry("cn=names,dc=example,dc=com",
+        new Attribute("objectClass", "top", "groupOfNames"),
+        new Attribute("numMembers", "5"))), Long.valueOf(5));
+    assertNull(getCount(memberCount, new Entry("cn=names,dc=example,dc=com",
+        new Attribute("objectClass", "top", "groupOfNames"),
+        new Attribute("member", "uid=a,dc=example,dc=com"))));
+
+    try
+    {
+      memberCount.toLDAPFilter(SCIMFilter.parse("memberCount gt 1"),
+                               null, null);
+      fail("A filter on the member count was accepted");
+    }
+    catch (InvalidResourceException e)
+    {
+      // Expected.
+    }
+  }
+
+
+
+  /**
+   * Create a member count derived attribute.
+   *
+   * @param countAttribute  The LDAP attribute holding the number of members,
+   *                        or {@code null} if the member values are counted.
+   *
+   * @return  The initialized derived attribute.
+   */
+  private static MemberCountDerivedAttribute createMemberCount(
+      final String countAttribute)
+  {
+    final MemberCountDerivedAttribute memberCount =
+        new MemberCountDerivedAttribute();
+    if (countAttribute != null)
+    {
+      memberCount.getArguments().put("countAttribute", countAttribute);
+    }
+    memberCount.initialize(AttributeDescriptor.createAttribute(
+        "memberCount", AttributeDescriptor.DataType.INTEGER,
+        "The number of members of the Group",
+        "urn:scim:schemas:extension:groups:1.0", true, false, false));
+    return memberCount;
+  }
+
+
+
+  /**
+   * Retrieve the member count of a group entry.
+   *
+   * @param memberCount  The member count derived attribute.
+   * @param entry        The group entry.
+   *
+   * @return  The member count, or {@code null} if the group has none.
+   *
+   * @throws Exception  If the member count could not be derived.
+   */
+  private static Long getCount(final MemberCountDerivedAttribute memberCount,
+                               final Entry entry)
+      throws Exception
+  {
+    final SCIMAttribute attribute =
+        memberCount.toSCIMAttribute(entry, null, null);
+    return attribute == null ? null : attribute.getValue().getIntegerValue();
+  }
+}
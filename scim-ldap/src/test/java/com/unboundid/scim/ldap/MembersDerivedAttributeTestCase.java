@@ -0,0 +1,771 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.ldap;
+
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Control;
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.LDAPRequest;
+import com.unboundid.ldap.sdk.LDAPSearchException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchScope;
+import com.unboundid.ldap.sdk.controls.SimplePagedResultsControl;
+import com.unboundid.scim.data.BaseResource;
+import com.unboundid.scim.schema.ResourceDescriptor;
+import com.unboundid.scim.sdk.GetResourceRequest;
+import com.unboundid.scim.sdk.GetResourcesRequest;
+import com.unboundid.scim.sdk.PageParameters;
+import com.unboundid.scim.sdk.SCIMAttribute;
+import com.unboundid.scim.sdk.SCIMAttributeValue;
+import com.unboundid.scim.sdk.SCIMConstants;
+import com.unboundid.scim.sdk.SCIMException;
+import com.unboundid.scim.sdk.SCIMQueryAttributes;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.testng.Assert.*;
+
+
+
+/**
+ * This class provides test coverage for the {@link MembersDerivedAttribute}.
+ */
+public class MembersDerivedAttributeTestCase
+    extends LDAPTestCase
+{
+  private static final String GROUP_FILTER =
+      "(|(objectClass=groupOfNames)(objectClass=groupOfUniqueNames))";
+
+
+
+  /**
+   * Verify that the members of a dynamic group are retrieved with paged
+   * memberURL searches, and with a search without paging if the server
+   * rejects a page part-way through the results.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testMemberURLPaging()
+      throws Exception
+  {
+    for (int i = 0; i < 5; i++)
+    {
+      addUser("dynamic.paged." + i, "departmentNumber: paged");
+    }
+    addGroup("dynamic-paged",
+        "objectClass: groupOfURLs",
+        "memberURL: ldap:///ou=people,dc=example,dc=com??sub?" +
+        "(departmentNumber=paged)");
+
+    final Map<ResourceDescriptor, ResourceMapper> mappers =
+        getResourceMappers();
+    final DerivedAttribute members =
+        getDerivedAttribute(mappers, "Group", "members");
+    members.getArguments().put("memberURLPageSize", "2");
+    members.initialize(members.getAttributeDescriptor());
+
+    final RecordingLDAPRequestInterface ldapInterface =
+        createRejectingInterface(false);
+    final LDAPBackend backend = createBackend(mappers, ldapInterface);
+
+    assertEquals(getMemberCount(backend, mappers, "dynamic-paged"), 5);
+    assertEquals(getPagedSearchCount(ldapInterface), 3);
+
+    // Reject the second page, as a server that discarded the cookie would.
+    final RecordingLDAPRequestInterface rejectingInterface =
+        createRejectingInterface(true);
+    final LDAPBackend rejectingBackend =
+        createBackend(mappers, rejectingInterface);
+    assertEquals(getMemberCount(rejectingBackend, mappers, "dynamic-paged"),
+                 5);
+    assertEquals(getRejectedSearchCount(rejectingInterface), 1);
+  }
+
+
+
+  /**
+   * Verify that a failed memberURL search is reported as an error instead of
+   * returning a group with no members, and that a memberURL whose base DN
+   * does not exist has no members.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testMemberURLSearchFailure()
+      throws Exception
+  {
+    addUser("dynamic.failed", "departmentNumber: failed");
+    addGroup("dynamic-failed",
+        "objectClass: groupOfURLs",
+        "memberURL: ldap:///ou=people,dc=example,dc=com??sub?" +
+        "(departmentNumber=failed)");
+    addGroup("dynamic-missing",
+        "objectClass: groupOfURLs",
+        "memberURL: ldap:///ou=missing,dc=example,dc=com??sub?" +
+        "(departmentNumber=failed)");
+
+    final Map<ResourceDescriptor, ResourceMapper> mappers =
+        getResourceMappers();
+    final RecordingLDAPRequestInterface ldapInterface =
+        createRejectingInterface(true);
+    final LDAPBackend backend = createBackend(mappers, ldapInterface);
+
+    final BaseResource group =
+        getGroup(createBackend(mappers), mappers, "dynamic-failed");
+    assertEquals(getMemberCount(group), 1);
+    try
+    {
+      final ResourceDescriptor groupDescriptor =
+          getResourceDescriptor(mappers, "Group");
+      backend.getResource(new GetResourceRequest(BASE_URI,
+          "cn=Directory Manager", groupDescriptor, group.getId(),
+          new SCIMQueryAttributes(groupDescriptor, "members")));
+      fail("A failed memberURL search was not reported");
+    }
+    catch (SCIMException e)
+    {
+      // Expected.
+    }
+    assertEquals(getRejectedSearchCount(ldapInterface), 1);
+
+    assertEquals(getMemberCount(createBackend(mappers), mappers,
+                                "dynamic-missing"), 0);
+  }
+
+
+
+  /**
+   * Verify that the members of a static group are retrieved with a search
+   * for each batch of members under the same parent entry, or under the same
+   * resource base DN if the directory server provides the entryDN attribute,
+   * and that the members are returned in the order of the group entry.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testMemberBatching()
+      throws Exception
+  {
+    final List<String> memberIDs = new ArrayList<String>();
+    final String[] groupAttributes = new String[7];
+    groupAttributes[0] = "objectClass: groupOfUniqueNames";
+    for (int i = 0; i < 5; i++)
+    {
+      final String userDN = addUser("static.batched." + i);
+      memberIDs.add(getDirectoryServer().getEntry(
+          userDN, "entryUUID").getAttributeValue("entryUUID"));
+      groupAttributes[i + 1] = "uniqueMember: " + userDN;
+    }
+    groupAttributes[6] =
+        "uniqueMember: uid=static.missing,ou=people,dc=example,dc=com";
+    addGroup("static-batched", groupAttributes);
+
+    final Map<ResourceDescriptor, ResourceMapper> mappers =
+        getResourceMappers();
+    final DerivedAttribute members =
+        getDerivedAttribute(mappers, "Group", "members");
+    members.getArguments().put("maxMembersCached", "0");
+    members.initialize(members.getAttributeDescriptor());
+
+    final RecordingLDAPRequestInterface ldapInterface =
+        new RecordingLDAPRequestInterface();
+    final LDAPBackend backend = createBackend(mappers, ldapInterface);
+
+    // Each member entry is read with its own base search by default.
+    assertEquals(getMemberIDs(getGroup(backend, mappers, "static-batched")),
+                 memberIDs);
+    assertEquals(getMemberSearches(ldapInterface).size(), 6);
+    for (final SearchRequest searchRequest :
+        getMemberSearches(ldapInterface))
+    {
+      assertEquals(searchRequest.getScope(), SearchScope.BASE);
+    }
+
+    ldapInterface.clearRequests();
+    members.getArguments().put("memberBatchSize", "2");
+    members.initialize(members.getAttributeDescriptor());
+    assertEquals(getMemberIDs(getGroup(backend, mappers, "static-batched")),
+                 memberIDs);
+    assertEquals(getMemberSearches(ldapInterface).size(), 3);
+    for (final SearchRequest searchRequest :
+        getMemberSearches(ldapInterface))
+    {
+      assertEquals(searchRequest.getScope(), SearchScope.ONE);
+      assertEquals(searchRequest.getBaseDN(), "ou=people,dc=example,dc=com");
+    }
+
+    ldapInterface.clearRequests();
+    members.getArguments().put("haveEntryDN", "true");
+    members.getArguments().put("memberBatchSize", "4");
+    members.initialize(members.getAttributeDescriptor());
+    assertEquals(getMemberIDs(getGroup(backend, mappers, "static-batched")),
+                 memberIDs);
+    assertEquals(getMemberSearches(ldapInterface).size(), 2);
+    for (final SearchRequest searchRequest :
+        getMemberSearches(ldapInterface))
+    {
+      assertEquals(searchRequest.getScope(), SearchScope.SUB);
+      assertTrue(searchRequest.getFilter().toString().contains("entryDN="));
+    }
+  }
+
+
+
+  /**
+   * Verify that lazy members are derived from the member DNs without reading
+   * the member entries when the resource IDs map to DNs, and that the member
+   * entries are still read when they do not.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testLazyMembers()
+      throws Exception
+  {
+    final String nestedDN = addGroup("lazy-nested",
+                                     "objectClass: groupOfNames");
+    final String nestedID = getDirectoryServer().getEntry(
+        nestedDN, "entryUUID").getAttributeValue("entryUUID");
+    final Entry group = new Entry("cn=lazy,dc=example,dc=com",
+        new Attribute("objectClass", "top", "groupOfNames"),
+        new Attribute("member",
+                      "uid=Lazy.User,ou=people,dc=example,dc=com",
+                      nestedDN));
+
+    final Map<ResourceDescriptor, ResourceMapper> mappers =
+        getResourceMappers();
+    final DerivedAttribute members =
+        getDerivedAttribute(mappers, "Group", "members");
+    members.getArguments().put(DerivedAttribute.LDAP_SEARCH_REF,
+        createResolver("ou=people,dc=example,dc=com",
+                       "(objectClass=inetOrgPerson)", null));
+    members.getArguments().put("lazyMembers", "true");
+    members.initialize(members.getAttributeDescriptor());
+
+    final RecordingLDAPRequestInterface ldapInterface =
+        new RecordingLDAPRequestInterface();
+
+    SCIMAttribute attribute = members.toSCIMAttribute(group, ldapInterface,
+        createResolver("dc=example,dc=com", GROUP_FILTER, null,
+                       "ou=people,dc=example,dc=com"));
+    assertEquals(ldapInterface.getRequests().size(), 0);
+    assertEquals(attribute.getValues().length, 2);
+    assertMember(attribute.getValues()[0], "User",
+                 "uid=lazy.user,ou=people,dc=example,dc=com");
+    assertMember(attribute.getValues()[1], "Group",
+                 "cn=lazy-nested,dc=example,dc=com");
+
+    // The nested group must be read to determine its entryUUID.
+    attribute = members.toSCIMAttribute(group, ldapInterface,
+        createResolver("dc=example,dc=com", GROUP_FILTER, "entryUUID",
+                       "ou=people,dc=example,dc=com"));
+    assertEquals(ldapInterface.getRequests().size(), 1);
+    assertEquals(attribute.getValues().length, 2);
+    assertMember(attribute.getValues()[0], "User",
+                 "uid=lazy.user,ou=people,dc=example,dc=com");
+    assertMember(attribute.getValues()[1], "Group", nestedID);
+  }
+
+
+
+  /**
+   * Verify that only the member entries in a requested page of the members
+   * of a static group are retrieved.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testMemberPage()
+      throws Exception
+  {
+    final List<String> memberIDs = new ArrayList<String>();
+    final String[] groupAttributes = new String[6];
+    groupAttributes[0] = "objectClass: groupOfUniqueNames";
+    for (int i = 0; i < 5; i++)
+    {
+      final String userDN = addUser("static.paged." + i);
+      memberIDs.add(getDirectoryServer().getEntry(
+          userDN, "entryUUID").getAttributeValue("entryUUID"));
+      groupAttributes[i + 1] = "uniqueMember: " + userDN;
+    }
+    addGroup("static-paged", groupAttributes);
+    final String filter = "displayName eq \"static-paged\"";
+
+    final Map<ResourceDescriptor, ResourceMapper> mappers =
+        getResourceMappers();
+    final DerivedAttribute members =
+        getDerivedAttribute(mappers, "Group", "members");
+    members.getArguments().put("maxMembersCached", "0");
+    members.initialize(members.getAttributeDescriptor());
+
+    final RecordingLDAPRequestInterface ldapInterface =
+        new RecordingLDAPRequestInterface();
+    final LDAPBackend backend = createBackend(mappers, ldapInterface);
+
+    assertEquals(getMemberIDs(getGroupPage(backend, mappers, members,
+                                           filter, 2, 2)),
+                 memberIDs.subList(1, 3));
+    assertEquals(getMemberSearches(ldapInterface).size(), 2);
+
+    ldapInterface.clearRequests();
+    assertEquals(getMemberIDs(getGroupPage(backend, mappers, members,
+                                           filter, 4, 0)),
+                 memberIDs.subList(3, 5));
+    assertEquals(getMemberSearches(ldapInterface).size(), 2);
+
+    ldapInterface.clearRequests();
+    assertEquals(getMemberIDs(getGroupPage(backend, mappers, members,
+                                           filter, 6, 1)),
+                 Collections.<String>emptyList());
+    assertEquals(getMemberSearches(ldapInterface).size(), 0);
+
+    // The filter is evaluated against all the members before the page of
+    // members is applied.
+    assertEquals(getMemberIDs(getGroupPage(backend, mappers, members,
+        filter + " and members.value eq \"" +
+        memberIDs.get(4) + "\"", 1, 2)),
+                 memberIDs.subList(0, 2));
+  }
+
+
+
+  /**
+   * Verify that a page of members is retrieved with ranged attribute
+   * retrieval, including when the server returns fewer values in a range
+   * than were requested.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testRangedMemberRetrieval()
+      throws Exception
+  {
+    final String[] memberDNs = new String[5];
+    final List<String> memberIDs = new ArrayList<String>();
+    for (int i = 0; i < memberDNs.length; i++)
+    {
+      memberDNs[i] = addUser("static.ranged." + i);
+      memberIDs.add(getDirectoryServer().getEntry(
+          memberDNs[i], "entryUUID").getAttributeValue("entryUUID"));
+    }
+
+    final Map<ResourceDescriptor, ResourceMapper> mappers =
+        getResourceMappers();
+    final DerivedAttribute members =
+        getDerivedAttribute(mappers, "Group", "members");
+    members.getArguments().put("rangedMemberRetrieval", "true");
+    members.initialize(members.getAttributeDescriptor());
+
+    final ResourceDescriptor groupDescriptor =
+        getResourceDescriptor(mappers, "Group");
+    final SCIMQueryAttributes queryAttributes =
+        new SCIMQueryAttributes(groupDescriptor, "members");
+    assertEquals(members.getLDAPAttributeTypes(queryAttributes),
+                 members.getLDAPAttributeTypes());
+    queryAttributes.setValuePage(members.getAttributeDescriptor(),
+                                 new PageParameters(3, 4));
+    assertEquals(members.getLDAPAttributeTypes(queryAttributes),
+                 new HashSet<String>(Arrays.asList("member;range=2-5",
+                     "uniqueMember;range=2-5", "memberURL")));
+
+    // The server returns the values in ranges of at most two values.
+    final String groupDN = "cn=static-ranged,dc=example,dc=com";
+    final List<String> rangeSearches = new ArrayList<String>();
+    final LDAPRequestInterface ldapInterface =
+        new LDAPRequestInterface(getConnectionPool())
+        {
+          @Override
+          public SearchResult search(final SearchRequest searchRequest)
+              throws LDAPSearchException
+          {
+            if (!searchRequest.getBaseDN().equals(groupDN))
+            {
+              return super.search(searchRequest);
+            }
+
+            rangeSearches.addAll(
+                Arrays.asList(searchRequest.getAttributes()));
+            final SearchResultEntry entry = new SearchResultEntry(groupDN,
+                new Attribute[] { new Attribute("uniqueMember;range=4-*",
+                                                memberDNs[4]) },
+                new Control[0]);
+            return new SearchResult(1, ResultCode.SUCCESS, null, null, null,
+                Collections.singletonList(entry), null, 1, 0, null);
+          }
+        };
+
+    final SearchResultEntry entry = new SearchResultEntry(groupDN,
+        new Attribute[] {
+            new Attribute("objectClass", "top", "groupOfUniqueNames"),
+            new Attribute("uniqueMember;range=2-3",
+                          memberDNs[2], memberDNs[3]) },
+        new Control[0]);
+    final SCIMAttribute attribute = members.searchEntryToSCIMAttribute(
+        entry, ldapInterface,
+        mappers.get(groupDescriptor).searchResolver, queryAttributes);
+
+    assertEquals(rangeSearches,
+                 Collections.singletonList("uniqueMember;range=4-5"));
+    assertEquals(attribute.getValues().length, 3);
+    for (int i = 0; i < 3; i++)
+    {
+      assertEquals(attribute.getValues()[i].getAttribute(
+          "value").getValue().getStringValue(), memberIDs.get(i + 2));
+    }
+  }
+
+
+
+  /**
+   * Retrieve the number of members of a group.
+   *
+   * @param backend      The backend with which to retrieve the group.
+   * @param mappers      The resource mappers of the backend.
+   * @param displayName  The displayName of the group.
+   *
+   * @return  The number of members of the group.
+   *
+   * @throws Exception  If the group could not be retrieved.
+   */
+  private static int getMemberCount(
+      final LDAPBackend backend,
+      final Map<ResourceDescriptor, ResourceMapper> mappers,
+      final String displayName)
+      throws Exception
+  {
+    return getMemberCount(getGroup(backend, mappers, displayName));
+  }
+
+
+
+  /**
+   * Retrieve a group by querying its displayName.
+   *
+   * @param backend      The backend with which to retrieve the group.
+   * @param mappers      The resource mappers of the backend.
+   * @param displayName  The displayName of the group.
+   *
+   * @return  The group, with its displayName and members.
+   *
+   * @throws Exception  If the group could not be retrieved.
+   */
+  private static BaseResource getGroup(
+      final LDAPBackend backend,
+      final Map<ResourceDescriptor, ResourceMapper> mappers,
+      final String displayName)
+      throws Exception
+  {
+    final ResourceDescriptor groupDescriptor =
+        getResourceDescriptor(mappers, "Group");
+    BaseResource group = null;
+    for (final BaseResource resource : backend.getResources(
+        createQuery(groupDescriptor, "displayName eq \"" + displayName + "\"",
+                    0, 0, "displayName,members")))
+    {
+      assertNull(group);
+      group = resource;
+    }
+    assertNotNull(group);
+    return group;
+  }
+
+
+
+  /**
+   * Retrieve a page of the members of the one group that matches a filter.
+   *
+   * @param backend      The backend with which to retrieve the group.
+   * @param mappers      The resource mappers of the backend.
+   * @param members      The members derived attribute.
+   * @param filter       The filter that the group matches.
+   * @param startIndex   The 1-based index of the first member in the page.
+   * @param count        The number of members in the page, or zero for all
+   *                     the members from the start index.
+   *
+   * @return  The group, with its displayName and the page of members.
+   *
+   * @throws Exception  If the group could not be retrieved.
+   */
+  private static BaseResource getGroupPage(
+      final LDAPBackend backend,
+      final Map<ResourceDescriptor, ResourceMapper> mappers,
+      final DerivedAttribute members,
+      final String filter,
+      final int startIndex,
+      final int count)
+      throws Exception
+  {
+    final GetResourcesRequest request = createQuery(
+        getResourceDescriptor(mappers, "Group"),
+        filter, 0, 0,
+        "displayName,members");
+    request.getAttributes().setValuePage(members.getAttributeDescriptor(),
+        new PageParameters(startIndex, count));
+
+    BaseResource group = null;
+    for (final BaseResource resource : backend.getResources(request))
+    {
+      assertNull(group);
+      group = resource;
+    }
+    assertNotNull(group);
+    return group;
+  }
+
+
+
+  /**
+   * Retrieve the number of members of a group.
+   *
+   * @param group  The group.
+   *
+   * @return  The number of members of the group.
+   */
+  private static int getMemberCount(final BaseResource group)
+  {
+    final SCIMAttribute members = group.getScimObject().getAttribute(
+        SCIMConstants.SCHEMA_URI_CORE, "members");
+    return members == null ? 0 : members.getValues().length;
+  }
+
+
+
+  /**
+   * Retrieve the resource IDs of the members of a group.
+   *
+   * @param group  The group.
+   *
+   * @return  The resource IDs of the members, in the order they are returned.
+   */
+  private static List<String> getMemberIDs(final BaseResource group)
+  {
+    final List<String> memberIDs = new ArrayList<String>();
+    final SCIMAttribute members = group.getScimObject().getAttribute(
+        SCIMConstants.SCHEMA_URI_CORE, "members");
+    if (members != null)
+    {
+      for (final SCIMAttributeValue value : members.getValues())
+      {
+        memberIDs.add(
+            value.getAttribute("value").getValue().getStringValue());
+      }
+    }
+    return memberIDs;
+  }
+
+
+
+  /**
+   * Verify the type and resource ID of a member value.
+   *
+   * @param value       The member value.
+   * @param type        The expected member type.
+   * @param resourceID  The expected resource ID.
+   */
+  private static void assertMember(final SCIMAttributeValue value,
+                                   final String type,
+                                   final String resourceID)
+  {
+    assertEquals(value.getAttribute("type").getValue().getStringValue(),
+                 type);
+    assertEquals(value.getAttribute("value").getValue().getStringValue(),
+                 resourceID);
+  }
+
+
+
+  /**
+   * Create a resolver for the resources under a base DN.
+   *
+   * @param baseDN          The base DN of the resource entries.
+   * @param filter          The filter of the resource entries.
+   * @param idAttribute     The LDAP attribute that the resource ID maps to,
+   *                        or {@code null} if the resource ID maps to the DN.
+   * @param excludeBaseDNs  The base DNs of entries that are not resources.
+   *
+   * @return  The resolver.
+   *
+   * @throws Exception  If the resolver could not be created.
+   */
+  private static LDAPSearchResolver createResolver(
+      final String baseDN, final String filter, final String idAttribute,
+      final String... excludeBaseDNs)
+      throws Exception
+  {
+    final LDAPSearchParameters parameters = new LDAPSearchParameters();
+    parameters.getBaseDN().add(baseDN);
+    parameters.setFilter(filter);
+    if (idAttribute != null)
+    {
+      final ResourceIDMapping resourceIDMapping = new ResourceIDMapping();
+      resourceIDMapping.setLdapAttribute(idAttribute);
+      resourceIDMapping.setCreatedBy(CreatedBy.DIRECTORY);
+      parameters.setResourceIDMapping(resourceIDMapping);
+    }
+
+    final Set<DN> excludedDNs = new HashSet<DN>();
+    for (final String excludeBaseDN : excludeBaseDNs)
+    {
+      excludedDNs.add(new DN(excludeBaseDN));
+    }
+    return new LDAPSearchResolver(parameters, excludedDNs);
+  }
+
+
+
+  /**
+   * Retrieve the searches processed for the entries of group members under
+   * ou=people,dc=example,dc=com.
+   *
+   * @param ldapInterface  The LDAP request interface.
+   *
+   * @return  The member searches processed.
+   *
+   * @throws LDAPException  If a DN could not be parsed.
+   */
+  private static List<SearchRequest> getMemberSearches(
+      final RecordingLDAPRequestInterface ldapInterface)
+      throws LDAPException
+  {
+    return ldapInterface.getRequests(SearchRequest.class,
+                                     "ou=people,dc=example,dc=com");
+  }
+
+
+
+  /**
+   * Retrieve the number of searches processed with the simple paged results
+   * control.
+   *
+   * @param ldapInterface  The LDAP request interface.
+   *
+   * @return  The number of paged searches processed.
+   *
+   * @throws LDAPException  If a DN could not be parsed.
+   */
+  private static int getPagedSearchCount(
+      final RecordingLDAPRequestInterface ldapInterface)
+      throws LDAPException
+  {
+    int searches = 0;
+    for (final SearchRequest searchRequest :
+        ldapInterface.getRequests(SearchRequest.class, null))
+    {
+      if (searchRequest.hasControl(
+          SimplePagedResultsControl.PAGED_RESULTS_OID))
+      {
+        searches++;
+      }
+    }
+    return searches;
+  }
+
+
+
+  /**
+   * Retrieve the number of searches rejected by an interface created with
+   * {@link #createRejectingInterface}.
+   *
+   * @param ldapInterface  The LDAP request interface.
+   *
+   * @return  The number of searches rejected.
+   *
+   * @throws LDAPException  If a DN could not be parsed.
+   */
+  private static int getRejectedSearchCount(
+      final RecordingLDAPRequestInterface ldapInterface)
+      throws LDAPException
+  {
+    int searches = 0;
+    for (final SearchRequest searchRequest :
+        ldapInterface.getRequests(SearchRequest.class, null))
+    {
+      if (isRejected(searchRequest))
+      {
+        searches++;
+      }
+    }
+    return searches;
+  }
+
+
+
+  /**
+   * Indicates whether a search is rejected by an interface created with
+   * {@link #createRejectingInterface}: a search with a paged results cookie,
+   * or a search for the members of the dynamic-failed group.
+   *
+   * @param searchRequest  The search request.
+   *
+   * @return  {@code true} if the search is rejected.
+   */
+  private static boolean isRejected(final SearchRequest searchRequest)
+  {
+    final SimplePagedResultsControl control =
+        (SimplePagedResultsControl) searchRequest.getControl(
+            SimplePagedResultsControl.PAGED_RESULTS_OID);
+    return (control != null && control.getCookie().getValueLength() > 0) ||
+           searchRequest.getFilter().toString().contains(
+               "departmentNumber=failed");
+  }
+
+
+
+  /**
+   * Create an LDAP request interface that may reject the searches for a
+   * second page of results.
+   *
+   * @param reject  Indicates whether searches with a paged results cookie,
+   *                and searches for the members of the dynamic-failed group,
+   *                are to be rejected.
+   *
+   * @return  The LDAP request interface.
+   */
+  private RecordingLDAPRequestInterface createRejectingInterface(
+      final boolean reject)
+  {
+    return new RecordingLDAPRequestInterface()
+    {
+      @Override
+      protected LDAPRequest prepareRequest(final LDAPRequest request)
+          throws LDAPException
+      {
+        if (reject && request instanceof SearchRequest &&
+            isRejected((SearchRequest) request))
+        {
+          throw new LDAPSearchException(ResultCode.UNWILLING_TO_PERFORM,
+              "The search is not permitted");
+        }
+        return request;
+      }
+    };
+  }
+}
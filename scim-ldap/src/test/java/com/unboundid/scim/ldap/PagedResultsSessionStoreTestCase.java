@@ -0,0 +1,334 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.ldap;
+
+import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.LDAPRequest;
+import com.unboundid.ldap.sdk.LDAPSearchException;
+import com.unboundid.ldap.sdk.RDN;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchScope;
+import com.unboundid.ldap.sdk.controls.SimplePagedResultsControl;
+import com.unboundid.scim.data.BaseResource;
+import com.unboundid.scim.schema.ResourceDescriptor;
+import com.unboundid.scim.sdk.Resources;
+import com.unboundid.scim.sdk.SortParameters;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.testng.Assert.*;
+
+
+
+/**
+ * This class provides test coverage for the {@link PagedResultsSessionStore}
+ * and for the queries that resume paging sessions.
+ */
+public class PagedResultsSessionStoreTestCase
+    extends LDAPTestCase
+{
+  private static final DN PEOPLE_DN =
+      new DN(new RDN("ou", "people"), new RDN("dc", "example"),
+             new RDN("dc", "com"));
+
+  private static final List<DN> BASE_DNS = Arrays.asList(PEOPLE_DN);
+
+  private static final String[] ATTRIBUTES = { "uid", "cn" };
+
+
+
+  /**
+   * Verify that a session is only resumed by a query with the same search
+   * criteria and start index, and only once.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testKeyMatching()
+      throws Exception
+  {
+    final Filter filter = Filter.create("(objectClass=inetOrgPerson)");
+    final String queryKey = PagedResultsSessionStore.getQueryKey(
+        "user1", BASE_DNS, SearchScope.SUB, filter, null, ATTRIBUTES);
+
+    assertEquals(PagedResultsSessionStore.getQueryKey(
+        "user1", BASE_DNS, SearchScope.SUB,
+        Filter.create("(OBJECTCLASS=inetOrgPerson)"), null, ATTRIBUTES),
+        queryKey);
+    assertFalse(PagedResultsSessionStore.getQueryKey(
+        "user2", BASE_DNS, SearchScope.SUB, filter, null, ATTRIBUTES).equals(
+        queryKey));
+    assertFalse(PagedResultsSessionStore.getQueryKey(
+        "user1", BASE_DNS, SearchScope.ONE, filter, null, ATTRIBUTES).equals(
+        queryKey));
+    assertFalse(PagedResultsSessionStore.getQueryKey(
+        "user1", BASE_DNS, SearchScope.SUB, Filter.create("(uid=*)"), null,
+        ATTRIBUTES).equals(queryKey));
+    assertFalse(PagedResultsSessionStore.getQueryKey(
+        "user1", BASE_DNS, SearchScope.SUB, filter,
+        new SortParameters("userName", "ascending"), ATTRIBUTES).equals(
+        queryKey));
+    assertFalse(PagedResultsSessionStore.getQueryKey(
+        "user1", BASE_DNS, SearchScope.SUB, filter, null,
+        new String[] { "uid" }).equals(queryKey));
+
+    final PagedResultsSessionStore store = new PagedResultsSessionStore(10, 0);
+    final ASN1OctetString cookie = new ASN1OctetString("cookie");
+    store.put(queryKey, 11, PEOPLE_DN, cookie, new int[] { 25 });
+
+    assertNull(store.take(queryKey, 21));
+    assertNull(store.take(queryKey + "x", 11));
+
+    final PagedResultsSessionStore.Position position =
+        store.take(queryKey, 11);
+    assertNotNull(position);
+    assertEquals(position.getBaseDN(), PEOPLE_DN);
+    assertEquals(position.getCookie(), cookie);
+    assertEquals(position.getBaseDNSizes(), new int[] { 25 });
+
+    assertNull(store.take(queryKey, 11));
+  }
+
+
+
+  /**
+   * Verify that the oldest sessions are discarded when the maximum number of
+   * sessions is exceeded, and that idle sessions expire.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testEviction()
+      throws Exception
+  {
+    final PagedResultsSessionStore store = new PagedResultsSessionStore(4, 0);
+    for (int i = 1; i <= 5; i++)
+    {
+      store.put("query", i, PEOPLE_DN, null, new int[] { -1 });
+      Thread.sleep(2);
+    }
+
+    assertNull(store.take("query", 1));
+    assertNotNull(store.take("query", 5));
+
+    final PagedResultsSessionStore idleStore =
+        new PagedResultsSessionStore(4, 20);
+    idleStore.put("query", 1, PEOPLE_DN, null, new int[] { -1 });
+    Thread.sleep(50);
+    assertNull(idleStore.take("query", 1));
+  }
+
+
+
+  /**
+   * Verify that a query resumes a paging session, and that it pages through
+   * the preceding entries instead if the server rejects the kept cookie.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testRejectedCookieFallback()
+      throws Exception
+  {
+    for (int i = 0; i < 5; i++)
+    {
+      addUser("paged." + i);
+    }
+
+    final AtomicBoolean rejectCookie = new AtomicBoolean();
+    final RecordingLDAPRequestInterface ldapInterface =
+        new RecordingLDAPRequestInterface()
+        {
+          @Override
+          protected LDAPRequest prepareRequest(final LDAPRequest request)
+              throws LDAPException
+          {
+            if (hasCookie(request) && rejectCookie.compareAndSet(true, false))
+            {
+              // Reject the cookie once, as a restarted server would.
+              throw new LDAPSearchException(ResultCode.UNWILLING_TO_PERFORM,
+                  "The cookie is not valid");
+            }
+            return request;
+          }
+        };
+    final Map<ResourceDescriptor, ResourceMapper> mappers =
+        getResourceMappers();
+    final LDAPBackend backend = createBackend(mappers, ldapInterface);
+    backend.setSupportsSimplePagedResultsControl(true);
+    backend.setPagedResultsSessions(10, 0);
+    final ResourceDescriptor userDescriptor =
+        getResourceDescriptor(mappers, "User");
+
+    final Set<String> ids = new HashSet<String>();
+    assertEquals(getIDs(backend.getResources(
+        createQuery(userDescriptor, null, 1, 2, null)), ids), 2);
+
+    // The second page resumes the session of the first.
+    assertEquals(getIDs(backend.getResources(
+        createQuery(userDescriptor, null, 3, 2, null)), ids), 2);
+    assertEquals(getCookieSearchCount(ldapInterface), 1);
+
+    // The third page falls back to paging through the first four entries.
+    rejectCookie.set(true);
+    assertEquals(getIDs(backend.getResources(
+        createQuery(userDescriptor, null, 5, 2, null)), ids), 1);
+    assertFalse(rejectCookie.get());
+    assertEquals(ids.size(), 5);
+  }
+
+
+
+  /**
+   * Verify that every page of a query of more than one base DN reports the
+   * total number of results in all of the base DNs.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testTotalResultsAcrossBaseDNs()
+      throws Exception
+  {
+    final String[] baseDNs =
+        { "ou=paged-first,dc=example,dc=com",
+          "ou=paged-second,dc=example,dc=com" };
+    for (final String baseDN : baseDNs)
+    {
+      getDirectoryServer().add(
+          "dn: " + baseDN,
+          "objectClass: organizationalUnit",
+          "ou: " + new DN(baseDN).getRDN().getAttributeValues()[0]);
+      for (int i = 0; i < 3; i++)
+      {
+        getDirectoryServer().add(
+            "dn: uid=total." + i + "," + baseDN,
+            "objectClass: inetOrgPerson",
+            "uid: total." + i,
+            "cn: total " + i,
+            "sn: " + i);
+      }
+    }
+
+    final ResourceIDMapping resourceIDMapping = new ResourceIDMapping();
+    resourceIDMapping.setLdapAttribute("entryUUID");
+    resourceIDMapping.setCreatedBy(CreatedBy.DIRECTORY);
+    final LDAPSearchParameters parameters = new LDAPSearchParameters();
+    parameters.getBaseDN().addAll(Arrays.asList(baseDNs));
+    parameters.setFilter("(objectClass=inetOrgPerson)");
+    parameters.setResourceIDMapping(resourceIDMapping);
+
+    final Map<ResourceDescriptor, ResourceMapper> mappers =
+        getResourceMappers();
+    final ResourceDescriptor userDescriptor =
+        getResourceDescriptor(mappers, "User");
+    mappers.get(userDescriptor).searchResolver =
+        new LDAPSearchResolver(parameters, Collections.<DN>emptySet());
+    final LDAPBackend backend = createBackend(mappers);
+    backend.setSupportsSimplePagedResultsControl(true);
+    backend.setPagedResultsSessions(10, 0);
+
+    final Set<String> ids = new HashSet<String>();
+    for (int startIndex = 1; startIndex <= 5; startIndex += 2)
+    {
+      final Resources<?> resources = backend.getResources(
+          createQuery(userDescriptor, null, startIndex, 2, null));
+      assertEquals(resources.getTotalResults(), 6L,
+                   "Page at " + startIndex);
+      assertEquals(getIDs(resources, ids), 2);
+    }
+    assertEquals(ids.size(), 6);
+  }
+
+
+
+  /**
+   * Add the IDs of the resources of a query response to a set, verifying
+   * that none was already in the set.
+   *
+   * @param resources  The query response.
+   * @param ids        The set of IDs.
+   *
+   * @return  The number of resources in the query response.
+   */
+  private static int getIDs(final Resources<?> resources,
+                            final Set<String> ids)
+  {
+    int count = 0;
+    for (final BaseResource resource : resources)
+    {
+      assertTrue(ids.add(resource.getId()), resource.getId());
+      count++;
+    }
+    return count;
+  }
+
+
+
+  /**
+   * Indicates whether a request is a search with a paged results cookie.
+   *
+   * @param request  The request.
+   *
+   * @return  {@code true} if the request is a search with a cookie.
+   */
+  private static boolean hasCookie(final LDAPRequest request)
+  {
+    final SimplePagedResultsControl control =
+        (SimplePagedResultsControl) request.getControl(
+            SimplePagedResultsControl.PAGED_RESULTS_OID);
+    return control != null && control.getCookie().getValueLength() > 0;
+  }
+
+
+
+  /**
+   * Retrieve the number of searches processed with a paged results cookie.
+   *
+   * @param ldapInterface  The LDAP request interface.
+   *
+   * @return  The number of searches with a cookie.
+   *
+   * @throws LDAPException  If a DN could not be parsed.
+   */
+  private static int getCookieSearchCount(
+      final RecordingLDAPRequestInterface ldapInterface)
+      throws LDAPException
+  {
+    int searches = 0;
+    for (final SearchRequest searchRequest :
+        ldapInterface.getRequests(SearchRequest.class, null))
+    {
+      if (hasCookie(searchRequest))
+      {
+        searches++;
+      }
+    }
+    return searches;
+  }
+}
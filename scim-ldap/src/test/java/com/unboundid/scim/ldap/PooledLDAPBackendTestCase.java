@@ -0,0 +1,293 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.ldap;
+
+import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchScope;
+import com.unboundid.scim.data.BaseResource;
+import com.unboundid.scim.schema.ResourceDescriptor;
+import com.unboundid.scim.sdk.DeleteResourceRequest;
+import com.unboundid.scim.sdk.GetResourceRequest;
+import com.unboundid.scim.sdk.GetResourcesRequest;
+import com.unboundid.scim.sdk.SCIMFilter;
+import com.unboundid.scim.sdk.SCIMQueryAttributes;
+import com.unboundid.scim.sdk.UnauthorizedException;
+import org.testng.annotations.Test;
+
+import java.util.Map;
+
+import static org.testng.Assert.*;
+
+
+
+/**
+ * This class provides test coverage for the {@link PooledLDAPBackend} and the
+ * {@link ConnectionPoolMonitor}.
+ */
+public class PooledLDAPBackendTestCase
+    extends LDAPTestCase
+{
+  /**
+   * Verify that searches are processed on the read pool, and that updates and
+   * the reads made for them are processed on the write pool.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testRouting()
+      throws Exception
+  {
+    final String userDN = addUser("pooled.routing");
+    final Map<ResourceDescriptor, ResourceMapper> mappers =
+        getResourceMappers();
+    final ResourceDescriptor userDescriptor =
+        getResourceDescriptor(mappers, "User");
+    final LDAPConnectionPool writePool =
+        getDirectoryServer().getConnectionPool(2);
+    final LDAPConnectionPool readPool =
+        getDirectoryServer().getConnectionPool(2);
+    final PooledLDAPBackend backend =
+        new PooledLDAPBackend(mappers, writePool, readPool);
+    try
+    {
+      final BaseResource user = getUser(backend, userDescriptor, userDN,
+                                         "pooled.routing");
+      assertEquals(getCheckouts(backend, "ldap-write-pool"), 0);
+      final long readCheckouts = getCheckouts(backend, "ldap-read-pool");
+      assertTrue(readCheckouts > 0);
+
+      backend.getResource(new GetResourceRequest(BASE_URI, userDN,
+          userDescriptor, user.getId(),
+          new SCIMQueryAttributes(userDescriptor, null)));
+      assertEquals(getCheckouts(backend, "ldap-write-pool"), 0);
+      assertTrue(getCheckouts(backend, "ldap-read-pool") > readCheckouts);
+
+      final long readCheckoutsBeforeDelete =
+          getCheckouts(backend, "ldap-read-pool");
+      backend.deleteResource(new DeleteResourceRequest(BASE_URI, userDN,
+          userDescriptor, user.getId()));
+      assertTrue(getCheckouts(backend, "ldap-write-pool") > 0);
+      assertEquals(getCheckouts(backend, "ldap-read-pool"),
+                   readCheckoutsBeforeDelete);
+      assertNull(getDirectoryServer().getEntry(userDN));
+
+      final Map<String, Long> data =
+          backend.getMonitorData().get("ldap-read-pool");
+      assertEquals(data.get("checkouts-failed").longValue(), 0);
+      assertEquals(data.get("connections-closed-defunct").longValue(), 0);
+    }
+    finally
+    {
+      backend.finalizeBackend();
+    }
+  }
+
+
+
+  /**
+   * Verify that a single pool is used for both searches and updates when
+   * there is no read pool.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testSinglePool()
+      throws Exception
+  {
+    final Map<ResourceDescriptor, ResourceMapper> mappers =
+        getResourceMappers();
+    final PooledLDAPBackend backend = new PooledLDAPBackend(mappers,
+        getDirectoryServer().getConnectionPool(1), null);
+    try
+    {
+      assertEquals(backend.getMonitorData().keySet().size(), 1);
+      assertTrue(backend.getMonitorData().containsKey("ldap-write-pool"));
+    }
+    finally
+    {
+      backend.finalizeBackend();
+    }
+  }
+
+
+
+  /**
+   * Verify that requests without an authorization ID are rejected unless they
+   * are explicitly allowed to be made as the user authenticated on the pooled
+   * connections.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testNoAuthorizationID()
+      throws Exception
+  {
+    addUser("pooled.anonymous");
+    final Map<ResourceDescriptor, ResourceMapper> mappers =
+        getResourceMappers();
+    final ResourceDescriptor userDescriptor =
+        getResourceDescriptor(mappers, "User");
+    final PooledLDAPBackend backend = new PooledLDAPBackend(mappers,
+        getDirectoryServer().getConnectionPool(1), null);
+    try
+    {
+      final GetResourcesRequest request = new GetResourcesRequest(BASE_URI,
+          null, userDescriptor,
+          SCIMFilter.parse("userName eq \"pooled.anonymous\""), null, null,
+          null, null, new SCIMQueryAttributes(userDescriptor, null));
+      try
+      {
+        backend.getResources(request);
+        fail("A request without an authorization ID was processed");
+      }
+      catch (UnauthorizedException e)
+      {
+        // Expected.
+      }
+      assertEquals(getCheckouts(backend, "ldap-write-pool"), 0);
+
+      backend.setAllowPoolIdentity(true);
+      assertEquals(backend.getResources(request).getTotalResults(), 1);
+    }
+    finally
+    {
+      backend.finalizeBackend();
+    }
+  }
+
+
+
+  /**
+   * Verify that a sequence of paged searches is processed on a single
+   * connection from the read pool, and that paging sessions are not kept.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testPagedSearchInterface()
+      throws Exception
+  {
+    final LDAPConnectionPool pool = getDirectoryServer().getConnectionPool(2);
+    final ConnectionPoolMonitor readPool =
+        new ConnectionPoolMonitor("read", pool);
+    try
+    {
+      final PooledLDAPRequestInterface ldapInterface =
+          new PooledLDAPRequestInterface(readPool, readPool);
+      final long available = getAvailableConnections(readPool);
+      final LDAPRequestInterface pagedInterface =
+          ldapInterface.getPagedSearchInterface();
+      assertNotSame(pagedInterface, ldapInterface);
+      assertSame(pagedInterface.getPagedSearchInterface(), pagedInterface);
+      assertSame(pagedInterface.getUpdateInterface(), ldapInterface);
+      assertEquals(readPool.getMonitorData().get("checkouts").longValue(), 1);
+      assertEquals(getAvailableConnections(readPool), available - 1);
+
+      for (int i = 0; i < 3; i++)
+      {
+        pagedInterface.search(new SearchRequest("dc=example,dc=com",
+            SearchScope.BASE, Filter.createPresenceFilter("objectClass")));
+      }
+      assertEquals(readPool.getMonitorData().get("checkouts").longValue(), 1);
+
+      pagedInterface.release();
+      assertEquals(getAvailableConnections(readPool), available);
+    }
+    finally
+    {
+      pool.close();
+    }
+
+    final PooledLDAPBackend backend = new PooledLDAPBackend(
+        getResourceMappers(), getDirectoryServer().getConnectionPool(1), null);
+    try
+    {
+      backend.setPagedResultsSessions(10, 0);
+      assertFalse(backend.isPagedResultsSessions());
+    }
+    finally
+    {
+      backend.finalizeBackend();
+    }
+  }
+
+
+
+  /**
+   * Retrieve a user by querying its userName.
+   *
+   * @param backend         The backend to query.
+   * @param userDescriptor  The User resource descriptor.
+   * @param userDN          The DN of the user making the request.
+   * @param userName        The userName of the user to retrieve.
+   *
+   * @return  The user.
+   *
+   * @throws Exception  If the query fails.
+   */
+  private static BaseResource getUser(final LDAPBackend backend,
+                                      final ResourceDescriptor userDescriptor,
+                                      final String userDN,
+                                      final String userName)
+      throws Exception
+  {
+    BaseResource user = null;
+    for (final BaseResource resource : backend.getResources(
+        new GetResourcesRequest(BASE_URI, userDN, userDescriptor,
+            SCIMFilter.parse("userName eq \"" + userName + "\""), null, null,
+            null, null, new SCIMQueryAttributes(userDescriptor, null))))
+    {
+      assertNull(user);
+      user = resource;
+    }
+    assertNotNull(user);
+    return user;
+  }
+
+
+
+  /**
+   * Retrieve the number of connections checked out of a pool of a backend.
+   *
+   * @param backend   The backend.
+   * @param poolName  The name of the pool in the monitor data.
+   *
+   * @return  The number of connections checked out.
+   */
+  private static long getCheckouts(final PooledLDAPBackend backend,
+                                   final String poolName)
+  {
+    return backend.getMonitorData().get(poolName).get("checkouts");
+  }
+
+
+
+  /**
+   * Retrieve the number of connections available in a pool.
+   *
+   * @param pool  The pool.
+   *
+   * @return  The number of connections available in the pool.
+   */
+  private static long getAvailableConnections(final ConnectionPoolMonitor pool)
+  {
+    return pool.getMonitorData().get("connections-available");
+  }
+}
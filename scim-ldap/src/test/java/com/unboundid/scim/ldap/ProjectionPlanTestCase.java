@@ -0,0 +1,219 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.ldap;
+
+import com.unboundid.scim.data.BaseResource;
+import com.unboundid.scim.schema.ResourceDescriptor;
+import com.unboundid.scim.sdk.GetResourceRequest;
+import com.unboundid.scim.sdk.PageParameters;
+import com.unboundid.scim.sdk.SCIMQueryAttributes;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.testng.Assert.*;
+
+
+
+/**
+ * This class provides test coverage for the LDAP attribute projection plans
+ * that a {@link ResourceMapper} caches for the combinations of requested
+ * attributes.
+ */
+public class ProjectionPlanTestCase
+    extends LDAPTestCase
+{
+  /**
+   * Verify that requests for the same mapped attributes share a plan, even
+   * if they differ in attributes that are not mapped, and that requests for
+   * different mapped attributes do not.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testMappedAttributes()
+      throws Exception
+  {
+    final Map<ResourceDescriptor, ResourceMapper> mappers =
+        getResourceMappers();
+    final ResourceDescriptor userDescriptor =
+        getResourceDescriptor(mappers, "User");
+    final ResourceMapper mapper = mappers.get(userDescriptor);
+    final Set<String> additional = Collections.singleton("objectclass");
+
+    final String[] plan = mapper.getLDAPAttributeProjection(
+        new SCIMQueryAttributes(userDescriptor, "userName,title"),
+        additional, null);
+    assertEquals(new HashSet<String>(Arrays.asList(plan)),
+                 new HashSet<String>(Arrays.asList(
+                     "uid", "title", "entryUUID", "objectclass")));
+    assertSame(mapper.getLDAPAttributeProjection(
+        new SCIMQueryAttributes(userDescriptor, "title,userName"),
+        additional, null), plan);
+    assertSame(mapper.getLDAPAttributeProjection(
+        new SCIMQueryAttributes(userDescriptor, "userName,title,id,meta"),
+        additional, null), plan);
+
+    final String[] titlePlan = mapper.getLDAPAttributeProjection(
+        new SCIMQueryAttributes(userDescriptor, "title"), additional, null);
+    assertNotSame(titlePlan, plan);
+    assertFalse(Arrays.asList(titlePlan).contains("uid"));
+
+    final String[] allPlan = mapper.getLDAPAttributeProjection(
+        new SCIMQueryAttributes(userDescriptor, null), additional, null);
+    assertNotSame(allPlan, plan);
+    assertTrue(Arrays.asList(allPlan).containsAll(Arrays.asList(plan)));
+  }
+
+
+
+  /**
+   * Verify that the additional attributes and the filter attributes are part
+   * of the key of a plan.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testAdditionalAttributes()
+      throws Exception
+  {
+    final Map<ResourceDescriptor, ResourceMapper> mappers =
+        getResourceMappers();
+    final ResourceDescriptor userDescriptor =
+        getResourceDescriptor(mappers, "User");
+    final ResourceMapper mapper = mappers.get(userDescriptor);
+    final SCIMQueryAttributes queryAttributes =
+        new SCIMQueryAttributes(userDescriptor, "userName");
+
+    final String[] plan = mapper.getLDAPAttributeProjection(queryAttributes,
+        Collections.singleton("objectclass"), null);
+    final String[] etagPlan = mapper.getLDAPAttributeProjection(
+        queryAttributes,
+        new HashSet<String>(Arrays.asList("objectclass", "modifyTimestamp")),
+        null);
+    assertNotSame(etagPlan, plan);
+    assertTrue(Arrays.asList(etagPlan).contains("modifyTimestamp"));
+    assertFalse(Arrays.asList(plan).contains("modifyTimestamp"));
+
+    final String[] filterPlan = mapper.getLDAPAttributeProjection(
+        queryAttributes, Collections.singleton("objectclass"),
+        Collections.singleton("mail"));
+    assertNotSame(filterPlan, plan);
+    assertTrue(Arrays.asList(filterPlan).contains("mail"));
+    assertSame(mapper.getLDAPAttributeProjection(queryAttributes,
+        Collections.singleton("objectclass"),
+        new HashSet<String>(Collections.singleton("mail"))), filterPlan);
+  }
+
+
+
+  /**
+   * Verify that the pages of values requested for derived attributes are
+   * part of the key of a plan.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testValuePages()
+      throws Exception
+  {
+    final Map<ResourceDescriptor, ResourceMapper> mappers =
+        getResourceMappers();
+    final DerivedAttribute members =
+        getDerivedAttribute(mappers, "Group", "members");
+    members.getArguments().put("rangedMemberRetrieval", "true");
+    members.initialize(members.getAttributeDescriptor());
+
+    final ResourceDescriptor groupDescriptor =
+        getResourceDescriptor(mappers, "Group");
+    final ResourceMapper mapper = mappers.get(groupDescriptor);
+    final Set<String> additional = Collections.singleton("objectclass");
+
+    final String[] plan = mapper.getLDAPAttributeProjection(
+        new SCIMQueryAttributes(groupDescriptor, "members"), additional,
+        null);
+    assertTrue(Arrays.asList(plan).contains("member"));
+
+    final SCIMQueryAttributes pageAttributes =
+        new SCIMQueryAttributes(groupDescriptor, "members");
+    pageAttributes.setValuePage(members.getAttributeDescriptor(),
+                                new PageParameters(3, 4));
+    final String[] pagePlan =
+        mapper.getLDAPAttributeProjection(pageAttributes, additional, null);
+    assertNotSame(pagePlan, plan);
+    assertTrue(Arrays.asList(pagePlan).contains("member;range=2-5"));
+
+    final SCIMQueryAttributes otherPageAttributes =
+        new SCIMQueryAttributes(groupDescriptor, "members");
+    otherPageAttributes.setValuePage(members.getAttributeDescriptor(),
+                                     new PageParameters(7, 4));
+    final String[] otherPagePlan = mapper.getLDAPAttributeProjection(
+        otherPageAttributes, additional, null);
+    assertTrue(Arrays.asList(otherPagePlan).contains("member;range=6-9"));
+
+    // A page of an attribute that is not requested does not change the plan.
+    final SCIMQueryAttributes unrequestedAttributes =
+        new SCIMQueryAttributes(groupDescriptor, "displayName");
+    final String[] unrequestedPlan = mapper.getLDAPAttributeProjection(
+        unrequestedAttributes, additional, null);
+    unrequestedAttributes.setValuePage(members.getAttributeDescriptor(),
+                                       new PageParameters(3, 4));
+    assertSame(mapper.getLDAPAttributeProjection(unrequestedAttributes,
+        additional, null), unrequestedPlan);
+  }
+
+
+
+  /**
+   * Verify that the attributes a backend requests for every resource follow
+   * changes to the entity tag attribute.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testEntityTagAttribute()
+      throws Exception
+  {
+    final String userDN = addUser("projection.etag");
+    final String id = getDirectoryServer().getEntry(userDN, "entryUUID")
+        .getAttributeValue("entryUUID");
+    final Map<ResourceDescriptor, ResourceMapper> mappers =
+        getResourceMappers();
+    final ResourceDescriptor userDescriptor =
+        getResourceDescriptor(mappers, "User");
+    final LDAPBackend backend = createBackend(mappers);
+    final GetResourceRequest request = new GetResourceRequest(BASE_URI,
+        "cn=Directory Manager", userDescriptor, id,
+        new SCIMQueryAttributes(userDescriptor, "userName"));
+
+    BaseResource user = backend.getResource(request);
+    assertNull(user.getMeta().getVersion());
+
+    backend.setEntityTagAttribute("modifyTimestamp");
+    user = backend.getResource(request);
+    assertNotNull(user.getMeta().getVersion());
+
+    backend.setEntityTagAttribute(null);
+    user = backend.getResource(request);
+    assertNull(user.getMeta().getVersion());
+  }
+}
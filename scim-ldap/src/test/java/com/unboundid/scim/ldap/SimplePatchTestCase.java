@@ -0,0 +1,354 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.ldap;
+
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.LDAPRequest;
+import com.unboundid.ldap.sdk.ModifyDNRequest;
+import com.unboundid.ldap.sdk.ModifyRequest;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.controls.AssertionRequestControl;
+import com.unboundid.scim.data.Entry;
+import com.unboundid.scim.data.UserResource;
+import com.unboundid.scim.schema.CoreSchema;
+import com.unboundid.scim.schema.ResourceDescriptor;
+import com.unboundid.scim.sdk.PatchResourceRequest;
+import com.unboundid.scim.sdk.SCIMQueryAttributes;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.testng.Assert.*;
+
+
+
+/**
+ * This class provides test coverage for the PATCH requests that an
+ * {@link LDAPBackend} applies without reading the current entry.
+ */
+public class SimplePatchTestCase
+    extends LDAPTestCase
+{
+  /**
+   * The base DN of the user entries.
+   */
+  private static final String PEOPLE_DN = "ou=people,dc=example,dc=com";
+
+
+
+  /**
+   * Verify that a PATCH that only replaces simple attributes modifies the
+   * entry without reading its attributes, asserting that the entry is still
+   * the resource.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testSimplePatch()
+      throws Exception
+  {
+    final String userDN = addUser("patch.simple");
+    final String id = getUserID(userDN);
+    final Map<ResourceDescriptor, ResourceMapper> mappers =
+        getResourceMappers();
+    final ResourceDescriptor userDescriptor =
+        getResourceDescriptor(mappers, "User");
+    final RecordingLDAPRequestInterface ldapInterface =
+        new RecordingLDAPRequestInterface();
+    final LDAPBackend backend = createBackend(mappers, ldapInterface);
+
+    final UserResource user = new UserResource(CoreSchema.USER_DESCRIPTOR);
+    user.setTitle("simple");
+    patch(backend, userDescriptor, id, user);
+
+    assertFalse(isEntryRead(ldapInterface));
+    final ModifyRequest modifyRequest = getModifyRequest(ldapInterface);
+    assertTrue(modifyRequest.hasControl(
+        AssertionRequestControl.ASSERTION_REQUEST_OID));
+    assertEquals(getTitle(userDN), "simple");
+  }
+
+
+
+  /**
+   * Verify that a PATCH that only replaces simple attributes is applied
+   * without any search when the DN of the entry is cached, and that it is
+   * applied to the current entry if the cached DN is no longer the entry's.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testCachedDN()
+      throws Exception
+  {
+    final String userDN = addUser("patch.cached");
+    final String id = getUserID(userDN);
+    final Map<ResourceDescriptor, ResourceMapper> mappers =
+        getResourceMappers();
+    final ResourceDescriptor userDescriptor =
+        getResourceDescriptor(mappers, "User");
+    mappers.get(userDescriptor).searchResolver = createCachingResolver();
+    final RecordingLDAPRequestInterface ldapInterface =
+        new RecordingLDAPRequestInterface();
+    final LDAPBackend backend = createBackend(mappers, ldapInterface);
+
+    // The first patch caches the DN of the entry.
+    final UserResource user = new UserResource(CoreSchema.USER_DESCRIPTOR);
+    user.setTitle("first");
+    patch(backend, userDescriptor, id, user);
+    assertEquals(getTitle(userDN), "first");
+
+    ldapInterface.clearRequests();
+    user.setTitle("second");
+    patch(backend, userDescriptor, id, user);
+    assertTrue(getRequests(ldapInterface).get(0) instanceof ModifyRequest);
+    assertEquals(getTitle(userDN), "second");
+
+    // Rename the entry directly so that the cached DN is no longer valid.
+    final String renamedDN = "uid=patch.renamed," + PEOPLE_DN;
+    getDirectoryServer().modifyDN(userDN, "uid=patch.renamed", true);
+
+    ldapInterface.clearRequests();
+    user.setTitle("third");
+    patch(backend, userDescriptor, id, user);
+    final List<String> modifiedDNs = new ArrayList<String>();
+    for (final ModifyRequest modifyRequest :
+        ldapInterface.getRequests(ModifyRequest.class, PEOPLE_DN))
+    {
+      modifiedDNs.add(modifyRequest.getDN());
+    }
+    assertEquals(modifiedDNs.size(), 2);
+    assertEquals(new DN(modifiedDNs.get(0)), new DN(userDN));
+    assertEquals(new DN(modifiedDNs.get(1)), new DN(renamedDN));
+    assertEquals(getTitle(renamedDN), "third");
+  }
+
+
+
+  /**
+   * Verify that a PATCH is prepared from the current entry if it changes
+   * the RDN of the entry, replaces a multi-valued attribute or has
+   * preconditions.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testFullPatch()
+      throws Exception
+  {
+    final String userDN = addUser("patch.full");
+    final String id = getUserID(userDN);
+    final Map<ResourceDescriptor, ResourceMapper> mappers =
+        getResourceMappers();
+    final ResourceDescriptor userDescriptor =
+        getResourceDescriptor(mappers, "User");
+    final RecordingLDAPRequestInterface ldapInterface =
+        new RecordingLDAPRequestInterface();
+    final LDAPBackend backend = createBackend(mappers, ldapInterface);
+
+    final UserResource emails = new UserResource(CoreSchema.USER_DESCRIPTOR);
+    emails.setEmails(Collections.singletonList(
+        new Entry<String>("patch.full@example.com", "work", true)));
+    patch(backend, userDescriptor, id, emails);
+    assertTrue(isEntryRead(ldapInterface));
+    assertEquals(getDirectoryServer().getEntry(userDN, "mail")
+                     .getAttributeValue("mail"),
+                 "patch.full@example.com");
+
+    backend.setEntityTagAttribute("modifyTimestamp");
+    ldapInterface.clearRequests();
+    final UserResource title = new UserResource(CoreSchema.USER_DESCRIPTOR);
+    title.setTitle("full");
+    backend.patchResource(new PatchResourceRequest(BASE_URI,
+        "cn=Directory Manager", userDescriptor, id, title.getScimObject(),
+        new SCIMQueryAttributes(userDescriptor, null), null, "*", null));
+    assertTrue(isEntryRead(ldapInterface));
+    assertEquals(getTitle(userDN), "full");
+
+    ldapInterface.clearRequests();
+    final UserResource userName =
+        new UserResource(CoreSchema.USER_DESCRIPTOR);
+    userName.setUserName("patch.full.renamed");
+    patch(backend, userDescriptor, id, userName);
+    assertTrue(isEntryRead(ldapInterface));
+    assertFalse(ldapInterface.getRequests(ModifyDNRequest.class,
+                                          PEOPLE_DN).isEmpty());
+    assertNull(getDirectoryServer().getEntry(userDN));
+    assertNotNull(getDirectoryServer().getEntry(
+        "uid=patch.full.renamed," + PEOPLE_DN));
+  }
+
+
+
+  /**
+   * Retrieve the resource ID of a user, which is its entryUUID.
+   *
+   * @param userDN  The DN of the user entry.
+   *
+   * @return  The resource ID of the user.
+   *
+   * @throws Exception  If the entry could not be read.
+   */
+  private String getUserID(final String userDN)
+      throws Exception
+  {
+    return getDirectoryServer().getEntry(userDN, "entryUUID")
+        .getAttributeValue("entryUUID");
+  }
+
+
+
+  /**
+   * Retrieve the title of an entry directly from the directory server.
+   *
+   * @param dn  The DN of the entry.
+   *
+   * @return  The title of the entry.
+   *
+   * @throws Exception  If the entry could not be read.
+   */
+  private String getTitle(final String dn)
+      throws Exception
+  {
+    return getDirectoryServer().getEntry(dn, "title")
+        .getAttributeValue("title");
+  }
+
+
+
+  /**
+   * Patch a user without preconditions.
+   *
+   * @param backend         The backend.
+   * @param userDescriptor  The User resource descriptor.
+   * @param id              The resource ID of the user.
+   * @param user            The attributes to be patched.
+   *
+   * @throws Exception  If the user could not be patched.
+   */
+  private static void patch(final LDAPBackend backend,
+                            final ResourceDescriptor userDescriptor,
+                            final String id,
+                            final UserResource user)
+      throws Exception
+  {
+    backend.patchResource(new PatchResourceRequest(BASE_URI,
+        "cn=Directory Manager", userDescriptor, id, user.getScimObject(),
+        new SCIMQueryAttributes(userDescriptor, null)));
+  }
+
+
+
+  /**
+   * Indicates whether any attributes of an entry were read before the entry
+   * was first modified.
+   *
+   * @param ldapInterface  The LDAP request interface of the backend.
+   *
+   * @return  {@code true} if attributes were read before the modification.
+   *
+   * @throws LDAPException  If a DN could not be parsed.
+   */
+  private static boolean isEntryRead(
+      final RecordingLDAPRequestInterface ldapInterface)
+      throws LDAPException
+  {
+    for (final LDAPRequest request : getRequests(ldapInterface))
+    {
+      if (!(request instanceof SearchRequest))
+      {
+        return false;
+      }
+
+      final String[] attributes = ((SearchRequest) request).getAttributes();
+      if (attributes.length != 1 || !attributes[0].equals("1.1"))
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+
+
+
+  /**
+   * Retrieve the first modify request processed.
+   *
+   * @param ldapInterface  The LDAP request interface of the backend.
+   *
+   * @return  The first modify request.
+   *
+   * @throws LDAPException  If a DN could not be parsed.
+   */
+  private static ModifyRequest getModifyRequest(
+      final RecordingLDAPRequestInterface ldapInterface)
+      throws LDAPException
+  {
+    final List<ModifyRequest> modifyRequests =
+        ldapInterface.getRequests(ModifyRequest.class, PEOPLE_DN);
+    assertFalse(modifyRequests.isEmpty(), "No modify request was processed");
+    return modifyRequests.get(0);
+  }
+
+
+
+  /**
+   * Create a resolver for user entries that caches the DNs of resource IDs.
+   *
+   * @return  The resolver.
+   *
+   * @throws Exception  If the resolver could not be created.
+   */
+  private static LDAPSearchResolver createCachingResolver()
+      throws Exception
+  {
+    final ResourceIDMapping resourceIDMapping = new ResourceIDMapping();
+    resourceIDMapping.setLdapAttribute("entryUUID");
+    resourceIDMapping.setCreatedBy(CreatedBy.DIRECTORY);
+    resourceIDMapping.setCacheSize(10);
+
+    final LDAPSearchParameters parameters = new LDAPSearchParameters();
+    parameters.getBaseDN().add(PEOPLE_DN);
+    parameters.setFilter("(objectClass=inetOrgPerson)");
+    parameters.setResourceIDMapping(resourceIDMapping);
+    return new LDAPSearchResolver(parameters, Collections.<DN>emptySet());
+  }
+
+
+
+  /**
+   * Retrieve the requests processed for the entries under
+   * ou=people,dc=example,dc=com.
+   *
+   * @param ldapInterface  The LDAP request interface of the backend.
+   *
+   * @return  The requests processed.
+   *
+   * @throws LDAPException  If a DN could not be parsed.
+   */
+  private static List<LDAPRequest> getRequests(
+      final RecordingLDAPRequestInterface ldapInterface)
+      throws LDAPException
+  {
+    return ldapInterface.getRequests(LDAPRequest.class, PEOPLE_DN);
+  }
+}
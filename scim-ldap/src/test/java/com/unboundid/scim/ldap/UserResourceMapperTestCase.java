@@ -23,6 +23,8 @@ import com.unboundid.ldap.sdk.DN;
 import com.unboundid.ldap.sdk.Entry;
 import com.unboundid.ldap.sdk.Filter;
 import com.unboundid.ldap.sdk.controls.ServerSideSortRequestControl;
+import com.unboundid.ldap.sdk.schema.AttributeTypeDefinition;
+import com.unboundid.ldap.sdk.schema.Schema;
 import com.unboundid.scim.data.Address;
 import com.unboundid.scim.data.BaseResource;
 import com.unboundid.scim.data.Name;
@@ -59,7 +61,9 @@ import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 
@@ -648,6 +652,129 @@ public class UserResourceMapperTestCase
 
 
 
+  /**
+   * Verify that filters of the same shape are mapped with their own values
+   * when the compiled filter plan is reused.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testFilterPlanReuse()
+      throws Exception
+  {
+    final ResourceMapper mapper = getUserResourceMapper();
+
+    final String[] userNames = { "first", "second", "third" };
+    for (final String userName : userNames)
+    {
+      final SCIMFilter scimFilter = SCIMFilter.parse(
+          "userName eq \"" + userName + "\" or " +
+          "name.familyName sw \"" + userName + "\"");
+      final Filter filter = mapper.toLDAPFilter(scimFilter, null);
+      assertEquals(filter.getFilterType(), Filter.FILTER_TYPE_AND);
+      final Filter orFilter = filter.getComponents()[0];
+      assertEquals(orFilter.getFilterType(), Filter.FILTER_TYPE_OR);
+      assertEquals(orFilter.getComponents()[0],
+                   Filter.createEqualityFilter("uid", userName));
+      assertEquals(orFilter.getComponents()[1],
+                   Filter.createSubstringFilter("sn", userName, null, null));
+    }
+  }
+
+
+
+  /**
+   * Verify that only filters whose LDAP mapping is exact are reported as
+   * exact, and that equality filters are only exact if the LDAP schema
+   * defines the mapped attribute as single-valued with a matching rule of
+   * the same case sensitivity.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testExactFilters()
+      throws Exception
+  {
+    final Schema standardSchema = Schema.getDefaultStandardSchema();
+    final Entry schemaEntry = standardSchema.getSchemaEntry().duplicate();
+    final List<String> attributeTypes = new ArrayList<String>();
+    for (final String value :
+        schemaEntry.getAttributeValues(Schema.ATTR_ATTRIBUTE_TYPE))
+    {
+      if (new AttributeTypeDefinition(value).hasNameOrOID("uid"))
+      {
+        attributeTypes.add(
+            value.substring(0, value.lastIndexOf(')')) + "SINGLE-VALUE )");
+      }
+      else
+      {
+        attributeTypes.add(value);
+      }
+    }
+    schemaEntry.setAttribute(Schema.ATTR_ATTRIBUTE_TYPE, attributeTypes);
+
+    final ResourceMapper mapper =
+        getUserResourceMapper(new Schema(schemaEntry));
+    assertTrue(mapper.isExactFilter(
+        SCIMFilter.parse("userName eq \"test\"")));
+    assertTrue(mapper.isExactFilter(
+        SCIMFilter.parse("userName eq \"a\" or userName eq \"b\"")));
+    assertFalse(mapper.isExactFilter(
+        SCIMFilter.parse("userName sw \"test\"")));
+    assertFalse(mapper.isExactFilter(
+        SCIMFilter.parse("name.familyName eq \"test\"")));
+    assertFalse(mapper.isExactFilter(
+        SCIMFilter.parse("userName eq \"a\" and name.familyName eq \"b\"")));
+
+    // The uid attribute is multi-valued in the standard schema.
+    assertFalse(getUserResourceMapper(standardSchema).isExactFilter(
+        SCIMFilter.parse("userName eq \"test\"")));
+
+    // Without a schema, no assumptions are made about the attribute.
+    assertFalse(getUserResourceMapper().isExactFilter(
+        SCIMFilter.parse("userName eq \"test\"")));
+  }
+
+
+
+  /**
+   * Verify that the VLV request control is only used for queries that have
+   * a matching VLV index.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testVLVIndexes()
+      throws Exception
+  {
+    final ResourceMapper mapper = getUserResourceMapper();
+    final DN peopleDN = new DN("ou=people,dc=example,dc=com");
+    final DN otherDN = new DN("ou=other,dc=example,dc=com");
+
+    // Indexes are assumed to exist if none are declared.
+    assertEquals(mapper.getVLVSortAttribute(), "uid");
+    assertTrue(mapper.supportsVLV(Collections.singleton(otherDN), null));
+
+    final LDAPSearchParameters parameters = new LDAPSearchParameters();
+    parameters.getBaseDN().add(peopleDN.toString());
+    parameters.getBaseDN().add(otherDN.toString());
+    parameters.setFilter("(objectClass=inetOrgPerson)");
+    parameters.setVlvSortAttribute("sn");
+    final VLVIndex vlvIndex = new VLVIndex();
+    vlvIndex.setBaseDN(peopleDN.toString());
+    vlvIndex.setSortAttribute("SN");
+    parameters.getVlvIndex().add(vlvIndex);
+
+    final LDAPSearchResolver resolver =
+        new LDAPSearchResolver(parameters, Collections.<DN>emptySet());
+    assertEquals(resolver.getVLVSortAttribute(), "sn");
+    assertTrue(resolver.hasVLVIndex(Collections.singleton(peopleDN), "sn"));
+    assertFalse(resolver.hasVLVIndex(Collections.singleton(peopleDN), "uid"));
+    assertFalse(resolver.hasVLVIndex(Arrays.asList(peopleDN, otherDN), "sn"));
+  }
+
+
+
   /**
    * Get a User resource mapper.
    *
@@ -656,9 +783,26 @@ public class UserResourceMapperTestCase
    */
   private ResourceMapper getUserResourceMapper()
       throws Exception
+  {
+    return getUserResourceMapper(null);
+  }
+
+
+
+  /**
+   * Get a User resource mapper whose mappings are validated against an LDAP
+   * schema.
+   *
+   * @param ldapSchema  The LDAP schema, or {@code null} if there is none.
+   *
+   * @return  A User resource mapper.
+   * @throws Exception  If the resource mapper could not be created.
+   */
+  private ResourceMapper getUserResourceMapper(final Schema ldapSchema)
+      throws Exception
   {
     List<ResourceMapper> mappers = ResourceMapper.parse(
-        getResourceFile("/com/unboundid/scim/ldap/resources.xml"));
+        getResourceFile("/com/unboundid/scim/ldap/resources.xml"), ldapSchema);
     for (final ResourceMapper m : mappers)
     {
       if (m.getResourceDescriptor().getName().equals(RESOURCE_NAME_USER))
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.marshal;
+
+
+import com.unboundid.scim.data.BaseResource;
+import com.unboundid.scim.sdk.SCIMException;
+
+import java.util.Set;
+
+
+
+/**
+ * This interface provides methods that may be used to write a query response
+ * one resource at a time, as the resources are produced by the service
+ * provider. The XML and JSON stream marshallers implement this interface in
+ * addition to {@link StreamMarshaller}. A stream marshaller that does not
+ * implement it writes a
+ * {@link com.unboundid.scim.sdk.StreamingResources} response by iterating
+ * over it, which holds the resources in memory.
+ */
+public interface ResourcesStreamMarshaller
+{
+  /**
+   * Write the start of a streamed query response. The resources are written
+   * individually using {@link #writeResource}, and the response is completed
+   * using {@link #writeResourcesFinish}.
+   *
+   * @param schemaURIs    The set of schema URIs used by the resources.
+   *
+   * @throws SCIMException  If the data could not be written.
+   */
+  void writeResourcesStart(final Set<String> schemaURIs)
+      throws SCIMException;
+
+
+
+  /**
+   * Write a resource to a streamed query response.
+   *
+   * @param resource  The resource to write.
+   *
+   * @throws SCIMException  If the data could not be written.
+   */
+  void writeResource(final BaseResource resource)
+      throws SCIMException;
+
+
+
+  /**
+   * Write the end of a streamed query response. The result counts are only
+   * known once all the resources have been written, so they follow the
+   * resources in the response.
+   *
+   * @param totalResults  The total number of results matching the query.
+   * @param itemsPerPage  The number of resources that were written.
+   * @param startIndex    The 1-based index of the first result written.
+   *
+   * @throws SCIMException  If the data could not be written.
+   */
+  void writeResourcesFinish(final long totalResults,
+                            final int itemsPerPage,
+                            final long startIndex)
+      throws SCIMException;
+}
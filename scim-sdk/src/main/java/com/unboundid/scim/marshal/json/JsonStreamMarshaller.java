@@ -35,6 +35,7 @@
 package com.unboundid.scim.marshal.json;
 
 import com.unboundid.scim.data.BaseResource;
+import com.unboundid.scim.marshal.ResourcesStreamMarshaller;
 import com.unboundid.scim.marshal.StreamMarshaller;
 import com.unboundid.scim.schema.ResourceDescriptor;
 import com.unboundid.scim.sdk.BulkOperation;
@@ -45,6 +46,7 @@ import com.unboundid.scim.sdk.SCIMAttributeValue;
 import com.unboundid.scim.sdk.SCIMConstants;
 import com.unboundid.scim.sdk.SCIMException;
 import com.unboundid.scim.sdk.ServerErrorException;
+import com.unboundid.scim.sdk.StreamingResources;
 import org.json.JSONException;
 import org.json.JSONWriter;
 
@@ -62,7 +64,8 @@ import java.util.Set;
  * This class provides a SCIM object marshaller implementation to write a
  * stream of SCIM objects to their JSON representation.
  */
-public class JsonStreamMarshaller implements StreamMarshaller
+public class JsonStreamMarshaller
+    implements StreamMarshaller, ResourcesStreamMarshaller
 {
   private final OutputStreamWriter outputStreamWriter;
   private final JSONWriter jsonWriter;
@@ -216,6 +219,12 @@ public class JsonStreamMarshaller implements StreamMarshaller
   public void marshal(final Resources<? extends BaseResource> response)
       throws SCIMException
   {
+    if (response instanceof StreamingResources)
+    {
+      ((StreamingResources<? extends BaseResource>) response).marshal(this);
+      return;
+    }
+
     try
     {
       jsonWriter.object();
@@ -265,6 +274,92 @@ public class JsonStreamMarshaller implements StreamMarshaller
   }
 
 
+  /**
+   * {@inheritDoc}
+   */
+  public void writeResourcesStart(final Set<String> schemaURIs)
+      throws SCIMException
+  {
+    try
+    {
+      jsonWriter.object();
+
+      // Write the schemas.
+      jsonWriter.key(SCIMConstants.SCHEMAS_ATTRIBUTE_NAME);
+      jsonWriter.array();
+      for (final String schemaURI : schemaURIs)
+      {
+        jsonWriter.value(schemaURI);
+      }
+      jsonWriter.endArray();
+
+      // Write the resources.
+      jsonWriter.key("Resources");
+      jsonWriter.array();
+    }
+    catch (JSONException e)
+    {
+      Debug.debugException(e);
+      throw new ServerErrorException(
+          "Cannot write start of resources response: " + e.getMessage());
+    }
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  public void writeResource(final BaseResource resource)
+      throws SCIMException
+  {
+    try
+    {
+      marshal(resource, false);
+    }
+    catch (JSONException e)
+    {
+      Debug.debugException(e);
+      throw new ServerErrorException(
+          "Cannot write resource: " + e.getMessage());
+    }
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  public void writeResourcesFinish(final long totalResults,
+                                   final int itemsPerPage,
+                                   final long startIndex)
+      throws SCIMException
+  {
+    try
+    {
+      jsonWriter.endArray();
+
+      jsonWriter.key("totalResults");
+      jsonWriter.value(totalResults);
+
+      jsonWriter.key("itemsPerPage");
+      jsonWriter.value(itemsPerPage);
+
+      jsonWriter.key("startIndex");
+      jsonWriter.value(startIndex);
+
+      jsonWriter.endObject();
+    }
+    catch (JSONException e)
+    {
+      Debug.debugException(e);
+      throw new ServerErrorException(
+          "Cannot write end of resources response: " + e.getMessage());
+    }
+  }
+
+
+
   /**
    * {@inheritDoc}
    */
@@ -18,6 +18,7 @@
 package com.unboundid.scim.marshal.xml;
 
 import com.unboundid.scim.data.BaseResource;
+import com.unboundid.scim.marshal.ResourcesStreamMarshaller;
 import com.unboundid.scim.marshal.StreamMarshaller;
 import com.unboundid.scim.sdk.SCIMException;
 import com.unboundid.scim.sdk.ServerErrorException;
@@ -28,6 +29,7 @@ import com.unboundid.scim.sdk.BulkOperation;
 import com.unboundid.scim.sdk.SCIMAttribute;
 import com.unboundid.scim.sdk.SCIMAttributeValue;
 import com.unboundid.scim.sdk.StaticUtils;
+import com.unboundid.scim.sdk.StreamingResources;
 
 import javax.xml.XMLConstants;
 import javax.xml.bind.DatatypeConverter;
@@ -46,7 +48,8 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * This class provides a stream marshaller implementation to write a stream of
  * SCIM objects to their XML representation.
  */
-public class XmlStreamMarshaller implements StreamMarshaller
+public class XmlStreamMarshaller
+    implements StreamMarshaller, ResourcesStreamMarshaller
 {
   private static final String xsiURI =
       XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI;
@@ -210,6 +213,12 @@ public class XmlStreamMarshaller implements StreamMarshaller
   public void marshal(final Resources<? extends BaseResource> response)
       throws SCIMException
   {
+    if (response instanceof StreamingResources)
+    {
+      ((StreamingResources<? extends BaseResource>) response).marshal(this);
+      return;
+    }
+
     try
     {
       xmlStreamWriter.writeStartDocument("UTF-8", "1.0");
@@ -261,6 +270,96 @@ public class XmlStreamMarshaller implements StreamMarshaller
   }
 
 
+  /**
+   * {@inheritDoc}
+   */
+  public void writeResourcesStart(final Set<String> schemaURIs)
+      throws SCIMException
+  {
+    try
+    {
+      xmlStreamWriter.writeStartDocument("UTF-8", "1.0");
+
+      xmlStreamWriter.setPrefix(SCIMConstants.DEFAULT_SCHEMA_PREFIX,
+          SCIMConstants.SCHEMA_URI_CORE);
+      xmlStreamWriter.setPrefix("xsi", xsiURI);
+      xmlStreamWriter.writeStartElement(SCIMConstants.SCHEMA_URI_CORE,
+          "Response");
+      xmlStreamWriter.writeNamespace(SCIMConstants.DEFAULT_SCHEMA_PREFIX,
+          SCIMConstants.SCHEMA_URI_CORE);
+      xmlStreamWriter.writeNamespace("xsi", xsiURI);
+
+      xmlStreamWriter.writeStartElement("Resources");
+    }
+    catch (XMLStreamException e)
+    {
+      Debug.debugException(e);
+      throw new ServerErrorException(
+          "Cannot write start of resources: " + e.getMessage());
+    }
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  public void writeResource(final BaseResource resource)
+      throws SCIMException
+  {
+    try
+    {
+      xmlStreamWriter.writeStartElement("Resource");
+      marshal(resource, xmlStreamWriter, xsiURI);
+      xmlStreamWriter.writeEndElement();
+    }
+    catch (XMLStreamException e)
+    {
+      Debug.debugException(e);
+      throw new ServerErrorException(
+          "Cannot write resource: " + e.getMessage());
+    }
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  public void writeResourcesFinish(final long totalResults,
+                                   final int itemsPerPage,
+                                   final long startIndex)
+      throws SCIMException
+  {
+    try
+    {
+      xmlStreamWriter.writeEndElement();
+
+      xmlStreamWriter.writeStartElement("totalResults");
+      xmlStreamWriter.writeCharacters(Long.toString(totalResults));
+      xmlStreamWriter.writeEndElement();
+
+      xmlStreamWriter.writeStartElement("itemsPerPage");
+      xmlStreamWriter.writeCharacters(Integer.toString(itemsPerPage));
+      xmlStreamWriter.writeEndElement();
+
+      xmlStreamWriter.writeStartElement("startIndex");
+      xmlStreamWriter.writeCharacters(Long.toString(startIndex));
+      xmlStreamWriter.writeEndElement();
+
+      xmlStreamWriter.writeEndElement();
+      xmlStreamWriter.writeEndDocument();
+    }
+    catch (XMLStreamException e)
+    {
+      Debug.debugException(e);
+      throw new ServerErrorException(
+          "Cannot write end of resources: " + e.getMessage());
+    }
+  }
+
+
+
   /**
    * {@inheritDoc}
    */
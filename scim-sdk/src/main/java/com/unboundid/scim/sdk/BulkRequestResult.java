@@ -0,0 +1,81 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.sdk;
+
+import com.unboundid.scim.data.BaseResource;
+
+
+
+/**
+ * This class represents the result of one of the requests applied together
+ * by {@link SCIMBackend#applyBulkRequests}. The request has been applied,
+ * but its response may not have been created, for example if the resource
+ * could not be read back once it had been updated.
+ */
+public final class BulkRequestResult
+{
+  /**
+   * The response to the request, or {@code null} for a Delete Resource
+   * request or if the response could not be created.
+   */
+  private final BaseResource resource;
+
+  /**
+   * The reason the response could not be created, or {@code null} if it was
+   * created.
+   */
+  private final SCIMException exception;
+
+
+
+  /**
+   * Create a new result of an applied request.
+   *
+   * @param resource   The response to the request, or {@code null} for a
+   *                   Delete Resource request or if the response could not
+   *                   be created.
+   * @param exception  The reason the response could not be created, or
+   *                   {@code null} if it was created.
+   */
+  public BulkRequestResult(final BaseResource resource,
+                           final SCIMException exception)
+  {
+    this.resource = resource;
+    this.exception = exception;
+  }
+
+
+
+  /**
+   * Retrieve the response to the request.
+   *
+   * @return  The response to the request, or {@code null} for a Delete
+   *          Resource request.
+   *
+   * @throws SCIMException  If the response could not be created.
+   */
+  public BaseResource getResource()
+      throws SCIMException
+  {
+    if (exception != null)
+    {
+      throw exception;
+    }
+    return resource;
+  }
+}
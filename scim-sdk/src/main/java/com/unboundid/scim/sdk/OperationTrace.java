@@ -0,0 +1,169 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.sdk;
+
+
+
+/**
+ * This class describes one operation made on another system, such as an LDAP
+ * search, while processing a SCIM request whose {@link RequestTimer} is
+ * tracing operations. The target and filter of the operation are kept as
+ * they were provided, and are only formatted when they are retrieved.
+ */
+public class OperationTrace
+{
+  private final String operation;
+  private final Object target;
+  private final String scope;
+  private final Object filter;
+  private final int entries;
+  private final long nanos;
+
+
+
+  /**
+   * Create a new operation trace.
+   *
+   * @param operation  The name of the type of operation, such as
+   *                   {@code ldap-search}.
+   * @param target     The target of the operation, such as the base DN of a
+   *                   search or the DN of an updated entry, or {@code null}
+   *                   if there is none. Its string representation is the
+   *                   target.
+   * @param scope      The scope of a search, or {@code null} if the
+   *                   operation is not a search.
+   * @param filter     The filter of a search, or {@code null} if the
+   *                   operation is not a search. Its string representation
+   *                   is the filter.
+   * @param entries    The number of entries returned, or -1 if the operation
+   *                   does not return entries.
+   * @param nanos      The time in nanoseconds taken by the operation.
+   */
+  public OperationTrace(final String operation, final Object target,
+                        final String scope, final Object filter,
+                        final int entries, final long nanos)
+  {
+    this.operation = operation;
+    this.target    = target;
+    this.scope     = scope;
+    this.filter    = filter;
+    this.entries   = entries;
+    this.nanos     = nanos;
+  }
+
+
+
+  /**
+   * Retrieve the name of the type of operation.
+   *
+   * @return  The name of the type of operation, such as {@code ldap-search}.
+   */
+  public String getOperation()
+  {
+    return operation;
+  }
+
+
+
+  /**
+   * Retrieve the target of the operation.
+   *
+   * @return  The target of the operation, such as the base DN of a search or
+   *          the DN of an updated entry, or {@code null} if there is none.
+   */
+  public String getTarget()
+  {
+    return target == null ? null : target.toString();
+  }
+
+
+
+  /**
+   * Retrieve the target of the operation as it was provided.
+   *
+   * @return  The target of the operation, or {@code null} if there is none.
+   */
+  public Object getTargetObject()
+  {
+    return target;
+  }
+
+
+
+  /**
+   * Retrieve the scope of a search.
+   *
+   * @return  The scope of a search, or {@code null} if the operation is not a
+   *          search.
+   */
+  public String getScope()
+  {
+    return scope;
+  }
+
+
+
+  /**
+   * Retrieve the filter of a search.
+   *
+   * @return  The filter of a search, or {@code null} if the operation is not
+   *          a search.
+   */
+  public String getFilter()
+  {
+    return filter == null ? null : filter.toString();
+  }
+
+
+
+  /**
+   * Retrieve the filter of a search as it was provided.
+   *
+   * @return  The filter of a search, or {@code null} if the operation is not
+   *          a search.
+   */
+  public Object getFilterObject()
+  {
+    return filter;
+  }
+
+
+
+  /**
+   * Retrieve the number of entries returned by the operation.
+   *
+   * @return  The number of entries returned, or -1 if the operation does not
+   *          return entries.
+   */
+  public int getEntries()
+  {
+    return entries;
+  }
+
+
+
+  /**
+   * Retrieve the time taken by the operation.
+   *
+   * @return  The time in nanoseconds taken by the operation.
+   */
+  public long getNanos()
+  {
+    return nanos;
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.sdk;
+
+
+
+/**
+ * This enumeration defines the phases of processing a SCIM request whose
+ * times are recorded by a {@link RequestTimer}.
+ */
+public enum RequestPhase
+{
+  /**
+   * The phase in which the request parameters and content are parsed.
+   */
+  PARSE("parse"),
+
+
+
+  /**
+   * The phase in which an OAuth bearer token is validated.
+   */
+  AUTH("auth"),
+
+
+
+  /**
+   * The phase in which the backend processes the request.
+   */
+  BACKEND("backend"),
+
+
+
+  /**
+   * The time spent waiting for LDAP operations. This time is included in the
+   * backend phase, or in the marshal phase for results that are read from
+   * the directory while they are written. LDAP operations that are processed
+   * concurrently all contribute their full time.
+   */
+  LDAP("ldap"),
+
+
+
+  /**
+   * The phase in which the response content is written.
+   */
+  MARSHAL("marshal");
+
+
+
+  // The name for this request phase.
+  private final String name;
+
+
+
+  /**
+   * Creates a new request phase with the specified name.
+   *
+   * @param  name  The name for this request phase.
+   */
+  private RequestPhase(final String name)
+  {
+    this.name = name;
+  }
+
+
+
+  /**
+   * Retrieves the name for this request phase.
+   *
+   * @return  The name for this request phase.
+   */
+  public String getName()
+  {
+    return name;
+  }
+
+
+
+  /**
+   * Retrieves a string representation of this request phase.
+   *
+   * @return  A string representation of this request phase.
+   */
+  @Override
+  public String toString()
+  {
+    return name;
+  }
+}
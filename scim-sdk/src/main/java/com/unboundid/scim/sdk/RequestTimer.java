@@ -0,0 +1,486 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.sdk;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+
+/**
+ * This class records the time spent in each phase of processing a SCIM
+ * request, and the number and duration of the operations made on other
+ * systems, such as LDAP searches, while processing it.
+ * <p>
+ * The thread processing the request moves the timer from one phase to the
+ * next with {@link #enterPhase}, and makes the timer its current timer so
+ * that code without access to the request, such as a backend's LDAP
+ * interface, can find it with {@link #getCurrent}. The times of operations
+ * may be recorded from any thread.
+ * <p>
+ * A timer may also trace the operations in detail, so that a slow request
+ * can be explained after it has completed. Tracing is off unless it is
+ * enabled with {@link #enableTracing}, and code that traces operations
+ * should call {@link #reserveTrace} before creating a trace. A trace keeps
+ * references to the details of an operation, which are only formatted if
+ * the trace is read.
+ */
+public class RequestTimer
+{
+  /**
+   * The maximum number of operations traced for a request. Further operations
+   * are counted but not traced.
+   */
+  private static final int MAX_TRACES = 100;
+
+  /**
+   * The timer of the request being processed by each thread.
+   */
+  private static final ThreadLocal<RequestTimer> CURRENT =
+      new ThreadLocal<RequestTimer>();
+
+  /**
+   * The value of {@code System.nanoTime()} when the timer was created.
+   */
+  private final long startTime;
+
+  /**
+   * The time in nanoseconds recorded for each phase, indexed by the ordinal
+   * of the phase.
+   */
+  private final AtomicLongArray phaseNanos =
+      new AtomicLongArray(RequestPhase.values().length);
+
+  /**
+   * The count and the total time in nanoseconds of each type of operation,
+   * keyed by operation name.
+   */
+  private final ConcurrentHashMap<String, AtomicLongArray> operations =
+      new ConcurrentHashMap<String, AtomicLongArray>();
+
+  /**
+   * The traces of the operations, or {@code null} if the timer is not
+   * tracing operations.
+   */
+  private volatile ConcurrentLinkedQueue<OperationTrace> traces;
+
+  /**
+   * The number of operations traced, including those not kept because there
+   * were too many.
+   */
+  private final AtomicInteger traceCount = new AtomicInteger();
+
+  /**
+   * The number of results returned by the request, or -1 if it is not known.
+   */
+  private volatile long resultCount = -1;
+
+  /**
+   * The current phase, or {@code null} if the timer has been stopped. This
+   * is only used by the thread processing the request.
+   */
+  private RequestPhase currentPhase = RequestPhase.PARSE;
+
+  /**
+   * The value of {@code System.nanoTime()} when the current phase began, or
+   * when the timer was stopped. This is only used by the thread processing
+   * the request.
+   */
+  private long phaseStartTime;
+
+
+
+  /**
+   * Create a new request timer, starting in the parse phase.
+   */
+  public RequestTimer()
+  {
+    startTime = System.nanoTime();
+    phaseStartTime = startTime;
+  }
+
+
+
+  /**
+   * Retrieve the timer of the request being processed by the current thread.
+   *
+   * @return  The timer of the request being processed by the current thread,
+   *          or {@code null} if there is none.
+   */
+  public static RequestTimer getCurrent()
+  {
+    return CURRENT.get();
+  }
+
+
+
+  /**
+   * Specify the timer of the request being processed by the current thread.
+   *
+   * @param timer  The timer of the request being processed by the current
+   *               thread, or {@code null} if the thread has finished
+   *               processing the request.
+   */
+  public static void setCurrent(final RequestTimer timer)
+  {
+    if (timer == null)
+    {
+      CURRENT.remove();
+    }
+    else
+    {
+      CURRENT.set(timer);
+    }
+  }
+
+
+
+  /**
+   * Retrieve the time at which the timer was created.
+   *
+   * @return  The value of {@code System.nanoTime()} when the timer was
+   *          created.
+   */
+  public long getStartTime()
+  {
+    return startTime;
+  }
+
+
+
+  /**
+   * Retrieve the time elapsed since the timer was created. This must only be
+   * called by the thread processing the request.
+   *
+   * @return  The time in nanoseconds from the creation of the timer until it
+   *          was stopped, or until now if it has not been stopped.
+   */
+  public long getElapsedNanos()
+  {
+    if (currentPhase == null)
+    {
+      return phaseStartTime - startTime;
+    }
+    return System.nanoTime() - startTime;
+  }
+
+
+
+  /**
+   * Record the time spent in the current phase and begin another phase.
+   * This must only be called by the thread processing the request.
+   *
+   * @param phase  The phase to begin, or {@code null} to stop the timer.
+   */
+  public void enterPhase(final RequestPhase phase)
+  {
+    final long now = System.nanoTime();
+    if (currentPhase != null)
+    {
+      addTime(currentPhase, now - phaseStartTime);
+    }
+    currentPhase = phase;
+    phaseStartTime = now;
+  }
+
+
+
+  /**
+   * Record the time spent in the current phase and stop the timer. This must
+   * only be called by the thread processing the request.
+   */
+  public void stop()
+  {
+    enterPhase(null);
+  }
+
+
+
+  /**
+   * Add time to a phase.
+   *
+   * @param phase  The phase.
+   * @param nanos  The time in nanoseconds.
+   */
+  public void addTime(final RequestPhase phase, final long nanos)
+  {
+    phaseNanos.addAndGet(phase.ordinal(), nanos);
+  }
+
+
+
+  /**
+   * Retrieve the time recorded for a phase.
+   *
+   * @param phase  The phase.
+   *
+   * @return  The time in nanoseconds recorded for the phase.
+   */
+  public long getNanos(final RequestPhase phase)
+  {
+    return phaseNanos.get(phase.ordinal());
+  }
+
+
+
+  /**
+   * Record an operation made on another system while processing the
+   * request, adding its time to a phase.
+   *
+   * @param phase      The phase to which the time is added, such as
+   *                   {@link RequestPhase#LDAP}.
+   * @param operation  The name of the type of operation, such as
+   *                   {@code ldap-search}.
+   * @param nanos      The time in nanoseconds taken by the operation.
+   */
+  public void addOperation(final RequestPhase phase, final String operation,
+                           final long nanos)
+  {
+    addTime(phase, nanos);
+
+    AtomicLongArray values = operations.get(operation);
+    if (values == null)
+    {
+      values = new AtomicLongArray(2);
+      final AtomicLongArray prev = operations.putIfAbsent(operation, values);
+      if (prev != null)
+      {
+        values = prev;
+      }
+    }
+    values.incrementAndGet(0);
+    values.addAndGet(1, nanos);
+  }
+
+
+
+  /**
+   * Retrieve the names of the types of operation that have been recorded.
+   *
+   * @return  The names of the types of operation that have been recorded.
+   */
+  public Set<String> getOperations()
+  {
+    return operations.keySet();
+  }
+
+
+
+  /**
+   * Retrieve the number of operations of a type that have been recorded.
+   *
+   * @param operation  The name of the type of operation.
+   *
+   * @return  The number of operations of the type.
+   */
+  public long getOperationCount(final String operation)
+  {
+    final AtomicLongArray values = operations.get(operation);
+    return values == null ? 0 : values.get(0);
+  }
+
+
+
+  /**
+   * Retrieve the total time of the operations of a type that have been
+   * recorded.
+   *
+   * @param operation  The name of the type of operation.
+   *
+   * @return  The total time in nanoseconds of the operations of the type.
+   */
+  public long getOperationNanos(final String operation)
+  {
+    final AtomicLongArray values = operations.get(operation);
+    return values == null ? 0 : values.get(1);
+  }
+
+
+
+  /**
+   * Begin tracing the operations recorded by this timer in detail.
+   */
+  public void enableTracing()
+  {
+    if (traces == null)
+    {
+      traces = new ConcurrentLinkedQueue<OperationTrace>();
+    }
+  }
+
+
+
+  /**
+   * Determine whether this timer is tracing operations in detail.
+   *
+   * @return  {@code true} if operations are to be traced.
+   */
+  public boolean isTracing()
+  {
+    return traces != null;
+  }
+
+
+
+  /**
+   * Reserve a place for the trace of an operation. Nothing needs to be
+   * created for an operation that is not traced, either because this timer
+   * is not tracing operations or because too many have already been traced.
+   * The operation is counted in {@link #getUntracedCount} if it is not
+   * traced.
+   *
+   * @return  {@code true} if the trace of the operation is to be added with
+   *          {@link #addTrace}.
+   */
+  public boolean reserveTrace()
+  {
+    return traces != null && traceCount.incrementAndGet() <= MAX_TRACES;
+  }
+
+
+
+  /**
+   * Add the trace of an operation, for which a place has been reserved with
+   * {@link #reserveTrace}. The time of the operation must also be recorded
+   * with {@link #addOperation}.
+   *
+   * @param trace  The trace of the operation.
+   */
+  public void addTrace(final OperationTrace trace)
+  {
+    final ConcurrentLinkedQueue<OperationTrace> queue = traces;
+    if (queue != null)
+    {
+      queue.add(trace);
+    }
+  }
+
+
+
+  /**
+   * Retrieve the traces of the operations, in the order they completed.
+   *
+   * @return  The traces of the operations, which is empty if this timer is
+   *          not tracing operations.
+   */
+  public List<OperationTrace> getTraces()
+  {
+    final ConcurrentLinkedQueue<OperationTrace> queue = traces;
+    if (queue == null)
+    {
+      return new ArrayList<OperationTrace>(0);
+    }
+    return new ArrayList<OperationTrace>(queue);
+  }
+
+
+
+  /**
+   * Retrieve the number of operations that were not traced because too many
+   * operations had already been traced.
+   *
+   * @return  The number of operations that were not traced.
+   */
+  public int getUntracedCount()
+  {
+    return Math.max(traceCount.get() - MAX_TRACES, 0);
+  }
+
+
+
+  /**
+   * Specify the number of results returned by the request.
+   *
+   * @param resultCount  The number of results returned by the request.
+   */
+  public void setResultCount(final long resultCount)
+  {
+    this.resultCount = resultCount;
+  }
+
+
+
+  /**
+   * Retrieve the number of results returned by the request.
+   *
+   * @return  The number of results returned by the request, or -1 if it is
+   *          not known.
+   */
+  public long getResultCount()
+  {
+    return resultCount;
+  }
+
+
+
+  /**
+   * Retrieve the times recorded so far as the value of a
+   * {@code Server-Timing} HTTP response header. The header includes each
+   * phase that has time recorded, and the total time since the timer was
+   * created, all in milliseconds.
+   *
+   * @return  The value of a {@code Server-Timing} header.
+   */
+  public String getServerTiming()
+  {
+    final StringBuilder builder = new StringBuilder();
+    for (final RequestPhase phase : RequestPhase.values())
+    {
+      final long nanos = getNanos(phase);
+      if (nanos > 0)
+      {
+        appendServerTimingMetric(builder, phase.getName(), nanos);
+      }
+    }
+    appendServerTimingMetric(builder, "total", System.nanoTime() - startTime);
+    return builder.toString();
+  }
+
+
+
+  /**
+   * Append a metric to the value of a {@code Server-Timing} header.
+   *
+   * @param builder  The buffer holding the value of the header.
+   * @param name     The name of the metric.
+   * @param nanos    The duration of the metric in nanoseconds.
+   */
+  private static void appendServerTimingMetric(final StringBuilder builder,
+                                               final String name,
+                                               final long nanos)
+  {
+    if (builder.length() > 0)
+    {
+      builder.append(", ");
+    }
+
+    final long micros = nanos / 1000;
+    final String fraction = Long.toString(micros % 1000);
+    builder.append(name).append(";dur=").append(micros / 1000).append('.');
+    for (int i = fraction.length(); i < 3; i++)
+    {
+      builder.append('0');
+    }
+    builder.append(fraction);
+  }
+}
@@ -23,6 +23,8 @@ import com.unboundid.scim.schema.ResourceDescriptor;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 /**
  * This class defines an API for a backend that can be plugged into the SCIM
@@ -141,6 +143,80 @@ public abstract class SCIMBackend
           final PatchResourceRequest request) throws SCIMException;
 
 
+
+  /**
+   * Retrieve the maximum number of consecutive bulk operations that this
+   * backend may apply together with {@link #applyBulkRequests}.
+   *
+   * @return  The maximum number of bulk operations to apply together, or a
+   *          value less than two if each bulk operation is to be processed
+   *          on its own.
+   */
+  public int getMaxBulkRequestsApplied()
+  {
+    return 0;
+  }
+
+
+
+  /**
+   * Apply a batch of independent Post, Put, Patch and Delete Resource
+   * requests from a bulk request together. Either all of the requests are
+   * applied, or none of them is applied and {@code null} is returned, in
+   * which case the caller processes each request on its own to obtain its
+   * individual result. This implementation does not apply any requests.
+   *
+   * @param requests  The requests to be applied, in order. Each request must
+   *                  be a {@link PostResourceRequest},
+   *                  {@link PutResourceRequest}, {@link PatchResourceRequest}
+   *                  or {@link DeleteResourceRequest}.
+   *
+   * @return  The result of each request, in order, or {@code null} if none
+   *          of the requests was applied. A request whose response could not
+   *          be created once it had been applied has a result that holds the
+   *          error, which does not affect the results of the other requests.
+   *
+   * @throws SCIMException  If the requests were applied but none of their
+   *                        results could be determined.
+   */
+  public List<BulkRequestResult> applyBulkRequests(
+      final List<SCIMRequest> requests)
+      throws SCIMException
+  {
+    return null;
+  }
+
+
+  /**
+   * Release any state that this backend keeps for the request being
+   * processed by the current thread. This is called whenever processing of a
+   * request on a thread has finished, whether or not it succeeded and
+   * whether or not its response has been written. This implementation does
+   * nothing.
+   */
+  public void endRequest()
+  {
+    // No implementation required.
+  }
+
+
+
+  /**
+   * Retrieve monitor data about the resources used by this backend, such as
+   * connection pools, to be included in the monitor endpoint response. This
+   * implementation does not provide any monitor data.
+   *
+   * @return  The monitor data, keyed by the name of each monitored resource,
+   *          with the values of the statistics for the resource keyed by the
+   *          statistic name.
+   */
+  public Map<String, Map<String, Long>> getMonitorData()
+  {
+    return Collections.emptyMap();
+  }
+
+
+
   /**
    * Retrieves whether this backend supports sorting.
    *
@@ -185,6 +185,21 @@ public final class SCIMConstants
    */
   public static final String QUERY_PARAMETER_PAGE_SIZE = "count";
 
+  /**
+   * The suffix of the HTTP query parameter used in a URI to specify the
+   * starting index of the values of a multi-valued attribute to be returned,
+   * e.g. members.startIndex (parameter name in lower case).
+   */
+  public static final String QUERY_PARAMETER_VALUE_START_INDEX_SUFFIX_LC =
+      ".startindex";
+
+  /**
+   * The suffix of the HTTP query parameter used in a URI to specify the
+   * maximum number of values of a multi-valued attribute to be returned,
+   * e.g. members.count.
+   */
+  public static final String QUERY_PARAMETER_VALUE_COUNT_SUFFIX = ".count";
+
   /**
    * The name of the HTTP Origin field.
    */
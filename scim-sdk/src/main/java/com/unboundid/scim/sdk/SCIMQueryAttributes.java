@@ -54,6 +54,12 @@ public class SCIMQueryAttributes
    */
   private final Map<AttributeDescriptor,Set<AttributeDescriptor>> descriptors;
 
+  /**
+   * The pages of values requested for multi-valued attributes.
+   */
+  private final Map<AttributeDescriptor,PageParameters> valuePages =
+      new HashMap<AttributeDescriptor, PageParameters>();
+
 
   /**
    * Create a new instance of query attributes from their string representation.
@@ -221,6 +227,160 @@ public class SCIMQueryAttributes
 
 
 
+  /**
+   * Request a page of the values of a multi-valued attribute, rather than all
+   * of its values.
+   *
+   * @param attributeDescriptor  The multi-valued attribute.
+   * @param valuePage            The page of values to be returned. The start
+   *                             index is the 1-based index of the first value
+   *                             and a count of zero means that all values from
+   *                             the start index are returned.
+   */
+  public void setValuePage(final AttributeDescriptor attributeDescriptor,
+                           final PageParameters valuePage)
+  {
+    valuePages.put(attributeDescriptor, valuePage);
+  }
+
+
+
+  /**
+   * Retrieve the page of values requested for a multi-valued attribute.
+   *
+   * @param attributeDescriptor  The multi-valued attribute.
+   *
+   * @return  The page of values requested for the attribute, or {@code null}
+   *          if all values are requested.
+   */
+  public PageParameters getValuePage(
+      final AttributeDescriptor attributeDescriptor)
+  {
+    return valuePages.get(attributeDescriptor);
+  }
+
+
+
+  /**
+   * Reduce a multi-valued attribute to the page of values requested for it.
+   *
+   * @param attribute  The attribute to be paged.
+   *
+   * @return  The attribute with only the requested values, or {@code null} if
+   *          the requested page contains no values.
+   */
+  public SCIMAttribute pageAttribute(final SCIMAttribute attribute)
+  {
+    final PageParameters valuePage =
+        valuePages.get(attribute.getAttributeDescriptor());
+    if (valuePage == null)
+    {
+      return attribute;
+    }
+
+    final SCIMAttributeValue[] values = attribute.getValues();
+    final int fromIndex = getPageFromIndex(valuePage, values.length);
+    final int toIndex = getPageToIndex(valuePage, values.length);
+    if (fromIndex >= toIndex)
+    {
+      return null;
+    }
+
+    if (fromIndex == 0 && toIndex == values.length)
+    {
+      return attribute;
+    }
+
+    return SCIMAttribute.create(attribute.getAttributeDescriptor(),
+        Arrays.copyOfRange(values, fromIndex, toIndex));
+  }
+
+
+
+  /**
+   * Reduce the multi-valued attributes of a SCIM object to the pages of
+   * values requested for them, where the object was retrieved with other
+   * query attributes that requested all of their values. This is the case
+   * for an attribute referenced by a query filter, whose values must all be
+   * retrieved to evaluate the filter.
+   *
+   * @param scimObject  The SCIM object to be updated.
+   * @param retrieved   The query attributes with which the SCIM object was
+   *                    retrieved.
+   */
+  public void pageValues(final SCIMObject scimObject,
+                         final SCIMQueryAttributes retrieved)
+  {
+    for (final AttributeDescriptor descriptor : valuePages.keySet())
+    {
+      if (retrieved.valuePages.containsKey(descriptor))
+      {
+        // The values were already paged when they were retrieved.
+        continue;
+      }
+
+      final SCIMAttribute attribute = scimObject.getAttribute(
+          descriptor.getSchema(), descriptor.getName());
+      if (attribute == null)
+      {
+        continue;
+      }
+
+      final SCIMAttribute pagedAttribute = pageAttribute(attribute);
+      if (pagedAttribute == null)
+      {
+        scimObject.removeAttribute(descriptor.getSchema(),
+                                   descriptor.getName());
+      }
+      else
+      {
+        scimObject.setAttribute(pagedAttribute);
+      }
+    }
+  }
+
+
+
+  /**
+   * Determine the 0-based index of the first value in a page of values.
+   *
+   * @param valuePage  The page of values.
+   * @param numValues  The total number of values.
+   *
+   * @return  The 0-based index of the first value in the page, which may be
+   *          equal to the total number of values if the page is empty.
+   */
+  public static int getPageFromIndex(final PageParameters valuePage,
+                                     final int numValues)
+  {
+    return Math.min(Math.max(valuePage.getStartIndex(), 1) - 1, numValues);
+  }
+
+
+
+  /**
+   * Determine the 0-based index after the last value in a page of values.
+   *
+   * @param valuePage  The page of values.
+   * @param numValues  The total number of values.
+   *
+   * @return  The 0-based index after the last value in the page.
+   */
+  public static int getPageToIndex(final PageParameters valuePage,
+                                   final int numValues)
+  {
+    final int fromIndex = getPageFromIndex(valuePage, numValues);
+    if (valuePage.getCount() <= 0 ||
+        valuePage.getCount() >= numValues - fromIndex)
+    {
+      return numValues;
+    }
+
+    return fromIndex + valuePage.getCount();
+  }
+
+
+
   /**
    * Pare down a SCIM object to its requested attributes.
    *
@@ -347,7 +507,11 @@ public class SCIMQueryAttributes
   {
     if (this.allAttributesRequested || that.allAttributesRequested)
     {
-      return new SCIMQueryAttributes(null);
+      final SCIMQueryAttributes mergedAttributes =
+          new SCIMQueryAttributes(null);
+      mergeValuePages(this, that, mergedAttributes);
+      mergeValuePages(that, this, mergedAttributes);
+      return mergedAttributes;
     }
 
     final Map<AttributeDescriptor,Set<AttributeDescriptor>> merged =
@@ -381,8 +545,39 @@ public class SCIMQueryAttributes
       }
     }
 
-    return new SCIMQueryAttributes(
+    final SCIMQueryAttributes mergedAttributes = new SCIMQueryAttributes(
         merged, this.debugSearchIndex || that.debugSearchIndex);
+    mergeValuePages(this, that, mergedAttributes);
+    mergeValuePages(that, this, mergedAttributes);
+    return mergedAttributes;
+  }
+
+
+
+  /**
+   * Add the pages of values of one set of query attributes to merged query
+   * attributes. A page of values is not added for an attribute whose values
+   * are all requested by the other set of query attributes. The page may be
+   * applied once all of the values have been used, with
+   * {@link #pageValues}.
+   *
+   * @param from    The query attributes whose pages of values are to be added.
+   * @param other   The other query attributes that were merged.
+   * @param merged  The merged query attributes.
+   */
+  private static void mergeValuePages(final SCIMQueryAttributes from,
+                                      final SCIMQueryAttributes other,
+                                      final SCIMQueryAttributes merged)
+  {
+    for (final Map.Entry<AttributeDescriptor,PageParameters> e :
+        from.valuePages.entrySet())
+    {
+      if (!other.isAttributeRequested(e.getKey()) ||
+          other.valuePages.containsKey(e.getKey()))
+      {
+        merged.valuePages.put(e.getKey(), e.getValue());
+      }
+    }
   }
 
 
@@ -397,6 +592,7 @@ public class SCIMQueryAttributes
     sb.append("allAttributesRequested=").append(allAttributesRequested);
     sb.append(", debugSearchIndex=").append(debugSearchIndex);
     sb.append(", descriptors=").append(descriptors);
+    sb.append(", valuePages=").append(valuePages.keySet());
     sb.append('}');
     return sb.toString();
   }
@@ -237,6 +237,47 @@ public abstract class SCIMRequest
     }
   }
 
+  /**
+   * Determine whether this request has an If-Match or If-None-Match
+   * precondition.
+   *
+   * @return  {@code true} if this request has a precondition.
+   */
+  public boolean hasPreconditions()
+  {
+    return ifMatchHeaderValue != null || ifNoneMatchHeaderValue != null;
+  }
+
+
+
+  /**
+   * Determine whether the If-Match precondition of this request names the
+   * provided version explicitly, rather than matching any version with the
+   * "*" wildcard.
+   *
+   * @param version  An ETag for a version of the resource.
+   *
+   * @return  {@code true} if the If-Match header names the provided version.
+   */
+  public boolean isIfMatchVersion(final EntityTag version)
+  {
+    if (ifMatchHeaderValue == null || version == null)
+    {
+      return false;
+    }
+
+    try
+    {
+      final List<EntityTag> eTags = parseMatchHeader(ifMatchHeaderValue);
+      return !eTags.isEmpty() && isMatch(eTags, version);
+    }
+    catch (InvalidResourceException e)
+    {
+      Debug.debugException(e);
+      return false;
+    }
+  }
+
   /**
    * Evaluate If-Match header against the provided eTag.
    *
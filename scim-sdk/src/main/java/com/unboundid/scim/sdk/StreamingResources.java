@@ -0,0 +1,219 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.sdk;
+
+import com.unboundid.scim.data.BaseResource;
+import com.unboundid.scim.marshal.ResourcesStreamMarshaller;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+
+
+/**
+ * Represents a list of SCIM resources that are not held in memory, but are
+ * produced by the service provider while the query response is being written.
+ * Each resource is written to the stream marshaller as soon as it is
+ * available, and the total number of results is written after the resources.
+ * <p>
+ * The resources are only produced once. If they are iterated over, they are
+ * held in memory and those resources are then marshalled. Any error that
+ * occurs after the first resource has been written can no longer be reported
+ * to the client as a SCIM error response.
+ */
+public abstract class StreamingResources<R extends BaseResource>
+    extends Resources<R>
+{
+  private final Set<String> schemaURIs;
+  private volatile long totalResults;
+  private volatile int itemsPerPage;
+  private List<R> bufferedResources;
+
+
+
+  /**
+   * Create a new streaming resources response.
+   *
+   * @param schemaURIs  The set of schema URIs used by the resources.
+   * @param startIndex  The 1-based index of the first result in the current
+   *                    set of search results.
+   */
+  protected StreamingResources(final Set<String> schemaURIs,
+                               final int startIndex)
+  {
+    super(Collections.<R>emptyList(), 0, startIndex);
+    this.schemaURIs = schemaURIs;
+  }
+
+
+
+  /**
+   * Write the resources to the provided stream marshaller. Implementations
+   * must write each resource using
+   * {@link ResourcesStreamMarshaller#writeResource}, and should call
+   * {@link #setItemsPerPage} and {@link #setTotalResults} before returning.
+   * This method is called at most once.
+   *
+   * @param marshaller  The stream marshaller to write the resources to.
+   *
+   * @throws SCIMException  If the resources could not be produced or written.
+   */
+  protected abstract void writeResources(
+      final ResourcesStreamMarshaller marshaller)
+      throws SCIMException;
+
+
+
+  /**
+   * Write a complete streamed query response to the provided stream
+   * marshaller.
+   *
+   * @param marshaller  The stream marshaller to write the response to.
+   *
+   * @throws SCIMException  If the response could not be written.
+   */
+  public void marshal(final ResourcesStreamMarshaller marshaller)
+      throws SCIMException
+  {
+    marshaller.writeResourcesStart(schemaURIs);
+    if (bufferedResources == null)
+    {
+      writeResources(marshaller);
+    }
+    else
+    {
+      for (final R resource : bufferedResources)
+      {
+        marshaller.writeResource(resource);
+      }
+    }
+    marshaller.writeResourcesFinish(getTotalResults(), getItemsPerPage(),
+                                    getStartIndex());
+  }
+
+
+
+  /**
+   * Specifies the total number of results matching the Consumer query. If
+   * this is less than the number of resources written then the number of
+   * resources written is used instead.
+   *
+   * @param totalResults  The total number of results matching the Consumer
+   *                      query.
+   */
+  protected void setTotalResults(final long totalResults)
+  {
+    this.totalResults = totalResults;
+  }
+
+
+
+  /**
+   * Specifies the number of resources that were written.
+   *
+   * @param itemsPerPage  The number of resources that were written.
+   */
+  protected void setItemsPerPage(final int itemsPerPage)
+  {
+    this.itemsPerPage = itemsPerPage;
+  }
+
+
+
+  /**
+   * Retrieves the set of schema URIs used by the resources.
+   *
+   * @return  The set of schema URIs used by the resources.
+   */
+  public Set<String> getSchemaURIs()
+  {
+    return schemaURIs;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long getTotalResults()
+  {
+    return Math.max(totalResults, itemsPerPage);
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int getItemsPerPage()
+  {
+    return itemsPerPage;
+  }
+
+
+
+  /**
+   * Retrieves an iterator over the resources. The resources are produced
+   * and held in memory the first time this method is called.
+   *
+   * @return  An iterator over the resources.
+   */
+  @Override
+  public Iterator<R> iterator()
+  {
+    if (bufferedResources == null)
+    {
+      final List<R> resources = new ArrayList<R>();
+      try
+      {
+        writeResources(new ResourcesStreamMarshaller()
+        {
+          public void writeResourcesStart(final Set<String> schemaURIs)
+          {
+            // No implementation required.
+          }
+
+          @SuppressWarnings("unchecked")
+          public void writeResource(final BaseResource resource)
+          {
+            resources.add((R) resource);
+          }
+
+          public void writeResourcesFinish(final long totalResults,
+                                           final int itemsPerPage,
+                                           final long startIndex)
+          {
+            // No implementation required.
+          }
+        });
+      }
+      catch (SCIMException e)
+      {
+        Debug.debugException(e);
+        throw new RuntimeException(e);
+      }
+      bufferedResources = resources;
+    }
+    return bufferedResources.iterator();
+  }
+}
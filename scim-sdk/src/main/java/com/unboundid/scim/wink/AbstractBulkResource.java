@@ -29,6 +29,8 @@ import com.unboundid.scim.sdk.BulkStreamResponse;
 import com.unboundid.scim.sdk.Debug;
 import com.unboundid.scim.sdk.DebugType;
 import com.unboundid.scim.sdk.OAuthTokenHandler;
+import com.unboundid.scim.sdk.RequestPhase;
+import com.unboundid.scim.sdk.RequestTimer;
 import com.unboundid.scim.sdk.SCIMException;
 import com.unboundid.scim.sdk.SCIMResponse;
 import com.unboundid.scim.sdk.ServerErrorException;
@@ -93,19 +95,55 @@ public class AbstractBulkResource
   Response postBulk(final RequestContext requestContext,
                     final InputStream inputStream)
   {
+    final RequestTimer timer = requestContext.getTimer();
+    if (application.getSlowRequestLog() != null)
+    {
+      timer.enableTracing();
+    }
+    RequestTimer.setCurrent(timer);
+    try
+    {
+      return processBulk(requestContext, inputStream);
+    }
+    finally
+    {
+      try
+      {
+        application.getBackend().endRequest();
+      }
+      finally
+      {
+        RequestTimer.setCurrent(null);
+      }
+    }
+  }
+
+
+
+  /**
+   * Process a POST operation once the timer of the request has been started.
+   *
+   * @param requestContext    The request context.
+   * @param inputStream       The content to be consumed.
+   *
+   * @return  The response to the operation.
+   */
+  private Response processBulk(final RequestContext requestContext,
+                               final InputStream inputStream)
+  {
+    final RequestTimer timer = requestContext.getTimer();
+    final ResourceStats stats = application.getStatsForResource(RESOURCE_NAME);
     final Unmarshaller unmarshaller;
     if (requestContext.getConsumeMediaType().equals(
         MediaType.APPLICATION_JSON_TYPE))
     {
       unmarshaller = new JsonUnmarshaller();
-      application.getStatsForResource(RESOURCE_NAME).incrementStat(
-          ResourceStats.POST_CONTENT_JSON);
+      stats.posts.contentJSON.increment();
     }
     else
     {
       unmarshaller = new XmlUnmarshaller();
-      application.getStatsForResource(RESOURCE_NAME).incrementStat(
-          ResourceStats.POST_CONTENT_XML);
+      stats.posts.contentXML.increment();
     }
 
     Response.ResponseBuilder responseBuilder;
@@ -177,15 +215,16 @@ public class AbstractBulkResource
                                               application.getBackend(),
                                               bulkStreamResponse,
                                               tokenHandler);
+            timer.enterPhase(RequestPhase.BACKEND);
             unmarshaller.bulkUnmarshal(requestFile, bulkConfig, handler);
+            handler.finishOperations();
 
             // Build the response.
             responseBuilder = Response.status(Response.Status.OK);
             setResponseEntity(responseBuilder,
                               requestContext.getProduceMediaType(),
                               bulkStreamResponse);
-            application.getStatsForResource(RESOURCE_NAME).incrementStat(
-                ResourceStats.POST_OK);
+            stats.posts.ok.increment();
           }
           catch (Exception e)
           {
@@ -226,22 +265,26 @@ public class AbstractBulkResource
       responseBuilder = Response.status(e.getStatusCode());
       setResponseEntity(responseBuilder, requestContext.getProduceMediaType(),
                         e);
-      application.getStatsForResource(RESOURCE_NAME).incrementStat(
-          "post-" + e.getStatusCode());
+      stats.incrementStat(ResourceStats.POST, e.getStatusCode());
     }
 
     if (requestContext.getProduceMediaType() == MediaType.APPLICATION_JSON_TYPE)
     {
-      application.getStatsForResource(RESOURCE_NAME).incrementStat(
-          ResourceStats.POST_RESPONSE_JSON);
+      stats.posts.responseJSON.increment();
     }
     else if (requestContext.getProduceMediaType() ==
              MediaType.APPLICATION_XML_TYPE)
     {
-      application.getStatsForResource(RESOURCE_NAME).incrementStat(
-          ResourceStats.POST_RESPONSE_XML);
+      stats.posts.responseXML.increment();
     }
 
+    timer.stop();
+    stats.recordRequest(ResourceStats.BULK, timer);
+    final SlowRequestLog slowRequestLog = application.getSlowRequestLog();
+    if (slowRequestLog != null)
+    {
+      slowRequestLog.record(requestContext, RESOURCE_NAME, ResourceStats.BULK);
+    }
     return responseBuilder.build();
   }
 
@@ -21,6 +21,7 @@ import com.unboundid.scim.data.BaseResource;
 import com.unboundid.scim.marshal.Unmarshaller;
 import com.unboundid.scim.marshal.json.JsonUnmarshaller;
 import com.unboundid.scim.marshal.xml.XmlUnmarshaller;
+import com.unboundid.scim.schema.AttributeDescriptor;
 import com.unboundid.scim.schema.ResourceDescriptor;
 import com.unboundid.scim.sdk.AttributePath;
 import com.unboundid.scim.sdk.Debug;
@@ -39,6 +40,8 @@ import com.unboundid.scim.sdk.PatchResourceRequest;
 import com.unboundid.scim.sdk.PostResourceRequest;
 import com.unboundid.scim.sdk.PreconditionFailedException;
 import com.unboundid.scim.sdk.PutResourceRequest;
+import com.unboundid.scim.sdk.RequestPhase;
+import com.unboundid.scim.sdk.RequestTimer;
 import com.unboundid.scim.sdk.ResourceNotFoundException;
 import com.unboundid.scim.sdk.ResourceSchemaBackend;
 import com.unboundid.scim.sdk.Resources;
@@ -61,6 +64,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 
@@ -107,6 +111,12 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
     COMMON_REQUEST_PARAMS = Collections.unmodifiableSet(params);
   }
 
+  /**
+   * The name of the HTTP response header that returns the times recorded for
+   * the phases of processing a request.
+   */
+  private static final String SERVER_TIMING_HEADER = "Server-Timing";
+
   /**
    * The OAuth 2.0 bearer token handler. This may be null.
    */
@@ -143,12 +153,42 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
    */
   Response getUser(final RequestContext requestContext,
                    final String endpoint, final String userID)
+  {
+    startTimer(requestContext);
+    try
+    {
+      return processGetUser(requestContext, endpoint, userID);
+    }
+    finally
+    {
+      endRequest();
+    }
+  }
+
+
+
+  /**
+   * Process a GET operation once the timer of the request has been
+   * started.
+   *
+   * @param requestContext The request context.
+   * @param endpoint       The endpoint requested.
+   * @param userID         The user ID requested.
+   *
+   * @return  The response to the operation.
+   */
+  private Response processGetUser(final RequestContext requestContext,
+                                  final String endpoint,
+                                  final String userID)
   {
     logIgnoredQueryParams(requestContext, COMMON_REQUEST_PARAMS);
 
+    final RequestTimer timer = requestContext.getTimer();
     SCIMBackend backend;
     ResourceDescriptor resourceDescriptor = null;
+    ResourceStats stats = null;
     Response.ResponseBuilder responseBuilder;
+    RequestCompletion completion = null;
     try {
       backend = getBackend(endpoint);
       resourceDescriptor = backend.getResourceDescriptor(endpoint);
@@ -157,6 +197,7 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
         throw new ResourceNotFoundException(
                 endpoint + " is not a valid resource endpoint");
       }
+      stats = application.getStatsForResource(resourceDescriptor.getName());
       String authID = requestContext.getAuthID();
       if(authID == null && tokenHandler == null) {
         throw new UnauthorizedException("Invalid credentials");
@@ -166,6 +207,7 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
               QUERY_PARAMETER_ATTRIBUTES);
       final SCIMQueryAttributes queryAttributes =
           new SCIMQueryAttributes(resourceDescriptor, attributes);
+      setValuePages(requestContext, resourceDescriptor, queryAttributes);
 
       // Process the request.
       GetResourceRequest getResourceRequest =
@@ -175,13 +217,14 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
 
       if (authID == null)
       {
+        timer.enterPhase(RequestPhase.AUTH);
         AtomicReference<String> authIDRef = new AtomicReference<String>();
         Response response = validateOAuthToken(requestContext,
                               getResourceRequest, authIDRef, tokenHandler);
         if (response != null)
         {
-          application.getStatsForResource(resourceDescriptor.getName()).
-              incrementStat("get-" + response.getStatus());
+          stats.incrementStat(ResourceStats.GET, response.getStatus());
+          recordLatency(requestContext, stats, ResourceStats.GET);
           return response;
         }
         else
@@ -194,15 +237,17 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
         }
       }
 
+      timer.enterPhase(RequestPhase.BACKEND);
       BaseResource resource =
           backend.getResource(getResourceRequest);
 
       // Build the response.
       responseBuilder = Response.status(Response.Status.OK);
-        setResponseEntity(responseBuilder, requestContext.getProduceMediaType(),
-            resource);
-        application.getStatsForResource(resourceDescriptor.getName()).
-          incrementStat(ResourceStats.GET_OK);
+      completion = new RequestCompletion(requestContext, stats,
+                                         ResourceStats.GET, null);
+      setResponseEntity(responseBuilder, requestContext.getProduceMediaType(),
+                        resource, completion);
+      stats.gets.ok.increment();
       responseBuilder.contentLocation(resource.getMeta().getLocation());
       // cant use responsebuilder.tag ... it will quote the
       // already quoted string
@@ -211,26 +256,25 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
       if(requestContext.getProduceMediaType() ==
           MediaType.APPLICATION_JSON_TYPE)
       {
-        application.getStatsForResource(resourceDescriptor.getName()).
-            incrementStat(ResourceStats.GET_RESPONSE_JSON);
+        stats.gets.responseJSON.increment();
       }
       else if(requestContext.getProduceMediaType() ==
               MediaType.APPLICATION_XML_TYPE)
       {
-        application.getStatsForResource(resourceDescriptor.getName()).
-            incrementStat(ResourceStats.GET_RESPONSE_XML);
+        stats.gets.responseXML.increment();
       }
     } catch (SCIMException e) {
       Debug.debugException(e);
+      completion = null;
       responseBuilder = error(e, requestContext);
-      if(resourceDescriptor != null)
+      if(stats != null)
       {
-        application.getStatsForResource(resourceDescriptor.getName()).
-            incrementStat("get-" + e.getStatusCode());
+        stats.incrementStat(ResourceStats.GET, e.getStatusCode());
       }
     }
 
-    return responseBuilder.build();
+    return buildResponse(responseBuilder, requestContext, stats,
+                         ResourceStats.GET, completion);
   }
 
 
@@ -260,12 +304,57 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
                               final String sortOrder,
                               final String pageStartIndex,
                               final String pageSize)
+  {
+    startTimer(requestContext);
+    try
+    {
+      return processGetUsers(requestContext, endpoint, filterString, baseID,
+                             searchScope, sortBy, sortOrder, pageStartIndex,
+                             pageSize);
+    }
+    finally
+    {
+      endRequest();
+    }
+  }
+
+
+
+  /**
+   * Process a GET operation once the timer of the request has been
+   * started.
+   *
+   * @param requestContext   The request context.
+   * @param endpoint         The endpoint requested.
+   * @param filterString     The filter query parameter, or {@code null}.
+   * @param baseID           The SCIM resource ID of the search base entry,
+   *                         or {@code null}.
+   * @param searchScope      The LDAP search scope to use, or {@code null}.
+   * @param sortBy           The sortBy query parameter, or {@code null}.
+   * @param sortOrder        The sortOrder query parameter, or {@code null}.
+   * @param pageStartIndex   The startIndex query parameter, or {@code null}.
+   * @param pageSize         The count query parameter, or {@code null}.
+   *
+   * @return  The response to the operation.
+   */
+  private Response processGetUsers(final RequestContext requestContext,
+                                   final String endpoint,
+                                   final String filterString,
+                                   final String baseID,
+                                   final String searchScope,
+                                   final String sortBy,
+                                   final String sortOrder,
+                                   final String pageStartIndex,
+                                   final String pageSize)
   {
     logIgnoredQueryParams(requestContext, SEARCH_REQUEST_PARAMS);
 
+    final RequestTimer timer = requestContext.getTimer();
     SCIMBackend backend;
     ResourceDescriptor resourceDescriptor = null;
+    ResourceStats stats = null;
     Response.ResponseBuilder responseBuilder;
+    RequestCompletion completion = null;
     try
     {
       backend = getBackend(endpoint);
@@ -275,6 +364,7 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
         throw new ResourceNotFoundException(
                 endpoint + " is not a valid resource endpoint");
       }
+      stats = application.getStatsForResource(resourceDescriptor.getName());
       String authID = requestContext.getAuthID();
       if(authID == null && tokenHandler == null) {
         throw new UnauthorizedException("Invalid credentials");
@@ -284,6 +374,7 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
               QUERY_PARAMETER_ATTRIBUTES);
       final SCIMQueryAttributes queryAttributes =
           new SCIMQueryAttributes(resourceDescriptor, attributes);
+      setValuePages(requestContext, resourceDescriptor, queryAttributes);
 
       // Parse the filter parameters.
       final SCIMFilter filter = parseFilter(filterString, resourceDescriptor);
@@ -374,13 +465,15 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
 
       if (authID == null)
       {
+        timer.enterPhase(RequestPhase.AUTH);
         AtomicReference<String> authIDRef = new AtomicReference<String>();
         Response response = validateOAuthToken(requestContext,
                               getResourcesRequest, authIDRef, tokenHandler);
         if (response != null)
         {
-          application.getStatsForResource(resourceDescriptor.getName()).
-              incrementStat("query-" + response.getStatus());
+          stats.incrementStat(ResourceStats.QUERY, response.getStatus());
+          recordLatency(requestContext, stats,
+                        ResourceStats.QUERY);
           return response;
         }
         else
@@ -394,43 +487,44 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
         }
       }
 
+      timer.enterPhase(RequestPhase.BACKEND);
       final Resources resources = backend.getResources(getResourcesRequest);
 
       // Build the response.
       responseBuilder =
           Response.status(Response.Status.OK);
+      completion = new RequestCompletion(requestContext, stats,
+                                         ResourceStats.QUERY, resources);
       setResponseEntity(responseBuilder, requestContext.getProduceMediaType(),
-                        resources);
+                        resources, completion);
 
-      application.getStatsForResource(resourceDescriptor.getName()).
-          incrementStat(ResourceStats.QUERY_OK);
+      stats.queries.ok.increment();
       if(requestContext.getProduceMediaType() ==
           MediaType.APPLICATION_JSON_TYPE)
       {
-        application.getStatsForResource(resourceDescriptor.getName()).
-            incrementStat(ResourceStats.QUERY_RESPONSE_JSON);
+        stats.queries.responseJSON.increment();
       }
       else if(requestContext.getProduceMediaType() ==
               MediaType.APPLICATION_XML_TYPE)
       {
-        application.getStatsForResource(resourceDescriptor.getName()).
-            incrementStat(ResourceStats.QUERY_RESPONSE_XML);
+        stats.queries.responseXML.increment();
       }
     }
     catch(SCIMException e)
     {
+      completion = null;
       responseBuilder =
           Response.status(e.getStatusCode());
       setResponseEntity(responseBuilder, requestContext.getProduceMediaType(),
                         e);
-      if(resourceDescriptor != null)
+      if(stats != null)
       {
-        application.getStatsForResource(resourceDescriptor.getName()).
-            incrementStat("query-" + e.getStatusCode());
+        stats.incrementStat(ResourceStats.QUERY, e.getStatusCode());
       }
     }
 
-    return responseBuilder.build();
+    return buildResponse(responseBuilder, requestContext, stats,
+                         ResourceStats.QUERY, completion);
   }
 
 
@@ -446,12 +540,42 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
   Response postUser(final RequestContext requestContext,
                     final String endpoint,
                     final InputStream inputStream)
+  {
+    startTimer(requestContext);
+    try
+    {
+      return processPostUser(requestContext, endpoint, inputStream);
+    }
+    finally
+    {
+      endRequest();
+    }
+  }
+
+
+
+  /**
+   * Process a POST operation once the timer of the request has been
+   * started.
+   *
+   * @param requestContext    The request context.
+   * @param endpoint       The endpoint requested.
+   * @param inputStream       The content to be consumed.
+   *
+   * @return  The response to the operation.
+   */
+  private Response processPostUser(final RequestContext requestContext,
+                                   final String endpoint,
+                                   final InputStream inputStream)
   {
     logIgnoredQueryParams(requestContext, COMMON_REQUEST_PARAMS);
 
+    final RequestTimer timer = requestContext.getTimer();
     SCIMBackend backend;
     ResourceDescriptor resourceDescriptor = null;
+    ResourceStats stats = null;
     Response.ResponseBuilder responseBuilder;
+    RequestCompletion completion = null;
     try
     {
       backend = getBackend(endpoint);
@@ -461,19 +585,18 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
         throw new ResourceNotFoundException(
                 endpoint + " is not a valid resource endpoint");
       }
+      stats = application.getStatsForResource(resourceDescriptor.getName());
       final Unmarshaller unmarshaller;
       if (requestContext.getConsumeMediaType().equals(
           MediaType.APPLICATION_JSON_TYPE))
       {
         unmarshaller = new JsonUnmarshaller();
-        application.getStatsForResource(resourceDescriptor.getName()).
-            incrementStat(ResourceStats.POST_CONTENT_JSON);
+        stats.posts.contentJSON.increment();
       }
       else
       {
         unmarshaller = new XmlUnmarshaller();
-        application.getStatsForResource(resourceDescriptor.getName()).
-            incrementStat(ResourceStats.POST_CONTENT_XML);
+        stats.posts.contentXML.increment();
       }
       String authID = requestContext.getAuthID();
       if(authID == null && tokenHandler == null)
@@ -499,13 +622,14 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
 
       if (authID == null)
       {
+        timer.enterPhase(RequestPhase.AUTH);
         AtomicReference<String> authIDRef = new AtomicReference<String>();
         Response response = validateOAuthToken(requestContext,
                               postResourceRequest, authIDRef, tokenHandler);
         if (response != null)
         {
-          application.getStatsForResource(resourceDescriptor.getName()).
-              incrementStat("post-" + response.getStatus());
+          stats.incrementStat(ResourceStats.POST, response.getStatus());
+          recordLatency(requestContext, stats, ResourceStats.POST);
           return response;
         }
         else
@@ -518,40 +642,41 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
         }
       }
 
+      timer.enterPhase(RequestPhase.BACKEND);
       final BaseResource resource = backend.postResource(postResourceRequest);
       // Build the response.
       responseBuilder = Response.status(Response.Status.CREATED);
+      completion = new RequestCompletion(requestContext, stats,
+                                         ResourceStats.POST, null);
       setResponseEntity(responseBuilder, requestContext.getProduceMediaType(),
-          resource);
+                        resource, completion);
       responseBuilder.location(resource.getMeta().getLocation());
       // cant use responsebuilder.tag ... it will quote the already
       // quoted string
       responseBuilder.header(HttpHeaders.ETAG, resource.getMeta().getVersion());
-      application.getStatsForResource(resourceDescriptor.getName()).
-          incrementStat(ResourceStats.POST_OK);
+      stats.posts.ok.increment();
       if(requestContext.getProduceMediaType() ==
           MediaType.APPLICATION_JSON_TYPE)
       {
-        application.getStatsForResource(resourceDescriptor.getName()).
-            incrementStat(ResourceStats.POST_RESPONSE_JSON);
+        stats.posts.responseJSON.increment();
       }
       else if(requestContext.getProduceMediaType() ==
               MediaType.APPLICATION_XML_TYPE)
       {
-        application.getStatsForResource(resourceDescriptor.getName()).
-            incrementStat(ResourceStats.POST_RESPONSE_XML);
+        stats.posts.responseXML.increment();
       }
     } catch (SCIMException e) {
       Debug.debugException(e);
+      completion = null;
       responseBuilder = error(e, requestContext);
-      if(resourceDescriptor != null)
+      if(stats != null)
       {
-        application.getStatsForResource(resourceDescriptor.getName()).
-            incrementStat("post-" + e.getStatusCode());
+        stats.incrementStat(ResourceStats.POST, e.getStatusCode());
       }
     }
 
-    return responseBuilder.build();
+    return buildResponse(responseBuilder, requestContext, stats,
+                         ResourceStats.POST, completion);
   }
 
 
@@ -570,12 +695,44 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
                    final String endpoint,
                    final String userID,
                    final InputStream inputStream)
+  {
+    startTimer(requestContext);
+    try
+    {
+      return processPutUser(requestContext, endpoint, userID, inputStream);
+    }
+    finally
+    {
+      endRequest();
+    }
+  }
+
+
+
+  /**
+   * Process a PUT operation once the timer of the request has been
+   * started.
+   *
+   * @param requestContext    The request context.
+   * @param endpoint          The endpoint requested.
+   * @param userID            The target user ID.
+   * @param inputStream       The content to be consumed.
+   *
+   * @return  The response to the operation.
+   */
+  private Response processPutUser(final RequestContext requestContext,
+                                  final String endpoint,
+                                  final String userID,
+                                  final InputStream inputStream)
   {
     logIgnoredQueryParams(requestContext, COMMON_REQUEST_PARAMS);
 
+    final RequestTimer timer = requestContext.getTimer();
     SCIMBackend backend;
     ResourceDescriptor resourceDescriptor = null;
+    ResourceStats stats = null;
     Response.ResponseBuilder responseBuilder;
+    RequestCompletion completion = null;
     try {
       backend = getBackend(endpoint);
       resourceDescriptor = backend.getResourceDescriptor(endpoint);
@@ -584,19 +741,18 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
         throw new ResourceNotFoundException(
                 endpoint + " is not a valid resource endpoint");
       }
+      stats = application.getStatsForResource(resourceDescriptor.getName());
       final Unmarshaller unmarshaller;
       if (requestContext.getConsumeMediaType().equals(
           MediaType.APPLICATION_JSON_TYPE))
       {
         unmarshaller = new JsonUnmarshaller();
-        application.getStatsForResource(resourceDescriptor.getName()).
-            incrementStat(ResourceStats.PUT_CONTENT_JSON);
+        stats.puts.contentJSON.increment();
       }
       else
       {
         unmarshaller = new XmlUnmarshaller();
-        application.getStatsForResource(resourceDescriptor.getName()).
-            incrementStat(ResourceStats.PUT_CONTENT_XML);
+        stats.puts.contentXML.increment();
       }
       String authID = requestContext.getAuthID();
       if(authID == null && tokenHandler == null)
@@ -623,13 +779,14 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
 
       if (authID == null)
       {
+        timer.enterPhase(RequestPhase.AUTH);
         AtomicReference<String> authIDRef = new AtomicReference<String>();
         Response response = validateOAuthToken(requestContext,
                               putResourceRequest, authIDRef, tokenHandler);
         if (response != null)
         {
-          application.getStatsForResource(resourceDescriptor.getName()).
-              incrementStat("put-" + response.getStatus());
+          stats.incrementStat(ResourceStats.PUT, response.getStatus());
+          recordLatency(requestContext, stats, ResourceStats.PUT);
           return response;
         }
         else
@@ -643,41 +800,42 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
         }
       }
 
+      timer.enterPhase(RequestPhase.BACKEND);
       final BaseResource scimResponse = backend.putResource(putResourceRequest);
       // Build the response.
       responseBuilder = Response.status(Response.Status.OK);
+      completion = new RequestCompletion(requestContext, stats,
+                                         ResourceStats.PUT, null);
       setResponseEntity(responseBuilder, requestContext.getProduceMediaType(),
-                        scimResponse);
+                        scimResponse, completion);
       responseBuilder.contentLocation(scimResponse.getMeta().getLocation());
       // cant use responsebuilder.tag ... it will quote the already
       // quoted string
       responseBuilder.header(HttpHeaders.ETAG,
           scimResponse.getMeta().getVersion());
-      application.getStatsForResource(resourceDescriptor.getName()).
-          incrementStat(ResourceStats.PUT_OK);
+      stats.puts.ok.increment();
       if(requestContext.getProduceMediaType() ==
           MediaType.APPLICATION_JSON_TYPE)
       {
-        application.getStatsForResource(resourceDescriptor.getName()).
-            incrementStat(ResourceStats.PUT_RESPONSE_JSON);
+        stats.puts.responseJSON.increment();
       }
       else if(requestContext.getProduceMediaType() ==
               MediaType.APPLICATION_XML_TYPE)
       {
-        application.getStatsForResource(resourceDescriptor.getName()).
-            incrementStat(ResourceStats.PUT_RESPONSE_XML);
+        stats.puts.responseXML.increment();
       }
     } catch (SCIMException e) {
       Debug.debugException(e);
+      completion = null;
       responseBuilder = error(e, requestContext);
-      if(resourceDescriptor != null)
+      if(stats != null)
       {
-        application.getStatsForResource(resourceDescriptor.getName()).
-            incrementStat("put-" + e.getStatusCode());
+        stats.incrementStat(ResourceStats.PUT, e.getStatusCode());
       }
     }
 
-    return responseBuilder.build();
+    return buildResponse(responseBuilder, requestContext, stats,
+                         ResourceStats.PUT, completion);
   }
 
 
@@ -696,12 +854,44 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
                      final String endpoint,
                      final String userID,
                      final InputStream inputStream)
+  {
+    startTimer(requestContext);
+    try
+    {
+      return processPatchUser(requestContext, endpoint, userID, inputStream);
+    }
+    finally
+    {
+      endRequest();
+    }
+  }
+
+
+
+  /**
+   * Process a PATCH operation once the timer of the request has been
+   * started.
+   *
+   * @param requestContext    The request context.
+   * @param endpoint          The endpoint requested.
+   * @param userID            The target user ID.
+   * @param inputStream       The content to be consumed.
+   *
+   * @return  The response to the operation.
+   */
+  private Response processPatchUser(final RequestContext requestContext,
+                                    final String endpoint,
+                                    final String userID,
+                                    final InputStream inputStream)
   {
     logIgnoredQueryParams(requestContext, COMMON_REQUEST_PARAMS);
 
+    final RequestTimer timer = requestContext.getTimer();
     SCIMBackend backend;
     ResourceDescriptor resourceDescriptor = null;
+    ResourceStats stats = null;
     Response.ResponseBuilder responseBuilder;
+    RequestCompletion completion = null;
     try {
       backend = getBackend(endpoint);
       resourceDescriptor = backend.getResourceDescriptor(endpoint);
@@ -710,6 +900,7 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
         throw new ResourceNotFoundException(
                 endpoint + " is not a valid resource endpoint");
       }
+      stats = application.getStatsForResource(resourceDescriptor.getName());
       String authID = requestContext.getAuthID();
       if(authID == null && tokenHandler == null)
       {
@@ -720,14 +911,12 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
               MediaType.APPLICATION_JSON_TYPE))
       {
         unmarshaller = new JsonUnmarshaller();
-        application.getStatsForResource(resourceDescriptor.getName()).
-            incrementStat(ResourceStats.PATCH_CONTENT_JSON);
+        stats.patches.contentJSON.increment();
       }
       else
       {
         unmarshaller = new XmlUnmarshaller();
-        application.getStatsForResource(resourceDescriptor.getName()).
-            incrementStat(ResourceStats.PATCH_CONTENT_XML);
+        stats.patches.contentXML.increment();
       }
       // Parse the resource.
       final BaseResource patchedResource = unmarshaller.unmarshal(
@@ -748,13 +937,15 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
 
       if (authID == null)
       {
+        timer.enterPhase(RequestPhase.AUTH);
         AtomicReference<String> authIDRef = new AtomicReference<String>();
         Response response = validateOAuthToken(requestContext,
                               patchResourceRequest, authIDRef, tokenHandler);
         if (response != null)
         {
-          application.getStatsForResource(resourceDescriptor.getName()).
-              incrementStat("patch-" + response.getStatus());
+          stats.incrementStat(ResourceStats.PATCH, response.getStatus());
+          recordLatency(requestContext, stats,
+                        ResourceStats.PATCH);
           return response;
         }
         else
@@ -768,6 +959,7 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
         }
       }
 
+      timer.enterPhase(RequestPhase.BACKEND);
       final BaseResource scimResponse =
               backend.patchResource(patchResourceRequest);
 
@@ -775,8 +967,10 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
       if (!queryAttributes.allAttributesRequested())
       {
         responseBuilder = Response.status(Response.Status.OK);
+        completion = new RequestCompletion(requestContext, stats,
+                                           ResourceStats.PATCH, null);
         setResponseEntity(responseBuilder, requestContext.getProduceMediaType(),
-                scimResponse);
+                          scimResponse, completion);
       }
       else
       {
@@ -788,31 +982,29 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
       responseBuilder.header(HttpHeaders.ETAG,
           scimResponse.getMeta().getVersion());
 
-      application.getStatsForResource(resourceDescriptor.getName()).
-          incrementStat(ResourceStats.PATCH_OK);
+      stats.patches.ok.increment();
       if(requestContext.getProduceMediaType() ==
           MediaType.APPLICATION_JSON_TYPE)
       {
-        application.getStatsForResource(resourceDescriptor.getName()).
-            incrementStat(ResourceStats.PATCH_RESPONSE_JSON);
+        stats.patches.responseJSON.increment();
       }
       else if(requestContext.getProduceMediaType() ==
               MediaType.APPLICATION_XML_TYPE)
       {
-        application.getStatsForResource(resourceDescriptor.getName()).
-            incrementStat(ResourceStats.PATCH_RESPONSE_XML);
+        stats.patches.responseXML.increment();
       }
     } catch (SCIMException e) {
       Debug.debugException(e);
+      completion = null;
       responseBuilder = error(e, requestContext);
-      if(resourceDescriptor != null)
+      if(stats != null)
       {
-        application.getStatsForResource(resourceDescriptor.getName()).
-            incrementStat("patch-" + e.getStatusCode());
+        stats.incrementStat(ResourceStats.PATCH, e.getStatusCode());
       }
     }
 
-    return responseBuilder.build();
+    return buildResponse(responseBuilder, requestContext, stats,
+                         ResourceStats.PATCH, completion);
   }
 
 
@@ -830,8 +1022,37 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
                       final String endpoint,
                       final String userID)
   {
+    startTimer(requestContext);
+    try
+    {
+      return processDeleteUser(requestContext, endpoint, userID);
+    }
+    finally
+    {
+      endRequest();
+    }
+  }
+
+
+
+  /**
+   * Process a DELETE operation once the timer of the request has been
+   * started.
+   *
+   * @param requestContext    The request context.
+   * @param endpoint          The endpoint requested.
+   * @param userID            The target user ID.
+   *
+   * @return  The response to the operation.
+   */
+  private Response processDeleteUser(final RequestContext requestContext,
+                                     final String endpoint,
+                                     final String userID)
+  {
+    final RequestTimer timer = requestContext.getTimer();
     SCIMBackend backend;
     ResourceDescriptor resourceDescriptor = null;
+    ResourceStats stats = null;
     // Process the request.
     Response.ResponseBuilder responseBuilder;
     try {
@@ -842,6 +1063,7 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
         throw new ResourceNotFoundException(
                 endpoint + " is not a valid resource endpoint");
       }
+      stats = application.getStatsForResource(resourceDescriptor.getName());
       String authID = requestContext.getAuthID();
       if(authID == null && tokenHandler == null)
       {
@@ -855,13 +1077,15 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
 
       if (authID == null)
       {
+        timer.enterPhase(RequestPhase.AUTH);
         AtomicReference<String> authIDRef = new AtomicReference<String>();
         Response response = validateOAuthToken(requestContext,
                               deleteResourceRequest, authIDRef, tokenHandler);
         if (response != null)
         {
-          application.getStatsForResource(resourceDescriptor.getName()).
-              incrementStat("delete-" + response.getStatus());
+          stats.incrementStat(ResourceStats.DELETE, response.getStatus());
+          recordLatency(requestContext, stats,
+                        ResourceStats.DELETE);
           return response;
         }
         else
@@ -874,22 +1098,22 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
         }
       }
 
+      timer.enterPhase(RequestPhase.BACKEND);
       backend.deleteResource(deleteResourceRequest);
       // Build the response.
       responseBuilder = Response.status(Response.Status.OK);
-      application.getStatsForResource(resourceDescriptor.getName()).
-          incrementStat(ResourceStats.DELETE_OK);
+      stats.deletes.ok.increment();
     } catch (SCIMException e) {
       Debug.debugException(e);
       responseBuilder = error(e, requestContext);
-      if(resourceDescriptor != null)
+      if(stats != null)
       {
-        application.getStatsForResource(resourceDescriptor.getName()).
-            incrementStat("delete-" + e.getStatusCode());
+        stats.incrementStat(ResourceStats.DELETE, e.getStatusCode());
       }
     }
 
-    return responseBuilder.build();
+    return buildResponse(responseBuilder, requestContext, stats,
+                         ResourceStats.DELETE, null);
   }
 
   /**
@@ -1109,6 +1333,130 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
     return builder.build();
   }
 
+  /**
+   * Begin timing the phases of a request, and make the timer of the request
+   * the current timer of this thread so that the backend can record the
+   * operations it makes. The operations are traced in detail if slow
+   * requests are being logged. The caller must call {@link #endRequest}
+   * when it has finished processing the request.
+   *
+   * @param requestContext  The request context.
+   */
+  private void startTimer(final RequestContext requestContext)
+  {
+    final RequestTimer timer = requestContext.getTimer();
+    if (application.getSlowRequestLog() != null)
+    {
+      timer.enableTracing();
+    }
+    RequestTimer.setCurrent(timer);
+  }
+
+  /**
+   * Finish processing a request on this thread: release the state that the
+   * backend keeps for the request and reset the current timer of this
+   * thread.
+   */
+  private void endRequest()
+  {
+    try
+    {
+      application.getBackend().endRequest();
+    }
+    finally
+    {
+      RequestTimer.setCurrent(null);
+    }
+  }
+
+  /**
+   * Record the latency of a request, and the time spent in each phase of
+   * processing it, in the stats for the requested resource, and keep the
+   * request in the slow request log if it took too long. The timer of the
+   * request is stopped.
+   *
+   * @param requestContext  The request context.
+   * @param stats           The stats for the resource requested, or
+   *                        {@code null} if the endpoint requested is not
+   *                        valid.
+   * @param operation       The name of the operation.
+   */
+  private void recordLatency(final RequestContext requestContext,
+                             final ResourceStats stats,
+                             final String operation)
+  {
+    final RequestTimer timer = requestContext.getTimer();
+    timer.stop();
+    if (stats != null)
+    {
+      stats.recordRequest(operation, timer);
+    }
+
+    final SlowRequestLog slowRequestLog = application.getSlowRequestLog();
+    if (slowRequestLog != null)
+    {
+      slowRequestLog.record(requestContext,
+          stats == null ? null : stats.getName(), operation);
+    }
+  }
+
+  /**
+   * Build the response to a request. If the response has content, the
+   * request enters the marshal phase and is recorded once the content has
+   * been written. Otherwise the request is recorded now.
+   *
+   * @param responseBuilder     The builder of the response.
+   * @param requestContext      The request context.
+   * @param stats               The stats for the resource requested, or
+   *                            {@code null} if the endpoint requested is not
+   *                            valid.
+   * @param operation           The name of the operation.
+   * @param completion          The completion that records the request when
+   *                            the content of the response has been written,
+   *                            or {@code null} if the response content does
+   *                            not record the request.
+   *
+   * @return  The response to the request.
+   */
+  private Response buildResponse(final Response.ResponseBuilder responseBuilder,
+                                 final RequestContext requestContext,
+                                 final ResourceStats stats,
+                                 final String operation,
+                                 final RequestCompletion completion)
+  {
+    final RequestTimer timer = requestContext.getTimer();
+    if (completion == null)
+    {
+      recordLatency(requestContext, stats, operation);
+    }
+    else
+    {
+      timer.enterPhase(RequestPhase.MARSHAL);
+    }
+    addServerTiming(responseBuilder, timer);
+    return responseBuilder.build();
+  }
+
+  /**
+   * Add the times recorded by the timer of a request to the response as a
+   * {@code Server-Timing} header, if the application is configured to
+   * return them for this request. The header is sent before the content of
+   * the response, so the times do not include writing the content.
+   *
+   * @param responseBuilder  The builder of the response.
+   * @param timer            The timer of the request.
+   */
+  private void addServerTiming(final Response.ResponseBuilder responseBuilder,
+                               final RequestTimer timer)
+  {
+    if (application.isServerTimingSampled())
+    {
+      responseBuilder.header(SERVER_TIMING_HEADER, timer.getServerTiming());
+    }
+  }
+
+
+
   /**
    * Retrieves the backend that should service the provided endpoint.
    *
@@ -1192,6 +1540,108 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
 
 
 
+  /**
+   * Set the pages of values requested for multi-valued attributes using the
+   * query parameters formed from the attribute name and the startIndex or
+   * count suffix, e.g. members.startIndex=1&amp;members.count=100.
+   *
+   * @param requestContext      The request context.
+   * @param resourceDescriptor  The resource descriptor for the SCIM endpoint.
+   * @param queryAttributes     The query attributes on which the pages of
+   *                            values are set.
+   *
+   * @throws InvalidResourceException  If a page of values is requested for
+   *                                   an attribute that does not exist or is
+   *                                   not multi-valued, or the page is not
+   *                                   valid.
+   */
+  private static void setValuePages(
+      final RequestContext requestContext,
+      final ResourceDescriptor resourceDescriptor,
+      final SCIMQueryAttributes queryAttributes)
+      throws InvalidResourceException
+  {
+    final MultivaluedMap<String, String> map =
+        requestContext.getUriInfo().getQueryParameters();
+    for (final String param : map.keySet())
+    {
+      if (!isValuePageParam(param))
+      {
+        continue;
+      }
+
+      final String lowerParam = param.toLowerCase();
+      final boolean isStartIndex =
+          lowerParam.endsWith(QUERY_PARAMETER_VALUE_START_INDEX_SUFFIX_LC);
+      final String attributeName = param.substring(0, param.length() -
+          (isStartIndex ? QUERY_PARAMETER_VALUE_START_INDEX_SUFFIX_LC.length() :
+                          QUERY_PARAMETER_VALUE_COUNT_SUFFIX.length()));
+      final AttributePath path =
+          AttributePath.parse(attributeName, resourceDescriptor.getSchema());
+      final AttributeDescriptor attributeDescriptor =
+          resourceDescriptor.getAttribute(path.getAttributeSchema(),
+                                          path.getAttributeName());
+      if (!attributeDescriptor.isMultiValued())
+      {
+        throw new InvalidResourceException(
+            "Attribute '" + attributeName + "' is not multi-valued so its " +
+            "values cannot be paged");
+      }
+
+      final int value;
+      try
+      {
+        value = Integer.parseInt(map.getFirst(param));
+      }
+      catch (NumberFormatException e)
+      {
+        Debug.debugException(e);
+        throw new InvalidResourceException(
+            "The value of query parameter '" + param + "' is not an integer");
+      }
+      if (value < (isStartIndex ? 1 : 0))
+      {
+        throw new InvalidResourceException(
+            "The value of query parameter '" + param + "' is not valid");
+      }
+
+      final PageParameters page =
+          queryAttributes.getValuePage(attributeDescriptor);
+      if (isStartIndex)
+      {
+        queryAttributes.setValuePage(attributeDescriptor,
+            new PageParameters(value, page == null ? 0 : page.getCount()));
+      }
+      else
+      {
+        queryAttributes.setValuePage(attributeDescriptor,
+            new PageParameters(page == null ? 1 : page.getStartIndex(), value));
+      }
+    }
+  }
+
+
+
+  /**
+   * Determine whether a query parameter requests a page of the values of a
+   * multi-valued attribute.
+   *
+   * @param param  The name of the query parameter.
+   *
+   * @return  {@code true} if the query parameter requests a page of values.
+   */
+  private static boolean isValuePageParam(final String param)
+  {
+    final String lowerParam = param.toLowerCase();
+    return (lowerParam.endsWith(QUERY_PARAMETER_VALUE_START_INDEX_SUFFIX_LC) &&
+            lowerParam.length() >
+                QUERY_PARAMETER_VALUE_START_INDEX_SUFFIX_LC.length()) ||
+           (lowerParam.endsWith(QUERY_PARAMETER_VALUE_COUNT_SUFFIX) &&
+            lowerParam.length() > QUERY_PARAMETER_VALUE_COUNT_SUFFIX.length());
+  }
+
+
+
   /**
    * Log the names of any query parameters provided in the request that we
    * won't even look at.
@@ -1210,7 +1660,8 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
           requestContext.getUriInfo().getQueryParameters();
       for (String param : map.keySet())
       {
-        if (!supportedParams.contains(param.toLowerCase()))
+        if (!supportedParams.contains(param.toLowerCase()) &&
+            !isValuePageParam(param))
         {
           ignoredParams.add(param);
         }
@@ -1227,4 +1678,60 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
       }
     }
   }
+
+
+
+  /**
+   * Records a request once the content of its response has been written, so
+   * that the latency recorded for the request includes the marshal phase and
+   * the number of results of a query whose results are streamed.
+   */
+  private final class RequestCompletion implements Runnable
+  {
+    private final RequestContext requestContext;
+    private final ResourceStats stats;
+    private final String operation;
+    private final Resources<?> resources;
+    private final AtomicBoolean completed = new AtomicBoolean();
+
+
+
+    /**
+     * Create a new request completion.
+     *
+     * @param requestContext      The request context.
+     * @param stats               The stats for the resource requested.
+     * @param operation           The name of the operation.
+     * @param resources           The results of a query, or {@code null} if
+     *                            the request is not a query.
+     */
+    private RequestCompletion(final RequestContext requestContext,
+                              final ResourceStats stats,
+                              final String operation,
+                              final Resources<?> resources)
+    {
+      this.requestContext = requestContext;
+      this.stats          = stats;
+      this.operation      = operation;
+      this.resources      = resources;
+    }
+
+
+
+    /**
+     * Record the request, if it has not already been recorded.
+     */
+    public void run()
+    {
+      if (completed.compareAndSet(false, true))
+      {
+        if (resources != null)
+        {
+          requestContext.getTimer().setResultCount(
+              resources.getTotalResults());
+        }
+        recordLatency(requestContext, stats, operation);
+      }
+    }
+  }
 }
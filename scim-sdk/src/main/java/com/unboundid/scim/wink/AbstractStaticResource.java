@@ -48,6 +48,26 @@ public class AbstractStaticResource
   protected static void setResponseEntity(
       final Response.ResponseBuilder builder, final MediaType mediaType,
       final SCIMResponse scimResponse)
+  {
+    setResponseEntity(builder, mediaType, scimResponse, null);
+  }
+
+
+
+  /**
+   * Sets the response entity (content) for a SCIM response, running a
+   * completion once the content has been written.
+   *
+   * @param builder       A JAX-RS response builder.
+   * @param mediaType     The media type to be returned.
+   * @param scimResponse  The SCIM response to be returned.
+   * @param completion    The completion to run once the content has been
+   *                      written, whether or not it was written successfully,
+   *                      or {@code null} if there is none.
+   */
+  static void setResponseEntity(
+      final Response.ResponseBuilder builder, final MediaType mediaType,
+      final SCIMResponse scimResponse, final Runnable completion)
   {
     final Marshaller marshaller;
     builder.type(mediaType);
@@ -75,6 +95,13 @@ public class AbstractStaticResource
           throw new WebApplicationException(
               e, Response.Status.INTERNAL_SERVER_ERROR);
         }
+        finally
+        {
+          if (completion != null)
+          {
+            completion.run();
+          }
+        }
       }
     };
     builder.entity(output);
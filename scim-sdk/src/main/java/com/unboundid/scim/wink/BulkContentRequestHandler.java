@@ -23,6 +23,7 @@ import com.unboundid.scim.sdk.BulkContentHandler;
 import com.unboundid.scim.sdk.BulkException;
 import com.unboundid.scim.sdk.BulkOperation;
 import com.unboundid.scim.sdk.BulkOperation.Method;
+import com.unboundid.scim.sdk.BulkRequestResult;
 import com.unboundid.scim.sdk.BulkStreamResponse;
 import com.unboundid.scim.sdk.Debug;
 import com.unboundid.scim.sdk.DeleteResourceRequest;
@@ -32,12 +33,14 @@ import com.unboundid.scim.sdk.PatchResourceRequest;
 import com.unboundid.scim.sdk.PostResourceRequest;
 import com.unboundid.scim.sdk.PreconditionFailedException;
 import com.unboundid.scim.sdk.PutResourceRequest;
+import com.unboundid.scim.sdk.RequestTimer;
 import com.unboundid.scim.sdk.SCIMAttribute;
 import com.unboundid.scim.sdk.SCIMAttributeValue;
 import com.unboundid.scim.sdk.SCIMBackend;
 import com.unboundid.scim.sdk.SCIMException;
 import com.unboundid.scim.sdk.SCIMObject;
 import com.unboundid.scim.sdk.SCIMQueryAttributes;
+import com.unboundid.scim.sdk.SCIMRequest;
 import com.unboundid.scim.sdk.ServerErrorException;
 import com.unboundid.scim.sdk.Status;
 import com.unboundid.scim.sdk.UnauthorizedException;
@@ -52,8 +55,14 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicReference;
 
 
@@ -117,6 +126,41 @@ public class BulkContentRequestHandler extends BulkContentHandler
    */
   private final Set<String> bulkIds;
 
+  /**
+   * The maximum number of operations that the backend may apply together.
+   */
+  private final int maxBatchSize;
+
+  /**
+   * The executor on which independent operations may be processed
+   * concurrently, or {@code null} if operations are processed one after
+   * another.
+   */
+  private final ExecutorService operationExecutor;
+
+  /**
+   * The maximum number of operations that may be in progress at the same
+   * time.
+   */
+  private final int maxConcurrentOperations;
+
+  /**
+   * The maximum number of independent operations to hold before applying
+   * them.
+   */
+  private final int maxPendingOperations;
+
+  /**
+   * The operations waiting to be applied together.
+   */
+  private final List<PreparedOperation> pendingOperations;
+
+  /**
+   * The normalized paths of the resources targeted by the operations waiting
+   * to be applied together.
+   */
+  private final Set<String> pendingPaths;
+
 
 
   /**
@@ -155,6 +199,13 @@ public class BulkContentRequestHandler extends BulkContentHandler
     resourceIDs = new HashMap<String, String>();
     unresolvedBulkIdRefs = new HashSet<String>();
     bulkIds = new HashSet<String>();
+    maxBatchSize = backend.getMaxBulkRequestsApplied();
+    operationExecutor = application.getBulkOperationExecutor();
+    maxConcurrentOperations = application.getBulkMaxConcurrentOperations();
+    maxPendingOperations =
+        maxBatchSize >= 2 ? maxBatchSize : maxConcurrentOperations;
+    pendingOperations = new ArrayList<PreparedOperation>();
+    pendingPaths = new HashSet<String>();
   }
 
 
@@ -214,20 +265,120 @@ public class BulkContentRequestHandler extends BulkContentHandler
   {
     if (errorCount < failOnErrors)
     {
-      final BulkOperation response = processOperation(bulkOperation);
+      if (maxPendingOperations < 2)
+      {
+        final PreparedOperation preparedOperation =
+            prepareOperation(bulkOperation);
+        final BulkOperation response = completeOperation(
+            preparedOperation, processOperation(preparedOperation));
+        unresolvedBulkIdRefs.clear();
+        bulkStreamResponse.writeBulkOperation(response);
+        return;
+      }
+
+      // An operation that refers to a resource created or modified by a
+      // pending operation must wait until the pending operations are applied.
+      BulkOperation operation = bulkOperation;
+      if (!pendingOperations.isEmpty() &&
+          (!unresolvedBulkIdRefs.isEmpty() ||
+           dependsOnPendingOperations(bulkOperation.getPath())))
+      {
+        applyPendingOperations();
+        if (errorCount >= failOnErrors)
+        {
+          unresolvedBulkIdRefs.clear();
+          return;
+        }
+
+        if (!unresolvedBulkIdRefs.isEmpty() &&
+            resourceIDs.keySet().containsAll(unresolvedBulkIdRefs) &&
+            bulkOperation.getData() != null)
+        {
+          operation = new BulkOperation(
+              bulkOperation.getMethod(), bulkOperation.getBulkId(),
+              bulkOperation.getVersion(), bulkOperation.getPath(),
+              bulkOperation.getLocation(),
+              resolveBulkIds(bulkOperation.getData()),
+              bulkOperation.getStatus());
+          unresolvedBulkIdRefs.clear();
+        }
+      }
+
+      final PreparedOperation preparedOperation;
+      try
+      {
+        preparedOperation = prepareOperation(operation);
+      }
+      catch (BulkException e)
+      {
+        // The responses to the pending operations must be written first.
+        unresolvedBulkIdRefs.clear();
+        applyPendingOperations();
+        if (errorCount >= failOnErrors)
+        {
+          return;
+        }
+        throw e;
+      }
       unresolvedBulkIdRefs.clear();
-      bulkStreamResponse.writeBulkOperation(response);
+
+      pendingOperations.add(preparedOperation);
+      if (preparedOperation.method != BulkOperation.Method.POST)
+      {
+        // The path of a POST operation is an endpoint rather than a
+        // resource, so POST operations to the same endpoint are independent.
+        pendingPaths.add(normalizePath(preparedOperation.path));
+      }
+      if (pendingOperations.size() >= maxPendingOperations)
+      {
+        applyPendingOperations();
+      }
     }
   }
 
 
 
+  /**
+   * Process any operations that have not yet been processed because they
+   * were waiting to be applied together with later operations. This must be
+   * called once all the operations of the bulk request have been handled.
+   *
+   * @throws SCIMException  If an error occurs while writing the responses.
+   */
+  public void finishOperations()
+      throws SCIMException
+  {
+    applyPendingOperations();
+  }
+
+
+
   /**
    * {@inheritDoc}
    */
   public boolean handleException(final int opIndex,
                                  final BulkException bulkException)
       throws SCIMException
+  {
+    // The responses to the pending operations must be written first.
+    applyPendingOperations();
+    return writeErrorResponse(bulkException);
+  }
+
+
+
+  /**
+   * Write the response for an operation that failed, unless the maximum
+   * number of errors has already been reached.
+   *
+   * @param bulkException  The exception for the failed operation.
+   *
+   * @return  {@code true} if processing of the bulk request should continue.
+   *
+   * @throws SCIMException  If an error occurs while writing the response.
+   */
+  private boolean writeErrorResponse(final BulkException bulkException)
+      throws SCIMException
   {
     Debug.debugException(bulkException);
     if (errorCount < failOnErrors)
@@ -278,15 +429,286 @@ public class BulkContentRequestHandler extends BulkContentHandler
 
 
   /**
-   * Process an operation from a bulk request.
+   * Apply the pending operations and write their responses. The backend is
+   * first asked to apply all of the operations together. If it does not,
+   * none of them has been applied, and each operation is processed on its
+   * own so that it gets its own result and no operation is processed once
+   * the maximum number of errors is reached. Since the pending operations are
+   * independent, they may be processed concurrently.
+   *
+   * @throws SCIMException  If an error occurs while writing the responses.
+   */
+  private void applyPendingOperations()
+      throws SCIMException
+  {
+    if (pendingOperations.isEmpty())
+    {
+      return;
+    }
+
+    final List<PreparedOperation> operations =
+        new ArrayList<PreparedOperation>(pendingOperations);
+    pendingOperations.clear();
+    pendingPaths.clear();
+
+    List<BulkRequestResult> results = null;
+    if (maxBatchSize >= 2 && operations.size() > 1)
+    {
+      final List<SCIMRequest> requests =
+          new ArrayList<SCIMRequest>(operations.size());
+      for (final PreparedOperation operation : operations)
+      {
+        requests.add(operation.request);
+      }
+      try
+      {
+        results = backend.applyBulkRequests(requests);
+      }
+      catch (SCIMException e)
+      {
+        // The operations may have been applied but their outcome is unknown,
+        // so they must not be processed again.
+        Debug.debugException(e);
+        for (final PreparedOperation operation : operations)
+        {
+          writeErrorResponse(failOperation(operation.method, operation.bulkId,
+              operation.path, operation.resourceStats, e));
+        }
+        return;
+      }
+    }
+
+    if (results != null)
+    {
+      // Every operation has been applied, so the response of each successful
+      // operation is written even if the maximum number of errors is reached.
+      for (int i = 0; i < operations.size(); i++)
+      {
+        final PreparedOperation operation = operations.get(i);
+        final BaseResource resource;
+        try
+        {
+          resource = results.get(i).getResource();
+        }
+        catch (SCIMException e)
+        {
+          writeErrorResponse(failOperation(operation.method, operation.bulkId,
+              operation.path, operation.resourceStats, e));
+          continue;
+        }
+        bulkStreamResponse.writeBulkOperation(
+            completeOperation(operation, resource));
+      }
+      return;
+    }
+
+    // No more operations are in progress at the same time than the number of
+    // errors still permitted, so that every operation processed would also
+    // have been processed had the operations been processed one after
+    // another.
+    int next = 0;
+    while (next < operations.size() && errorCount < failOnErrors)
+    {
+      final int count = Math.min(operations.size() - next,
+          Math.min(maxConcurrentOperations, failOnErrors - errorCount));
+      processOperations(operations.subList(next, next + count));
+      next += count;
+    }
+  }
+
+
+
+  /**
+   * Process independent operations on their own and write their responses
+   * in order. The operations are processed concurrently if an executor has
+   * been provided.
+   *
+   * @param operations  The operations to be processed.
+   *
+   * @throws SCIMException  If an error occurs while writing the responses.
+   */
+  private void processOperations(final List<PreparedOperation> operations)
+      throws SCIMException
+  {
+    // Submit all but the first operation, and process the first operation on
+    // this thread while the others are in progress.
+    final List<Future<BaseResource>> futures =
+        new ArrayList<Future<BaseResource>>(operations.size());
+    futures.add(null);
+    final RequestTimer timer = RequestTimer.getCurrent();
+    for (final PreparedOperation operation :
+        operations.subList(1, operations.size()))
+    {
+      if (operationExecutor == null)
+      {
+        futures.add(null);
+        continue;
+      }
+
+      try
+      {
+        futures.add(operationExecutor.submit(new Callable<BaseResource>()
+        {
+          public BaseResource call() throws BulkException
+          {
+            RequestTimer.setCurrent(timer);
+            try
+            {
+              return processOperation(operation);
+            }
+            finally
+            {
+              try
+              {
+                backend.endRequest();
+              }
+              finally
+              {
+                RequestTimer.setCurrent(null);
+              }
+            }
+          }
+        }));
+      }
+      catch (RejectedExecutionException e)
+      {
+        // The executor is saturated. Process the operation when its response
+        // is to be written.
+        Debug.debugException(e);
+        futures.add(null);
+      }
+    }
+
+    for (int i = 0; i < operations.size(); i++)
+    {
+      final PreparedOperation operation = operations.get(i);
+      final Future<BaseResource> future = futures.get(i);
+      try
+      {
+        final BaseResource resource;
+        if (future == null)
+        {
+          resource = processOperation(operation);
+        }
+        else
+        {
+          resource = getOperationResult(operation, future);
+        }
+        bulkStreamResponse.writeBulkOperation(
+            completeOperation(operation, resource));
+      }
+      catch (BulkException e)
+      {
+        writeErrorResponse(e);
+      }
+    }
+  }
+
+
+
+  /**
+   * Wait for an operation submitted to the executor to be processed.
+   *
+   * @param operation  The operation.
+   * @param future     The future for the result of processing the operation.
+   *
+   * @return  The resource returned by the backend, or {@code null} for a
+   *          DELETE operation.
+   *
+   * @throws BulkException  If the operation failed, or if the thread was
+   *                        interrupted while waiting for it.
+   */
+  private static BaseResource getOperationResult(
+      final PreparedOperation operation,
+      final Future<BaseResource> future)
+      throws BulkException
+  {
+    try
+    {
+      return future.get();
+    }
+    catch (InterruptedException e)
+    {
+      Debug.debugException(e);
+      Thread.currentThread().interrupt();
+      throw failOperation(operation.method, operation.bulkId, operation.path,
+          operation.resourceStats, new ServerErrorException(
+              "Interrupted while waiting for the operation to complete"));
+    }
+    catch (ExecutionException e)
+    {
+      Debug.debugException(e);
+      final Throwable cause = e.getCause();
+      if (cause instanceof BulkException)
+      {
+        throw (BulkException) cause;
+      }
+      else if (cause instanceof RuntimeException)
+      {
+        throw (RuntimeException) cause;
+      }
+      else if (cause instanceof Error)
+      {
+        throw (Error) cause;
+      }
+      throw failOperation(operation.method, operation.bulkId, operation.path,
+          operation.resourceStats, new ServerErrorException(
+              "Unexpected error while processing the operation: " + cause));
+    }
+  }
+
+
+
+
+  /**
+   * Determine whether an operation with the provided path may depend on any
+   * pending operations, either because it refers to a resource created by
+   * a pending operation or because it targets the same resource as a pending
+   * operation.
+   *
+   * @param path  The path of the operation, which may be {@code null}.
+   *
+   * @return  {@code true} if the operation may depend on pending operations.
+   */
+  private boolean dependsOnPendingOperations(final String path)
+  {
+    if (path == null)
+    {
+      return false;
+    }
+
+    return path.contains("bulkId:") ||
+           pendingPaths.contains(normalizePath(path));
+  }
+
+
+
+  /**
+   * Normalize the path of an operation so that operations targeting the same
+   * resource can be detected.
+   *
+   * @param path  The path of the operation.
+   *
+   * @return  The normalized path.
+   */
+  private static String normalizePath(final String path)
+  {
+    final String lowerPath = path.toLowerCase();
+    return lowerPath.startsWith("/") ? lowerPath.substring(1) : lowerPath;
+  }
+
+
+
+  /**
+   * Validate an operation from a bulk request and create the request to be
+   * processed by the backend.
    *
    * @param operation       The operation to be processed from the bulk request.
    *
-   * @return  The operation response.
-   * @throws  BulkException  If an error occurs while processing the individual
-   *                         operation within the bulk operation.
+   * @return  The prepared operation.
+   * @throws  BulkException  If the operation is not valid.
    */
-  private BulkOperation processOperation(final BulkOperation operation)
+  private PreparedOperation prepareOperation(final BulkOperation operation)
       throws BulkException
   {
     final Method method = operation.getMethod();
@@ -295,11 +717,8 @@ public class BulkContentRequestHandler extends BulkContentHandler
     final String etag = operation.getVersion();
     final BaseResource resource = operation.getData();
 
-    int statusCode = 200;
-    String location = null;
     String endpoint = null;
     String resourceID = null;
-    String responseVersion = null;
 
     final ResourceDescriptor descriptor;
     final ResourceStats resourceStats;
@@ -446,13 +865,13 @@ public class BulkContentRequestHandler extends BulkContentHandler
         switch (method)
         {
           case POST:
-            resourceStats.incrementStat(ResourceStats.POST_CONTENT_JSON);
+            resourceStats.posts.contentJSON.increment();
             break;
           case PUT:
-            resourceStats.incrementStat(ResourceStats.PUT_CONTENT_JSON);
+            resourceStats.puts.contentJSON.increment();
             break;
           case PATCH:
-            resourceStats.incrementStat(ResourceStats.PATCH_CONTENT_JSON);
+            resourceStats.patches.contentJSON.increment();
             break;
         }
       }
@@ -461,13 +880,13 @@ public class BulkContentRequestHandler extends BulkContentHandler
         switch (method)
         {
           case POST:
-            resourceStats.incrementStat(ResourceStats.POST_CONTENT_XML);
+            resourceStats.posts.contentXML.increment();
             break;
           case PUT:
-            resourceStats.incrementStat(ResourceStats.PUT_CONTENT_XML);
+            resourceStats.puts.contentXML.increment();
             break;
           case PATCH:
-            resourceStats.incrementStat(ResourceStats.PATCH_CONTENT_XML);
+            resourceStats.patches.contentXML.increment();
         }
       }
 
@@ -476,6 +895,7 @@ public class BulkContentRequestHandler extends BulkContentHandler
       final SCIMQueryAttributes queryAttributes =
           new SCIMQueryAttributes(descriptor, "");
 
+      final SCIMRequest request;
       switch (method)
       {
         case POST:
@@ -507,14 +927,7 @@ public class BulkContentRequestHandler extends BulkContentHandler
             }
           }
 
-          final BaseResource postedResource =
-                  backend.postResource(postResourceRequest);
-
-          resourceID = postedResource.getId();
-          responseVersion = postedResource.getMeta().getVersion();
-          locationBuilder.path(resourceID);
-          statusCode = 201;
-          resourceStats.incrementStat(ResourceStats.POST_OK);
+          request = postResourceRequest;
           break;
 
         case PUT:
@@ -548,9 +961,7 @@ public class BulkContentRequestHandler extends BulkContentHandler
             }
           }
 
-          responseVersion =
-              backend.putResource(putResourceRequest).getMeta().getVersion();
-          resourceStats.incrementStat(ResourceStats.PUT_OK);
+          request = putResourceRequest;
           break;
 
         case PATCH:
@@ -584,12 +995,10 @@ public class BulkContentRequestHandler extends BulkContentHandler
             }
           }
 
-          responseVersion =
-             backend.patchResource(patchResourceRequest).getMeta().getVersion();
-          resourceStats.incrementStat(ResourceStats.PATCH_OK);
+          request = patchResourceRequest;
           break;
 
-        case DELETE:
+        default:
           DeleteResourceRequest deleteResourceRequest =
              new DeleteResourceRequest(requestContext.getUriInfo().getBaseUri(),
                                        requestContext.getAuthID(),
@@ -617,34 +1026,147 @@ public class BulkContentRequestHandler extends BulkContentHandler
             }
           }
 
-          backend.deleteResource(deleteResourceRequest);
-          resourceStats.incrementStat(ResourceStats.DELETE_OK);
+          request = deleteResourceRequest;
           break;
       }
 
-      if (bulkId != null)
-      {
-        resourceIDs.put(bulkId, resourceID);
-      }
+      return new PreparedOperation(method, bulkId, path, resourceID,
+                                   resourceStats, locationBuilder, request);
     }
     catch (SCIMException e)
     {
-      switch (method)
+      throw failOperation(method, bulkId, path, resourceStats, e);
+    }
+  }
+
+
+
+  /**
+   * Process a prepared operation on its own.
+   *
+   * @param operation  The prepared operation.
+   *
+   * @return  The resource returned by the backend, or {@code null} for a
+   *          DELETE operation.
+   * @throws  BulkException  If an error occurs while processing the operation.
+   */
+  private BaseResource processOperation(final PreparedOperation operation)
+      throws BulkException
+  {
+    try
+    {
+      switch (operation.method)
       {
         case POST:
-          resourceStats.incrementStat("post-" + e.getStatusCode());
-          break;
+          return backend.postResource(
+              (PostResourceRequest) operation.request);
+
         case PUT:
-          resourceStats.incrementStat("put-" + e.getStatusCode());
-          break;
+          return backend.putResource((PutResourceRequest) operation.request);
+
         case PATCH:
-          resourceStats.incrementStat("patch-" + e.getStatusCode());
-          break;
-        case DELETE:
-          resourceStats.incrementStat("delete-" + e.getStatusCode());
-          break;
+          return backend.patchResource(
+              (PatchResourceRequest) operation.request);
+
+        default:
+          backend.deleteResource((DeleteResourceRequest) operation.request);
+          return null;
       }
-      throw new BulkException(e, method, bulkId, path);
+    }
+    catch (SCIMException e)
+    {
+      throw failOperation(operation.method, operation.bulkId, operation.path,
+                          operation.resourceStats, e);
+    }
+  }
+
+
+
+  /**
+   * Record the failure of an operation.
+   *
+   * @param method         The method of the operation.
+   * @param bulkId         The bulkId of the operation.
+   * @param path           The path of the operation.
+   * @param resourceStats  The stats for the resource of the operation.
+   * @param e              The reason for the failure.
+   *
+   * @return  The bulk exception to be thrown for the operation.
+   */
+  private static BulkException failOperation(final Method method,
+                                             final String bulkId,
+                                             final String path,
+                                             final ResourceStats resourceStats,
+                                             final SCIMException e)
+  {
+    switch (method)
+    {
+      case POST:
+        resourceStats.incrementStat(ResourceStats.POST, e.getStatusCode());
+        break;
+      case PUT:
+        resourceStats.incrementStat(ResourceStats.PUT, e.getStatusCode());
+        break;
+      case PATCH:
+        resourceStats.incrementStat(ResourceStats.PATCH, e.getStatusCode());
+        break;
+      case DELETE:
+        resourceStats.incrementStat(ResourceStats.DELETE, e.getStatusCode());
+        break;
+    }
+    return new BulkException(e, method, bulkId, path);
+  }
+
+
+
+  /**
+   * Record the success of an operation and create its response.
+   *
+   * @param operation  The prepared operation.
+   * @param resource   The resource returned by the backend, or {@code null}
+   *                   for a DELETE operation.
+   *
+   * @return  The operation response.
+   */
+  private BulkOperation completeOperation(final PreparedOperation operation,
+                                          final BaseResource resource)
+  {
+    final Method method = operation.method;
+    final String bulkId = operation.bulkId;
+    final ResourceStats resourceStats = operation.resourceStats;
+    final UriBuilder locationBuilder = operation.locationBuilder;
+
+    int statusCode = 200;
+    String resourceID = operation.resourceID;
+    String responseVersion = null;
+    switch (method)
+    {
+      case POST:
+        resourceID = resource.getId();
+        responseVersion = resource.getMeta().getVersion();
+        locationBuilder.path(resourceID);
+        statusCode = 201;
+        resourceStats.posts.ok.increment();
+        break;
+
+      case PUT:
+        responseVersion = resource.getMeta().getVersion();
+        resourceStats.puts.ok.increment();
+        break;
+
+      case PATCH:
+        responseVersion = resource.getMeta().getVersion();
+        resourceStats.patches.ok.increment();
+        break;
+
+      case DELETE:
+        resourceStats.deletes.ok.increment();
+        break;
+    }
+
+    if (bulkId != null)
+    {
+      resourceIDs.put(bulkId, resourceID);
     }
 
     if (requestContext.getProduceMediaType() ==
@@ -653,13 +1175,13 @@ public class BulkContentRequestHandler extends BulkContentHandler
       switch (method)
       {
         case POST:
-          resourceStats.incrementStat(ResourceStats.POST_RESPONSE_JSON);
+          resourceStats.posts.responseJSON.increment();
           break;
         case PUT:
-          resourceStats.incrementStat(ResourceStats.PUT_RESPONSE_JSON);
+          resourceStats.puts.responseJSON.increment();
           break;
         case PATCH:
-          resourceStats.incrementStat(ResourceStats.PATCH_RESPONSE_JSON);
+          resourceStats.patches.responseJSON.increment();
           break;
       }
     }
@@ -669,17 +1191,18 @@ public class BulkContentRequestHandler extends BulkContentHandler
       switch (method)
       {
       case POST:
-        resourceStats.incrementStat(ResourceStats.POST_RESPONSE_XML);
+        resourceStats.posts.responseXML.increment();
         break;
       case PUT:
-        resourceStats.incrementStat(ResourceStats.PUT_RESPONSE_XML);
+        resourceStats.puts.responseXML.increment();
         break;
       case PATCH:
-        resourceStats.incrementStat(ResourceStats.PATCH_RESPONSE_XML);
+        resourceStats.patches.responseXML.increment();
       }
     }
 
     // Set the location for all operations except an unsuccessful POST.
+    String location = null;
     if (method != BulkOperation.Method.POST || statusCode == 201)
     {
       location = locationBuilder.build().toString();
@@ -797,4 +1320,50 @@ public class BulkContentRequestHandler extends BulkContentHandler
       }
     }
   }
+
+
+
+  /**
+   * An operation from a bulk request that has been validated and is ready
+   * to be processed by the backend.
+   */
+  private static final class PreparedOperation
+  {
+    private final Method method;
+    private final String bulkId;
+    private final String path;
+    private final String resourceID;
+    private final ResourceStats resourceStats;
+    private final UriBuilder locationBuilder;
+    private final SCIMRequest request;
+
+    /**
+     * Create a new prepared operation.
+     *
+     * @param method           The method of the operation.
+     * @param bulkId           The bulkId of the operation.
+     * @param path             The path of the operation.
+     * @param resourceID       The resource ID from the path, or {@code null}
+     *                         for a POST operation.
+     * @param resourceStats    The stats for the resource of the operation.
+     * @param locationBuilder  The builder for the location of the resource.
+     * @param request          The request to be processed by the backend.
+     */
+    private PreparedOperation(final Method method,
+                              final String bulkId,
+                              final String path,
+                              final String resourceID,
+                              final ResourceStats resourceStats,
+                              final UriBuilder locationBuilder,
+                              final SCIMRequest request)
+    {
+      this.method = method;
+      this.bulkId = bulkId;
+      this.path = path;
+      this.resourceID = resourceID;
+      this.resourceStats = resourceStats;
+      this.locationBuilder = locationBuilder;
+      this.request = request;
+    }
+  }
 }
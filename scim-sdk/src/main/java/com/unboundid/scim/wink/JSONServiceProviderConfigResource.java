@@ -63,10 +63,10 @@ public class JSONServiceProviderConfigResource extends AbstractStaticResource
     Response.ResponseBuilder builder = Response.ok();
 
     setResponseEntity(builder, MediaType.APPLICATION_JSON_TYPE, config);
-    application.getStatsForResource(RESOURCE_NAME_SERVICE_PROVIDER_CONFIG).
-        incrementStat(ResourceStats.GET_RESPONSE_XML);
-    application.getStatsForResource(RESOURCE_NAME_SERVICE_PROVIDER_CONFIG).
-        incrementStat(ResourceStats.GET_OK);
+    final ResourceStats stats =
+        application.getStatsForResource(RESOURCE_NAME_SERVICE_PROVIDER_CONFIG);
+    stats.gets.responseXML.increment();
+    stats.gets.ok.increment();
     return builder.build();
   }
 }
@@ -0,0 +1,282 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.wink;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class records a distribution of request latencies in microseconds,
+ * without locking. Each power of two is divided into eight buckets, so
+ * a percentile computed from the histogram is at most 12.5% greater than
+ * the latency actually recorded at that percentile. Latencies below 16
+ * microseconds are recorded exactly. The maximum latency is recorded
+ * exactly.
+ */
+public class LatencyHistogram
+{
+  /**
+   * The number of bits of a latency, after its most significant bit, that
+   * select the bucket within a power of two.
+   */
+  private static final int SUB_BUCKET_BITS = 3;
+
+  /**
+   * The number of buckets for each power of two.
+   */
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  /**
+   * The greatest power of two for which there are buckets. Longer latencies,
+   * of more than about 50 days, are recorded in the last bucket.
+   */
+  private static final int MAX_EXPONENT = 41;
+
+  /**
+   * The greatest latency in microseconds that has a bucket of its own.
+   */
+  private static final long MAX_BUCKET_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+
+  /**
+   * The number of latencies recorded in each bucket.
+   */
+  private final AtomicLongArray counts = new AtomicLongArray(
+      getBucketIndex(MAX_BUCKET_VALUE) + 1);
+
+  /**
+   * The total of the latencies recorded, in microseconds.
+   */
+  private final StripedCounter totalMicros = new StripedCounter();
+
+  /**
+   * The greatest latency recorded, in microseconds.
+   */
+  private final AtomicLong maxMicros = new AtomicLong();
+
+
+
+  /**
+   * Record a latency.
+   *
+   * @param nanos  The latency in nanoseconds.
+   */
+  public void record(final long nanos)
+  {
+    final long micros = Math.max(TimeUnit.NANOSECONDS.toMicros(nanos), 0);
+    counts.incrementAndGet(getBucketIndex(Math.min(micros, MAX_BUCKET_VALUE)));
+    totalMicros.add(micros);
+    long max = maxMicros.get();
+    while (micros > max && !maxMicros.compareAndSet(max, micros))
+    {
+      max = maxMicros.get();
+    }
+  }
+
+
+
+  /**
+   * Retrieve the number of latencies recorded.
+   *
+   * @return  The number of latencies recorded.
+   */
+  public long getCount()
+  {
+    long count = 0;
+    for (int i = 0; i < counts.length(); i++)
+    {
+      count += counts.get(i);
+    }
+    return count;
+  }
+
+
+
+  /**
+   * Retrieve the total of the latencies recorded.
+   *
+   * @return  The total of the latencies recorded in microseconds.
+   */
+  public long getTotalMicros()
+  {
+    return totalMicros.get();
+  }
+
+
+
+  /**
+   * Retrieve the greatest latency recorded.
+   *
+   * @return  The greatest latency recorded in microseconds, or zero if none
+   *          have been recorded.
+   */
+  public long getMaxMicros()
+  {
+    return maxMicros.get();
+  }
+
+
+
+  /**
+   * Retrieve the latency at a percentile of the latencies recorded. This is
+   * the upper bound of the bucket holding the latency at that percentile, or
+   * the greatest latency recorded if that is lower.
+   *
+   * @param percentile  The percentile, greater than zero and no greater
+   *                    than 100.
+   *
+   * @return  The latency at the percentile in microseconds, or zero if none
+   *          have been recorded.
+   */
+  public long getPercentileMicros(final double percentile)
+  {
+    return getPercentileMicros(getCounts(), percentile);
+  }
+
+
+
+  /**
+   * Retrieve the statistics for the monitor endpoint, all computed from the
+   * same counts.
+   *
+   * @return  The values of the statistics, keyed by statistic name.
+   */
+  public Map<String, Long> getStatistics()
+  {
+    final long[] snapshot = getCounts();
+    long count = 0;
+    for (final long c : snapshot)
+    {
+      count += c;
+    }
+
+    final Map<String, Long> data = new LinkedHashMap<String, Long>();
+    data.put("count", count);
+    data.put("average-micros", count == 0 ? 0 : totalMicros.get() / count);
+    data.put("p50-micros", getPercentileMicros(snapshot, 50.0));
+    data.put("p90-micros", getPercentileMicros(snapshot, 90.0));
+    data.put("p99-micros", getPercentileMicros(snapshot, 99.0));
+    data.put("p999-micros", getPercentileMicros(snapshot, 99.9));
+    data.put("max-micros", maxMicros.get());
+    return data;
+  }
+
+
+
+  /**
+   * Copy the counts of the buckets. Latencies may be recorded while the
+   * counts are copied, so the copy is not exact, but it is consistent enough
+   * for percentiles to be computed from it.
+   *
+   * @return  A copy of the counts of the buckets.
+   */
+  long[] getCounts()
+  {
+    final long[] snapshot = new long[counts.length()];
+    for (int i = 0; i < snapshot.length; i++)
+    {
+      snapshot[i] = counts.get(i);
+    }
+    return snapshot;
+  }
+
+
+
+  /**
+   * Compute the latency at a percentile from the counts of the buckets.
+   *
+   * @param snapshot    A copy of the counts of the buckets.
+   * @param percentile  The percentile, greater than zero and no greater
+   *                    than 100.
+   *
+   * @return  The latency at the percentile in microseconds, or zero if there
+   *          are no latencies in the counts.
+   */
+  private long getPercentileMicros(final long[] snapshot,
+                                   final double percentile)
+  {
+    long count = 0;
+    for (final long c : snapshot)
+    {
+      count += c;
+    }
+    if (count == 0)
+    {
+      return 0;
+    }
+
+    final long rank = Math.max((long) Math.ceil(percentile * count / 100.0), 1);
+    long cumulative = 0;
+    for (int i = 0; i < snapshot.length; i++)
+    {
+      cumulative += snapshot[i];
+      if (cumulative >= rank)
+      {
+        return Math.min(getBucketUpperBound(i), maxMicros.get());
+      }
+    }
+    return maxMicros.get();
+  }
+
+
+
+  /**
+   * Determine the bucket in which a latency is recorded.
+   *
+   * @param micros  The latency in microseconds, no greater than
+   *                {@link #MAX_BUCKET_VALUE}.
+   *
+   * @return  The index of the bucket.
+   */
+  private static int getBucketIndex(final long micros)
+  {
+    if (micros < 2 * SUB_BUCKETS)
+    {
+      return (int) micros;
+    }
+
+    final int exponent = 63 - Long.numberOfLeadingZeros(micros);
+    final int subBucket =
+        (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+  }
+
+
+
+  /**
+   * Determine the greatest latency that is recorded in a bucket.
+   *
+   * @param index  The index of the bucket.
+   *
+   * @return  The greatest latency in microseconds recorded in the bucket.
+   */
+  static long getBucketUpperBound(final int index)
+  {
+    if (index < 2 * SUB_BUCKETS)
+    {
+      return index;
+    }
+
+    final int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+    final long subBucket = index % SUB_BUCKETS;
+    final int shift = exponent - SUB_BUCKET_BITS;
+    return ((SUB_BUCKETS + subBucket + 1) << shift) - 1;
+  }
+}
@@ -18,17 +18,30 @@
 package com.unboundid.scim.wink;
 
 import com.unboundid.scim.sdk.Debug;
+import com.unboundid.scim.sdk.OperationTrace;
+import com.unboundid.scim.sdk.RequestPhase;
 import com.unboundid.scim.sdk.Version;
 import org.json.JSONException;
 import org.json.JSONStringer;
 import org.json.JSONWriter;
 
+import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.SecurityContext;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 
 /**
@@ -39,6 +52,19 @@ import java.util.Map;
 public class MonitorResource
 {
   private static final String RESOURCE_NAME = "monitor";
+
+  /**
+   * The media type of the OpenMetrics text format.
+   */
+  private static final String OPENMETRICS_MEDIA_TYPE =
+      "application/openmetrics-text";
+
+  /**
+   * The content type of responses in the OpenMetrics text format.
+   */
+  private static final String OPENMETRICS_CONTENT_TYPE =
+      OPENMETRICS_MEDIA_TYPE + "; version=1.0.0; charset=utf-8";
+
   private final SCIMApplication application;
 
   /**
@@ -61,27 +87,95 @@ public class MonitorResource
   @Produces(MediaType.APPLICATION_JSON)
   public Response doJsonGet()
   {
+    final ResourceStats stats = application.getStatsForResource(RESOURCE_NAME);
     try
     {
       final JSONStringer writer = new JSONStringer();
       writeMonitorData(writer);
-      application.getStatsForResource(RESOURCE_NAME).incrementStat(
-          ResourceStats.GET_RESPONSE_JSON);
-      application.getStatsForResource(RESOURCE_NAME).incrementStat(
-          ResourceStats.GET_OK);
+      stats.gets.responseJSON.increment();
+      stats.gets.ok.increment();
       return Response.ok(writer.toString(), MediaType.APPLICATION_JSON).build();
     }
     catch (JSONException e)
     {
       Debug.debugException(e);
-      application.getStatsForResource(RESOURCE_NAME).incrementStat(
-          ResourceStats.GET_INTERNAL_SERVER_ERROR);
+      stats.incrementStat(ResourceStats.GET_INTERNAL_SERVER_ERROR);
       return Response.serverError().entity(e.getMessage()).build();
     }
   }
 
 
 
+  /**
+   * Implement the GET operation on the metrics sub-resource to fetch the
+   * monitor data in the OpenMetrics text format, for scraping by monitoring
+   * systems such as Prometheus. The data is written directly to the
+   * response as it is read.
+   *
+   * @return  The response to the request.
+   */
+  @GET
+  @Path("metrics")
+  @Produces(OPENMETRICS_MEDIA_TYPE)
+  public Response doMetricsGet()
+  {
+    final StreamingOutput output = new StreamingOutput()
+    {
+      public void write(final OutputStream outputStream)
+          throws IOException, WebApplicationException
+      {
+        final Writer writer = new BufferedWriter(
+            new OutputStreamWriter(outputStream, "UTF-8"));
+        new OpenMetricsWriter(application, writer).write();
+      }
+    };
+    application.getStatsForResource(RESOURCE_NAME).gets.ok.increment();
+    return Response.ok(output, OPENMETRICS_CONTENT_TYPE).build();
+  }
+
+
+
+  /**
+   * Implement the DELETE operation on the monitor resource to reset the
+   * latency statistics of all resources, beginning a new time window, and to
+   * discard the slow requests that have been logged. The request counters
+   * are not reset. The request must be authenticated, and resetting the
+   * monitor must be allowed by the application.
+   *
+   * @param securityContext  The security context for the request.
+   *
+   * @return  The response to the request.
+   */
+  @DELETE
+  public Response doDelete(@Context final SecurityContext securityContext)
+  {
+    final ResourceStats stats = application.getStatsForResource(RESOURCE_NAME);
+    if(securityContext.getUserPrincipal() == null)
+    {
+      stats.incrementStat(ResourceStats.DELETE_UNAUTHORIZED);
+      return Response.status(Response.Status.UNAUTHORIZED).build();
+    }
+    if(!application.isMonitorResetAllowed())
+    {
+      stats.incrementStat(ResourceStats.DELETE_FORBIDDEN);
+      return Response.status(Response.Status.FORBIDDEN).build();
+    }
+
+    for(ResourceStats resourceStats : application.getResourceStats())
+    {
+      resourceStats.resetLatencies();
+    }
+    final SlowRequestLog slowRequestLog = application.getSlowRequestLog();
+    if(slowRequestLog != null)
+    {
+      slowRequestLog.clear();
+    }
+    stats.deletes.ok.increment();
+    return Response.noContent().build();
+  }
+
+
+
   /**
    * Write the monitor data in JSON format.
    *
@@ -112,9 +206,206 @@ public class MonitorResource
         writer.key(stat.getKey());
         writer.value(stat.getValue());
       }
+
+      final Map<String, LatencyHistogram> latencies = stats.getLatencies();
+      if(!latencies.isEmpty())
+      {
+        writer.key("latency");
+        writer.object();
+        writer.key("window-start");
+        writer.value(stats.getLatencyWindowStart());
+        for(Map.Entry<String, LatencyHistogram> latency :
+            latencies.entrySet())
+        {
+          writer.key(latency.getKey());
+          writer.object();
+          writeStatistics(writer, latency.getValue());
+          writer.key("phases");
+          writer.object();
+          for(RequestPhase phase : RequestPhase.values())
+          {
+            final LatencyHistogram histogram =
+                stats.getPhaseLatency(latency.getKey(), phase);
+            if(histogram != null)
+            {
+              writer.key(phase.getName());
+              writer.object();
+              writeStatistics(writer, histogram);
+              writer.endObject();
+            }
+          }
+          writer.endObject();
+          writer.endObject();
+        }
+        writer.endObject();
+      }
+      writer.endObject();
+    }
+    writer.endArray();
+
+    writer.key("backend");
+    writer.array();
+    for(Map.Entry<String, Map<String, Long>> monitored :
+        application.getBackend().getMonitorData().entrySet())
+    {
+      writer.object();
+      writer.key("name");
+      writer.value(monitored.getKey());
+      for(Map.Entry<String, Long> stat : monitored.getValue().entrySet())
+      {
+        writer.key(stat.getKey());
+        writer.value(stat.getValue());
+      }
+      writer.endObject();
+    }
+    writer.endArray();
+
+    final SlowRequestLog slowRequestLog = application.getSlowRequestLog();
+    if(slowRequestLog != null)
+    {
+      writer.key("slow-requests");
+      writer.object();
+      writer.key("threshold-millis");
+      writer.value(slowRequestLog.getThresholdMillis());
+      writer.key("requests");
+      writer.array();
+      final boolean redacted = application.isSlowRequestValuesRedacted();
+      for(SlowRequestLog.SlowRequest request : slowRequestLog.getRequests())
+      {
+        writeSlowRequest(writer, request, redacted);
+      }
+      writer.endArray();
+      writer.endObject();
+    }
+    writer.endObject();
+  }
+
+
+
+  /**
+   * Write a slow request as a JSON object.
+   *
+   * @param writer    A JSON writer where the request is to be written.
+   * @param request   The slow request.
+   * @param redacted  Indicates whether the resource ID in the path, and the
+   *                  values of the filters and the DNs of the request, are to
+   *                  be redacted.
+   *
+   * @throws JSONException  If an error occurs while formatting the data.
+   */
+  private static void writeSlowRequest(final JSONWriter writer,
+                                       final SlowRequestLog.SlowRequest request,
+                                       final boolean redacted)
+      throws JSONException
+  {
+    writer.object();
+    writer.key("time");
+    writer.value(request.getTime());
+    writeOptional(writer, "resource", request.getResource());
+    writer.key("operation");
+    writer.value(request.getOperation());
+    writeOptional(writer, "method", request.getMethod());
+    writeOptional(writer, "path", redacted ?
+        SlowRequestLog.redactPath(request.getPath()) :
+        request.getPath());
+    writeOptional(writer, "filter", redacted ?
+        SlowRequestLog.redactSCIMFilter(request.getFilter()) :
+        request.getFilter());
+    writeOptional(writer, "attributes", request.getAttributes());
+    if(request.getResultCount() >= 0)
+    {
+      writer.key("result-count");
+      writer.value(request.getResultCount());
+    }
+    writer.key("elapsed-micros");
+    writer.value(TimeUnit.NANOSECONDS.toMicros(request.getElapsedNanos()));
+
+    writer.key("phases");
+    writer.object();
+    for(RequestPhase phase : RequestPhase.values())
+    {
+      final long nanos = request.getNanos(phase);
+      if(nanos > 0)
+      {
+        writer.key(phase.getName() + "-micros");
+        writer.value(TimeUnit.NANOSECONDS.toMicros(nanos));
+      }
+    }
+    writer.endObject();
+
+    writer.key("operations");
+    writer.array();
+    for(OperationTrace trace : request.getTraces())
+    {
+      writer.object();
+      writer.key("operation");
+      writer.value(trace.getOperation());
+      writeOptional(writer, "target", redacted ?
+          SlowRequestLog.redactDN(trace.getTargetObject()) :
+          trace.getTarget());
+      writeOptional(writer, "scope", trace.getScope());
+      writeOptional(writer, "filter", redacted ?
+          SlowRequestLog.redactLDAPFilter(trace.getFilterObject()) :
+          trace.getFilter());
+      if(trace.getEntries() >= 0)
+      {
+        writer.key("entries");
+        writer.value(trace.getEntries());
+      }
+      writer.key("elapsed-micros");
+      writer.value(TimeUnit.NANOSECONDS.toMicros(trace.getNanos()));
       writer.endObject();
     }
     writer.endArray();
+    if(request.getUntracedCount() > 0)
+    {
+      writer.key("untraced-operations");
+      writer.value(request.getUntracedCount());
+    }
     writer.endObject();
   }
+
+
+
+  /**
+   * Write a member of a JSON object if it has a value.
+   *
+   * @param writer  A JSON writer where the member is to be written.
+   * @param key     The key of the member.
+   * @param value   The value of the member, or {@code null} if the member is
+   *                not to be written.
+   *
+   * @throws JSONException  If an error occurs while formatting the data.
+   */
+  private static void writeOptional(final JSONWriter writer, final String key,
+                                    final String value)
+      throws JSONException
+  {
+    if(value != null)
+    {
+      writer.key(key);
+      writer.value(value);
+    }
+  }
+
+
+
+  /**
+   * Write the statistics of a latency histogram as members of a JSON object.
+   *
+   * @param writer     A JSON writer where the statistics are to be written.
+   * @param histogram  The latency histogram.
+   *
+   * @throws JSONException  If an error occurs while formatting the data.
+   */
+  private static void writeStatistics(final JSONWriter writer,
+                                      final LatencyHistogram histogram)
+      throws JSONException
+  {
+    for(Map.Entry<String, Long> stat : histogram.getStatistics().entrySet())
+    {
+      writer.key(stat.getKey());
+      writer.value(stat.getValue());
+    }
+  }
 }
@@ -0,0 +1,467 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.wink;
+
+import com.unboundid.scim.sdk.RequestPhase;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+
+/**
+ * This class writes the monitor data of a SCIM application in the
+ * OpenMetrics text format. The data is written as it is read from the
+ * statistics, without first being copied into maps.
+ * <p>
+ * The request counters of each resource are written as the
+ * {@code scim_requests} counter family, labelled by resource and statistic
+ * name. The latencies of each operation are written as the
+ * {@code scim_request_duration_seconds} histogram family, with the same
+ * buckets in every exposition: one for the latencies up to each power of two
+ * microseconds, less one microsecond, up to about two minutes. The start of
+ * the latency time window is the created time. The times
+ * spent in each phase of processing the requests of each operation are
+ * written in the same way as the {@code scim_request_phase_duration_seconds}
+ * histogram family, labelled by phase.
+ */
+final class OpenMetricsWriter
+{
+  /**
+   * The exponent of the power of two microseconds that ends the last bucket
+   * written before the bucket with no upper bound. The last bucket holds
+   * latencies up to about 134 seconds.
+   */
+  static final int MAX_BUCKET_EXPONENT = 27;
+
+  /**
+   * The SCIM application whose monitor data is to be written.
+   */
+  private final SCIMApplication application;
+
+  /**
+   * The writer to which the monitor data is written.
+   */
+  private final Writer writer;
+
+
+
+  /**
+   * Create a new OpenMetrics writer.
+   *
+   * @param application  The SCIM application whose monitor data is to be
+   *                     written.
+   * @param writer       The writer to which the monitor data is written.
+   */
+  OpenMetricsWriter(final SCIMApplication application, final Writer writer)
+  {
+    this.application = application;
+    this.writer = writer;
+  }
+
+
+
+  /**
+   * Write all of the monitor data, followed by the end of the exposition.
+   *
+   * @throws IOException  If an error occurs while writing the data.
+   */
+  void write()
+      throws IOException
+  {
+    writeRequestCounters();
+    writeLatencies();
+    writeBulkRequests();
+    writeBackendData();
+    writer.write("# EOF\n");
+    writer.flush();
+  }
+
+
+
+  /**
+   * Write the request counters of all resources.
+   *
+   * @throws IOException  If an error occurs while writing the data.
+   */
+  private void writeRequestCounters()
+      throws IOException
+  {
+    writeFamily("scim_requests", "counter",
+                "Requests processed for each SCIM resource.");
+    for (final ResourceStats stats : application.getResourceStats())
+    {
+      for (final Map.Entry<String, StripedCounter> counter :
+          stats.getCounters())
+      {
+        writer.write("scim_requests_total{resource=\"");
+        writeLabelValue(stats.getName());
+        writer.write("\",stat=\"");
+        writeLabelValue(counter.getKey());
+        writer.write("\"} ");
+        writer.write(Long.toString(counter.getValue().get()));
+        writer.write('\n');
+      }
+    }
+  }
+
+
+
+  /**
+   * Write the latency histograms of all resources, followed by the maximum
+   * latencies.
+   *
+   * @throws IOException  If an error occurs while writing the data.
+   */
+  private void writeLatencies()
+      throws IOException
+  {
+    writeFamily("scim_request_duration_seconds", "histogram",
+                "Time taken to process requests in the current time window.");
+    writer.write("# UNIT scim_request_duration_seconds seconds\n");
+    for (final ResourceStats stats : application.getResourceStats())
+    {
+      for (final Map.Entry<String, LatencyHistogram> latency :
+          stats.getLatencyHistograms())
+      {
+        writeHistogram("scim_request_duration_seconds", stats,
+                       latency.getKey(), null, latency.getValue());
+      }
+    }
+
+    writeFamily("scim_request_phase_duration_seconds", "histogram",
+                "Time spent in each phase of processing requests in the " +
+                "current time window.");
+    writer.write("# UNIT scim_request_phase_duration_seconds seconds\n");
+    for (final ResourceStats stats : application.getResourceStats())
+    {
+      for (final Map.Entry<String, LatencyHistogram> latency :
+          stats.getLatencyHistograms())
+      {
+        for (final RequestPhase phase : RequestPhase.values())
+        {
+          final LatencyHistogram histogram =
+              stats.getPhaseLatency(latency.getKey(), phase);
+          if (histogram != null)
+          {
+            writeHistogram("scim_request_phase_duration_seconds", stats,
+                           latency.getKey(), phase, histogram);
+          }
+        }
+      }
+    }
+
+    writeFamily("scim_request_duration_max_seconds", "gauge",
+                "Longest time taken to process a request in the current " +
+                "time window.");
+    for (final ResourceStats stats : application.getResourceStats())
+    {
+      for (final Map.Entry<String, LatencyHistogram> latency :
+          stats.getLatencyHistograms())
+      {
+        writer.write("scim_request_duration_max_seconds");
+        writeOperationLabels(stats, latency.getKey(), null, null);
+        writeSeconds(latency.getValue().getMaxMicros());
+        writer.write('\n');
+      }
+    }
+  }
+
+
+
+  /**
+   * Write the samples of one latency histogram. Latencies are recorded in
+   * whole microseconds, and each bucket written counts the latencies up to
+   * and including a power of two microseconds less one, which is the upper
+   * bound of the histogram bucket that ends at that power of two. The same
+   * buckets are written whatever latencies have been recorded.
+   *
+   * @param family     The name of the metric family.
+   * @param stats      The statistics of the resource.
+   * @param operation  The name of the operation.
+   * @param phase      The phase of processing the requests, or {@code null}
+   *                   if the histogram is of whole requests.
+   * @param histogram  The latency histogram of the operation.
+   *
+   * @throws IOException  If an error occurs while writing the data.
+   */
+  private void writeHistogram(final String family,
+                              final ResourceStats stats,
+                              final String operation,
+                              final RequestPhase phase,
+                              final LatencyHistogram histogram)
+      throws IOException
+  {
+    final long[] counts = histogram.getCounts();
+    final long maxBound = (1L << MAX_BUCKET_EXPONENT) - 1;
+    long total = 0;
+    long cumulative = 0;
+    for (int i = 0; i < counts.length; i++)
+    {
+      total += counts[i];
+      final long bound = LatencyHistogram.getBucketUpperBound(i);
+      if (bound > maxBound)
+      {
+        continue;
+      }
+
+      cumulative += counts[i];
+      if (bound > 0 && ((bound + 1) & bound) == 0)
+      {
+        writer.write(family);
+        writer.write("_bucket");
+        writeOperationLabels(stats, operation, phase, bound);
+        writer.write(Long.toString(cumulative));
+        writer.write('\n');
+      }
+    }
+
+    writer.write(family);
+    writer.write("_bucket");
+    writeOperationLabels(stats, operation, phase, Long.MAX_VALUE);
+    writer.write(Long.toString(total));
+    writer.write('\n');
+
+    writer.write(family);
+    writer.write("_count");
+    writeOperationLabels(stats, operation, phase, null);
+    writer.write(Long.toString(total));
+    writer.write('\n');
+
+    writer.write(family);
+    writer.write("_sum");
+    writeOperationLabels(stats, operation, phase, null);
+    writeSeconds(histogram.getTotalMicros());
+    writer.write('\n');
+
+    writer.write(family);
+    writer.write("_created");
+    writeOperationLabels(stats, operation, phase, null);
+    final long windowStart = stats.getLatencyWindowStart();
+    writer.write(Long.toString(windowStart / 1000));
+    writer.write('.');
+    writeFraction(windowStart % 1000, 3);
+    writer.write('\n');
+  }
+
+
+
+  /**
+   * Write the usage of the permits for concurrent bulk requests.
+   *
+   * @throws IOException  If an error occurs while writing the data.
+   */
+  private void writeBulkRequests()
+      throws IOException
+  {
+    writeFamily("scim_bulk_requests_active", "gauge",
+                "Bulk requests currently being processed.");
+    writer.write("scim_bulk_requests_active ");
+    writer.write(Integer.toString(application.getBulkConcurrentRequests()));
+    writer.write('\n');
+
+    final int maxRequests = application.getBulkMaxConcurrentRequests();
+    if (maxRequests != Integer.MAX_VALUE)
+    {
+      writeFamily("scim_bulk_requests_max", "gauge",
+                  "Maximum number of concurrent bulk requests.");
+      writer.write("scim_bulk_requests_max ");
+      writer.write(Integer.toString(maxRequests));
+      writer.write('\n');
+    }
+  }
+
+
+
+  /**
+   * Write the monitor data provided by the backend.
+   *
+   * @throws IOException  If an error occurs while writing the data.
+   */
+  private void writeBackendData()
+      throws IOException
+  {
+    final Map<String, Map<String, Long>> data =
+        application.getBackend().getMonitorData();
+    if (data.isEmpty())
+    {
+      return;
+    }
+
+    writeFamily("scim_backend", "unknown",
+                "Statistics provided by the SCIM backend.");
+    for (final Map.Entry<String, Map<String, Long>> monitored :
+        data.entrySet())
+    {
+      for (final Map.Entry<String, Long> stat :
+          monitored.getValue().entrySet())
+      {
+        writer.write("scim_backend{name=\"");
+        writeLabelValue(monitored.getKey());
+        writer.write("\",stat=\"");
+        writeLabelValue(stat.getKey());
+        writer.write("\"} ");
+        writer.write(Long.toString(stat.getValue()));
+        writer.write('\n');
+      }
+    }
+  }
+
+
+
+  /**
+   * Write the metadata of a metric family.
+   *
+   * @param name  The name of the metric family.
+   * @param type  The type of the metric family.
+   * @param help  The description of the metric family.
+   *
+   * @throws IOException  If an error occurs while writing the data.
+   */
+  private void writeFamily(final String name, final String type,
+                           final String help)
+      throws IOException
+  {
+    writer.write("# TYPE ");
+    writer.write(name);
+    writer.write(' ');
+    writer.write(type);
+    writer.write("\n# HELP ");
+    writer.write(name);
+    writer.write(' ');
+    writer.write(help);
+    writer.write('\n');
+  }
+
+
+
+  /**
+   * Write the labels of a sample for an operation on a resource, followed by
+   * the space that precedes the value of the sample.
+   *
+   * @param stats       The statistics of the resource.
+   * @param operation   The name of the operation.
+   * @param phase       The phase of processing the requests, or {@code null}
+   *                    if the sample is not for a phase.
+   * @param boundMicros The upper bound of a histogram bucket in microseconds,
+   *                    {@code Long.MAX_VALUE} for the bucket with no upper
+   *                    bound, or {@code null} if the sample is not a bucket.
+   *
+   * @throws IOException  If an error occurs while writing the data.
+   */
+  private void writeOperationLabels(final ResourceStats stats,
+                                    final String operation,
+                                    final RequestPhase phase,
+                                    final Long boundMicros)
+      throws IOException
+  {
+    writer.write("{resource=\"");
+    writeLabelValue(stats.getName());
+    writer.write("\",operation=\"");
+    writeLabelValue(operation);
+    if (phase != null)
+    {
+      writer.write("\",phase=\"");
+      writeLabelValue(phase.getName());
+    }
+    if (boundMicros != null)
+    {
+      writer.write("\",le=\"");
+      if (boundMicros == Long.MAX_VALUE)
+      {
+        writer.write("+Inf");
+      }
+      else
+      {
+        writeSeconds(boundMicros);
+      }
+    }
+    writer.write("\"} ");
+  }
+
+
+
+  /**
+   * Write a label value, escaping the characters that must be escaped.
+   *
+   * @param value  The label value.
+   *
+   * @throws IOException  If an error occurs while writing the data.
+   */
+  private void writeLabelValue(final String value)
+      throws IOException
+  {
+    for (int i = 0; i < value.length(); i++)
+    {
+      final char c = value.charAt(i);
+      switch (c)
+      {
+        case '\\':
+          writer.write("\\\\");
+          break;
+        case '"':
+          writer.write("\\\"");
+          break;
+        case '\n':
+          writer.write("\\n");
+          break;
+        default:
+          writer.write(c);
+          break;
+      }
+    }
+  }
+
+
+
+  /**
+   * Write a number of microseconds as an exact decimal number of seconds.
+   *
+   * @param micros  The number of microseconds.
+   *
+   * @throws IOException  If an error occurs while writing the data.
+   */
+  private void writeSeconds(final long micros)
+      throws IOException
+  {
+    writer.write(Long.toString(micros / 1000000));
+    writer.write('.');
+    writeFraction(micros % 1000000, 6);
+  }
+
+
+
+  /**
+   * Write the digits of the fractional part of a decimal number.
+   *
+   * @param fraction  The fractional part, as a number of units of the
+   *                  smallest digit.
+   * @param digits    The number of digits to write.
+   *
+   * @throws IOException  If an error occurs while writing the data.
+   */
+  private void writeFraction(final long fraction, final int digits)
+      throws IOException
+  {
+    final String value = Long.toString(fraction);
+    for (int i = value.length(); i < digits; i++)
+    {
+      writer.write('0');
+    }
+    writer.write(value);
+  }
+}
@@ -17,6 +17,8 @@
 
 package com.unboundid.scim.wink;
 
+import com.unboundid.scim.sdk.RequestTimer;
+
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
@@ -76,6 +78,12 @@ public class RequestContext
    */
   private final long contentLength;
 
+  /**
+   * The timer for the phases of processing the request, which is started
+   * when the request context is created.
+   */
+  private final RequestTimer timer = new RequestTimer();
+
 
 
   /**
@@ -235,4 +243,15 @@ public class RequestContext
   {
     return contentLength;
   }
+
+
+
+  /**
+   * Retrieve the timer for the phases of processing the request.
+   * @return The timer for the phases of processing the request.
+   */
+  public RequestTimer getTimer()
+  {
+    return timer;
+  }
 }
@@ -17,10 +17,15 @@
 
 package com.unboundid.scim.wink;
 
+import com.unboundid.scim.sdk.RequestPhase;
+import com.unboundid.scim.sdk.RequestTimer;
+
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * This class holds various statistics of each SCIM resource being served.
@@ -361,9 +366,105 @@ public class ResourceStats
    */
   public static final String DELETE_NOT_IMPLEMENTED = "delete-505";
 
+
+  /**
+   * The name of the get operation for latency statistics.
+   */
+  public static final String GET = "get";
+
+  /**
+   * The name of the query operation for latency statistics.
+   */
+  public static final String QUERY = "query";
+
+  /**
+   * The name of the post operation for latency statistics.
+   */
+  public static final String POST = "post";
+
+  /**
+   * The name of the put operation for latency statistics.
+   */
+  public static final String PUT = "put";
+
+  /**
+   * The name of the patch operation for latency statistics.
+   */
+  public static final String PATCH = "patch";
+
+  /**
+   * The name of the delete operation for latency statistics.
+   */
+  public static final String DELETE = "delete";
+
+  /**
+   * The name of the bulk operation for latency statistics.
+   */
+  public static final String BULK = "bulk";
+
+  /**
+   * The greatest response status code that has its own counter in the
+   * status counters of an operation.
+   */
+  private static final int MAX_STATUS_CODE = 599;
+
   private final String name;
-  private final ConcurrentHashMap<String, AtomicLong> stats =
-      new ConcurrentHashMap<String, AtomicLong>();
+  private final ConcurrentHashMap<String, StripedCounter> stats =
+      new ConcurrentHashMap<String, StripedCounter>();
+
+  /**
+   * The counters for the response status codes of each operation, keyed by
+   * operation name and indexed by status code, so that a response status
+   * can be counted without building the name of its statistic. The counters
+   * are also in the map of all statistics.
+   */
+  private final ConcurrentHashMap<String,
+      AtomicReferenceArray<StripedCounter>> statusStats =
+      new ConcurrentHashMap<String, AtomicReferenceArray<StripedCounter>>();
+
+  /**
+   * The counters of the statistics whose names are fixed, keyed by
+   * statistic name. This map is only modified while this instance is
+   * constructed.
+   */
+  private final Map<String, Counter> fixedCounters =
+      new HashMap<String, Counter>();
+
+  /**
+   * The counters of the Get operations that complete.
+   */
+  final OperationCounters gets = new OperationCounters(GET);
+
+  /**
+   * The counters of the query operations that complete.
+   */
+  final OperationCounters queries = new OperationCounters(QUERY);
+
+  /**
+   * The counters of the Post operations that complete.
+   */
+  final OperationCounters posts = new OperationCounters(POST);
+
+  /**
+   * The counters of the Put operations that complete.
+   */
+  final OperationCounters puts = new OperationCounters(PUT);
+
+  /**
+   * The counters of the Patch operations that complete.
+   */
+  final OperationCounters patches = new OperationCounters(PATCH);
+
+  /**
+   * The counters of the Delete operations that complete.
+   */
+  final OperationCounters deletes = new OperationCounters(DELETE);
+
+  /**
+   * The latency histograms for the current time window. A new window is
+   * created when the window is reset.
+   */
+  private volatile LatencyWindow latencyWindow = new LatencyWindow();
 
   /**
    * Create a new ResourceStats instance with the provided name.
@@ -382,17 +483,84 @@ public class ResourceStats
    */
   void incrementStat(final String stat)
   {
-    AtomicLong num = stats.get(stat);
-    if(num == null)
+    getCounter(stat).increment();
+  }
+
+  /**
+   * Adds to a single statistical value.
+   *
+   * @param stat  The name of the statistical value to add to.
+   * @param delta The amount to add.
+   */
+  void addStat(final String stat, final long delta)
+  {
+    getCounter(stat).add(delta);
+  }
+
+  /**
+   * Increments the statistical value that counts the responses of an
+   * operation with a given status code, such as {@link #GET_NOT_FOUND} for
+   * the {@link #GET} operation and status code 404.
+   *
+   * @param operation  The name of the operation, such as {@link #GET}.
+   * @param statusCode The response status code.
+   */
+  void incrementStat(final String operation, final int statusCode)
+  {
+    if(statusCode < 0 || statusCode > MAX_STATUS_CODE)
+    {
+      incrementStat(operation + "-" + statusCode);
+      return;
+    }
+
+    AtomicReferenceArray<StripedCounter> counters =
+        statusStats.get(operation);
+    if(counters == null)
     {
-      num = new AtomicLong();
-      AtomicLong prev = stats.putIfAbsent(stat, num);
+      counters = new AtomicReferenceArray<StripedCounter>(MAX_STATUS_CODE + 1);
+      AtomicReferenceArray<StripedCounter> prev =
+          statusStats.putIfAbsent(operation, counters);
       if(prev != null)
       {
-        num = prev;
+        counters = prev;
       }
     }
-    num.getAndIncrement();
+
+    StripedCounter counter = counters.get(statusCode);
+    if(counter == null)
+    {
+      counter = getCounter(operation + "-" + statusCode);
+      counters.set(statusCode, counter);
+    }
+    counter.increment();
+  }
+
+  /**
+   * Retrieves the counter for a statistical value, creating it if it does
+   * not yet exist.
+   *
+   * @param stat The name of the statistical value.
+   * @return The counter for the statistical value.
+   */
+  private StripedCounter getCounter(final String stat)
+  {
+    StripedCounter counter = stats.get(stat);
+    if(counter == null)
+    {
+      final Counter fixedCounter = fixedCounters.get(stat);
+      if(fixedCounter != null)
+      {
+        return fixedCounter.register();
+      }
+
+      counter = new StripedCounter();
+      StripedCounter prev = stats.putIfAbsent(stat, counter);
+      if(prev != null)
+      {
+        counter = prev;
+      }
+    }
+    return counter;
   }
 
   /**
@@ -403,7 +571,7 @@ public class ResourceStats
    */
   public long getStat(final String stat)
   {
-    AtomicLong i = stats.get(stat);
+    StripedCounter i = stats.get(stat);
     if(i != null)
     {
       return i.get();
@@ -419,13 +587,171 @@ public class ResourceStats
   public Map<String, Long> getStats()
   {
     Map<String, Long> map = new HashMap<String, Long>(stats.size());
-    for(Map.Entry<String, AtomicLong> entry : stats.entrySet())
+    for(Map.Entry<String, StripedCounter> entry : stats.entrySet())
     {
       map.put(entry.getKey(), entry.getValue().get());
     }
     return map;
   }
 
+  /**
+   * Records the latency of a request in the current time window.
+   *
+   * @param operation The name of the operation, such as {@link #GET}.
+   * @param nanos     The time taken to process the request, in nanoseconds.
+   */
+  void recordLatency(final String operation, final long nanos)
+  {
+    final ConcurrentHashMap<String, LatencyHistogram> histograms =
+        latencyWindow.latencies;
+    LatencyHistogram histogram = histograms.get(operation);
+    if(histogram == null)
+    {
+      histogram = new LatencyHistogram();
+      LatencyHistogram prev = histograms.putIfAbsent(operation, histogram);
+      if(prev != null)
+      {
+        histogram = prev;
+      }
+    }
+    histogram.record(nanos);
+  }
+
+  /**
+   * Retrieves the latency histograms of the operations that have been
+   * requested in the current time window.
+   *
+   * @return The latency histograms keyed by operation name.
+   */
+  public Map<String, LatencyHistogram> getLatencies()
+  {
+    return new HashMap<String, LatencyHistogram>(latencyWindow.latencies);
+  }
+
+  /**
+   * Records the time spent in one phase of processing a request in the
+   * current time window.
+   *
+   * @param operation The name of the operation, such as {@link #GET}.
+   * @param phase     The phase of processing the request.
+   * @param nanos     The time spent in the phase, in nanoseconds.
+   */
+  void recordPhaseLatency(final String operation, final RequestPhase phase,
+                          final long nanos)
+  {
+    final ConcurrentHashMap<String, AtomicReferenceArray<LatencyHistogram>>
+        phases = latencyWindow.phaseLatencies;
+    AtomicReferenceArray<LatencyHistogram> histograms = phases.get(operation);
+    if(histograms == null)
+    {
+      histograms = new AtomicReferenceArray<LatencyHistogram>(
+          RequestPhase.values().length);
+      AtomicReferenceArray<LatencyHistogram> prev =
+          phases.putIfAbsent(operation, histograms);
+      if(prev != null)
+      {
+        histograms = prev;
+      }
+    }
+
+    LatencyHistogram histogram = histograms.get(phase.ordinal());
+    if(histogram == null)
+    {
+      histograms.compareAndSet(phase.ordinal(), null, new LatencyHistogram());
+      histogram = histograms.get(phase.ordinal());
+    }
+    histogram.record(nanos);
+  }
+
+  /**
+   * Records the latency of a request, the time spent in each phase of
+   * processing it, and the number and total duration of the operations it
+   * made on other systems. The operations are counted by statistics such as
+   * {@code query-ldap-search} and {@code query-ldap-search-micros}.
+   *
+   * @param operation The name of the operation, such as {@link #GET}.
+   * @param timer     The stopped timer of the request.
+   */
+  void recordRequest(final String operation, final RequestTimer timer)
+  {
+    recordLatency(operation, timer.getElapsedNanos());
+    for(final RequestPhase phase : RequestPhase.values())
+    {
+      final long nanos = timer.getNanos(phase);
+      if(nanos > 0)
+      {
+        recordPhaseLatency(operation, phase, nanos);
+      }
+    }
+    for(final String timed : timer.getOperations())
+    {
+      final String stat = operation + "-" + timed;
+      addStat(stat, timer.getOperationCount(timed));
+      addStat(stat + "-micros",
+              TimeUnit.NANOSECONDS.toMicros(timer.getOperationNanos(timed)));
+    }
+  }
+
+  /**
+   * Retrieves the histogram of the time spent in one phase of processing the
+   * requests of an operation in the current time window.
+   *
+   * @param operation The name of the operation, such as {@link #GET}.
+   * @param phase     The phase of processing the requests.
+   * @return The latency histogram of the phase, or {@code null} if no time
+   * has been recorded for the phase.
+   */
+  public LatencyHistogram getPhaseLatency(final String operation,
+                                          final RequestPhase phase)
+  {
+    final AtomicReferenceArray<LatencyHistogram> histograms =
+        latencyWindow.phaseLatencies.get(operation);
+    return histograms == null ? null : histograms.get(phase.ordinal());
+  }
+
+  /**
+   * Retrieves the counters of the statistical values that are present,
+   * without copying them.
+   *
+   * @return The counters keyed by the name of the statistical value.
+   */
+  Set<Map.Entry<String, StripedCounter>> getCounters()
+  {
+    return stats.entrySet();
+  }
+
+  /**
+   * Retrieves the latency histograms of the operations that have been
+   * requested in the current time window, without copying them.
+   *
+   * @return The latency histograms keyed by operation name.
+   */
+  Set<Map.Entry<String, LatencyHistogram>> getLatencyHistograms()
+  {
+    return latencyWindow.latencies.entrySet();
+  }
+
+  /**
+   * Retrieves the time at which the current latency time window began.
+   *
+   * @return The time in milliseconds at which the current latency time window
+   * began.
+   */
+  public long getLatencyWindowStart()
+  {
+    return latencyWindow.start;
+  }
+
+  /**
+   * Discards the latencies recorded so far and begins a new time window.
+   * Requests that are being processed when the window is reset may be
+   * recorded in either window.
+   */
+  public void resetLatencies()
+  {
+    latencyWindow = new LatencyWindow();
+  }
+
   /**
    * Retrieves the name of this ResourceStats instance, usually the name of
    * the SCIM resource being served.
@@ -436,4 +762,146 @@ public class ResourceStats
   public String getName() {
     return name;
   }
+
+  /**
+   * The counter of a statistic whose name is fixed. The counter is held in a
+   * field so that a request updates it without looking it up by name, and
+   * it is only added to the map of all statistics when it is first updated.
+   */
+  final class Counter
+  {
+    /**
+     * The name of the statistic.
+     */
+    private final String stat;
+
+    /**
+     * The counter of the statistic.
+     */
+    private final StripedCounter counter = new StripedCounter();
+
+    /**
+     * Indicates whether the counter is in the map of all statistics.
+     */
+    private volatile boolean registered = false;
+
+
+
+    /**
+     * Create the counter of a statistic whose name is fixed.
+     *
+     * @param stat  The name of the statistic.
+     */
+    private Counter(final String stat)
+    {
+      this.stat = stat;
+      fixedCounters.put(stat, this);
+    }
+
+
+
+    /**
+     * Increment the statistic by one.
+     */
+    void increment()
+    {
+      if(!registered)
+      {
+        register();
+      }
+      counter.increment();
+    }
+
+
+
+    /**
+     * Add the counter to the map of all statistics, if it is not already
+     * there.
+     *
+     * @return  The counter of the statistic.
+     */
+    private StripedCounter register()
+    {
+      stats.putIfAbsent(stat, counter);
+      registered = true;
+      return counter;
+    }
+  }
+
+
+
+  /**
+   * The counters of the statistics of an operation whose names are fixed.
+   */
+  final class OperationCounters
+  {
+    /**
+     * The number of requests that were successful.
+     */
+    final Counter ok;
+
+    /**
+     * The number of requests with JSON content.
+     */
+    final Counter contentJSON;
+
+    /**
+     * The number of requests with XML content.
+     */
+    final Counter contentXML;
+
+    /**
+     * The number of responses with JSON content.
+     */
+    final Counter responseJSON;
+
+    /**
+     * The number of responses with XML content.
+     */
+    final Counter responseXML;
+
+
+
+    /**
+     * Create the counters of an operation.
+     *
+     * @param operation  The name of the operation, such as {@link #GET}.
+     */
+    private OperationCounters(final String operation)
+    {
+      ok           = new Counter(operation + "-successful");
+      contentJSON  = new Counter(operation + "-content-json");
+      contentXML   = new Counter(operation + "-content-xml");
+      responseJSON = new Counter(operation + "-response-json");
+      responseXML  = new Counter(operation + "-response-xml");
+    }
+  }
+
+
+
+  /**
+   * The latency histograms recorded in a time window.
+   */
+  private static final class LatencyWindow
+  {
+    /**
+     * The time in milliseconds at which the window began.
+     */
+    private final long start = System.currentTimeMillis();
+
+    /**
+     * The latency histograms of whole requests, keyed by operation name.
+     */
+    private final ConcurrentHashMap<String, LatencyHistogram> latencies =
+        new ConcurrentHashMap<String, LatencyHistogram>();
+
+    /**
+     * The latency histograms of the phases of requests, keyed by operation
+     * name and indexed by the ordinal of the phase.
+     */
+    private final ConcurrentHashMap<String,
+        AtomicReferenceArray<LatencyHistogram>> phaseLatencies =
+        new ConcurrentHashMap<String,
+            AtomicReferenceArray<LatencyHistogram>>();
+  }
 }
@@ -38,9 +38,10 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static com.unboundid.scim.sdk.SCIMConstants.SCHEMA_URI_CORE;
 
@@ -51,7 +52,7 @@ import static com.unboundid.scim.sdk.SCIMConstants.SCHEMA_URI_CORE;
  */
 public class SCIMApplication extends WinkApplication
 {
-  private final Map<String,ResourceStats> resourceStats;
+  private final ConcurrentHashMap<String,ResourceStats> resourceStats;
   private final SCIMBackend backend;
   private final boolean supportsOAuth;
   private volatile long bulkMaxOperations = Long.MAX_VALUE;
@@ -59,6 +60,13 @@ public class SCIMApplication extends WinkApplication
   private volatile File tmpDataDir = null;
   private AdjustableSemaphore bulkMaxConcurrentRequestsSemaphore =
       new AdjustableSemaphore(Integer.MAX_VALUE);
+  private volatile ExecutorService bulkOperationExecutor = null;
+  private volatile int bulkMaxConcurrentOperations = 1;
+  private volatile int serverTimingInterval = 0;
+  private final AtomicLong serverTimingRequests = new AtomicLong();
+  private volatile SlowRequestLog slowRequestLog = null;
+  private volatile boolean slowRequestValuesRedacted = true;
+  private volatile boolean monitorResetAllowed = false;
 
 
   /**
@@ -93,7 +101,7 @@ public class SCIMApplication extends WinkApplication
     register(new HttpMethodOverrideFilter());
     register(new RequestParamFilter());
 
-    this.resourceStats = new HashMap<String, ResourceStats>();
+    this.resourceStats = new ConcurrentHashMap<String, ResourceStats>();
     this.backend = backend;
 
     if (tokenHandler != null)
@@ -133,7 +141,11 @@ public class SCIMApplication extends WinkApplication
     if(stats == null)
     {
       stats = new ResourceStats(resourceName);
-      resourceStats.put(resourceName, stats);
+      ResourceStats prev = resourceStats.putIfAbsent(resourceName, stats);
+      if(prev != null)
+      {
+        stats = prev;
+      }
     }
     return stats;
   }
@@ -229,6 +241,206 @@ public class SCIMApplication extends WinkApplication
 
 
 
+  /**
+   * Specify an executor on which independent operations of a bulk request
+   * may be processed concurrently. Operations are independent when they do
+   * not refer to the bulkId of an earlier operation that has not yet been
+   * processed and do not target the same resource as such an operation. The
+   * responses are always written in the order of the operations. The
+   * executor is owned by the caller and should be bounded, since each
+   * concurrent operation occupies one of its threads while the backend
+   * processes it.
+   *
+   * @param executor                 The executor on which operations may be
+   *                                 processed concurrently, or {@code null}
+   *                                 if operations are to be processed one
+   *                                 after another.
+   * @param maxConcurrentOperations  The maximum number of operations of a
+   *                                 bulk request that may be in progress at
+   *                                 the same time.
+   */
+  public void setBulkOperationExecutor(final ExecutorService executor,
+                                       final int maxConcurrentOperations)
+  {
+    this.bulkOperationExecutor = executor;
+    this.bulkMaxConcurrentOperations = Math.max(maxConcurrentOperations, 1);
+  }
+
+
+
+  /**
+   * Retrieve the executor on which independent operations of a bulk request
+   * may be processed concurrently.
+   *
+   * @return  The executor on which operations may be processed concurrently,
+   *          or {@code null} if operations are processed one after another.
+   */
+  public ExecutorService getBulkOperationExecutor()
+  {
+    return bulkOperationExecutor;
+  }
+
+
+
+  /**
+   * Retrieve the maximum number of operations of a bulk request that may be
+   * in progress at the same time.
+   *
+   * @return  The maximum number of operations of a bulk request that may be
+   *          in progress at the same time.
+   */
+  public int getBulkMaxConcurrentOperations()
+  {
+    return bulkOperationExecutor == null ? 1 : bulkMaxConcurrentOperations;
+  }
+
+
+
+  /**
+   * Specify how often the times spent in each phase of processing a request
+   * are returned to the client in a {@code Server-Timing} response header.
+   * The header is sent before the response content, so it does not include
+   * the time taken to write the content. The times are always recorded in
+   * the resource statistics, including the time taken to write the content.
+   *
+   * @param serverTimingInterval  The header is returned with one in every
+   *                              this many requests, or never if this is
+   *                              zero or less.
+   */
+  public void setServerTimingInterval(final int serverTimingInterval)
+  {
+    this.serverTimingInterval = serverTimingInterval;
+  }
+
+
+
+  /**
+   * Retrieve how often the times spent in each phase of processing a request
+   * are returned to the client in a {@code Server-Timing} response header.
+   *
+   * @return  The header is returned with one in every this many requests, or
+   *          never if this is zero or less.
+   */
+  public int getServerTimingInterval()
+  {
+    return serverTimingInterval;
+  }
+
+
+
+  /**
+   * Determine whether the times of the request being completed are to be
+   * returned in a {@code Server-Timing} response header.
+   *
+   * @return  {@code true} if the times of the request are to be returned.
+   */
+  boolean isServerTimingSampled()
+  {
+    final int interval = serverTimingInterval;
+    return interval > 0 &&
+        serverTimingRequests.incrementAndGet() % interval == 0;
+  }
+
+
+
+  /**
+   * Specify whether requests that take longer than a threshold to process
+   * are to be kept for the monitor, with the times of their phases and the
+   * operations they made on the backend's directory. Enabling the log makes
+   * every request trace its operations, but a request that completes within
+   * the threshold is not otherwise affected. Any requests already kept are
+   * discarded.
+   *
+   * @param thresholdMillis  The latency in milliseconds above which a
+   *                         request is kept.
+   * @param maxRequests      The number of the most recent slow requests to
+   *                         keep, or zero to disable the log.
+   */
+  public void setSlowRequestLog(final long thresholdMillis,
+                                final int maxRequests)
+  {
+    if (maxRequests > 0)
+    {
+      slowRequestLog = new SlowRequestLog(thresholdMillis, maxRequests);
+    }
+    else
+    {
+      slowRequestLog = null;
+    }
+  }
+
+
+
+  /**
+   * Retrieve the log of requests that took longer than a threshold to
+   * process.
+   *
+   * @return  The slow request log, or {@code null} if it is disabled.
+   */
+  SlowRequestLog getSlowRequestLog()
+  {
+    return slowRequestLog;
+  }
+
+
+
+  /**
+   * Specify whether the resource IDs in the paths, and the values of the
+   * filters and the DNs, of the slow requests returned by the monitor are to
+   * be redacted, since they may contain personal data. Values are redacted
+   * by default.
+   *
+   * @param slowRequestValuesRedacted  {@code true} if the values are to be
+   *                                   redacted.
+   */
+  public void setSlowRequestValuesRedacted(
+      final boolean slowRequestValuesRedacted)
+  {
+    this.slowRequestValuesRedacted = slowRequestValuesRedacted;
+  }
+
+
+
+  /**
+   * Determine whether the resource IDs in the paths, and the values of the
+   * filters and the DNs, of the slow requests returned by the monitor are to
+   * be redacted.
+   *
+   * @return  {@code true} if the values are to be redacted.
+   */
+  boolean isSlowRequestValuesRedacted()
+  {
+    return slowRequestValuesRedacted;
+  }
+
+
+
+  /**
+   * Specify whether authenticated clients may reset the latency statistics
+   * and the slow request log with a DELETE request on the monitor. This is
+   * not allowed by default.
+   *
+   * @param monitorResetAllowed  {@code true} if the monitor may be reset.
+   */
+  public void setMonitorResetAllowed(final boolean monitorResetAllowed)
+  {
+    this.monitorResetAllowed = monitorResetAllowed;
+  }
+
+
+
+  /**
+   * Determine whether authenticated clients may reset the monitor.
+   *
+   * @return  {@code true} if the monitor may be reset.
+   */
+  boolean isMonitorResetAllowed()
+  {
+    return monitorResetAllowed;
+  }
+
+
+
   /**
    * Return the directory that should be used to store temporary files, or
    * {@code null} for the system dependent default temporary-file
@@ -280,6 +492,32 @@ public class SCIMApplication extends WinkApplication
 
 
 
+  /**
+   * Retrieve the maximum number of concurrent bulk requests.
+   *
+   * @return  The maximum number of concurrent bulk requests, or
+   *          {@code Integer.MAX_VALUE} if there is no limit.
+   */
+  public int getBulkMaxConcurrentRequests()
+  {
+    return bulkMaxConcurrentRequestsSemaphore.getMaxPermits();
+  }
+
+
+
+  /**
+   * Retrieve the number of bulk requests currently being processed.
+   *
+   * @return  The number of bulk requests currently being processed.
+   */
+  public int getBulkConcurrentRequests()
+  {
+    return Math.max(bulkMaxConcurrentRequestsSemaphore.getMaxPermits() -
+                    bulkMaxConcurrentRequestsSemaphore.availablePermits(), 0);
+  }
+
+
+
   /**
    * Release a permit to process a bulk request.
    */
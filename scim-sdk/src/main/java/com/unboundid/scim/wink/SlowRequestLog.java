@@ -0,0 +1,725 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.wink;
+
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.RDN;
+import com.unboundid.scim.sdk.Debug;
+import com.unboundid.scim.sdk.OperationTrace;
+import com.unboundid.scim.sdk.RequestPhase;
+import com.unboundid.scim.sdk.RequestTimer;
+import com.unboundid.scim.sdk.SCIMException;
+import com.unboundid.scim.sdk.SCIMFilter;
+
+import javax.ws.rs.core.MultivaluedMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static com.unboundid.scim.sdk.SCIMConstants.QUERY_PARAMETER_ATTRIBUTES;
+import static com.unboundid.scim.sdk.SCIMConstants.QUERY_PARAMETER_FILTER;
+
+/**
+ * This class keeps the most recent requests that took longer than a
+ * threshold to process, in a ring buffer of fixed size. Each request is kept
+ * with the times of its phases and the traces of the operations it made on
+ * other systems, such as LDAP searches. A request that completes within the
+ * threshold costs only the comparison of its latency with the threshold.
+ * <p>
+ * The paths, filters and DNs of a request may contain personal data, so
+ * this class also provides the means to redact their values before they are
+ * returned by the monitor.
+ */
+final class SlowRequestLog
+{
+  /**
+   * The value that replaces each value redacted from a filter or a DN.
+   */
+  static final String REDACTED_VALUE = "?";
+
+  /**
+   * The value that replaces each segment redacted from a path, which would
+   * be read as the start of a query string if it were
+   * {@link #REDACTED_VALUE}.
+   */
+  static final String REDACTED_PATH_SEGMENT = "{redacted}";
+
+  /**
+   * The latency in nanoseconds above which a request is kept.
+   */
+  private final long thresholdNanos;
+
+  /**
+   * The ring buffer of slow requests.
+   */
+  private final AtomicReferenceArray<SlowRequest> requests;
+
+  /**
+   * The number of slow requests that have been added to the ring buffer.
+   */
+  private final AtomicLong requestCount = new AtomicLong();
+
+
+
+  /**
+   * Create a new slow request log.
+   *
+   * @param thresholdMillis  The latency in milliseconds above which a request
+   *                         is kept.
+   * @param maxRequests      The number of slow requests kept.
+   */
+  SlowRequestLog(final long thresholdMillis, final int maxRequests)
+  {
+    this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+    this.requests = new AtomicReferenceArray<SlowRequest>(maxRequests);
+  }
+
+
+
+  /**
+   * Retrieve the latency above which a request is kept.
+   *
+   * @return  The latency in milliseconds above which a request is kept.
+   */
+  long getThresholdMillis()
+  {
+    return TimeUnit.NANOSECONDS.toMillis(thresholdNanos);
+  }
+
+
+
+  /**
+   * Keep a request if it took longer than the threshold, replacing the
+   * oldest request kept if the ring buffer is full.
+   *
+   * @param requestContext  The context of the request, whose timer has been
+   *                        stopped.
+   * @param resource        The name of the resource requested, or
+   *                        {@code null} if the endpoint requested is not
+   *                        valid.
+   * @param operation       The name of the operation, such as
+   *                        {@link ResourceStats#GET}.
+   */
+  void record(final RequestContext requestContext, final String resource,
+              final String operation)
+  {
+    final RequestTimer timer = requestContext.getTimer();
+    if (timer.getElapsedNanos() <= thresholdNanos)
+    {
+      return;
+    }
+
+    final MultivaluedMap<String, String> params =
+        requestContext.getUriInfo().getQueryParameters();
+    record(timer, resource, operation,
+           requestContext.getRequest() == null ?
+           null : requestContext.getRequest().getMethod(),
+           requestContext.getUriInfo().getPath(),
+           params.getFirst(QUERY_PARAMETER_FILTER),
+           params.getFirst(QUERY_PARAMETER_ATTRIBUTES));
+  }
+
+
+
+  /**
+   * Keep a request if it took longer than the threshold, replacing the
+   * oldest request kept if the ring buffer is full.
+   *
+   * @param timer       The timer of the request, which has been stopped.
+   * @param resource    The name of the resource requested, or {@code null}
+   *                    if the endpoint requested is not valid.
+   * @param operation   The name of the operation, such as
+   *                    {@link ResourceStats#GET}.
+   * @param method      The HTTP method of the request, or {@code null} if it
+   *                    is not known.
+   * @param path        The path of the request, relative to the base URI of
+   *                    the application.
+   * @param filter      The filter parameter of the request, or {@code null}
+   *                    if there was none.
+   * @param attributes  The attributes parameter of the request, or
+   *                    {@code null} if there was none.
+   */
+  void record(final RequestTimer timer, final String resource,
+              final String operation, final String method, final String path,
+              final String filter, final String attributes)
+  {
+    final long elapsedNanos = timer.getElapsedNanos();
+    if (elapsedNanos <= thresholdNanos)
+    {
+      return;
+    }
+
+    final SlowRequest request = new SlowRequest(timer, resource, operation,
+        method, path, filter, attributes, elapsedNanos);
+    final int index =
+        (int) (requestCount.getAndIncrement() % requests.length());
+    requests.set(index, request);
+  }
+
+
+
+  /**
+   * Retrieve the slow requests that are kept.
+   *
+   * @return  The slow requests that are kept, slowest first.
+   */
+  List<SlowRequest> getRequests()
+  {
+    final List<SlowRequest> list = new ArrayList<SlowRequest>();
+    for (int i = 0; i < requests.length(); i++)
+    {
+      final SlowRequest request = requests.get(i);
+      if (request != null)
+      {
+        list.add(request);
+      }
+    }
+
+    Collections.sort(list, new Comparator<SlowRequest>()
+    {
+      public int compare(final SlowRequest r1, final SlowRequest r2)
+      {
+        if (r1.elapsedNanos == r2.elapsedNanos)
+        {
+          return 0;
+        }
+        return r1.elapsedNanos > r2.elapsedNanos ? -1 : 1;
+      }
+    });
+    return list;
+  }
+
+
+
+  /**
+   * Discard all of the slow requests that are kept.
+   */
+  void clear()
+  {
+    for (int i = 0; i < requests.length(); i++)
+    {
+      requests.set(i, null);
+    }
+  }
+
+
+
+  /**
+   * Redact the segments of a path that follow the endpoint, such as the ID
+   * of the resource requested. The endpoint, and a .json or .xml suffix that
+   * selects the media type, are kept.
+   *
+   * @param path  The path, or {@code null} if there is none.
+   *
+   * @return  The path with each segment after the endpoint replaced by
+   *          {@link #REDACTED_PATH_SEGMENT}, or {@code null} if there is no
+   *          path.
+   */
+  static String redactPath(final String path)
+  {
+    if (path == null)
+    {
+      return null;
+    }
+
+    final StringBuilder builder = new StringBuilder(path.length());
+    final String[] segments = path.split("/", -1);
+    boolean endpoint = true;
+    for (int i = 0; i < segments.length; i++)
+    {
+      final String segment = segments[i];
+      if (i > 0)
+      {
+        builder.append('/');
+      }
+      if (segment.length() == 0)
+      {
+        continue;
+      }
+      if (endpoint)
+      {
+        builder.append(segment);
+        endpoint = false;
+        continue;
+      }
+
+      builder.append(REDACTED_PATH_SEGMENT);
+      if (segment.endsWith(".json") || segment.endsWith(".xml"))
+      {
+        builder.append(segment.substring(segment.lastIndexOf('.')));
+      }
+    }
+    return builder.toString();
+  }
+
+
+
+  /**
+   * Redact the values of a SCIM filter, keeping its attributes and
+   * operators.
+   *
+   * @param filter  The SCIM filter, or {@code null} if there is none.
+   *
+   * @return  The SCIM filter with each value replaced by
+   *          {@link #REDACTED_VALUE}, or {@code null} if there is no filter.
+   */
+  static String redactSCIMFilter(final String filter)
+  {
+    if (filter == null)
+    {
+      return null;
+    }
+
+    try
+    {
+      return redact(SCIMFilter.parse(filter)).toString();
+    }
+    catch (SCIMException e)
+    {
+      Debug.debugException(e);
+      return REDACTED_VALUE;
+    }
+  }
+
+
+
+  /**
+   * Redact the values of the filter of an operation, keeping its attributes
+   * and operators.
+   *
+   * @param filter  The filter of the operation, or {@code null} if there is
+   *                none.
+   *
+   * @return  The filter with each value replaced by {@link #REDACTED_VALUE},
+   *          {@link #REDACTED_VALUE} if the filter is not an LDAP filter, or
+   *          {@code null} if there is no filter.
+   */
+  static String redactLDAPFilter(final Object filter)
+  {
+    if (filter == null)
+    {
+      return null;
+    }
+    else if (filter instanceof Filter)
+    {
+      return redact((Filter) filter).toString();
+    }
+    else
+    {
+      return REDACTED_VALUE;
+    }
+  }
+
+
+
+  /**
+   * Redact the values of the RDN of a DN, which identify the entry. The
+   * values of the parent DN, such as the base DN of the entries of a
+   * resource, are kept.
+   *
+   * @param dn  The DN, or {@code null} if there is none.
+   *
+   * @return  The DN with each value of its RDN replaced by
+   *          {@link #REDACTED_VALUE}, {@link #REDACTED_VALUE} if it is not a
+   *          valid DN, or {@code null} if there is no DN.
+   */
+  static String redactDN(final Object dn)
+  {
+    if (dn == null)
+    {
+      return null;
+    }
+
+    try
+    {
+      final DN parsedDN = new DN(dn.toString());
+      final RDN rdn = parsedDN.getRDN();
+      if (rdn == null)
+      {
+        return parsedDN.toString();
+      }
+
+      final String[] values = new String[rdn.getAttributeNames().length];
+      Arrays.fill(values, REDACTED_VALUE);
+      final RDN redactedRDN = new RDN(rdn.getAttributeNames(), values);
+      final DN parentDN = parsedDN.getParent();
+      if (parentDN == null)
+      {
+        return new DN(redactedRDN).toString();
+      }
+      return new DN(redactedRDN, parentDN).toString();
+    }
+    catch (LDAPException e)
+    {
+      Debug.debugException(e);
+      return REDACTED_VALUE;
+    }
+  }
+
+
+
+  /**
+   * Redact the values of a SCIM filter.
+   *
+   * @param filter  The SCIM filter.
+   *
+   * @return  The SCIM filter with each value replaced by
+   *          {@link #REDACTED_VALUE}.
+   */
+  private static SCIMFilter redact(final SCIMFilter filter)
+  {
+    final List<SCIMFilter> components = filter.getFilterComponents();
+    if (components != null)
+    {
+      final List<SCIMFilter> redactedComponents =
+          new ArrayList<SCIMFilter>(components.size());
+      for (final SCIMFilter component : components)
+      {
+        redactedComponents.add(redact(component));
+      }
+      return new SCIMFilter(filter.getFilterType(), null, null, false,
+                            redactedComponents);
+    }
+
+    return new SCIMFilter(filter.getFilterType(),
+                          filter.getFilterAttribute(),
+                          filter.getFilterValue() == null ?
+                          null : REDACTED_VALUE,
+                          filter.isQuoteFilterValue(), null);
+  }
+
+
+
+  /**
+   * Redact the values of an LDAP filter.
+   *
+   * @param filter  The LDAP filter.
+   *
+   * @return  The LDAP filter with each value replaced by
+   *          {@link #REDACTED_VALUE}.
+   */
+  private static Filter redact(final Filter filter)
+  {
+    switch (filter.getFilterType())
+    {
+      case Filter.FILTER_TYPE_AND:
+      case Filter.FILTER_TYPE_OR:
+        final List<Filter> components = new ArrayList<Filter>();
+        for (final Filter component : filter.getComponents())
+        {
+          components.add(redact(component));
+        }
+        return filter.getFilterType() == Filter.FILTER_TYPE_AND ?
+               Filter.createANDFilter(components) :
+               Filter.createORFilter(components);
+
+      case Filter.FILTER_TYPE_NOT:
+        return Filter.createNOTFilter(redact(filter.getNOTComponent()));
+
+      case Filter.FILTER_TYPE_PRESENCE:
+        return filter;
+
+      case Filter.FILTER_TYPE_SUBSTRING:
+        final String[] subAny =
+            new String[filter.getSubAnyStrings().length];
+        Arrays.fill(subAny, REDACTED_VALUE);
+        return Filter.createSubstringFilter(filter.getAttributeName(),
+            filter.getSubInitialString() == null ? null : REDACTED_VALUE,
+            subAny,
+            filter.getSubFinalString() == null ? null : REDACTED_VALUE);
+
+      case Filter.FILTER_TYPE_GREATER_OR_EQUAL:
+        return Filter.createGreaterOrEqualFilter(filter.getAttributeName(),
+                                                 REDACTED_VALUE);
+
+      case Filter.FILTER_TYPE_LESS_OR_EQUAL:
+        return Filter.createLessOrEqualFilter(filter.getAttributeName(),
+                                              REDACTED_VALUE);
+
+      case Filter.FILTER_TYPE_APPROXIMATE_MATCH:
+        return Filter.createApproximateMatchFilter(filter.getAttributeName(),
+                                                   REDACTED_VALUE);
+
+      case Filter.FILTER_TYPE_EXTENSIBLE_MATCH:
+        return Filter.createExtensibleMatchFilter(filter.getAttributeName(),
+            filter.getMatchingRuleID(), filter.getDNAttributes(),
+            REDACTED_VALUE);
+
+      default:
+        return Filter.createEqualityFilter(filter.getAttributeName(),
+                                           REDACTED_VALUE);
+    }
+  }
+
+
+
+  /**
+   * A request that took longer than the threshold to process.
+   */
+  static final class SlowRequest
+  {
+    /**
+     * The time in milliseconds at which the request completed.
+     */
+    private final long time = System.currentTimeMillis();
+
+    /**
+     * The name of the resource requested, or {@code null} if the endpoint
+     * requested is not valid.
+     */
+    private final String resource;
+
+    /**
+     * The name of the operation.
+     */
+    private final String operation;
+
+    /**
+     * The HTTP method of the request, or {@code null} if it is not known.
+     */
+    private final String method;
+
+    /**
+     * The path of the request, relative to the base URI of the application.
+     */
+    private final String path;
+
+    /**
+     * The filter parameter of the request, or {@code null} if there was none.
+     */
+    private final String filter;
+
+    /**
+     * The attributes parameter of the request, or {@code null} if there was
+     * none.
+     */
+    private final String attributes;
+
+    /**
+     * The number of results returned, or -1 if it is not known.
+     */
+    private final long resultCount;
+
+    /**
+     * The time taken to process the request, in nanoseconds.
+     */
+    private final long elapsedNanos;
+
+    /**
+     * The timer of the request. The timer is read when the request is
+     * retrieved, so that it includes the operations of results that are read
+     * from other systems while the response is written.
+     */
+    private final RequestTimer timer;
+
+
+
+    /**
+     * Create a new slow request from a completed request.
+     *
+     * @param timer         The timer of the request.
+     * @param resource      The name of the resource requested, or
+     *                      {@code null} if the endpoint requested is not
+     *                      valid.
+     * @param operation     The name of the operation.
+     * @param method        The HTTP method of the request, or {@code null}
+     *                      if it is not known.
+     * @param path          The path of the request, relative to the base URI
+     *                      of the application.
+     * @param filter        The filter parameter of the request, or
+     *                      {@code null} if there was none.
+     * @param attributes    The attributes parameter of the request, or
+     *                      {@code null} if there was none.
+     * @param elapsedNanos  The time taken to process the request, in
+     *                      nanoseconds.
+     */
+    private SlowRequest(final RequestTimer timer, final String resource,
+                        final String operation, final String method,
+                        final String path, final String filter,
+                        final String attributes, final long elapsedNanos)
+    {
+      this.timer        = timer;
+      this.resource     = resource;
+      this.operation    = operation;
+      this.method       = method;
+      this.path         = path;
+      this.filter       = filter;
+      this.attributes   = attributes;
+      this.resultCount  = timer.getResultCount();
+      this.elapsedNanos = elapsedNanos;
+    }
+
+
+
+    /**
+     * Retrieve the time at which the request completed.
+     *
+     * @return  The time in milliseconds at which the request completed.
+     */
+    long getTime()
+    {
+      return time;
+    }
+
+
+
+    /**
+     * Retrieve the name of the resource requested.
+     *
+     * @return  The name of the resource requested, or {@code null} if the
+     *          endpoint requested is not valid.
+     */
+    String getResource()
+    {
+      return resource;
+    }
+
+
+
+    /**
+     * Retrieve the name of the operation.
+     *
+     * @return  The name of the operation.
+     */
+    String getOperation()
+    {
+      return operation;
+    }
+
+
+
+    /**
+     * Retrieve the HTTP method of the request.
+     *
+     * @return  The HTTP method of the request, or {@code null} if it is not
+     *          known.
+     */
+    String getMethod()
+    {
+      return method;
+    }
+
+
+
+    /**
+     * Retrieve the path of the request.
+     *
+     * @return  The path of the request, relative to the base URI of the
+     *          application.
+     */
+    String getPath()
+    {
+      return path;
+    }
+
+
+
+    /**
+     * Retrieve the filter parameter of the request.
+     *
+     * @return  The filter parameter of the request, or {@code null} if there
+     *          was none.
+     */
+    String getFilter()
+    {
+      return filter;
+    }
+
+
+
+    /**
+     * Retrieve the attributes parameter of the request.
+     *
+     * @return  The attributes parameter of the request, or {@code null} if
+     *          there was none.
+     */
+    String getAttributes()
+    {
+      return attributes;
+    }
+
+
+
+    /**
+     * Retrieve the number of results returned.
+     *
+     * @return  The number of results returned, or -1 if it is not known.
+     */
+    long getResultCount()
+    {
+      return resultCount;
+    }
+
+
+
+    /**
+     * Retrieve the time taken to process the request.
+     *
+     * @return  The time taken to process the request, in nanoseconds.
+     */
+    long getElapsedNanos()
+    {
+      return elapsedNanos;
+    }
+
+
+
+    /**
+     * Retrieve the time spent in a phase of processing the request.
+     *
+     * @param phase  The phase.
+     *
+     * @return  The time in nanoseconds spent in the phase.
+     */
+    long getNanos(final RequestPhase phase)
+    {
+      return timer.getNanos(phase);
+    }
+
+
+
+    /**
+     * Retrieve the traces of the operations made on other systems.
+     *
+     * @return  The traces of the operations, in the order they completed.
+     */
+    List<OperationTrace> getTraces()
+    {
+      return timer.getTraces();
+    }
+
+
+
+    /**
+     * Retrieve the number of operations that were made but not traced.
+     *
+     * @return  The number of operations that were made but not traced.
+     */
+    int getUntracedCount()
+    {
+      return timer.getUntracedCount();
+    }
+  }
+}
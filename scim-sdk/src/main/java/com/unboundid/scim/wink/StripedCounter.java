@@ -0,0 +1,126 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.wink;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that may be updated by many threads at once without them
+ * contending for the same memory. The count is split over several cells,
+ * each in its own cache line, and a thread updates the cell selected by its
+ * thread ID. The cells are only summed when the count is read, so reading
+ * the count is slower than updating it, and a count read while the counter
+ * is being updated may not include all of the concurrent updates.
+ */
+final class StripedCounter
+{
+  /**
+   * The number of array elements from one cell to the next, so that each
+   * cell is in a separate 64-byte cache line.
+   */
+  private static final int CELL_STRIDE = 8;
+
+  /**
+   * The maximum number of cells.
+   */
+  private static final int MAX_CELLS = 64;
+
+  /**
+   * The number of cells, which is the smallest power of two that is at least
+   * the number of processors, up to {@link #MAX_CELLS}.
+   */
+  private static final int NUM_CELLS = getNumCells();
+
+  /**
+   * The cells of the count.
+   */
+  private final AtomicLongArray cells =
+      new AtomicLongArray(NUM_CELLS * CELL_STRIDE);
+
+
+
+  /**
+   * Increment the count by one.
+   */
+  void increment()
+  {
+    cells.getAndIncrement(getCellIndex());
+  }
+
+
+
+  /**
+   * Add to the count.
+   *
+   * @param delta  The amount to add.
+   */
+  void add(final long delta)
+  {
+    cells.getAndAdd(getCellIndex(), delta);
+  }
+
+
+
+  /**
+   * Retrieve the count.
+   *
+   * @return  The sum of all the cells.
+   */
+  long get()
+  {
+    long sum = 0;
+    for (int i = 0; i < NUM_CELLS; i++)
+    {
+      sum += cells.get(i * CELL_STRIDE);
+    }
+    return sum;
+  }
+
+
+
+  /**
+   * Determine the cell to be updated by the current thread. Thread IDs are
+   * usually allocated sequentially, so the threads of a pool are spread
+   * evenly over the cells.
+   *
+   * @return  The index in the array of the cell.
+   */
+  private static int getCellIndex()
+  {
+    return ((int) Thread.currentThread().getId() & (NUM_CELLS - 1)) *
+           CELL_STRIDE;
+  }
+
+
+
+  /**
+   * Determine the number of cells for each counter.
+   *
+   * @return  The number of cells.
+   */
+  private static int getNumCells()
+  {
+    final int processors = Runtime.getRuntime().availableProcessors();
+    int numCells = 1;
+    while (numCells < processors && numCells < MAX_CELLS)
+    {
+      numCells <<= 1;
+    }
+    return numCells;
+  }
+}
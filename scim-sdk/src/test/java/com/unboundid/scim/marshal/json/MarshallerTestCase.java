@@ -24,9 +24,13 @@ import com.unboundid.scim.data.Entry;
 import com.unboundid.scim.data.Name;
 import com.unboundid.scim.data.UserResource;
 import com.unboundid.scim.marshal.Marshaller;
+import com.unboundid.scim.marshal.ResourcesStreamMarshaller;
 import com.unboundid.scim.marshal.Unmarshaller;
 import com.unboundid.scim.schema.CoreSchema;
+import com.unboundid.scim.sdk.Resources;
+import com.unboundid.scim.sdk.SCIMException;
 import com.unboundid.scim.sdk.SCIMObject;
+import com.unboundid.scim.sdk.StreamingResources;
 import com.unboundid.scim.SCIMTestCase;
 import org.testng.annotations.Test;
 import static org.testng.Assert.assertEquals;
@@ -40,6 +44,8 @@ import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.unboundid.scim.sdk.SCIMConstants.*;
 
@@ -156,4 +162,115 @@ public class MarshallerTestCase
     String marshaledDescriptor = outputStream.toString();
     assertFalse(marshaledDescriptor.contains("\"schemas\":["));
   }
+
+
+
+  /**
+   * Verify that a streaming resources response can be written to JSON and
+   * then read back.
+   *
+   * @throws Exception If the test fails.
+   */
+  @Test
+  public void testMarshalStreamingResources()
+    throws Exception
+  {
+    final UserResource user1 = new UserResource(CoreSchema.USER_DESCRIPTOR);
+    user1.setId("user1");
+    user1.setUserName("bjensen");
+
+    final UserResource user2 = new UserResource(CoreSchema.USER_DESCRIPTOR);
+    user2.setId("user2");
+    user2.setUserName("jsmith");
+
+    final Resources<UserResource> streamingResources =
+        new StreamingResources<UserResource>(
+            CoreSchema.USER_DESCRIPTOR.getAttributeSchemas(), 3)
+        {
+          @Override
+          protected void writeResources(
+              final ResourcesStreamMarshaller marshaller)
+              throws SCIMException
+          {
+            marshaller.writeResource(user1);
+            marshaller.writeResource(user2);
+            setItemsPerPage(2);
+            setTotalResults(10);
+          }
+        };
+
+    final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    final Marshaller marshaller = new JsonMarshaller();
+    marshaller.marshal(streamingResources, outputStream);
+    outputStream.close();
+
+    final InputStream inputStream =
+        new ByteArrayInputStream(outputStream.toByteArray());
+    final Unmarshaller unmarshaller = new JsonUnmarshaller();
+    final Resources<BaseResource> resources =
+        unmarshaller.unmarshalResources(inputStream,
+            CoreSchema.USER_DESCRIPTOR, BaseResource.BASE_RESOURCE_FACTORY);
+    inputStream.close();
+
+    assertEquals(resources.getTotalResults(), 10);
+    assertEquals(resources.getStartIndex(), 3);
+    assertEquals(resources.getItemsPerPage(), 2);
+
+    final Iterator<BaseResource> iterator = resources.iterator();
+    assertEquals(iterator.next().getId(), "user1");
+    assertEquals(iterator.next().getId(), "user2");
+    assertFalse(iterator.hasNext());
+  }
+
+
+
+  /**
+   * Verify that a streaming resources response can be iterated over, and
+   * that the resources are only produced once.
+   *
+   * @throws Exception If the test fails.
+   */
+  @Test
+  public void testIterateStreamingResources()
+    throws Exception
+  {
+    final UserResource user1 = new UserResource(CoreSchema.USER_DESCRIPTOR);
+    user1.setId("user1");
+    user1.setUserName("bjensen");
+
+    final AtomicInteger writeCount = new AtomicInteger();
+    final Resources<UserResource> streamingResources =
+        new StreamingResources<UserResource>(
+            CoreSchema.USER_DESCRIPTOR.getAttributeSchemas(), 1)
+        {
+          @Override
+          protected void writeResources(
+              final ResourcesStreamMarshaller marshaller)
+              throws SCIMException
+          {
+            writeCount.incrementAndGet();
+            marshaller.writeResource(user1);
+            setItemsPerPage(1);
+            setTotalResults(1);
+          }
+        };
+
+    final Iterator<UserResource> iterator = streamingResources.iterator();
+    assertEquals(iterator.next().getUserName(), "bjensen");
+    assertFalse(iterator.hasNext());
+    assertEquals(streamingResources.getTotalResults(), 1);
+
+    // The resources held in memory are marshalled.
+    final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    new JsonMarshaller().marshal(streamingResources, outputStream);
+    outputStream.close();
+
+    final Resources<BaseResource> resources =
+        new JsonUnmarshaller().unmarshalResources(
+            new ByteArrayInputStream(outputStream.toByteArray()),
+            CoreSchema.USER_DESCRIPTOR, BaseResource.BASE_RESOURCE_FACTORY);
+    assertEquals(resources.getItemsPerPage(), 1);
+    assertEquals(resources.iterator().next().getId(), "user1");
+    assertEquals(writeCount.get(), 1);
+  }
 }
@@ -25,10 +25,14 @@ import com.unboundid.scim.data.Manager;
 import com.unboundid.scim.data.Name;
 import com.unboundid.scim.data.UserResource;
 import com.unboundid.scim.marshal.Marshaller;
+import com.unboundid.scim.marshal.ResourcesStreamMarshaller;
 import com.unboundid.scim.marshal.Unmarshaller;
 import com.unboundid.scim.schema.CoreSchema;
 import com.unboundid.scim.sdk.BulkOperation;
+import com.unboundid.scim.sdk.Resources;
+import com.unboundid.scim.sdk.SCIMException;
 import com.unboundid.scim.sdk.SCIMObject;
+import com.unboundid.scim.sdk.StreamingResources;
 import com.unboundid.scim.SCIMTestCase;
 import org.testng.annotations.Test;
 import org.xml.sax.ErrorHandler;
@@ -42,6 +46,7 @@ import javax.xml.validation.SchemaFactory;
 
 import static javax.xml.XMLConstants.W3C_XML_SCHEMA_NS_URI;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
@@ -54,6 +59,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
@@ -298,4 +304,63 @@ public class MarshallerTestCase
     documentBuilder.setErrorHandler(ERROR_HANDLER);
     documentBuilder.parse(xmlFile);
   }
+
+
+
+  /**
+   * Verify that a streaming resources response can be written to XML and
+   * then read back.
+   *
+   * @throws Exception If the test fails.
+   */
+  @Test
+  public void testMarshalStreamingResources()
+    throws Exception
+  {
+    final UserResource user1 = new UserResource(CoreSchema.USER_DESCRIPTOR);
+    user1.setId("user1");
+    user1.setUserName("bjensen");
+
+    final UserResource user2 = new UserResource(CoreSchema.USER_DESCRIPTOR);
+    user2.setId("user2");
+    user2.setUserName("jsmith");
+
+    final Resources<UserResource> streamingResources =
+        new StreamingResources<UserResource>(
+            CoreSchema.USER_DESCRIPTOR.getAttributeSchemas(), 3)
+        {
+          @Override
+          protected void writeResources(
+              final ResourcesStreamMarshaller marshaller)
+              throws SCIMException
+          {
+            marshaller.writeResource(user1);
+            marshaller.writeResource(user2);
+            setItemsPerPage(2);
+            setTotalResults(10);
+          }
+        };
+
+    final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    final Marshaller marshaller = new XmlMarshaller();
+    marshaller.marshal(streamingResources, outputStream);
+    outputStream.close();
+
+    final InputStream inputStream =
+        new ByteArrayInputStream(outputStream.toByteArray());
+    final Unmarshaller unmarshaller = new XmlUnmarshaller();
+    final Resources<BaseResource> resources =
+        unmarshaller.unmarshalResources(inputStream,
+            CoreSchema.USER_DESCRIPTOR, BaseResource.BASE_RESOURCE_FACTORY);
+    inputStream.close();
+
+    assertEquals(resources.getTotalResults(), 10);
+    assertEquals(resources.getStartIndex(), 3);
+    assertEquals(resources.getItemsPerPage(), 2);
+
+    final Iterator<BaseResource> iterator = resources.iterator();
+    assertEquals(iterator.next().getId(), "user1");
+    assertEquals(iterator.next().getId(), "user2");
+    assertFalse(iterator.hasNext());
+  }
 }
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.sdk;
+
+import com.unboundid.scim.SCIMTestCase;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.*;
+
+
+
+/**
+ * Test the request timer.
+ */
+public class RequestTimerTestCase extends SCIMTestCase
+{
+  /**
+   * Test that the time spent in each phase is recorded, and that the elapsed
+   * time no longer grows once the timer has been stopped.
+   *
+   * @throws Exception if an error occurs.
+   */
+  @Test
+  public void testPhaseAccounting() throws Exception
+  {
+    final RequestTimer timer = new RequestTimer();
+    Thread.sleep(5);
+    timer.enterPhase(RequestPhase.BACKEND);
+    Thread.sleep(5);
+    timer.addOperation(RequestPhase.LDAP, "ldap-search",
+                       TimeUnit.MILLISECONDS.toNanos(2));
+    timer.addOperation(RequestPhase.LDAP, "ldap-search",
+                       TimeUnit.MILLISECONDS.toNanos(3));
+    timer.enterPhase(RequestPhase.MARSHAL);
+    Thread.sleep(5);
+    timer.stop();
+
+    final long fiveMillis = TimeUnit.MILLISECONDS.toNanos(5);
+    assertTrue(timer.getNanos(RequestPhase.PARSE) >= fiveMillis);
+    assertTrue(timer.getNanos(RequestPhase.BACKEND) >= fiveMillis);
+    assertTrue(timer.getNanos(RequestPhase.MARSHAL) >= fiveMillis);
+    assertEquals(timer.getNanos(RequestPhase.AUTH), 0);
+    assertEquals(timer.getNanos(RequestPhase.LDAP),
+                 TimeUnit.MILLISECONDS.toNanos(5));
+
+    assertEquals(timer.getOperations().size(), 1);
+    assertEquals(timer.getOperationCount("ldap-search"), 2);
+    assertEquals(timer.getOperationNanos("ldap-search"),
+                 TimeUnit.MILLISECONDS.toNanos(5));
+    assertEquals(timer.getOperationCount("ldap-add"), 0);
+
+    // The elapsed time covers the phases processed by the request thread.
+    final long elapsed = timer.getElapsedNanos();
+    assertEquals(elapsed,
+                 timer.getNanos(RequestPhase.PARSE) +
+                 timer.getNanos(RequestPhase.BACKEND) +
+                 timer.getNanos(RequestPhase.MARSHAL));
+    Thread.sleep(2);
+    assertEquals(timer.getElapsedNanos(), elapsed);
+  }
+
+
+
+  /**
+   * Test the value of the Server-Timing header.
+   */
+  @Test
+  public void testServerTiming()
+  {
+    final RequestTimer timer = new RequestTimer();
+    timer.addTime(RequestPhase.AUTH, 1234567);
+    timer.addTime(RequestPhase.LDAP, 5000);
+
+    final String serverTiming = timer.getServerTiming();
+    assertTrue(serverTiming.startsWith("auth;dur=1.234, ldap;dur=0.005, " +
+                                       "total;dur="), serverTiming);
+    assertFalse(serverTiming.contains("marshal"), serverTiming);
+  }
+
+
+
+  /**
+   * Test the current timer of a thread.
+   */
+  @Test
+  public void testCurrent()
+  {
+    final RequestTimer timer = new RequestTimer();
+    assertNull(RequestTimer.getCurrent());
+    RequestTimer.setCurrent(timer);
+    try
+    {
+      assertSame(RequestTimer.getCurrent(), timer);
+    }
+    finally
+    {
+      RequestTimer.setCurrent(null);
+    }
+    assertNull(RequestTimer.getCurrent());
+  }
+
+
+
+  /**
+   * Test the number of results returned.
+   */
+  @Test
+  public void testResultCount()
+  {
+    final RequestTimer timer = new RequestTimer();
+    assertEquals(timer.getResultCount(), -1);
+    timer.setResultCount(42);
+    assertEquals(timer.getResultCount(), 42);
+  }
+
+
+
+  /**
+   * Test that operations are only traced once tracing is enabled, that no
+   * more than the maximum number of operations are traced, and that the
+   * details of a trace are only formatted when they are retrieved.
+   */
+  @Test
+  public void testTracing()
+  {
+    final RequestTimer timer = new RequestTimer();
+    assertFalse(timer.isTracing());
+    assertFalse(timer.reserveTrace());
+    assertTrue(timer.getTraces().isEmpty());
+    assertEquals(timer.getUntracedCount(), 0);
+
+    final AtomicInteger formatted = new AtomicInteger();
+    final Object filter = new Object()
+    {
+      @Override
+      public String toString()
+      {
+        formatted.incrementAndGet();
+        return "(uid=test)";
+      }
+    };
+
+    timer.enableTracing();
+    assertTrue(timer.isTracing());
+    for (int i = 0; i < 110; i++)
+    {
+      if (timer.reserveTrace())
+      {
+        timer.addTrace(new OperationTrace("ldap-search", "dc=example,dc=com",
+            "sub", filter, 1, 1000));
+      }
+    }
+    assertEquals(timer.getTraces().size(), 100);
+    assertEquals(timer.getUntracedCount(), 10);
+    assertEquals(formatted.get(), 0);
+
+    final OperationTrace trace = timer.getTraces().get(0);
+    assertSame(trace.getFilterObject(), filter);
+    assertEquals(trace.getFilter(), "(uid=test)");
+    assertEquals(formatted.get(), 1);
+    assertEquals(trace.getTarget(), "dc=example,dc=com");
+  }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.sdk;
+
+import com.unboundid.scim.SCIMTestCase;
+import com.unboundid.scim.schema.AttributeDescriptor;
+import com.unboundid.scim.schema.CoreSchema;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+
+
+/**
+ * Test the pages of values of multi-valued attributes requested in query
+ * attributes.
+ */
+public class SCIMQueryAttributesTestCase extends SCIMTestCase
+{
+  /**
+   * Test that a multi-valued attribute is reduced to the page of values
+   * requested for it.
+   *
+   * @throws Exception if an error occurs.
+   */
+  @Test
+  public void testPageAttribute() throws Exception
+  {
+    final AttributeDescriptor emails = CoreSchema.USER_DESCRIPTOR.getAttribute(
+        SCIMConstants.SCHEMA_URI_CORE, "emails");
+    final SCIMAttribute attribute =
+        createEmails(emails, "a@example.com", "b@example.com",
+                     "c@example.com", "d@example.com", "e@example.com");
+    final SCIMQueryAttributes queryAttributes =
+        new SCIMQueryAttributes(CoreSchema.USER_DESCRIPTOR, "emails");
+    assertNull(queryAttributes.getValuePage(emails));
+    assertSame(queryAttributes.pageAttribute(attribute), attribute);
+
+    queryAttributes.setValuePage(emails, new PageParameters(2, 2));
+    assertEmails(queryAttributes.pageAttribute(attribute),
+                 "b@example.com", "c@example.com");
+
+    // A count of zero returns all the values from the start index.
+    queryAttributes.setValuePage(emails, new PageParameters(4, 0));
+    assertEmails(queryAttributes.pageAttribute(attribute),
+                 "d@example.com", "e@example.com");
+
+    queryAttributes.setValuePage(emails, new PageParameters(4, 10));
+    assertEmails(queryAttributes.pageAttribute(attribute),
+                 "d@example.com", "e@example.com");
+
+    queryAttributes.setValuePage(emails, new PageParameters(1, 5));
+    assertSame(queryAttributes.pageAttribute(attribute), attribute);
+
+    queryAttributes.setValuePage(emails, new PageParameters(6, 1));
+    assertNull(queryAttributes.pageAttribute(attribute));
+  }
+
+
+
+  /**
+   * Test that a page of values is kept when query attributes are merged,
+   * unless the other query attributes request all the values.
+   *
+   * @throws Exception if an error occurs.
+   */
+  @Test
+  public void testMergeValuePages() throws Exception
+  {
+    final AttributeDescriptor emails = CoreSchema.USER_DESCRIPTOR.getAttribute(
+        SCIMConstants.SCHEMA_URI_CORE, "emails");
+    final PageParameters page = new PageParameters(2, 2);
+    final SCIMQueryAttributes queryAttributes =
+        new SCIMQueryAttributes(CoreSchema.USER_DESCRIPTOR, "emails");
+    queryAttributes.setValuePage(emails, page);
+
+    assertSame(queryAttributes.merge(new SCIMQueryAttributes(
+        CoreSchema.USER_DESCRIPTOR, "userName")).getValuePage(emails), page);
+    assertNull(queryAttributes.merge(new SCIMQueryAttributes(
+        CoreSchema.USER_DESCRIPTOR, "emails")).getValuePage(emails));
+    assertNull(new SCIMQueryAttributes(CoreSchema.USER_DESCRIPTOR, null).merge(
+        queryAttributes).getValuePage(emails));
+
+    final SCIMQueryAttributes otherAttributes =
+        new SCIMQueryAttributes(CoreSchema.USER_DESCRIPTOR, "emails");
+    otherAttributes.setValuePage(emails, new PageParameters(1, 1));
+    assertNotNull(queryAttributes.merge(otherAttributes).getValuePage(emails));
+  }
+
+
+
+  /**
+   * Test that a page of values dropped when merging with the attributes of
+   * a filter is applied once the object has been retrieved with all the
+   * values.
+   *
+   * @throws Exception if an error occurs.
+   */
+  @Test
+  public void testPageValues() throws Exception
+  {
+    final AttributeDescriptor emails = CoreSchema.USER_DESCRIPTOR.getAttribute(
+        SCIMConstants.SCHEMA_URI_CORE, "emails");
+    final SCIMQueryAttributes queryAttributes =
+        new SCIMQueryAttributes(CoreSchema.USER_DESCRIPTOR, "emails");
+    queryAttributes.setValuePage(emails, new PageParameters(2, 1));
+    final SCIMQueryAttributes filterAttributes =
+        new SCIMQueryAttributes(CoreSchema.USER_DESCRIPTOR, "emails");
+    final SCIMQueryAttributes retrieved =
+        filterAttributes.merge(queryAttributes);
+    assertNull(retrieved.getValuePage(emails));
+
+    final SCIMObject scimObject = new SCIMObject();
+    scimObject.addAttribute(createEmails(emails, "a@example.com",
+                                         "b@example.com", "c@example.com"));
+    queryAttributes.pageValues(scimObject, retrieved);
+    assertEmails(scimObject.getAttribute(SCIMConstants.SCHEMA_URI_CORE,
+                                         "emails"),
+                 "b@example.com");
+
+    // Values already paged when they were retrieved are not paged again.
+    final SCIMObject pagedObject = new SCIMObject();
+    pagedObject.addAttribute(createEmails(emails, "b@example.com"));
+    queryAttributes.pageValues(pagedObject, queryAttributes);
+    assertEmails(pagedObject.getAttribute(SCIMConstants.SCHEMA_URI_CORE,
+                                          "emails"),
+                 "b@example.com");
+
+    // An empty page removes the attribute.
+    queryAttributes.setValuePage(emails, new PageParameters(4, 1));
+    queryAttributes.pageValues(scimObject, retrieved);
+    assertNull(scimObject.getAttribute(SCIMConstants.SCHEMA_URI_CORE,
+                                       "emails"));
+  }
+
+
+
+  /**
+   * Create an emails attribute.
+   *
+   * @param emails  The emails attribute descriptor.
+   * @param values  The email addresses.
+   *
+   * @return  The emails attribute.
+   *
+   * @throws Exception if an error occurs.
+   */
+  private static SCIMAttribute createEmails(final AttributeDescriptor emails,
+                                            final String... values)
+      throws Exception
+  {
+    final SCIMAttributeValue[] emailValues =
+        new SCIMAttributeValue[values.length];
+    for (int i = 0; i < values.length; i++)
+    {
+      emailValues[i] = SCIMAttributeValue.createComplexValue(
+          SCIMAttribute.create(emails.getSubAttribute("value"),
+              SCIMAttributeValue.createStringValue(values[i])));
+    }
+    return SCIMAttribute.create(emails, emailValues);
+  }
+
+
+
+  /**
+   * Verify the email addresses of an emails attribute.
+   *
+   * @param attribute  The emails attribute.
+   * @param values     The expected email addresses.
+   */
+  private static void assertEmails(final SCIMAttribute attribute,
+                                   final String... values)
+  {
+    assertNotNull(attribute);
+    assertEquals(attribute.getValues().length, values.length);
+    for (int i = 0; i < values.length; i++)
+    {
+      assertEquals(attribute.getValues()[i].getAttribute(
+          "value").getValue().getStringValue(), values[i]);
+    }
+  }
+}
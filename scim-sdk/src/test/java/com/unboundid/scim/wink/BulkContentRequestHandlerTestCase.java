@@ -0,0 +1,535 @@
+/*
+ * Copyright 2012-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.wink;
+
+import com.unboundid.scim.SCIMTestCase;
+import com.unboundid.scim.data.BaseResource;
+import com.unboundid.scim.data.BulkConfig;
+import com.unboundid.scim.data.Meta;
+import com.unboundid.scim.data.UserResource;
+import com.unboundid.scim.marshal.json.JsonUnmarshaller;
+import com.unboundid.scim.schema.CoreSchema;
+import com.unboundid.scim.schema.ResourceDescriptor;
+import com.unboundid.scim.sdk.BulkOperation;
+import com.unboundid.scim.sdk.BulkStreamResponse;
+import com.unboundid.scim.sdk.DeleteResourceRequest;
+import com.unboundid.scim.sdk.GetResourceRequest;
+import com.unboundid.scim.sdk.GetResourcesRequest;
+import com.unboundid.scim.sdk.PatchResourceRequest;
+import com.unboundid.scim.sdk.PostResourceRequest;
+import com.unboundid.scim.sdk.PutResourceRequest;
+import com.unboundid.scim.sdk.ResourceConflictException;
+import com.unboundid.scim.sdk.Resources;
+import com.unboundid.scim.sdk.SCIMBackend;
+import com.unboundid.scim.sdk.SCIMException;
+import com.unboundid.scim.sdk.ServerErrorException;
+import org.testng.annotations.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.SecurityContext;
+import javax.ws.rs.core.UriInfo;
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.*;
+
+
+
+/**
+ * This class provides test coverage for the concurrent processing of
+ * independent bulk operations by the {@code BulkContentRequestHandler}.
+ */
+public class BulkContentRequestHandlerTestCase
+    extends SCIMTestCase
+{
+  /**
+   * Verify that independent operations are processed concurrently, that an
+   * operation referring to the bulkId of an earlier operation waits for it,
+   * and that the responses are written in the order of the operations.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testConcurrentOperations()
+      throws Exception
+  {
+    // Each of the first three operations waits until all three are in
+    // progress, which only happens if they are processed concurrently.
+    final RecordingBackend backend =
+        new RecordingBackend(new CountDownLatch(3));
+    final List<BulkOperation> responses = processBulkRequest(backend, 4,
+        "{\"Operations\":[" +
+        createPost("a") + "," + createPost("b") + "," + createPost("c") + "," +
+        "{\"method\":\"DELETE\",\"path\":\"/Users/bulkId:a\"}]}");
+
+    assertEquals(backend.maxInProgress.get(), 3);
+    assertEquals(backend.deletedIDs, Collections.singletonList("id-a"));
+    assertEquals(backend.postsCompletedBeforeDelete.get(), 3);
+
+    assertEquals(responses.size(), 4);
+    final String[] bulkIds = { "a", "b", "c" };
+    for (int i = 0; i < bulkIds.length; i++)
+    {
+      assertEquals(responses.get(i).getMethod(), BulkOperation.Method.POST);
+      assertEquals(responses.get(i).getBulkId(), bulkIds[i]);
+      assertEquals(responses.get(i).getStatus().getCode(), "201");
+    }
+    assertEquals(responses.get(3).getMethod(), BulkOperation.Method.DELETE);
+    assertEquals(responses.get(3).getStatus().getCode(), "200");
+  }
+
+
+
+  /**
+   * Verify that operations targeting the same resource are not processed
+   * concurrently.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testSameResource()
+      throws Exception
+  {
+    final RecordingBackend backend = new RecordingBackend(null);
+    final List<BulkOperation> responses = processBulkRequest(backend, 4,
+        "{\"Operations\":[" +
+        "{\"method\":\"DELETE\",\"path\":\"/Users/same\"}," +
+        "{\"method\":\"DELETE\",\"path\":\"Users/SAME\"}]}");
+
+    assertEquals(backend.maxInProgress.get(), 1);
+    assertEquals(backend.deletedIDs, Arrays.asList("same", "SAME"));
+    assertEquals(responses.size(), 2);
+  }
+
+
+
+  /**
+   * Verify that no more operations are processed concurrently than the
+   * number of errors still permitted, so that no operation is processed
+   * after the maximum number of errors has been reached.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testFailOnErrors()
+      throws Exception
+  {
+    final RecordingBackend backend = new RecordingBackend(null);
+    final List<BulkOperation> responses = processBulkRequest(backend, 4,
+        "{\"failOnErrors\":1,\"Operations\":[" +
+        createPost("fail") + "," + createPost("b") + "]}");
+
+    assertEquals(backend.posts.get(), 1);
+    assertEquals(responses.size(), 1);
+    assertEquals(responses.get(0).getBulkId(), "fail");
+    assertEquals(responses.get(0).getStatus().getCode(), "409");
+  }
+
+
+
+  /**
+   * Create a bulk operation to add a user.
+   *
+   * @param userName  The userName of the user, which is also the bulkId of
+   *                  the operation.
+   *
+   * @return  The JSON bulk operation.
+   */
+  private static String createPost(final String userName)
+  {
+    return "{\"method\":\"POST\",\"path\":\"/Users\",\"bulkId\":\"" +
+           userName + "\",\"data\":{\"schemas\":[\"urn:scim:schemas:core:" +
+           "1.0\"],\"userName\":\"" + userName + "\"}}";
+  }
+
+
+
+  /**
+   * Process a JSON bulk request.
+   *
+   * @param backend                  The backend that processes the
+   *                                 operations.
+   * @param maxConcurrentOperations  The maximum number of operations that
+   *                                 may be in progress at the same time.
+   * @param request                  The JSON bulk request.
+   *
+   * @return  The operation responses, in the order they were written.
+   *
+   * @throws Exception  If the bulk request could not be processed.
+   */
+  private static List<BulkOperation> processBulkRequest(
+      final SCIMBackend backend,
+      final int maxConcurrentOperations,
+      final String request)
+      throws Exception
+  {
+    final SCIMApplication application = new SCIMApplication(backend, null);
+    final ExecutorService executor =
+        Executors.newFixedThreadPool(maxConcurrentOperations);
+    try
+    {
+      application.setBulkOperationExecutor(executor, maxConcurrentOperations);
+      final RequestContext requestContext = createRequestContext();
+      final RecordingBulkStreamResponse response =
+          new RecordingBulkStreamResponse(application, requestContext);
+      try
+      {
+        final BulkContentRequestHandler handler =
+            new BulkContentRequestHandler(application, requestContext,
+                                          backend, response, null);
+        new JsonUnmarshaller().bulkUnmarshal(
+            new ByteArrayInputStream(request.getBytes("UTF-8")),
+            new BulkConfig(true, 100, 100000), handler);
+        handler.finishOperations();
+      }
+      finally
+      {
+        response.finalizeResponse();
+      }
+      return response.operations;
+    }
+    finally
+    {
+      executor.shutdownNow();
+    }
+  }
+
+
+
+  /**
+   * Create the context of a JSON bulk request made by an authenticated user.
+   *
+   * @return  The request context.
+   */
+  private static RequestContext createRequestContext()
+  {
+    final SecurityContext securityContext = new SecurityContext()
+    {
+      public Principal getUserPrincipal()
+      {
+        return new Principal()
+        {
+          public String getName()
+          {
+            return "bulk-user";
+          }
+        };
+      }
+
+      public boolean isUserInRole(final String role)
+      {
+        return false;
+      }
+
+      public boolean isSecure()
+      {
+        return true;
+      }
+
+      public String getAuthenticationScheme()
+      {
+        return SecurityContext.BASIC_AUTH;
+      }
+    };
+
+    // Only the base URI of the request is needed, and there are no headers.
+    final InvocationHandler invocationHandler = new InvocationHandler()
+    {
+      public Object invoke(final Object proxy, final Method method,
+                           final Object[] args)
+      {
+        if (method.getName().equals("getBaseUri"))
+        {
+          return URI.create("http://localhost/");
+        }
+        return null;
+      }
+    };
+    final ClassLoader classLoader =
+        BulkContentRequestHandlerTestCase.class.getClassLoader();
+    return new RequestContext(
+        (HttpServletRequest) Proxy.newProxyInstance(classLoader,
+            new Class<?>[] { HttpServletRequest.class }, invocationHandler),
+        securityContext,
+        (HttpHeaders) Proxy.newProxyInstance(classLoader,
+            new Class<?>[] { HttpHeaders.class }, invocationHandler),
+        (UriInfo) Proxy.newProxyInstance(classLoader,
+            new Class<?>[] { UriInfo.class }, invocationHandler),
+        MediaType.APPLICATION_JSON_TYPE, MediaType.APPLICATION_JSON_TYPE);
+  }
+
+
+
+  /**
+   * A bulk stream response that records the operation responses written.
+   */
+  private static final class RecordingBulkStreamResponse
+      extends BulkStreamResponse
+  {
+    private final List<BulkOperation> operations =
+        new ArrayList<BulkOperation>();
+
+
+
+    /**
+     * Create a new recording bulk stream response.
+     *
+     * @param application     The SCIM application.
+     * @param requestContext  The bulk request context.
+     *
+     * @throws SCIMException  If the response could not be created.
+     */
+    private RecordingBulkStreamResponse(final SCIMApplication application,
+                                        final RequestContext requestContext)
+        throws SCIMException
+    {
+      super(application, requestContext);
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeBulkOperation(final BulkOperation o)
+        throws SCIMException
+    {
+      operations.add(o);
+      super.writeBulkOperation(o);
+    }
+  }
+
+
+
+  /**
+   * A backend for User resources that records the operations in progress at
+   * the same time. Adding a user named "fail" fails with a conflict.
+   */
+  private static final class RecordingBackend
+      extends SCIMBackend
+  {
+    private final CountDownLatch postLatch;
+
+    private final AtomicInteger inProgress = new AtomicInteger();
+
+    private final AtomicInteger maxInProgress = new AtomicInteger();
+
+    private final AtomicInteger posts = new AtomicInteger();
+
+    private final AtomicInteger postsCompleted = new AtomicInteger();
+
+    private final AtomicInteger postsCompletedBeforeDelete =
+        new AtomicInteger(-1);
+
+    private final List<String> deletedIDs =
+        Collections.synchronizedList(new ArrayList<String>());
+
+
+
+    /**
+     * Create a new recording backend.
+     *
+     * @param postLatch  A latch that each successful POST counts down and
+     *                   then waits for, or {@code null} if POSTs do not wait.
+     */
+    private RecordingBackend(final CountDownLatch postLatch)
+    {
+      this.postLatch = postLatch;
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BaseResource postResource(final PostResourceRequest request)
+        throws SCIMException
+    {
+      posts.incrementAndGet();
+      final UserResource user = new UserResource(CoreSchema.USER_DESCRIPTOR,
+                                                 request.getResourceObject());
+      if (user.getUserName().equals("fail"))
+      {
+        throw new ResourceConflictException("The user already exists");
+      }
+
+      enter();
+      try
+      {
+        if (postLatch != null)
+        {
+          postLatch.countDown();
+          if (!postLatch.await(10, TimeUnit.SECONDS))
+          {
+            throw new ServerErrorException(
+                "The operations were not processed concurrently");
+          }
+        }
+      }
+      catch (InterruptedException e)
+      {
+        throw new ServerErrorException("Interrupted");
+      }
+      finally
+      {
+        exit();
+      }
+
+      user.setId("id-" + user.getUserName());
+      user.setMeta(new Meta(null, null, null, "1"));
+      postsCompleted.incrementAndGet();
+      return user;
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void deleteResource(final DeleteResourceRequest request)
+        throws SCIMException
+    {
+      postsCompletedBeforeDelete.compareAndSet(-1, postsCompleted.get());
+      enter();
+      try
+      {
+        Thread.sleep(50);
+      }
+      catch (InterruptedException e)
+      {
+        throw new ServerErrorException("Interrupted");
+      }
+      finally
+      {
+        exit();
+      }
+      deletedIDs.add(request.getResourceID());
+    }
+
+
+
+    /**
+     * Record that an operation is in progress.
+     */
+    private void enter()
+    {
+      final int count = inProgress.incrementAndGet();
+      int max;
+      do
+      {
+        max = maxInProgress.get();
+      }
+      while (count > max && !maxInProgress.compareAndSet(max, count));
+    }
+
+
+
+    /**
+     * Record that an operation is no longer in progress.
+     */
+    private void exit()
+    {
+      inProgress.decrementAndGet();
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void finalizeBackend()
+    {
+      // No implementation required.
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BaseResource getResource(final GetResourceRequest request)
+    {
+      return null;
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Resources getResources(final GetResourcesRequest request)
+    {
+      return null;
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BaseResource putResource(final PutResourceRequest request)
+    {
+      return null;
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BaseResource patchResource(final PatchResourceRequest request)
+    {
+      return null;
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Collection<ResourceDescriptor> getResourceDescriptors()
+    {
+      return Collections.singletonList(CoreSchema.USER_DESCRIPTOR);
+    }
+  }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2012-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+package com.unboundid.scim.wink;
+
+import com.unboundid.scim.SCIMTestCase;
+import org.testng.annotations.Test;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.*;
+
+
+
+/**
+ * This class provides test coverage for the {@code LatencyHistogram} class
+ * and the latency time windows of {@code ResourceStats}.
+ */
+public class LatencyHistogramTestCase
+    extends SCIMTestCase
+{
+  /**
+   * Verify the statistics of a histogram in which nothing is recorded.
+   */
+  @Test
+  public void testEmpty()
+  {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(histogram.getCount(), 0L);
+    assertEquals(histogram.getTotalMicros(), 0L);
+    assertEquals(histogram.getMaxMicros(), 0L);
+    assertEquals(histogram.getPercentileMicros(50.0), 0L);
+    for (final Long value : histogram.getStatistics().values())
+    {
+      assertEquals(value.longValue(), 0L);
+    }
+  }
+
+
+
+  /**
+   * Verify that each bucket counts the latencies from one above the upper
+   * bound of the previous bucket up to its own upper bound, and that no
+   * bucket is wider than an eighth of its lower bound.
+   */
+  @Test
+  public void testBucketBounds()
+  {
+    final int buckets = new LatencyHistogram().getCounts().length;
+    for (int i = 0; i < 16; i++)
+    {
+      assertEquals(LatencyHistogram.getBucketUpperBound(i), (long) i);
+    }
+
+    for (int i = 1; i < buckets; i++)
+    {
+      final long lowerBound = LatencyHistogram.getBucketUpperBound(i - 1) + 1;
+      final long upperBound = LatencyHistogram.getBucketUpperBound(i);
+      assertTrue(upperBound >= lowerBound);
+      assertTrue(upperBound - lowerBound < Math.max(lowerBound / 8, 1),
+                 "Bucket " + i + " is too wide");
+
+      if (upperBound < TimeUnit.DAYS.toMicros(1))
+      {
+        assertBucket(lowerBound, i);
+        assertBucket(upperBound, i);
+      }
+    }
+  }
+
+
+
+  /**
+   * Verify that latencies below 16 microseconds are recorded exactly.
+   */
+  @Test
+  public void testExactLatencies()
+  {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    for (long micros = 1; micros <= 10; micros++)
+    {
+      histogram.record(TimeUnit.MICROSECONDS.toNanos(micros));
+    }
+
+    assertEquals(histogram.getCount(), 10L);
+    assertEquals(histogram.getTotalMicros(), 55L);
+    assertEquals(histogram.getMaxMicros(), 10L);
+    assertEquals(histogram.getPercentileMicros(10.0), 1L);
+    assertEquals(histogram.getPercentileMicros(50.0), 5L);
+    assertEquals(histogram.getPercentileMicros(55.0), 6L);
+    assertEquals(histogram.getPercentileMicros(100.0), 10L);
+  }
+
+
+
+  /**
+   * Verify that a percentile is no lower than the latency recorded at that
+   * percentile and at most 12.5% greater, and that the maximum is exact.
+   */
+  @Test
+  public void testPercentiles()
+  {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    for (long micros = 1000; micros >= 1; micros--)
+    {
+      histogram.record(TimeUnit.MICROSECONDS.toNanos(micros) + 999);
+    }
+
+    assertEquals(histogram.getCount(), 1000L);
+    assertEquals(histogram.getMaxMicros(), 1000L);
+    assertPercentile(histogram, 50.0, 500);
+    assertPercentile(histogram, 90.0, 900);
+    assertPercentile(histogram, 99.0, 990);
+    assertPercentile(histogram, 99.9, 999);
+    assertEquals(histogram.getPercentileMicros(100.0), 1000L);
+
+    final Map<String, Long> statistics = histogram.getStatistics();
+    assertEquals(statistics.get("count").longValue(), 1000L);
+    assertEquals(statistics.get("average-micros").longValue(), 500L);
+    assertEquals(statistics.get("p50-micros").longValue(),
+                 histogram.getPercentileMicros(50.0));
+    assertEquals(statistics.get("p999-micros").longValue(),
+                 histogram.getPercentileMicros(99.9));
+    assertEquals(statistics.get("max-micros").longValue(), 1000L);
+  }
+
+
+
+  /**
+   * Verify that negative latencies are recorded as zero and that latencies
+   * beyond the last bucket are recorded in it.
+   */
+  @Test
+  public void testOutOfRange()
+  {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(-5);
+    assertEquals(histogram.getCounts()[0], 1L);
+    assertEquals(histogram.getMaxMicros(), 0L);
+
+    histogram.record(Long.MAX_VALUE);
+    final long[] counts = histogram.getCounts();
+    assertEquals(counts[counts.length - 1], 1L);
+    assertEquals(histogram.getCount(), 2L);
+    assertEquals(histogram.getMaxMicros(),
+                 TimeUnit.NANOSECONDS.toMicros(Long.MAX_VALUE));
+    assertEquals(histogram.getPercentileMicros(100.0),
+                 LatencyHistogram.getBucketUpperBound(counts.length - 1));
+  }
+
+
+
+  /**
+   * Verify that resetting the latencies of a resource begins a new time
+   * window without affecting the request counters.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testResetLatencies()
+      throws Exception
+  {
+    final ResourceStats stats = new ResourceStats("Users");
+    stats.incrementStat(ResourceStats.GET_OK);
+    stats.recordLatency(ResourceStats.GET, TimeUnit.MILLISECONDS.toNanos(2));
+    stats.recordLatency(ResourceStats.GET, TimeUnit.MILLISECONDS.toNanos(4));
+    stats.recordLatency(ResourceStats.PUT, TimeUnit.MILLISECONDS.toNanos(1));
+
+    final Map<String, LatencyHistogram> latencies = stats.getLatencies();
+    assertEquals(latencies.size(), 2);
+    assertEquals(latencies.get(ResourceStats.GET).getCount(), 2L);
+    assertEquals(latencies.get(ResourceStats.GET).getMaxMicros(), 4000L);
+    assertEquals(latencies.get(ResourceStats.PUT).getCount(), 1L);
+
+    final long windowStart = stats.getLatencyWindowStart();
+    Thread.sleep(5);
+    stats.resetLatencies();
+    assertTrue(stats.getLatencyWindowStart() > windowStart);
+    assertTrue(stats.getLatencies().isEmpty());
+    assertEquals(stats.getStat(ResourceStats.GET_OK), 1L);
+
+    // Histograms of the previous window are not affected by the new one.
+    stats.recordLatency(ResourceStats.GET, TimeUnit.MILLISECONDS.toNanos(1));
+    assertEquals(latencies.get(ResourceStats.GET).getCount(), 2L);
+    assertEquals(stats.getLatencies().get(ResourceStats.GET).getCount(), 1L);
+  }
+
+
+
+  /**
+   * Verify that a latency is recorded in a bucket.
+   *
+   * @param micros  The latency in microseconds.
+   * @param bucket  The index of the bucket expected to count it.
+   */
+  private static void assertBucket(final long micros, final int bucket)
+  {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(TimeUnit.MICROSECONDS.toNanos(micros));
+    assertEquals(histogram.getCounts()[bucket], 1L,
+                 micros + " microseconds is not in bucket " + bucket);
+  }
+
+
+
+  /**
+   * Verify that a percentile is within 12.5% above the latency recorded at
+   * that percentile.
+   *
+   * @param histogram   The histogram.
+   * @param percentile  The percentile.
+   * @param micros      The latency recorded at the percentile.
+   */
+  private static void assertPercentile(final LatencyHistogram histogram,
+                                       final double percentile,
+                                       final long micros)
+  {
+    final long value = histogram.getPercentileMicros(percentile);
+    assertTrue(value >= micros && value <= micros + micros / 8,
+               "p" + percentile + " is " + value + ", expected " + micros);
+  }
+}
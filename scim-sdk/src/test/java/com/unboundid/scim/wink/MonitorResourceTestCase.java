@@ -0,0 +1,252 @@
+/*
+ * Copyright 2012-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+package com.unboundid.scim.wink;
+
+import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.scim.SCIMTestCase;
+import com.unboundid.scim.data.BaseResource;
+import com.unboundid.scim.schema.ResourceDescriptor;
+import com.unboundid.scim.sdk.DeleteResourceRequest;
+import com.unboundid.scim.sdk.GetResourceRequest;
+import com.unboundid.scim.sdk.GetResourcesRequest;
+import com.unboundid.scim.sdk.OperationTrace;
+import com.unboundid.scim.sdk.PatchResourceRequest;
+import com.unboundid.scim.sdk.PostResourceRequest;
+import com.unboundid.scim.sdk.PutResourceRequest;
+import com.unboundid.scim.sdk.RequestTimer;
+import com.unboundid.scim.sdk.Resources;
+import com.unboundid.scim.sdk.SCIMBackend;
+import org.testng.annotations.Test;
+
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.SecurityContext;
+import java.security.Principal;
+import java.util.Collection;
+import java.util.Collections;
+
+import static org.testng.Assert.*;
+
+
+
+/**
+ * This class provides test coverage for the {@code MonitorResource} class.
+ */
+public class MonitorResourceTestCase
+    extends SCIMTestCase
+{
+  /**
+   * Verify that the monitor can only be reset by an authenticated client,
+   * and only if the application allows it.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testDeleteAuthorization()
+      throws Exception
+  {
+    final SCIMApplication application = createApplication();
+    application.setSlowRequestLog(0, 10);
+    recordSlowRequest(application);
+    final MonitorResource resource = new MonitorResource(application);
+    final ResourceStats stats = application.getStatsForResource("monitor");
+
+    assertEquals(resource.doDelete(createSecurityContext(null)).getStatus(),
+                 Response.Status.UNAUTHORIZED.getStatusCode());
+    assertEquals(stats.getStat(ResourceStats.DELETE_UNAUTHORIZED), 1);
+
+    assertEquals(
+        resource.doDelete(createSecurityContext("monitor-user")).getStatus(),
+        Response.Status.FORBIDDEN.getStatusCode());
+    assertEquals(stats.getStat(ResourceStats.DELETE_FORBIDDEN), 1);
+    assertEquals(application.getSlowRequestLog().getRequests().size(), 1);
+
+    application.setMonitorResetAllowed(true);
+    assertEquals(
+        resource.doDelete(createSecurityContext("monitor-user")).getStatus(),
+        Response.Status.NO_CONTENT.getStatusCode());
+    assertEquals(stats.getStat(ResourceStats.DELETE_OK), 1);
+    assertTrue(application.getSlowRequestLog().getRequests().isEmpty());
+  }
+
+
+
+  /**
+   * Verify that the resource IDs in the paths, and the values of the filters
+   * and DNs, of slow requests are redacted from the monitor data unless the
+   * application allows them.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testSlowRequestRedaction()
+      throws Exception
+  {
+    final SCIMApplication application = createApplication();
+    application.setSlowRequestLog(0, 10);
+    recordSlowRequest(application);
+    final MonitorResource resource = new MonitorResource(application);
+
+    final String redacted = (String) resource.doJsonGet().getEntity();
+    assertTrue(redacted.contains("slow-requests"), redacted);
+    assertTrue(redacted.contains("(uid=?)"), redacted);
+    assertTrue(redacted.contains("uid=?,ou=people,dc=example,dc=com"),
+               redacted);
+    assertTrue(redacted.contains("Users/{redacted}.json"), redacted);
+    assertFalse(redacted.contains("bjensen"), redacted);
+
+    application.setSlowRequestValuesRedacted(false);
+    final String unredacted = (String) resource.doJsonGet().getEntity();
+    assertTrue(unredacted.contains("(uid=bjensen)"), unredacted);
+    assertTrue(unredacted.contains("userName eq \\\"bjensen\\\""),
+               unredacted);
+    assertTrue(unredacted.contains("Users/bjensen.json"), unredacted);
+  }
+
+
+
+  /**
+   * Record a slow query, for the resource ID of a user, that made an LDAP
+   * search.
+   *
+   * @param application  The application whose slow request log is to keep
+   *                     the request.
+   *
+   * @throws Exception  If the request could not be recorded.
+   */
+  private static void recordSlowRequest(final SCIMApplication application)
+      throws Exception
+  {
+    final RequestTimer timer = new RequestTimer();
+    timer.enableTracing();
+    assertTrue(timer.reserveTrace());
+    timer.addTrace(new OperationTrace("ldap-search",
+        "uid=bjensen,ou=people,dc=example,dc=com", "sub",
+        Filter.createEqualityFilter("uid", "bjensen"), 1, 1000));
+    Thread.sleep(1);
+    timer.stop();
+    application.getSlowRequestLog().record(timer, "Users",
+        ResourceStats.QUERY, "GET", "Users/bjensen.json",
+        "userName eq \"bjensen\"", null);
+  }
+
+
+
+  /**
+   * Create a security context for a request.
+   *
+   * @param userName  The name of the authenticated user, or {@code null} if
+   *                  the request is not authenticated.
+   *
+   * @return  The security context.
+   */
+  private static SecurityContext createSecurityContext(final String userName)
+  {
+    return new SecurityContext()
+    {
+      public Principal getUserPrincipal()
+      {
+        if (userName == null)
+        {
+          return null;
+        }
+        return new Principal()
+        {
+          public String getName()
+          {
+            return userName;
+          }
+        };
+      }
+
+      public boolean isUserInRole(final String role)
+      {
+        return false;
+      }
+
+      public boolean isSecure()
+      {
+        return true;
+      }
+
+      public String getAuthenticationScheme()
+      {
+        return userName == null ? null : SecurityContext.BASIC_AUTH;
+      }
+    };
+  }
+
+
+
+  /**
+   * Create an application with a backend that serves no resources.
+   *
+   * @return  The application.
+   */
+  static SCIMApplication createApplication()
+  {
+    return new SCIMApplication(new SCIMBackend()
+    {
+      @Override
+      public void finalizeBackend()
+      {
+        // No implementation required.
+      }
+
+      @Override
+      public BaseResource getResource(final GetResourceRequest request)
+      {
+        return null;
+      }
+
+      @Override
+      public Resources getResources(final GetResourcesRequest request)
+      {
+        return null;
+      }
+
+      @Override
+      public BaseResource postResource(final PostResourceRequest request)
+      {
+        return null;
+      }
+
+      @Override
+      public void deleteResource(final DeleteResourceRequest request)
+      {
+        // No implementation required.
+      }
+
+      @Override
+      public BaseResource putResource(final PutResourceRequest request)
+      {
+        return null;
+      }
+
+      @Override
+      public BaseResource patchResource(final PatchResourceRequest request)
+      {
+        return null;
+      }
+
+      @Override
+      public Collection<ResourceDescriptor> getResourceDescriptors()
+      {
+        return Collections.emptyList();
+      }
+    }, null);
+  }
+}
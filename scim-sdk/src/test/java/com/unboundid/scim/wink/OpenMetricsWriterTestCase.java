@@ -0,0 +1,160 @@
+/*
+ * Copyright 2012-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+package com.unboundid.scim.wink;
+
+import com.unboundid.scim.SCIMTestCase;
+import org.testng.annotations.Test;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.*;
+
+
+
+/**
+ * This class provides test coverage for the {@code OpenMetricsWriter} class.
+ */
+public class OpenMetricsWriterTestCase
+    extends SCIMTestCase
+{
+  /**
+   * Verify the request counters and the end of the exposition, and that
+   * label values are escaped.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testCounters()
+      throws Exception
+  {
+    final SCIMApplication application =
+        MonitorResourceTestCase.createApplication();
+    application.getStatsForResource("Users").incrementStat(
+        ResourceStats.GET_OK);
+    application.getStatsForResource("Quoted\"Name").incrementStat(
+        ResourceStats.GET_OK);
+
+    final String output = write(application);
+    assertTrue(output.contains("# TYPE scim_requests counter\n"), output);
+    assertTrue(output.contains(
+        "scim_requests_total{resource=\"Users\",stat=\"get-successful\"} 1\n"),
+        output);
+    assertTrue(output.contains(
+        "scim_requests_total{resource=\"Quoted\\\"Name\"," +
+        "stat=\"get-successful\"} 1\n"), output);
+    assertTrue(output.endsWith("# EOF\n"), output);
+  }
+
+
+
+  /**
+   * Verify that the buckets of a latency histogram count the latencies up to
+   * their upper bounds, and that the same buckets are written whatever
+   * latencies have been recorded.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testHistogramBuckets()
+      throws Exception
+  {
+    final SCIMApplication application =
+        MonitorResourceTestCase.createApplication();
+    final ResourceStats stats = application.getStatsForResource("Users");
+    stats.recordLatency(ResourceStats.GET, 0);
+    stats.recordLatency(ResourceStats.GET, TimeUnit.MICROSECONDS.toNanos(3));
+    stats.recordLatency(ResourceStats.GET, TimeUnit.MICROSECONDS.toNanos(4));
+    stats.recordLatency(ResourceStats.GET, TimeUnit.MICROSECONDS.toNanos(128));
+    stats.recordLatency(ResourceStats.GET, TimeUnit.SECONDS.toNanos(200));
+
+    final String output = write(application);
+    final String prefix = "scim_request_duration_seconds_bucket" +
+        "{resource=\"Users\",operation=\"get\",le=";
+    assertTrue(output.contains(prefix + "\"0.000001\"} 1\n"), output);
+    assertTrue(output.contains(prefix + "\"0.000003\"} 2\n"), output);
+    assertTrue(output.contains(prefix + "\"0.000007\"} 3\n"), output);
+    assertTrue(output.contains(prefix + "\"0.000127\"} 3\n"), output);
+    assertTrue(output.contains(prefix + "\"0.000255\"} 4\n"), output);
+    assertTrue(output.contains(prefix + "\"134.217727\"} 4\n"), output);
+    assertTrue(output.contains(prefix + "\"+Inf\"} 5\n"), output);
+    assertTrue(output.contains("scim_request_duration_seconds_count" +
+        "{resource=\"Users\",operation=\"get\"} 5\n"), output);
+    assertTrue(output.contains("scim_request_duration_seconds_sum" +
+        "{resource=\"Users\",operation=\"get\"} 200.000135\n"), output);
+    assertTrue(output.contains("scim_request_duration_max_seconds" +
+        "{resource=\"Users\",operation=\"get\"} 200.000000\n"), output);
+
+    final List<String> bounds = getBucketBounds(output, prefix);
+    assertEquals(bounds.size(), OpenMetricsWriter.MAX_BUCKET_EXPONENT + 1);
+    assertEquals(bounds.get(bounds.size() - 1), "+Inf");
+
+    final SCIMApplication otherApplication =
+        MonitorResourceTestCase.createApplication();
+    otherApplication.getStatsForResource("Users").recordLatency(
+        ResourceStats.GET, TimeUnit.MICROSECONDS.toNanos(10));
+    assertEquals(getBucketBounds(write(otherApplication), prefix), bounds);
+  }
+
+
+
+  /**
+   * Write the monitor data of an application in the OpenMetrics format.
+   *
+   * @param application  The application.
+   *
+   * @return  The monitor data.
+   *
+   * @throws Exception  If the data could not be written.
+   */
+  private static String write(final SCIMApplication application)
+      throws Exception
+  {
+    final StringWriter writer = new StringWriter();
+    new OpenMetricsWriter(application, writer).write();
+    return writer.toString();
+  }
+
+
+
+  /**
+   * Retrieve the upper bounds of the buckets of a histogram.
+   *
+   * @param output  The monitor data in the OpenMetrics format.
+   * @param prefix  The name and the labels preceding the upper bound of the
+   *                samples of the buckets of the histogram.
+   *
+   * @return  The upper bounds of the buckets, in the order they were
+   *          written.
+   */
+  private static List<String> getBucketBounds(final String output,
+                                              final String prefix)
+  {
+    final List<String> bounds = new ArrayList<String>();
+    for (final String line : output.split("\n"))
+    {
+      if (line.startsWith(prefix))
+      {
+        bounds.add(line.substring(prefix.length() + 1,
+                                  line.indexOf('"', prefix.length() + 1)));
+      }
+    }
+    return bounds;
+  }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2012-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+package com.unboundid.scim.wink;
+
+import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.scim.SCIMTestCase;
+import com.unboundid.scim.sdk.RequestTimer;
+import org.testng.annotations.Test;
+
+import java.util.List;
+
+import static org.testng.Assert.*;
+
+
+
+/**
+ * This class provides test coverage for the {@code SlowRequestLog} class.
+ */
+public class SlowRequestLogTestCase
+    extends SCIMTestCase
+{
+  /**
+   * Verify that only requests that take longer than the threshold are kept.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testThreshold()
+      throws Exception
+  {
+    final SlowRequestLog log = new SlowRequestLog(20, 10);
+    assertEquals(log.getThresholdMillis(), 20);
+
+    record(log, "fast", 0);
+    assertTrue(log.getRequests().isEmpty());
+
+    record(log, "slow", 30);
+    final List<SlowRequestLog.SlowRequest> requests = log.getRequests();
+    assertEquals(requests.size(), 1);
+    assertEquals(requests.get(0).getPath(), "slow");
+    assertEquals(requests.get(0).getResource(), "Users");
+    assertEquals(requests.get(0).getOperation(), ResourceStats.QUERY);
+    assertEquals(requests.get(0).getMethod(), "GET");
+    assertEquals(requests.get(0).getFilter(), "userName eq \"slow\"");
+    assertEquals(requests.get(0).getResultCount(), 1);
+    assertTrue(requests.get(0).getElapsedNanos() >= 30000000L);
+
+    log.clear();
+    assertTrue(log.getRequests().isEmpty());
+  }
+
+
+
+  /**
+   * Verify that the most recent slow requests are kept when the ring buffer
+   * is full, and that they are returned slowest first.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testRingBuffer()
+      throws Exception
+  {
+    final SlowRequestLog log = new SlowRequestLog(0, 3);
+    record(log, "request-0", 10);
+    record(log, "request-1", 2);
+    record(log, "request-2", 6);
+    record(log, "request-3", 4);
+    record(log, "request-4", 8);
+
+    final List<SlowRequestLog.SlowRequest> requests = log.getRequests();
+    assertEquals(requests.size(), 3);
+    assertEquals(requests.get(0).getPath(), "request-4");
+    assertEquals(requests.get(1).getPath(), "request-2");
+    assertEquals(requests.get(2).getPath(), "request-3");
+  }
+
+
+
+  /**
+   * Verify that the values of SCIM filters, LDAP filters and DNs are
+   * redacted, keeping their attributes and operators, and that the segments
+   * of paths after the endpoint are redacted.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testRedaction()
+      throws Exception
+  {
+    assertNull(SlowRequestLog.redactSCIMFilter(null));
+    final String scimFilter = SlowRequestLog.redactSCIMFilter(
+        "userName eq \"bjensen\" and (emails co \"example.com\" or " +
+        "title pr)");
+    assertFalse(scimFilter.contains("bjensen"), scimFilter);
+    assertFalse(scimFilter.contains("example.com"), scimFilter);
+    assertTrue(scimFilter.contains("userName eq \"?\""), scimFilter);
+    assertTrue(scimFilter.contains("emails co \"?\""), scimFilter);
+    assertTrue(scimFilter.contains("title pr"), scimFilter);
+    assertEquals(SlowRequestLog.redactSCIMFilter("userName eq"),
+                 SlowRequestLog.REDACTED_VALUE);
+
+    assertNull(SlowRequestLog.redactLDAPFilter(null));
+    assertEquals(SlowRequestLog.redactLDAPFilter(Filter.create(
+        "(&(uid=bjensen)(|(cn=Bab*Jen*sen)(mail>=b)(sn~=jensen))" +
+        "(!(description=*))(cn:caseExactMatch:=Babs))")),
+        "(&(uid=?)(|(cn=?*?*?)(mail>=?)(sn~=?))(!(description=*))" +
+        "(cn:caseExactMatch:=?))");
+    assertEquals(SlowRequestLog.redactLDAPFilter("(uid=bjensen)"),
+                 SlowRequestLog.REDACTED_VALUE);
+
+    assertNull(SlowRequestLog.redactDN(null));
+    assertEquals(SlowRequestLog.redactDN(
+        "uid=bjensen,ou=people,dc=example,dc=com"),
+        "uid=?,ou=people,dc=example,dc=com");
+    assertEquals(SlowRequestLog.redactDN("cn=Babs+sn=Jensen"), "cn=?+sn=?");
+    assertEquals(SlowRequestLog.redactDN(""), "");
+    assertEquals(SlowRequestLog.redactDN("not a DN"),
+                 SlowRequestLog.REDACTED_VALUE);
+
+    assertNull(SlowRequestLog.redactPath(null));
+    assertEquals(SlowRequestLog.redactPath("Users"), "Users");
+    assertEquals(SlowRequestLog.redactPath("Users/bjensen"),
+                 "Users/{redacted}");
+    assertEquals(SlowRequestLog.redactPath("/Users/b.jensen.xml"),
+                 "/Users/{redacted}.xml");
+  }
+
+
+
+  /**
+   * Record a query of users in a slow request log.
+   *
+   * @param log     The slow request log.
+   * @param path    The path of the request.
+   * @param millis  The time in milliseconds that the request is to take.
+   *
+   * @throws Exception  If the request could not be recorded.
+   */
+  private static void record(final SlowRequestLog log, final String path,
+                             final long millis)
+      throws Exception
+  {
+    final RequestTimer timer = new RequestTimer();
+    if (millis > 0)
+    {
+      Thread.sleep(millis);
+    }
+    timer.setResultCount(1);
+    timer.stop();
+    log.record(timer, "Users", ResourceStats.QUERY, "GET", path,
+               "userName eq \"" + path + "\"", null);
+  }
+}
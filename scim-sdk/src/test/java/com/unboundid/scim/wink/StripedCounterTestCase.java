@@ -0,0 +1,142 @@
+/*
+ * Copyright 2012-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.wink;
+
+import com.unboundid.scim.SCIMTestCase;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.testng.Assert.*;
+
+
+
+/**
+ * This class provides test coverage for the {@code StripedCounter} class and
+ * for the fixed counters of the {@code ResourceStats} class.
+ */
+public class StripedCounterTestCase
+    extends SCIMTestCase
+{
+  /**
+   * Verify that a counter updated by a single thread holds the sum of the
+   * updates.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testIncrementAndAdd()
+      throws Exception
+  {
+    final StripedCounter counter = new StripedCounter();
+    assertEquals(counter.get(), 0);
+
+    counter.increment();
+    assertEquals(counter.get(), 1);
+
+    counter.add(41);
+    assertEquals(counter.get(), 42);
+
+    counter.add(-2);
+    assertEquals(counter.get(), 40);
+  }
+
+
+
+  /**
+   * Verify that no updates are lost when many threads update a counter at
+   * once.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testConcurrentUpdates()
+      throws Exception
+  {
+    final int numThreads = 16;
+    final int numUpdates = 10000;
+    final StripedCounter counter = new StripedCounter();
+    final CountDownLatch startLatch = new CountDownLatch(1);
+    final List<Thread> threads = new ArrayList<Thread>(numThreads);
+    for (int i = 0; i < numThreads; i++)
+    {
+      final Thread thread = new Thread()
+      {
+        @Override
+        public void run()
+        {
+          try
+          {
+            startLatch.await();
+          }
+          catch (InterruptedException e)
+          {
+            return;
+          }
+          for (int j = 0; j < numUpdates; j++)
+          {
+            counter.increment();
+            counter.add(2);
+          }
+        }
+      };
+      thread.start();
+      threads.add(thread);
+    }
+
+    startLatch.countDown();
+    for (final Thread thread : threads)
+    {
+      thread.join();
+    }
+    assertEquals(counter.get(), 3L * numThreads * numUpdates);
+  }
+
+
+
+  /**
+   * Verify that a fixed counter of a resource only appears in the statistics
+   * once it has been updated, and that it is the same counter as the one
+   * updated by name.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testFixedCounters()
+      throws Exception
+  {
+    final ResourceStats stats = new ResourceStats("Users");
+    assertFalse(stats.getStats().containsKey(ResourceStats.GET_OK));
+    assertEquals(stats.getStat(ResourceStats.GET_OK), 0);
+
+    stats.gets.ok.increment();
+    assertEquals(stats.getStats().get(ResourceStats.GET_OK).longValue(), 1);
+
+    stats.incrementStat(ResourceStats.GET_OK);
+    assertEquals(stats.getStat(ResourceStats.GET_OK), 2);
+
+    stats.incrementStat(ResourceStats.PUT_RESPONSE_XML);
+    stats.puts.responseXML.increment();
+    assertEquals(stats.getStat(ResourceStats.PUT_RESPONSE_XML), 2);
+
+    assertFalse(stats.getStats().containsKey(ResourceStats.POST_OK));
+    assertEquals(stats.getStats().size(), 2);
+  }
+}